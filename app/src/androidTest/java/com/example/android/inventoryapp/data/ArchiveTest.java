@@ -0,0 +1,272 @@
+package com.example.android.inventoryapp.data;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.test.ProviderTestCase2;
+
+import com.example.android.inventoryapp.data.ProductContract.CategoryEntry;
+import com.example.android.inventoryapp.data.ProductContract.ProductEntry;
+import com.example.android.inventoryapp.data.ProductContract.ValuationEntry;
+import com.example.android.inventoryapp.sync.SyncBatch;
+import com.example.android.inventoryapp.sync.SyncChange;
+import com.example.android.inventoryapp.sync.SyncCodec;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Moves of the cold products to the archive: their rows and pictures survive the move, they leave
+ * the hot table, and they come back only for queries including the archive.
+ */
+public class ArchiveTest extends ProviderTestCase2<ProductProvider> {
+    private static final int HOT_COUNT = 100;
+    private static final int COLD_COUNT = 1000;
+    private static final long DAY = TimeUnit.DAYS.toMillis(1);
+
+    /**
+     * Slack of the hot query timing, in milliseconds, so that the scheduling noise of a few
+     * milliseconds runs does not fail the test.
+     */
+    private static final long TIMING_SLACK_MILLIS = 50;
+
+    private ContentResolver mResolver;
+
+    public ArchiveTest() {
+        super(ProductProvider.class, ProductContract.CONTENT_AUTHORITY);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        getMockContext().deleteDatabase(ArchiveDbHelper.DATABASE_NAME);
+        mResolver = getMockContentResolver();
+        mResolver.delete(ProductEntry.CONTENT_URI, null, null);
+    }
+
+    public void testColdProductsMoveWithTheirPictures() {
+        Uri hot = insert("Hot", 5, false);
+        Uri stocked = insert("Discontinued in stock", 5, true);
+        Uri discontinued = insert("Discontinued", 0, true);
+        Uri outOfStock = insert("Out of stock", 0, false);
+        Uri recentlyOutOfStock = insert("Recently out of stock", 0, false);
+        setZeroStockSince(outOfStock, System.currentTimeMillis() - ProductContract.ARCHIVE_ZERO_STOCK_MILLIS - 1);
+
+        assertEquals(2, archiveAll());
+
+        assertTrue(exists(hot));
+        assertTrue(exists(stocked));
+        assertTrue(exists(recentlyOutOfStock));
+        assertFalse(exists(discontinued));
+        assertFalse(exists(outOfStock));
+
+        assertTrue(Arrays.equals(picture(discontinued), readPicture(withArchive(discontinued))));
+        assertTrue(Arrays.equals(picture(outOfStock), readPicture(withArchive(outOfStock))));
+        assertEquals(5, count(withArchive(ProductEntry.CONTENT_URI)));
+
+        /* Nothing left to move. */
+        assertEquals(0, archiveAll());
+    }
+
+    public void testArchiveRunsLeaveTheValuationAndTheRollups() {
+        long category = ContentUris.parseId(mResolver.insert(CategoryEntry.CONTENT_URI, category("Pantry")));
+        Uri stocked = insert("Discontinued in stock", 5, true);
+        Uri discontinued = insert("Discontinued", 0, true);
+        setCategory(stocked, category);
+        setCategory(discontinued, category);
+        long[] valuation = today();
+        long[] rollups = rollups(category);
+
+        assertEquals(1, archiveAll());
+
+        assertTrue(Arrays.equals(valuation, today()));
+        assertTrue(Arrays.equals(rollups, rollups(category)));
+    }
+
+    public void testPulledChangesBringArchivedProductsBack() {
+        Uri discontinued = insert("Discontinued", 0, true);
+        String globalId = readGlobalId(discontinued);
+        assertEquals(1, archiveAll());
+
+        Bundle extras = new Bundle();
+        extras.putByteArray(ProductContract.EXTRA_BATCH, SyncCodec.toByteArray(new SyncBatch("server", 1, false,
+                Collections.singletonList(new SyncChange(globalId, SyncChange.FIELD_PRICE, null, 990, 0, null)))));
+        mResolver.call(ProductContract.BASE_CONTENT_URI, ProductContract.METHOD_APPLY_REMOTE, null, extras);
+
+        /* The product is hot again, the same row with its own name and picture, and only once. */
+        assertTrue(exists(discontinued));
+        assertEquals("Discontinued", readName(discontinued));
+        assertTrue(Arrays.equals(picture("Discontinued"), readPicture(discontinued)));
+        assertEquals(990, readPrice(discontinued));
+        assertEquals(1, count(withArchive(ProductEntry.CONTENT_URI)));
+    }
+
+    public void testHotQueriesDoNotDependOnTheArchive() {
+        for (int i = 0; i < HOT_COUNT; i++) {
+            insert("Hot " + i, 5, false);
+        }
+        long before = timeHotQuery();
+
+        for (int i = 0; i < COLD_COUNT; i++) {
+            insert("Cold " + i, 0, true);
+        }
+        assertEquals(COLD_COUNT, archiveAll());
+        long after = timeHotQuery();
+
+        /* Ten times more rows in the archive, yet the hot queries take about the same time. */
+        assertTrue("Hot query with an empty archive: " + before + " ms, with " + COLD_COUNT
+                + " archived products: " + after + " ms", after <= 2 * before + TIMING_SLACK_MILLIS);
+        assertEquals(HOT_COUNT, count(ProductEntry.CONTENT_URI));
+        assertEquals(HOT_COUNT + COLD_COUNT, count(withArchive(ProductEntry.CONTENT_URI)));
+    }
+
+    private Uri insert(String name, int quantity, boolean discontinued) {
+        ContentValues values = new ContentValues();
+        values.put(ProductEntry.COLUMN_PRODUCT_NAME, name);
+        values.put(ProductEntry.COLUMN_PRODUCT_QUANTITY, quantity);
+        values.put(ProductEntry.COLUMN_PRODUCT_PRICE, 1);
+        values.put(ProductEntry.COLUMN_PRODUCT_PICTURE, picture(name));
+        values.put(ProductEntry.COLUMN_PRODUCT_DISCONTINUED, discontinued ? 1 : 0);
+        return mResolver.insert(ProductEntry.CONTENT_URI, values);
+    }
+
+    private static ContentValues category(String name) {
+        ContentValues values = new ContentValues();
+        values.put(CategoryEntry.COLUMN_CATEGORY_NAME, name);
+        return values;
+    }
+
+    private void setCategory(Uri uri, long category) {
+        ContentValues values = new ContentValues();
+        values.put(ProductEntry.COLUMN_PRODUCT_CATEGORY_ID, category);
+        assertEquals(1, mResolver.update(uri, values, null, null));
+    }
+
+    private void setZeroStockSince(Uri uri, long time) {
+        ContentValues values = new ContentValues();
+        values.put(ProductEntry.COLUMN_PRODUCT_ZERO_STOCK_SINCE, time);
+        assertEquals(1, mResolver.update(uri, values, null, null));
+    }
+
+    private int archiveAll() {
+        Bundle result = mResolver.call(
+                ProductContract.BASE_CONTENT_URI, ProductContract.METHOD_ARCHIVE_COLD, String.valueOf(Integer.MAX_VALUE), null);
+        return result.getInt(ProductContract.EXTRA_COUNT);
+    }
+
+    private long timeHotQuery() {
+        long start = SystemClock.elapsedRealtime();
+        for (int i = 0; i < 20; i++) {
+            count(ProductEntry.CONTENT_URI);
+        }
+        return SystemClock.elapsedRealtime() - start;
+    }
+
+    /**
+     * Return the units and value of the latest valuation bucket.
+     */
+    private long[] today() {
+        long now = System.currentTimeMillis();
+        Cursor cursor = mResolver.query(ValuationEntry.buildRangeUri(now - DAY, now + DAY),
+                new String[] { ValuationEntry.COLUMN_UNITS, ValuationEntry.COLUMN_VALUE }, null, null, null);
+        try {
+            assertTrue(cursor.moveToLast());
+            return new long[] { cursor.getLong(0), cursor.getLong(1) };
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Return the units and value of a category. Its item count follows the hot products only.
+     */
+    private long[] rollups(long category) {
+        Cursor cursor = mResolver.query(ContentUris.withAppendedId(CategoryEntry.CONTENT_URI, category),
+                new String[] { CategoryEntry.COLUMN_CATEGORY_UNITS, CategoryEntry.COLUMN_CATEGORY_VALUE },
+                null, null, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            return new long[] { cursor.getLong(0), cursor.getLong(1) };
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static Uri withArchive(Uri uri) {
+        return uri.buildUpon()
+                .appendQueryParameter(ProductContract.QUERY_PARAMETER_INCLUDE, ProductContract.INCLUDE_ARCHIVE)
+                .build();
+    }
+
+    /**
+     * Picture of a product, distinct for every product.
+     */
+    private static byte[] picture(String name) {
+        byte[] picture = new byte[4096];
+        Arrays.fill(picture, (byte) name.hashCode());
+        picture[0] = (byte) name.length();
+        return picture;
+    }
+
+    private byte[] picture(Uri uri) {
+        return picture(readName(withArchive(uri)));
+    }
+
+    private boolean exists(Uri uri) {
+        return count(uri) == 1;
+    }
+
+    private int count(Uri uri) {
+        Cursor cursor = mResolver.query(uri, new String[] { ProductEntry._ID }, null, null, null);
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private String readName(Uri uri) {
+        Cursor cursor = mResolver.query(uri, new String[] { ProductEntry.COLUMN_PRODUCT_NAME }, null, null, null);
+        try {
+            assertTrue("No product " + ContentUris.parseId(uri), cursor.moveToFirst());
+            return cursor.getString(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private String readGlobalId(Uri uri) {
+        Cursor cursor = mResolver.query(uri, new String[] { ProductEntry.COLUMN_PRODUCT_GLOBAL_ID }, null, null, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            return cursor.getString(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private long readPrice(Uri uri) {
+        Cursor cursor = mResolver.query(uri, new String[] { ProductEntry.COLUMN_PRODUCT_PRICE }, null, null, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            return cursor.getLong(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private byte[] readPicture(Uri uri) {
+        Cursor cursor = mResolver.query(uri, new String[] { ProductEntry.COLUMN_PRODUCT_PICTURE }, null, null, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            return cursor.getBlob(0);
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,342 @@
+package com.example.android.inventoryapp.data;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.Debug;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.test.ProviderTestCase2;
+import android.util.Log;
+
+import com.example.android.inventoryapp.data.ProductContract.ProductEntry;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.Random;
+
+/**
+ * Soak test of {@link ProductProvider} on a synthetic catalog of {@link CatalogGenerator}: a Zipf
+ * mix of list pages, detail screens, sales and edits is replayed for a long time, and the heap,
+ * the database size and the latencies are sampled at regular intervals to see them drift.
+ *
+ * The run is set by instrumentation arguments, by default a 1 minute run over 1000 products:
+ * -e soakProducts 300000 -e soakMinutes 240 -e soakSampleSeconds 60 -e soakSeed 7
+ * The samples are logged and written to soak.csv in the files directory of the app.
+ */
+public class CatalogSoakTest extends ProviderTestCase2<ProductProvider> {
+    private static final String LOG_TAG = CatalogSoakTest.class.getSimpleName();
+
+    private static final String ARGUMENT_PRODUCTS = "soakProducts";
+    private static final String ARGUMENT_MINUTES = "soakMinutes";
+    private static final String ARGUMENT_SAMPLE_SECONDS = "soakSampleSeconds";
+    private static final String ARGUMENT_SEED = "soakSeed";
+
+    /**
+     * Instrumentation argument with a number of products to generate into the real database of
+     * the app, to try the app at scale, see {@link #testGenerateAppCatalog()}.
+     */
+    private static final String ARGUMENT_CATALOG_PRODUCTS = "catalogProducts";
+
+    private static final String LIST = "list";
+    private static final String DETAIL = "detail";
+    private static final String SELL = "sell";
+    private static final String RESTOCK = "restock";
+    private static final String EDIT = "edit";
+    private static final String[] OPERATIONS = { LIST, DETAIL, SELL, EDIT };
+
+    private static final int PAGE_SIZE = 50;
+
+    /**
+     * Skew of the traffic over the products and over the list pages.
+     */
+    private static final double ZIPF_EXPONENT = 1.0;
+
+    /**
+     * Largest slowdown of the median latency of an operation between the first and the last
+     * samples, on top of {@link #DRIFT_SLACK_MICROS} to absorb the noise of fast operations.
+     */
+    private static final int DRIFT_FACTOR = 3;
+    private static final long DRIFT_SLACK_MICROS = 2000;
+
+    /**
+     * Largest growth of the heap used, after a collection, between the first and last samples.
+     */
+    private static final long MAX_HEAP_GROWTH_BYTES = 16 * 1024 * 1024;
+
+    private static final String[] LIST_PROJECTION = {
+            ProductEntry._ID,
+            ProductEntry.COLUMN_PRODUCT_NAME,
+            ProductEntry.COLUMN_PRODUCT_QUANTITY,
+            ProductEntry.COLUMN_PRODUCT_PRICE
+    };
+
+    private static final String[] EDIT_PROJECTION = {
+            ProductEntry.COLUMN_PRODUCT_QUANTITY,
+            ProductEntry.COLUMN_PRODUCT_VERSION
+    };
+
+    private static final String[] DETAIL_PROJECTION = {
+            ProductEntry._ID,
+            ProductEntry.COLUMN_PRODUCT_NAME,
+            ProductEntry.COLUMN_PRODUCT_QUANTITY,
+            ProductEntry.COLUMN_PRODUCT_PRICE,
+            ProductEntry.COLUMN_PRODUCT_VERSION,
+            ProductEntry.COLUMN_PRODUCT_PICTURE
+    };
+
+    private ContentResolver mResolver;
+    private Random mRandom;
+
+    /**
+     * Ids and SKUs of the products, in popularity order: the first is the most requested.
+     */
+    private long[] mIds;
+    private String[] mSkus;
+
+    public CatalogSoakTest() {
+        super(ProductProvider.class, ProductContract.CONTENT_AUTHORITY);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mResolver = getMockContentResolver();
+    }
+
+    public void testLatencyAndMemoryDoNotDrift() throws IOException {
+        Bundle arguments = InstrumentationRegistry.getArguments();
+        int productCount = Integer.parseInt(arguments.getString(ARGUMENT_PRODUCTS, "1000"));
+        long durationMillis = Long.parseLong(arguments.getString(ARGUMENT_MINUTES, "1")) * 60 * 1000;
+        long sampleMillis = Long.parseLong(arguments.getString(ARGUMENT_SAMPLE_SECONDS, "10")) * 1000;
+        long seed = Long.parseLong(arguments.getString(ARGUMENT_SEED, "1"));
+
+        long start = SystemClock.elapsedRealtime();
+        long pictureBytes = new CatalogGenerator(seed, CatalogGenerator.PictureSizes.DEFAULT)
+                .generate(mResolver, 0, productCount);
+        Log.i(LOG_TAG, productCount + " products, " + pictureBytes / 1024 / 1024 + " MB of pictures, generated in "
+                + (SystemClock.elapsedRealtime() - start) + " ms");
+
+        mRandom = new Random(seed);
+        rankProducts(productCount);
+        ZipfSampler products = new ZipfSampler(productCount, ZIPF_EXPONENT);
+        ZipfSampler pages = new ZipfSampler((productCount + PAGE_SIZE - 1) / PAGE_SIZE, ZIPF_EXPONENT);
+
+        StringWriter csv = new StringWriter();
+        csv.write("elapsed_s,heap_kb,native_heap_kb,database_kb,wal_kb,calls");
+        for (String operation : OPERATIONS) {
+            csv.write("," + operation + "_p50_us," + operation + "_p99_us");
+        }
+        csv.write("\n");
+
+        long[] firstMedians = null;
+        long[] lastMedians = null;
+        long firstHeap = 0;
+        long lastHeap = 0;
+
+        start = SystemClock.elapsedRealtime();
+        while (SystemClock.elapsedRealtime() - start < durationMillis) {
+            StressStats stats = new StressStats();
+            long sampleEnd = Math.min(SystemClock.elapsedRealtime() + sampleMillis, start + durationMillis);
+            while (SystemClock.elapsedRealtime() < sampleEnd) {
+                int choice = mRandom.nextInt(100);
+                if (choice < 30) {
+                    list(stats, pages.next(mRandom));
+                } else if (choice < 75) {
+                    detail(stats, products.next(mRandom));
+                } else if (choice < 95) {
+                    sell(stats, products.next(mRandom));
+                } else {
+                    edit(stats, products.next(mRandom));
+                }
+            }
+
+            /* Heap still reachable after a collection, so garbage does not count as growth. */
+            Runtime runtime = Runtime.getRuntime();
+            runtime.gc();
+            long heap = runtime.totalMemory() - runtime.freeMemory();
+
+            long[] medians = new long[OPERATIONS.length];
+            StringBuilder latencies = new StringBuilder();
+            int calls = 0;
+            for (int i = 0; i < OPERATIONS.length; i++) {
+                StressStats.Operation operation = stats.get(OPERATIONS[i]);
+                calls += operation.getCount();
+                medians[i] = operation.percentile(0.50) / 1000;
+                latencies.append(',').append(medians[i]).append(',').append(operation.percentile(0.99) / 1000);
+            }
+
+            StringBuilder line = new StringBuilder()
+                    .append((SystemClock.elapsedRealtime() - start) / 1000).append(',')
+                    .append(heap / 1024).append(',')
+                    .append(Debug.getNativeHeapAllocatedSize() / 1024).append(',')
+                    .append(fileSize("") / 1024).append(',')
+                    .append(fileSize("-wal") / 1024).append(',')
+                    .append(calls)
+                    .append(latencies);
+
+            Log.i(LOG_TAG, line.toString());
+            csv.write(line.append('\n').toString());
+
+            if (firstMedians == null) {
+                firstMedians = medians;
+                firstHeap = heap;
+            }
+            lastMedians = medians;
+            lastHeap = heap;
+        }
+
+        File report = new File(InstrumentationRegistry.getTargetContext().getFilesDir(), "soak.csv");
+        Writer out = new FileWriter(report);
+        try {
+            out.write(csv.toString());
+        } finally {
+            out.close();
+        }
+        Log.i(LOG_TAG, "Soak samples written to " + report);
+
+        assertNotNull(firstMedians);
+        for (int i = 0; i < OPERATIONS.length; i++) {
+            assertTrue(OPERATIONS[i] + " median went from " + firstMedians[i] + " to " + lastMedians[i] + " us",
+                    lastMedians[i] <= firstMedians[i] * DRIFT_FACTOR + DRIFT_SLACK_MICROS);
+        }
+        assertTrue("Heap grew from " + firstHeap / 1024 + " to " + lastHeap / 1024 + " KB",
+                lastHeap - firstHeap <= MAX_HEAP_GROWTH_BYTES);
+    }
+
+    /**
+     * Generate a catalog into the real database of the app, when asked for with the
+     * {@link #ARGUMENT_CATALOG_PRODUCTS} instrumentation argument. The products are added to the
+     * ones already there, with their own SKUs.
+     */
+    public void testGenerateAppCatalog() {
+        Bundle arguments = InstrumentationRegistry.getArguments();
+        String count = arguments.getString(ARGUMENT_CATALOG_PRODUCTS);
+        if (count == null) {
+            return;
+        }
+
+        long seed = Long.parseLong(arguments.getString(ARGUMENT_SEED, "1"));
+        long pictureBytes = new CatalogGenerator(seed, CatalogGenerator.PictureSizes.DEFAULT)
+                .generate(InstrumentationRegistry.getTargetContext().getContentResolver(), 0, Integer.parseInt(count));
+        Log.i(LOG_TAG, count + " products generated into the app, " + pictureBytes / 1024 / 1024 + " MB of pictures");
+    }
+
+    /**
+     * Resolve the ids of the generated products, and shuffle them so that the popular products are
+     * spread over the catalog rather than being the first inserted.
+     */
+    private void rankProducts(int productCount) {
+        mSkus = new String[productCount];
+        for (int i = 0; i < productCount; i++) {
+            mSkus[i] = CatalogGenerator.sku(i);
+        }
+        for (int i = productCount - 1; i > 0; i--) {
+            int j = mRandom.nextInt(i + 1);
+            String sku = mSkus[i];
+            mSkus[i] = mSkus[j];
+            mSkus[j] = sku;
+        }
+
+        mIds = new ProductBatchClient(mResolver).resolveSkus(mSkus);
+    }
+
+    private void list(StressStats stats, int page) {
+        Uri uri = ProductEntry.CONTENT_URI.buildUpon()
+                .appendQueryParameter(ProductContract.QUERY_PARAMETER_LIMIT, page * PAGE_SIZE + "," + PAGE_SIZE)
+                .build();
+
+        long start = System.nanoTime();
+        Cursor cursor = mResolver.query(uri, LIST_PROJECTION, null, null, ProductEntry._ID);
+        try {
+            ProductMapper mapper = new ProductMapper(cursor);
+            Product product = new Product();
+            while (cursor.moveToNext()) {
+                mapper.read(product);
+            }
+        } finally {
+            cursor.close();
+        }
+        stats.record(LIST, start, true);
+    }
+
+    private void detail(StressStats stats, int rank) {
+        long start = System.nanoTime();
+        Cursor cursor = mResolver.query(uri(rank), DETAIL_PROJECTION, null, null, null);
+        boolean found;
+        try {
+            found = cursor.moveToFirst();
+            if (found) {
+                new ProductMapper(cursor).read(new Product());
+            }
+        } finally {
+            cursor.close();
+        }
+        stats.record(DETAIL, start, found);
+    }
+
+    /**
+     * Sell a few units, restocking the product when it ran out.
+     */
+    private void sell(StressStats stats, int rank) {
+        Bundle extras = new Bundle();
+        extras.putInt(ProductContract.EXTRA_QUANTITY, 1 + mRandom.nextInt(3));
+
+        long start = System.nanoTime();
+        Bundle result = mResolver.call(
+                ProductContract.BASE_CONTENT_URI, ProductContract.METHOD_SELL_SKU, mSkus[rank], extras);
+        boolean sold = result.getInt(ProductContract.EXTRA_QUANTITY, -1) != -1;
+        stats.record(SELL, start, sold);
+
+        if (!sold) {
+            extras = new Bundle();
+            extras.putLongArray(ProductContract.EXTRA_IDS, new long[] { mIds[rank] });
+            extras.putIntArray(ProductContract.EXTRA_DELTAS, new int[] { 100 });
+
+            start = System.nanoTime();
+            mResolver.call(ProductContract.BASE_CONTENT_URI, ProductContract.METHOD_APPLY_QUANTITY_DELTAS, null, extras);
+            stats.record(RESTOCK, start, true);
+        }
+    }
+
+    /**
+     * Rename the product and add a unit, as the detail screen does.
+     */
+    private void edit(StressStats stats, int rank) {
+        long start = System.nanoTime();
+        Cursor cursor = mResolver.query(uri(rank), EDIT_PROJECTION, null, null, null);
+        Product product = new Product();
+        try {
+            if (!cursor.moveToFirst()) {
+                stats.record(EDIT, start, false);
+                return;
+            }
+            new ProductMapper(cursor).read(product);
+        } finally {
+            cursor.close();
+        }
+
+        ContentValues values = new ContentValues();
+        values.put(ProductEntry.COLUMN_PRODUCT_NAME, "Edited product " + mRandom.nextInt(1000));
+        stats.record(EDIT, start, VersionedUpdates.applyQuantityDelta(
+                mResolver, uri(rank), product.version, product.quantity, 1, values));
+    }
+
+    private Uri uri(int rank) {
+        return ContentUris.withAppendedId(ProductEntry.CONTENT_URI, mIds[rank]);
+    }
+
+    /**
+     * Return the size of the database file with the given suffix ("" or "-wal"), 0 if absent.
+     */
+    private long fileSize(String suffix) {
+        File database = getMockContext().getDatabasePath(ProductDbHelper.DATABASE_NAME);
+        return new File(database.getPath() + suffix).length();
+    }
+}
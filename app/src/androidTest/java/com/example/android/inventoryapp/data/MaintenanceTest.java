@@ -0,0 +1,134 @@
+package com.example.android.inventoryapp.data;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+import android.os.Bundle;
+import android.test.ProviderTestCase2;
+
+import com.example.android.inventoryapp.data.ProductContract.ProductEntry;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Maintenance steps of the provider: the pages of large pictures are returned to the file system,
+ * and every step reports its work.
+ */
+public class MaintenanceTest extends ProviderTestCase2<ProductProvider> {
+    private static final int PRODUCT_COUNT = 50;
+    private static final int PICTURE_SIZE = 64 * 1024;
+
+    /**
+     * Budget long enough for any step to complete.
+     */
+    private static final long BUDGET_MILLIS = 60 * 1000;
+
+    private ContentResolver mResolver;
+
+    public MaintenanceTest() {
+        super(ProductProvider.class, ProductContract.CONTENT_AUTHORITY);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mResolver = getMockContentResolver();
+    }
+
+    public void testVacuumReclaimsThePagesOfReplacedPictures() {
+        /* Start from an empty free list. */
+        runStep(ProductContract.MAINTENANCE_VACUUM, BUDGET_MILLIS);
+
+        List<Uri> uris = new ArrayList<>();
+        for (int i = 0; i < PRODUCT_COUNT; i++) {
+            ContentValues values = new ContentValues();
+            values.put(ProductEntry.COLUMN_PRODUCT_NAME, "Product " + i);
+            values.put(ProductEntry.COLUMN_PRODUCT_QUANTITY, 1);
+            values.put(ProductEntry.COLUMN_PRODUCT_PRICE, 1);
+            values.put(ProductEntry.COLUMN_PRODUCT_PICTURE, new byte[PICTURE_SIZE]);
+            uris.add(mResolver.insert(ProductEntry.CONTENT_URI, values));
+        }
+
+        /* Smaller pictures free the overflow pages of the large ones. */
+        for (Uri uri : uris) {
+            ContentValues values = new ContentValues();
+            values.put(ProductEntry.COLUMN_PRODUCT_PICTURE, new byte[1]);
+            assertEquals(1, mResolver.update(uri, values, null, null));
+        }
+
+        Bundle vacuum = runStep(ProductContract.MAINTENANCE_VACUUM, BUDGET_MILLIS);
+        assertTrue(vacuum.getBoolean(ProductContract.EXTRA_DONE));
+        /* At least the picture bytes, in pages of at most 64 KB. */
+        assertTrue(vacuum.getInt(ProductContract.EXTRA_COUNT) >= PRODUCT_COUNT);
+
+        /* Nothing left once done. */
+        assertEquals(0, runStep(ProductContract.MAINTENANCE_VACUUM, BUDGET_MILLIS).getInt(ProductContract.EXTRA_COUNT));
+    }
+
+    public void testBudgetCutsTheVacuumShort() {
+        runStep(ProductContract.MAINTENANCE_VACUUM, BUDGET_MILLIS);
+
+        ContentValues values = new ContentValues();
+        values.put(ProductEntry.COLUMN_PRODUCT_NAME, "Product");
+        values.put(ProductEntry.COLUMN_PRODUCT_QUANTITY, 1);
+        values.put(ProductEntry.COLUMN_PRODUCT_PRICE, 1);
+        values.put(ProductEntry.COLUMN_PRODUCT_PICTURE, new byte[PRODUCT_COUNT * PICTURE_SIZE]);
+        Uri uri = mResolver.insert(ProductEntry.CONTENT_URI, values);
+        values.put(ProductEntry.COLUMN_PRODUCT_PICTURE, new byte[1]);
+        mResolver.update(uri, values, null, null);
+
+        /* A zero budget runs one chunk only. */
+        Bundle first = runStep(ProductContract.MAINTENANCE_VACUUM, 0);
+        assertFalse(first.getBoolean(ProductContract.EXTRA_DONE));
+        assertTrue(first.getInt(ProductContract.EXTRA_COUNT) > 0);
+
+        assertTrue(runStep(ProductContract.MAINTENANCE_VACUUM, BUDGET_MILLIS).getBoolean(ProductContract.EXTRA_DONE));
+    }
+
+    public void testVacuumSkipsDatabasesWithoutIncrementalVacuum() {
+        SQLiteDatabase db = SQLiteDatabase.create(null);
+        try {
+            db.execSQL("CREATE TABLE t (x BLOB)");
+
+            Bundle vacuum = MaintenanceOperations.vacuum(db, 0);
+            assertTrue(vacuum.getBoolean(ProductContract.EXTRA_DONE));
+            assertEquals(0, vacuum.getInt(ProductContract.EXTRA_COUNT));
+            assertNotNull(vacuum.getString(ProductContract.EXTRA_MESSAGE));
+
+            /* No full VACUUM converted it. */
+            assertEquals(0, DatabaseUtils.longForQuery(db, "PRAGMA auto_vacuum", null));
+        } finally {
+            db.close();
+        }
+    }
+
+    public void testOtherStepsReport() {
+        Bundle analyze = runStep(ProductContract.MAINTENANCE_ANALYZE, BUDGET_MILLIS);
+        assertTrue(analyze.getBoolean(ProductContract.EXTRA_DONE));
+
+        /* Once analyzed, newer SQLite versions only refresh the stale statistics. */
+        assertTrue(runStep(ProductContract.MAINTENANCE_ANALYZE, BUDGET_MILLIS).getBoolean(ProductContract.EXTRA_DONE));
+
+        assertTrue(runStep(ProductContract.MAINTENANCE_CHECKPOINT, 0).containsKey(ProductContract.EXTRA_COUNT));
+
+        Bundle check = runStep(ProductContract.MAINTENANCE_QUICK_CHECK, 0);
+        assertEquals("ok", check.getString(ProductContract.EXTRA_MESSAGE));
+        assertEquals(0, check.getInt(ProductContract.EXTRA_COUNT));
+    }
+
+    public void testSupportsOptimize() {
+        assertTrue(MaintenanceOperations.supportsOptimize("3.18.0"));
+        assertTrue(MaintenanceOperations.supportsOptimize("3.22.0"));
+        assertFalse(MaintenanceOperations.supportsOptimize("3.9.2"));
+        assertFalse(MaintenanceOperations.supportsOptimize("unknown"));
+    }
+
+    private Bundle runStep(String step, long budgetMillis) {
+        Bundle extras = new Bundle();
+        extras.putLong(ProductContract.EXTRA_BUDGET_MILLIS, budgetMillis);
+        return mResolver.call(ProductContract.BASE_CONTENT_URI, ProductContract.METHOD_MAINTENANCE, step, extras);
+    }
+}
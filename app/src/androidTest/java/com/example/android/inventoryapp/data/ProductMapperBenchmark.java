@@ -0,0 +1,131 @@
+package com.example.android.inventoryapp.data;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.os.Debug;
+import android.os.SystemClock;
+import android.test.ProviderTestCase2;
+import android.util.Log;
+
+import com.example.android.inventoryapp.data.ProductContract.ProductEntry;
+
+/**
+ * Benchmark of the reads of the product list: text columns parsed row by row, as the list used
+ * to bind them, against {@link ProductMapper} reading typed values into a reused {@link Product}.
+ */
+public class ProductMapperBenchmark extends ProviderTestCase2<ProductProvider> {
+    private static final String LOG_TAG = ProductMapperBenchmark.class.getSimpleName();
+
+    private static final int PRODUCT_COUNT = 5000;
+    private static final int PASSES = 10;
+
+    private static final String[] PROJECTION = {
+            ProductEntry._ID,
+            ProductEntry.COLUMN_PRODUCT_NAME,
+            ProductEntry.COLUMN_PRODUCT_QUANTITY,
+            ProductEntry.COLUMN_PRODUCT_PRICE
+    };
+
+    private ContentResolver mResolver;
+
+    public ProductMapperBenchmark() {
+        super(ProductProvider.class, ProductContract.CONTENT_AUTHORITY);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mResolver = getMockContentResolver();
+
+        ContentValues[] chunk = new ContentValues[PRODUCT_COUNT];
+        for (int i = 0; i < PRODUCT_COUNT; i++) {
+            Product product = new Product();
+            product.name = "Product " + i;
+            product.quantity = i % 1000;
+            product.priceCents = 100 + i;
+            product.picture = new byte[1];
+            chunk[i] = product.toContentValues();
+        }
+        assertEquals(PRODUCT_COUNT, mResolver.bulkInsert(ProductEntry.CONTENT_URI, chunk));
+    }
+
+    @SuppressWarnings("deprecation")
+    public void testMapperAllocatesLessThanTextParsing() {
+        Cursor cursor = mResolver.query(ProductEntry.CONTENT_URI, PROJECTION, null, null, null);
+        try {
+            /* Fill the cursor window, and warm both paths up, before measuring. */
+            long expected = readText(cursor);
+            assertEquals(expected, readMapped(cursor));
+
+            Debug.startAllocCounting();
+            try {
+                Debug.resetThreadAllocCount();
+                long start = SystemClock.elapsedRealtimeNanos();
+                for (int i = 0; i < PASSES; i++) {
+                    assertEquals(expected, readText(cursor));
+                }
+                long textNanos = SystemClock.elapsedRealtimeNanos() - start;
+                int textAllocations = Debug.getThreadAllocCount();
+
+                Debug.resetThreadAllocCount();
+                start = SystemClock.elapsedRealtimeNanos();
+                for (int i = 0; i < PASSES; i++) {
+                    assertEquals(expected, readMapped(cursor));
+                }
+                long mappedNanos = SystemClock.elapsedRealtimeNanos() - start;
+                int mappedAllocations = Debug.getThreadAllocCount();
+
+                int rows = PASSES * PRODUCT_COUNT;
+                Log.i(LOG_TAG, String.format("Text parsing: %.0f ns and %.2f allocations per row,"
+                                + " mapper: %.0f ns and %.2f allocations per row",
+                        (double) textNanos / rows, (double) textAllocations / rows,
+                        (double) mappedNanos / rows, (double) mappedAllocations / rows));
+
+                /* The text path allocates at least the quantity and price strings of every row. */
+                assertTrue(textAllocations >= 2 * rows);
+                assertTrue(mappedAllocations < textAllocations / 2);
+            } finally {
+                Debug.stopAllocCounting();
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Read the rows as the list used to: column lookups on every row, numbers read as text and parsed.
+     *
+     * @return A checksum of the quantities and prices, in cents.
+     */
+    private static long readText(Cursor cursor) {
+        long sum = 0;
+        cursor.moveToPosition(-1);
+        while (cursor.moveToNext()) {
+            String name = cursor.getString(cursor.getColumnIndex(ProductEntry.COLUMN_PRODUCT_NAME));
+            String quantity = cursor.getString(cursor.getColumnIndex(ProductEntry.COLUMN_PRODUCT_QUANTITY));
+            String price = cursor.getString(cursor.getColumnIndex(ProductEntry.COLUMN_PRODUCT_PRICE));
+            sum += Integer.parseInt(quantity) + Long.parseLong(price) + name.length();
+        }
+
+        return sum;
+    }
+
+    /**
+     * Read the rows through a mapper into the same product.
+     *
+     * @return The same checksum as {@link #readText}.
+     */
+    private static long readMapped(Cursor cursor) {
+        long sum = 0;
+        ProductMapper mapper = new ProductMapper(cursor);
+        Product product = new Product();
+        cursor.moveToPosition(-1);
+        while (cursor.moveToNext()) {
+            mapper.read(product);
+            sum += product.quantity + product.priceCents + product.name.length();
+        }
+
+        return sum;
+    }
+}
@@ -0,0 +1,156 @@
+package com.example.android.inventoryapp.data;
+
+import android.content.ComponentName;
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.Intent;
+import android.content.ServiceConnection;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.IBinder;
+import android.os.Message;
+import android.os.Messenger;
+import android.os.RemoteException;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.example.android.inventoryapp.data.ProductContract.ProductEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Benchmark of the stock operations of a point of sale app in another process: one IPC per
+ * product against the batched methods of {@link ProductBatchClient}, see {@link StockClientService}.
+ *
+ * It runs against the real provider, in the products of the app, and deletes its products afterwards.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ProviderIpcBenchmark {
+    private static final String LOG_TAG = ProviderIpcBenchmark.class.getSimpleName();
+
+    private static final int PRODUCT_COUNT = 1000;
+
+    private static final String SKU_PREFIX = "IPCBENCH";
+
+    private ContentResolver mResolver;
+    private long[] mIds;
+    private String[] mSkus;
+
+    @Before
+    public void insertProducts() {
+        mResolver = InstrumentationRegistry.getTargetContext().getContentResolver();
+        deleteProducts();
+
+        mSkus = new String[PRODUCT_COUNT];
+        ContentValues[] valuesArray = new ContentValues[PRODUCT_COUNT];
+        for (int i = 0; i < PRODUCT_COUNT; i++) {
+            mSkus[i] = SKU_PREFIX + i;
+
+            ContentValues values = new ContentValues();
+            values.put(ProductEntry.COLUMN_PRODUCT_NAME, "Benchmark product " + i);
+            values.put(ProductEntry.COLUMN_PRODUCT_SKU, mSkus[i]);
+            values.put(ProductEntry.COLUMN_PRODUCT_QUANTITY, 100);
+            values.put(ProductEntry.COLUMN_PRODUCT_PRICE, 1);
+            values.put(ProductEntry.COLUMN_PRODUCT_PICTURE, new byte[1]);
+            valuesArray[i] = values;
+        }
+        assertEquals(PRODUCT_COUNT, mResolver.bulkInsert(ProductEntry.CONTENT_URI, valuesArray));
+
+        mIds = new ProductBatchClient(mResolver).resolveSkus(mSkus);
+    }
+
+    @After
+    public void deleteProducts() {
+        mResolver.delete(
+                ProductEntry.CONTENT_URI,
+                ProductEntry.COLUMN_PRODUCT_SKU + " LIKE ?",
+                new String[] { SKU_PREFIX + "%" }
+        );
+    }
+
+    @Test
+    public void batchedIpcBeatsPerRowIpc() throws Exception {
+        Bundle request = new Bundle();
+        request.putLongArray(ProductContract.EXTRA_IDS, mIds);
+        request.putStringArray(ProductContract.EXTRA_SKUS, mSkus);
+
+        Bundle timings = runInClientProcess(request);
+        long perRowNanos = timings.getLong(StockClientService.EXTRA_PER_ROW_NANOS);
+        long batchedNanos = timings.getLong(StockClientService.EXTRA_BATCHED_NANOS);
+
+        Log.i(LOG_TAG, String.format("%d products, per-row IPC: %.1f ms, batched IPC: %.1f ms",
+                PRODUCT_COUNT, perRowNanos / 1e6, batchedNanos / 1e6));
+
+        /* Each product lost one unit per pass. */
+        int[] quantities = new ProductBatchClient(mResolver).getQuantities(mIds);
+        for (int quantity : quantities) {
+            assertEquals(98, quantity);
+        }
+
+        assertTrue(batchedNanos * 10 < perRowNanos);
+    }
+
+    /**
+     * Bind the client service, send it the request and wait for its timings.
+     */
+    private static Bundle runInClientProcess(Bundle request) throws InterruptedException {
+        Context context = InstrumentationRegistry.getContext();
+
+        final BlockingQueue<Messenger> services = new ArrayBlockingQueue<>(1);
+        ServiceConnection connection = new ServiceConnection() {
+            @Override
+            public void onServiceConnected(ComponentName name, IBinder service) {
+                services.offer(new Messenger(service));
+            }
+
+            @Override
+            public void onServiceDisconnected(ComponentName name) {}
+        };
+        assertTrue(context.bindService(
+                new Intent(context, StockClientService.class), connection, Context.BIND_AUTO_CREATE));
+
+        HandlerThread thread = new HandlerThread(LOG_TAG);
+        thread.start();
+        try {
+            Messenger service = services.poll(10, TimeUnit.SECONDS);
+            assertNotNull(service);
+
+            final BlockingQueue<Bundle> replies = new ArrayBlockingQueue<>(1);
+            Message message = Message.obtain(null, StockClientService.MSG_RUN);
+            message.setData(request);
+            message.replyTo = new Messenger(new Handler(thread.getLooper()) {
+                @Override
+                public void handleMessage(Message reply) {
+                    replies.offer(reply.getData());
+                }
+            });
+            try {
+                service.send(message);
+            } catch (RemoteException e) {
+                throw new AssertionError(e);
+            }
+
+            Bundle timings = replies.poll(5, TimeUnit.MINUTES);
+            assertNotNull(timings);
+
+            return timings;
+        } finally {
+            thread.quit();
+            context.unbindService(connection);
+        }
+    }
+}
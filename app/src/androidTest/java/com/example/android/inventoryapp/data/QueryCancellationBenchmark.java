@@ -0,0 +1,140 @@
+package com.example.android.inventoryapp.data;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.os.CancellationSignal;
+import android.os.Debug;
+import android.os.OperationCanceledException;
+import android.os.SystemClock;
+import android.test.ProviderTestCase2;
+import android.util.Log;
+
+import com.example.android.inventoryapp.data.ProductContract.ProductEntry;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Benchmark of the name search of the list while typing: background CPU spent when every query
+ * runs to completion, against cancelling the superseded query as the restarted list loader does.
+ */
+public class QueryCancellationBenchmark extends ProviderTestCase2<ProductProvider> {
+    private static final String LOG_TAG = QueryCancellationBenchmark.class.getSimpleName();
+
+    private static final int PRODUCT_COUNT = 100000;
+    private static final int INSERT_CHUNK = 10000;
+
+    /**
+     * Typed one character at a time, a keystroke every 50 ms.
+     */
+    private static final String TYPED = "product 4242";
+    private static final long KEYSTROKE_MILLIS = 50;
+
+    private ContentResolver mResolver;
+
+    public QueryCancellationBenchmark() {
+        super(ProductProvider.class, ProductContract.CONTENT_AUTHORITY);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mResolver = getMockContentResolver();
+
+        ContentValues[] chunk = new ContentValues[INSERT_CHUNK];
+        for (int i = 0; i < PRODUCT_COUNT; i += INSERT_CHUNK) {
+            for (int j = 0; j < INSERT_CHUNK; j++) {
+                ContentValues values = new ContentValues();
+                values.put(ProductEntry.COLUMN_PRODUCT_NAME, "Product " + (i + j));
+                values.put(ProductEntry.COLUMN_PRODUCT_QUANTITY, 1);
+                values.put(ProductEntry.COLUMN_PRODUCT_PRICE, 1);
+                values.put(ProductEntry.COLUMN_PRODUCT_PICTURE, new byte[1]);
+                chunk[j] = values;
+            }
+            assertEquals(INSERT_CHUNK, mResolver.bulkInsert(ProductEntry.CONTENT_URI, chunk));
+        }
+    }
+
+    public void testCancellingSupersededQueriesSavesBackgroundCpu() throws InterruptedException {
+        Result complete = type(false);
+        Result latestOnly = type(true);
+
+        Log.i(LOG_TAG, String.format(
+                "Every query: %d run, %.1f ms CPU; latest only: %d completed, %d cancelled, %.1f ms CPU",
+                complete.completed.get(), complete.cpuNanos.get() / 1e6,
+                latestOnly.completed.get(), latestOnly.cancelled.get(), latestOnly.cpuNanos.get() / 1e6));
+
+        /* Both end with the results of the whole text. */
+        assertEquals(complete.lastCount.get(), latestOnly.lastCount.get());
+        assertEquals(11, latestOnly.lastCount.get());
+
+        assertEquals(TYPED.length(), complete.completed.get());
+        assertTrue(latestOnly.cancelled.get() > 0);
+        assertTrue(latestOnly.cpuNanos.get() < complete.cpuNanos.get());
+    }
+
+    private static final class Result {
+        final AtomicLong cpuNanos = new AtomicLong();
+        final AtomicInteger completed = new AtomicInteger();
+        final AtomicInteger cancelled = new AtomicInteger();
+        final AtomicInteger lastCount = new AtomicInteger(-1);
+    }
+
+    /**
+     * Type the text, querying the names containing it on every keystroke on a single background
+     * thread, as the list loader does. If cancelling, each keystroke cancels the query before it.
+     */
+    private Result type(boolean cancelling) throws InterruptedException {
+        final Result result = new Result();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+
+        CancellationSignal previous = null;
+        for (int i = 1; i <= TYPED.length(); i++) {
+            final String filter = TYPED.substring(0, i);
+            final CancellationSignal signal = new CancellationSignal();
+            if (cancelling && previous != null) {
+                previous.cancel();
+            }
+            previous = signal;
+
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    long start = Debug.threadCpuTimeNanos();
+                    try {
+                        Cursor cursor = mResolver.query(
+                                ProductEntry.CONTENT_URI,
+                                new String[] { ProductEntry._ID, ProductEntry.COLUMN_PRODUCT_NAME },
+                                ProductEntry.COLUMN_PRODUCT_NAME + " LIKE ?",
+                                new String[] { "%" + filter + "%" },
+                                null,
+                                signal
+                        );
+                        try {
+                            /* Filling the window runs the query, as the loader does. */
+                            result.lastCount.set(cursor.getCount());
+                            result.completed.incrementAndGet();
+                        } finally {
+                            cursor.close();
+                        }
+                    } catch (OperationCanceledException e) {
+                        result.cancelled.incrementAndGet();
+                    } finally {
+                        result.cpuNanos.addAndGet(Debug.threadCpuTimeNanos() - start);
+                    }
+                }
+            });
+
+            SystemClock.sleep(KEYSTROKE_MILLIS);
+        }
+
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.MINUTES));
+
+        return result;
+    }
+}
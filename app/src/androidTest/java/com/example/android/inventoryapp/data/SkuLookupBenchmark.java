@@ -0,0 +1,81 @@
+package com.example.android.inventoryapp.data;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.test.ProviderTestCase2;
+import android.util.Log;
+
+import com.example.android.inventoryapp.data.ProductContract.ProductEntry;
+
+import java.util.Random;
+
+/**
+ * Benchmark of the scanner path: SKU resolution and sale at 1M products.
+ */
+public class SkuLookupBenchmark extends ProviderTestCase2<ProductProvider> {
+    private static final String LOG_TAG = SkuLookupBenchmark.class.getSimpleName();
+
+    private static final int PRODUCT_COUNT = 1000000;
+    private static final int INSERT_CHUNK = 10000;
+    private static final int SCAN_COUNT = 10000;
+
+    public SkuLookupBenchmark() {
+        super(ProductProvider.class, ProductContract.CONTENT_AUTHORITY);
+    }
+
+    private static String sku(int i) {
+        return String.format("%013d", 4000000000000L + i);
+    }
+
+    public void testScannerPathAtOneMillionSkus() {
+        ContentResolver resolver = getMockContentResolver();
+
+        long start = SystemClock.elapsedRealtime();
+        ContentValues[] chunk = new ContentValues[INSERT_CHUNK];
+        for (int i = 0; i < PRODUCT_COUNT; i += INSERT_CHUNK) {
+            for (int j = 0; j < INSERT_CHUNK; j++) {
+                ContentValues values = new ContentValues();
+                values.put(ProductEntry.COLUMN_PRODUCT_NAME, "Product " + (i + j));
+                values.put(ProductEntry.COLUMN_PRODUCT_SKU, sku(i + j));
+                values.put(ProductEntry.COLUMN_PRODUCT_QUANTITY, 1000000);
+                values.put(ProductEntry.COLUMN_PRODUCT_PRICE, 1);
+                values.put(ProductEntry.COLUMN_PRODUCT_PICTURE, new byte[1]);
+                chunk[j] = values;
+            }
+            assertEquals(INSERT_CHUNK, resolver.bulkInsert(ProductEntry.CONTENT_URI, chunk));
+        }
+        Log.i(LOG_TAG, PRODUCT_COUNT + " products inserted in " + (SystemClock.elapsedRealtime() - start) + " ms");
+
+        /* Cold scans: random SKUs all over the catalog, resolved through the unique index. */
+        Random random = new Random(42);
+        long coldNanos = scan(resolver, random, PRODUCT_COUNT);
+
+        /* Hot scans: the same few products scanned again and again, resolved from the cache. */
+        long hotNanos = scan(resolver, random, 50);
+
+        Log.i(LOG_TAG, String.format("Cold scan + sale: %.3f ms, hot scan + sale: %.3f ms",
+                coldNanos / 1e6 / SCAN_COUNT, hotNanos / 1e6 / SCAN_COUNT));
+
+        /* 10 scans per second leave 100 ms per scan, stay an order of magnitude below. */
+        assertTrue(coldNanos / SCAN_COUNT < 10000000L);
+        assertTrue(hotNanos / SCAN_COUNT < 10000000L);
+    }
+
+    private static long scan(ContentResolver resolver, Random random, int range) {
+        long start = System.nanoTime();
+        for (int i = 0; i < SCAN_COUNT; i++) {
+            Bundle result = resolver.call(
+                    ProductContract.BASE_CONTENT_URI,
+                    ProductContract.METHOD_SELL_SKU,
+                    sku(random.nextInt(range)),
+                    null
+            );
+            assertTrue(result.getLong(ProductContract.EXTRA_ID) > 0);
+            assertTrue(result.getInt(ProductContract.EXTRA_QUANTITY) >= 0);
+        }
+
+        return System.nanoTime() - start;
+    }
+}
@@ -0,0 +1,177 @@
+package com.example.android.inventoryapp.data;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+import android.test.ProviderTestCase2;
+
+import com.example.android.inventoryapp.data.ProductContract.ProductEntry;
+import com.example.android.inventoryapp.data.ProductContract.StockAlertEntry;
+
+import java.util.Random;
+
+/**
+ * Stock alerts queued by the writes: one per crossing of the reorder level, whichever write path
+ * makes it, and none for the writes staying on the same side.
+ */
+public class StockAlertTest extends ProviderTestCase2<ProductProvider> {
+    private static final int REORDER_LEVEL = 5;
+    private static final int WRITE_COUNT = 10000;
+
+    private ContentResolver mResolver;
+
+    /**
+     * SKU of the product of the test, unique as the deleted products keep theirs until purged.
+     */
+    private String mSku;
+
+    public StockAlertTest() {
+        super(ProductProvider.class, ProductContract.CONTENT_AUTHORITY);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mResolver = getMockContentResolver();
+        mResolver.delete(StockAlertEntry.CONTENT_URI, null, null);
+    }
+
+    public void testNewProductAtItsReorderLevelIsAlerted() {
+        insert(REORDER_LEVEL + 1);
+        assertEquals(0, countAlerts());
+
+        Uri uri = insert(REORDER_LEVEL);
+        Cursor cursor = mResolver.query(StockAlertEntry.CONTENT_URI, null, null, null, null);
+        try {
+            assertEquals(1, cursor.getCount());
+            assertTrue(cursor.moveToFirst());
+            assertEquals(ContentUris.parseId(uri), cursor.getLong(cursor.getColumnIndexOrThrow(StockAlertEntry.COLUMN_PRODUCT_ID)));
+            assertEquals(1, cursor.getInt(cursor.getColumnIndexOrThrow(StockAlertEntry.COLUMN_LOW)));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    public void testReorderLevelChangesCross() {
+        Uri uri = insert(REORDER_LEVEL + 1);
+
+        ContentValues values = new ContentValues();
+        values.put(ProductEntry.COLUMN_PRODUCT_REORDER_LEVEL, REORDER_LEVEL + 1);
+        mResolver.update(uri, values, null, null);
+        assertEquals(1, countAlerts());
+
+        /* Renaming does not look at the stock. */
+        values.clear();
+        values.put(ProductEntry.COLUMN_PRODUCT_NAME, "Renamed");
+        mResolver.update(uri, values, null, null);
+        assertEquals(1, countAlerts());
+    }
+
+    public void testOnlyCrossingsAreQueued() {
+        Uri uri = insert(REORDER_LEVEL + 10);
+        long id = ContentUris.parseId(uri);
+        int quantity = REORDER_LEVEL + 10;
+        int expected = 0;
+
+        /* Random walk around the reorder level, through the edit, sale and batch paths. */
+        Random random = new Random(42);
+        for (int i = 0; i < WRITE_COUNT; i++) {
+            int next;
+            switch (i % 3) {
+                case 0:
+                    next = Math.max(0, quantity + random.nextInt(7) - 3);
+                    ContentValues values = new ContentValues();
+                    values.put(ProductEntry.COLUMN_PRODUCT_QUANTITY, next);
+                    assertEquals(1, mResolver.update(uri, values, null, null));
+                    break;
+
+                case 1:
+                    Bundle sale = mResolver.call(
+                            ProductContract.BASE_CONTENT_URI, ProductContract.METHOD_SELL_SKU, mSku, null);
+                    int remaining = sale.getInt(ProductContract.EXTRA_QUANTITY, -1);
+                    next = remaining == -1 ? quantity : remaining;
+                    break;
+
+                default:
+                    Bundle extras = new Bundle();
+                    extras.putLongArray(ProductContract.EXTRA_IDS, new long[] { id });
+                    extras.putIntArray(ProductContract.EXTRA_DELTAS, new int[] { random.nextInt(4) - 1 });
+                    Bundle result = mResolver.call(ProductContract.BASE_CONTENT_URI,
+                            ProductContract.METHOD_APPLY_QUANTITY_DELTAS, null, extras);
+                    int updated = result.getIntArray(ProductContract.EXTRA_QUANTITIES)[0];
+                    next = updated == -1 ? quantity : updated;
+                    break;
+            }
+
+            if ((next <= REORDER_LEVEL) != (quantity <= REORDER_LEVEL)) {
+                expected++;
+            }
+            quantity = next;
+        }
+
+        assertTrue(expected > 0);
+        assertEquals(expected, countAlerts());
+    }
+
+    public void testLowStockSetFollowsTheCrossings() {
+        Uri uri = insert(REORDER_LEVEL + 1);
+        assertFalse(isLow(uri));
+
+        setQuantity(uri, REORDER_LEVEL);
+        assertTrue(isLow(uri));
+
+        /* Draining the alerts leaves the set as it is. */
+        mResolver.delete(StockAlertEntry.CONTENT_URI, null, null);
+        assertTrue(isLow(uri));
+
+        setQuantity(uri, REORDER_LEVEL + 1);
+        assertFalse(isLow(uri));
+
+        setQuantity(uri, 0);
+        assertTrue(isLow(uri));
+        mResolver.delete(uri, null, null);
+        assertFalse(isLow(uri));
+    }
+
+    private void setQuantity(Uri uri, int quantity) {
+        ContentValues values = new ContentValues();
+        values.put(ProductEntry.COLUMN_PRODUCT_QUANTITY, quantity);
+        assertEquals(1, mResolver.update(uri, values, null, null));
+    }
+
+    private boolean isLow(Uri uri) {
+        Cursor cursor = mResolver.query(ProductEntry.LOW_STOCK_URI, new String[] { ProductEntry._ID },
+                ProductEntry._ID + " = ?", new String[] { String.valueOf(ContentUris.parseId(uri)) }, null);
+        try {
+            return cursor.getCount() == 1;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private Uri insert(int quantity) {
+        mResolver.delete(ProductEntry.CONTENT_URI, null, null);
+        mSku = String.valueOf(System.nanoTime());
+
+        ContentValues values = new ContentValues();
+        values.put(ProductEntry.COLUMN_PRODUCT_NAME, "Product");
+        values.put(ProductEntry.COLUMN_PRODUCT_SKU, mSku);
+        values.put(ProductEntry.COLUMN_PRODUCT_QUANTITY, quantity);
+        values.put(ProductEntry.COLUMN_PRODUCT_PRICE, 1);
+        values.put(ProductEntry.COLUMN_PRODUCT_REORDER_LEVEL, REORDER_LEVEL);
+        values.put(ProductEntry.COLUMN_PRODUCT_PICTURE, new byte[1]);
+        return mResolver.insert(ProductEntry.CONTENT_URI, values);
+    }
+
+    private int countAlerts() {
+        Cursor cursor = mResolver.query(StockAlertEntry.CONTENT_URI, new String[] { StockAlertEntry._ID }, null, null, null);
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.example.android.inventoryapp.data;
+
+import android.app.Service;
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.Intent;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.IBinder;
+import android.os.Message;
+import android.os.Messenger;
+import android.os.RemoteException;
+import android.util.Log;
+
+import com.example.android.inventoryapp.data.ProductContract.ProductEntry;
+
+import java.util.Arrays;
+
+/**
+ * Stand-in for the point of sale app, in its own process: runs the stock operations of
+ * {@link ProviderIpcBenchmark} one product per IPC, then batched, and replies with their timings.
+ */
+public class StockClientService extends Service {
+    private static final String LOG_TAG = StockClientService.class.getSimpleName();
+
+    static final int MSG_RUN = 1;
+
+    static final String EXTRA_PER_ROW_NANOS = "per_row_nanos";
+    static final String EXTRA_BATCHED_NANOS = "batched_nanos";
+
+    private HandlerThread mThread;
+    private Messenger mMessenger;
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+
+        mThread = new HandlerThread(LOG_TAG);
+        mThread.start();
+        mMessenger = new Messenger(new Handler(mThread.getLooper()) {
+            @Override
+            public void handleMessage(Message message) {
+                if (message.what != MSG_RUN) {
+                    return;
+                }
+
+                Bundle request = message.getData();
+                Bundle timings = run(
+                        request.getLongArray(ProductContract.EXTRA_IDS),
+                        request.getStringArray(ProductContract.EXTRA_SKUS)
+                );
+
+                Message reply = Message.obtain(null, MSG_RUN);
+                reply.setData(timings);
+                try {
+                    message.replyTo.send(reply);
+                } catch (RemoteException e) {
+                    Log.e(LOG_TAG, "Benchmark gone", e);
+                }
+            }
+        });
+    }
+
+    @Override
+    public IBinder onBind(Intent intent) {
+        return mMessenger.getBinder();
+    }
+
+    @Override
+    public void onDestroy() {
+        mThread.quit();
+        super.onDestroy();
+    }
+
+    /**
+     * Resolve the SKUs, read the quantities and sell one unit of each product, one product per
+     * IPC, then the same batched, and return the time taken by each.
+     */
+    private Bundle run(long[] ids, String[] skus) {
+        ContentResolver resolver = getContentResolver();
+
+        long start = System.nanoTime();
+        for (String sku : skus) {
+            Uri skuUri = ProductEntry.CONTENT_URI.buildUpon()
+                    .appendPath(ProductContract.PATH_SKU).appendPath(sku).build();
+            Cursor cursor = resolver.query(skuUri, new String[] { ProductEntry._ID }, null, null, null);
+            cursor.close();
+        }
+        for (long id : ids) {
+            Cursor cursor = resolver.query(
+                    ContentUris.withAppendedId(ProductEntry.CONTENT_URI, id),
+                    new String[] { ProductEntry.COLUMN_PRODUCT_QUANTITY },
+                    null,
+                    null,
+                    null
+            );
+            cursor.moveToFirst();
+            int quantity = cursor.getInt(0);
+            cursor.close();
+
+            ContentValues values = new ContentValues();
+            values.put(ProductEntry.COLUMN_PRODUCT_QUANTITY, quantity - 1);
+            resolver.update(ContentUris.withAppendedId(ProductEntry.CONTENT_URI, id), values, null, null);
+        }
+        long perRowNanos = System.nanoTime() - start;
+
+        ProductBatchClient client = new ProductBatchClient(resolver);
+        int[] deltas = new int[ids.length];
+        Arrays.fill(deltas, -1);
+
+        start = System.nanoTime();
+        client.resolveSkus(skus);
+        client.getQuantities(ids);
+        client.applyQuantityDeltas(ids, deltas);
+        long batchedNanos = System.nanoTime() - start;
+
+        Bundle timings = new Bundle();
+        timings.putLong(EXTRA_PER_ROW_NANOS, perRowNanos);
+        timings.putLong(EXTRA_BATCHED_NANOS, batchedNanos);
+
+        return timings;
+    }
+}
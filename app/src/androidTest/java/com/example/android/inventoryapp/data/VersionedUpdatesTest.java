@@ -0,0 +1,188 @@
+package com.example.android.inventoryapp.data;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.test.ProviderTestCase2;
+
+import com.example.android.inventoryapp.data.ProductContract.ProductEntry;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Concurrency of the optimistic edits ({@link VersionedUpdates}) with the sales: no update is
+ * lost, and the sales never wait for an edit in progress.
+ */
+public class VersionedUpdatesTest extends ProviderTestCase2<ProductProvider> {
+    private static final String SKU = "4006381333931";
+    private static final int INITIAL_QUANTITY = 10000;
+
+    private static final int THREAD_COUNT = 4;
+    private static final int OPERATION_COUNT = 200;
+
+    private ContentResolver mResolver;
+    private Uri mProductUri;
+
+    public VersionedUpdatesTest() {
+        super(ProductProvider.class, ProductContract.CONTENT_AUTHORITY);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mResolver = getMockContentResolver();
+
+        ContentValues values = new ContentValues();
+        values.put(ProductEntry.COLUMN_PRODUCT_NAME, "Product");
+        values.put(ProductEntry.COLUMN_PRODUCT_SKU, SKU);
+        values.put(ProductEntry.COLUMN_PRODUCT_QUANTITY, INITIAL_QUANTITY);
+        values.put(ProductEntry.COLUMN_PRODUCT_PRICE, 1);
+        values.put(ProductEntry.COLUMN_PRODUCT_PICTURE, new byte[1]);
+        mProductUri = mResolver.insert(ProductEntry.CONTENT_URI, values);
+    }
+
+    public void testEveryWriteIncrementsTheVersion() {
+        long version = readVersion();
+
+        sell();
+        assertEquals(version + 1, readVersion());
+
+        ContentValues values = new ContentValues();
+        values.put(ProductEntry.COLUMN_PRODUCT_NAME, "Renamed");
+        assertEquals(1, mResolver.update(mProductUri, values, null, null));
+        assertEquals(version + 2, readVersion());
+    }
+
+    public void testStaleUpdateIsReportedAsConflict() {
+        long version = readVersion();
+        sell();
+
+        ContentValues values = new ContentValues();
+        values.put(ProductEntry.COLUMN_PRODUCT_QUANTITY, INITIAL_QUANTITY + 1);
+        assertEquals(0, mResolver.update(versioned(version), values, null, null));
+        assertEquals(1, mResolver.update(versioned(version + 1), values, null, null));
+    }
+
+    public void testEditOpenDuringSalesKeepsTheSales() {
+        /* The detail screen reads the product, the user adds 5 units... */
+        long[] state = readState();
+
+        /* ...while 100 units are sold from the list, without waiting for the edit. */
+        long start = SystemClock.elapsedRealtime();
+        for (int i = 0; i < 100; i++) {
+            sell();
+        }
+        assertTrue(SystemClock.elapsedRealtime() - start < 5000);
+
+        assertTrue(VersionedUpdates.applyQuantityDelta(
+                mResolver, mProductUri, state[1], (int) state[0], 5, new ContentValues()));
+        assertEquals(INITIAL_QUANTITY - 100 + 5, readQuantity());
+    }
+
+    public void testConcurrentEditsAndSalesLoseNoUpdates() throws InterruptedException {
+        final AtomicInteger editedUnits = new AtomicInteger();
+        final AtomicInteger soldUnits = new AtomicInteger();
+        final AtomicInteger longestWaitMillis = new AtomicInteger();
+
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < THREAD_COUNT; t++) {
+            /* Editors: read, think, and write +1 over what they read. */
+            threads.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < OPERATION_COUNT; i++) {
+                        long[] state = readState();
+                        Thread.yield();
+
+                        long start = SystemClock.elapsedRealtime();
+                        if (VersionedUpdates.applyQuantityDelta(
+                                mResolver, mProductUri, state[1], (int) state[0], 1, new ContentValues())) {
+                            editedUnits.incrementAndGet();
+                        }
+                        recordWait(longestWaitMillis, SystemClock.elapsedRealtime() - start);
+                    }
+                }
+            }));
+
+            /* Sellers: one unit per sale, as the list does. */
+            threads.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < OPERATION_COUNT; i++) {
+                        long start = SystemClock.elapsedRealtime();
+                        if (sell() >= 0) {
+                            soldUnits.incrementAndGet();
+                        }
+                        recordWait(longestWaitMillis, SystemClock.elapsedRealtime() - start);
+                    }
+                }
+            }));
+        }
+
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertTrue(editedUnits.get() > 0);
+        assertEquals(THREAD_COUNT * OPERATION_COUNT, soldUnits.get());
+        assertEquals(INITIAL_QUANTITY + editedUnits.get() - soldUnits.get(), readQuantity());
+
+        /* Nobody holds a lock across an edit: every operation is a single short transaction. */
+        assertTrue("Longest wait " + longestWaitMillis.get() + " ms", longestWaitMillis.get() < 1000);
+    }
+
+    private static void recordWait(AtomicInteger longest, long millis) {
+        int current;
+        do {
+            current = longest.get();
+        } while (millis > current && !longest.compareAndSet(current, (int) millis));
+    }
+
+    private Uri versioned(long version) {
+        return mProductUri.buildUpon()
+                .appendQueryParameter(ProductContract.QUERY_PARAMETER_EXPECTED_VERSION, String.valueOf(version))
+                .build();
+    }
+
+    private int sell() {
+        Bundle result = mResolver.call(ProductContract.BASE_CONTENT_URI, ProductContract.METHOD_SELL_SKU, SKU, null);
+        assertEquals(ContentUris.parseId(mProductUri), result.getLong(ProductContract.EXTRA_ID));
+        return result.getInt(ProductContract.EXTRA_QUANTITY, -1);
+    }
+
+    private int readQuantity() {
+        return (int) readState()[0];
+    }
+
+    private long readVersion() {
+        return readState()[1];
+    }
+
+    /**
+     * Read the quantity and the version of the product, as the detail screen does.
+     */
+    private long[] readState() {
+        Cursor cursor = mResolver.query(
+                mProductUri,
+                new String[] { ProductEntry.COLUMN_PRODUCT_QUANTITY, ProductEntry.COLUMN_PRODUCT_VERSION },
+                null,
+                null,
+                null
+        );
+        try {
+            assertTrue(cursor.moveToFirst());
+            return new long[] { cursor.getLong(0), cursor.getLong(1) };
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package com.example.android.inventoryapp;
+
+import android.content.Context;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.example.android.inventoryapp.data.ProductContract;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Background job keeping the database in shape: planner statistics, free pages returned to the
+ * file system, write-ahead log checkpoint and integrity check, in that order.
+ *
+ * Every step is time-boxed by {@link #STEP_BUDGET_MILLIS} and works in short chunks, see
+ * {@link ProductContract#METHOD_MAINTENANCE}. A step cut short is resumed by the next run.
+ */
+public class DatabaseMaintenanceJob {
+    public static final String LOG_TAG = DatabaseMaintenanceJob.class.getSimpleName();
+
+    /**
+     * Time given to each step, in milliseconds.
+     */
+    private static final long STEP_BUDGET_MILLIS = 5 * 1000;
+
+    private static final String[] STEPS = {
+            ProductContract.MAINTENANCE_ANALYZE,
+            ProductContract.MAINTENANCE_VACUUM,
+            ProductContract.MAINTENANCE_CHECKPOINT,
+            ProductContract.MAINTENANCE_QUICK_CHECK
+    };
+
+    /**
+     * Outcome of one maintenance step.
+     */
+    public static final class Step {
+        public final String name;
+        public final long millis;
+        /**
+         * Amount of work done: tables analyzed, pages reclaimed, frames checkpointed or problems found.
+         */
+        public final int count;
+        public final boolean done;
+        public final String message;
+
+        Step(String name, long millis, int count, boolean done, String message) {
+            this.name = name;
+            this.millis = millis;
+            this.count = count;
+            this.done = done;
+            this.message = message;
+        }
+
+        @Override
+        public String toString() {
+            return name + ": " + count + " in " + millis + " ms" + (done ? "" : " (cut short)")
+                    + (message == null ? "" : ", " + message);
+        }
+    }
+
+    /**
+     * Outcome of a run, step by step.
+     */
+    public static final class Report {
+        public final List<Step> steps;
+
+        Report(List<Step> steps) {
+            this.steps = Collections.unmodifiableList(steps);
+        }
+
+        /**
+         * Return the outcome of the step, or null if it did not run.
+         */
+        public Step get(String name) {
+            for (Step step : steps) {
+                if (step.name.equals(name)) {
+                    return step;
+                }
+            }
+
+            return null;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder("Database maintenance");
+            for (Step step : steps) {
+                builder.append("\n  ").append(step);
+            }
+
+            return builder.toString();
+        }
+    }
+
+    private final Context mContext;
+
+    private volatile boolean mCancelled;
+
+    /**
+     * Constructs a new {@link DatabaseMaintenanceJob}.
+     *
+     * @param context of the app.
+     */
+    public DatabaseMaintenanceJob(Context context) {
+        mContext = context.getApplicationContext();
+    }
+
+    /**
+     * Ask a running job to stop after its current step.
+     */
+    public void cancel() { mCancelled = true; }
+
+    /**
+     * Run the maintenance steps. Must be called from a background thread.
+     *
+     * @return The report of the steps run.
+     */
+    public Report run() {
+        List<Step> steps = new ArrayList<>();
+
+        Bundle extras = new Bundle();
+        extras.putLong(ProductContract.EXTRA_BUDGET_MILLIS, STEP_BUDGET_MILLIS);
+
+        for (String name : STEPS) {
+            if (mCancelled) {
+                break;
+            }
+
+            long start = SystemClock.elapsedRealtime();
+            Bundle result = mContext.getContentResolver().call(
+                    ProductContract.BASE_CONTENT_URI,
+                    ProductContract.METHOD_MAINTENANCE,
+                    name,
+                    extras
+            );
+            long millis = SystemClock.elapsedRealtime() - start;
+
+            if (result != null) {
+                steps.add(new Step(
+                        name,
+                        millis,
+                        result.getInt(ProductContract.EXTRA_COUNT),
+                        result.getBoolean(ProductContract.EXTRA_DONE),
+                        result.getString(ProductContract.EXTRA_MESSAGE)
+                ));
+            }
+        }
+
+        Report report = new Report(steps);
+        Log.i(LOG_TAG, report.toString());
+
+        return report;
+    }
+}
@@ -9,12 +9,14 @@ import android.content.Intent;
 import android.content.Loader;
 import android.database.Cursor;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.graphics.drawable.BitmapDrawable;
 import android.net.Uri;
+import android.os.AsyncTask;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.provider.MediaStore;
 import android.support.v7.app.AppCompatActivity;
+import android.util.Log;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
@@ -23,13 +25,32 @@ import android.widget.ImageView;
 import android.widget.TextView;
 import android.widget.Toast;
 
+import com.example.android.inventoryapp.data.Product;
 import com.example.android.inventoryapp.data.ProductContract.ProductEntry;
+import com.example.android.inventoryapp.data.ProductMapper;
+import com.example.android.inventoryapp.data.VersionedUpdates;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 public class DetailActivity extends AppCompatActivity
         implements LoaderManager.LoaderCallbacks<Cursor> {
+    public static final String LOG_TAG = DetailActivity.class.getSimpleName();
+
+    /**
+     * Optional intent extras with the product fields already known by the caller,
+     * shown before the product is loaded.
+     */
+    public static final String EXTRA_NAME = "com.example.android.inventoryapp.extra.NAME";
+    public static final String EXTRA_QUANTITY = "com.example.android.inventoryapp.extra.QUANTITY";
+    public static final String EXTRA_PRICE = "com.example.android.inventoryapp.extra.PRICE";  /* Long, in cents. */
+
+    /**
+     * Optional intent extra with the {@link SystemClock#uptimeMillis()} of the tap opening the screen,
+     * the start of the time to content.
+     */
+    public static final String EXTRA_TAP_TIME = "com.example.android.inventoryapp.extra.TAP_TIME";
     /**
      * Identifier for the product data loader.
      */
@@ -48,12 +69,29 @@ public class DetailActivity extends AppCompatActivity
     private ImageView mPictureImageView;
 
     private String mNameString;
-    private String mQuantityString;
-    private String mPriceString;
-    private byte[] mPictureBytes;
 
     private int mQuantity;
 
+    /**
+     * Quantity and row version of the product as last read, -1 until read. The quantity changes
+     * made on this screen are the difference between mQuantity and mLoadedQuantity.
+     */
+    private int mLoadedQuantity;
+    private long mVersion = -1;
+
+    /**
+     * True once the user picked a new picture. The displayed picture is downsampled,
+     * so it is only written back when it has been replaced.
+     */
+    private boolean mPictureChanged;
+
+    /**
+     * Start of the time to content, and whether the text and the picture are shown yet.
+     */
+    private long mStartTime;
+    private boolean mTextShown;
+    private boolean mPictureShown;
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -61,6 +99,7 @@ public class DetailActivity extends AppCompatActivity
 
         Intent intent = getIntent();
         mCurrentProductUri = intent.getData();
+        mStartTime = intent.getLongExtra(EXTRA_TAP_TIME, SystemClock.uptimeMillis());
 
         /* This is an existing product, so change app bar to say "Detail Product". */
         setTitle(getString(R.string.editor_activity_title_detail_product));
@@ -123,6 +162,19 @@ public class DetailActivity extends AppCompatActivity
             }
         });
 
+        /* Show the fields passed by the list on the first frame, the loader refreshes them later. */
+        if (savedInstanceState == null && intent.hasExtra(EXTRA_NAME)) {
+            mLoadedQuantity = intent.getIntExtra(EXTRA_QUANTITY, 0);
+            showFields(
+                    intent.getStringExtra(EXTRA_NAME),
+                    mLoadedQuantity,
+                    intent.getLongExtra(EXTRA_PRICE, 0)
+            );
+        }
+
+        /* Take the picture prefetched on tap, or start reading it now. */
+        loadPicture();
+
         /*
             Initialize a loader to read the product data from the database
             and display the current values in the editor.
@@ -130,6 +182,69 @@ public class DetailActivity extends AppCompatActivity
         getLoaderManager().initLoader(EXISTING_PRODUCT_LOADER, null, this);
     }
 
+    /**
+     * Display the text fields of the product.
+     */
+    private void showFields(String name, int quantity, long priceCents) {
+        mNameString = name;
+        mQuantity = quantity;
+
+        mNameTextView.setText(mNameString);
+        mQuantityTextView.setText(Integer.toString(quantity));
+        mPriceTextView.setText(getString(R.string.product_price, Product.formatPrice(priceCents)));
+
+        mTextShown = true;
+        reportContentShown();
+    }
+
+    /**
+     * Display the picture of the product once decoded in the background, unless the user
+     * has picked another one in the meantime.
+     */
+    private void loadPicture() {
+        final Future<Bitmap> picture = PicturePrefetcher.take(
+                this,
+                mCurrentProductUri,
+                getResources().getDimensionPixelSize(R.dimen.detail_picture_height)
+        );
+
+        new AsyncTask<Void, Void, Bitmap>() {
+            @Override
+            protected Bitmap doInBackground(Void... params) {
+                try {
+                    return picture.get();
+                } catch (InterruptedException | ExecutionException e) {
+                    Log.e(LOG_TAG, "Failed to load picture of " + mCurrentProductUri, e);
+                    return null;
+                }
+            }
+
+            @Override
+            protected void onPostExecute(Bitmap bitmap) {
+                if (bitmap != null && !mPictureChanged && !isFinishing()) {
+                    mPictureImageView.setImageBitmap(bitmap);
+                }
+
+                mPictureShown = true;
+                reportContentShown();
+            }
+        }.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+    }
+
+    /**
+     * Log the time to content, from the tap on the list to the text and picture being shown,
+     * and report the activity as fully drawn to the system.
+     */
+    private void reportContentShown() {
+        if (!mTextShown || !mPictureShown || mStartTime == 0) {
+            return;
+        }
+
+        Log.i(LOG_TAG, "Time to content: " + (SystemClock.uptimeMillis() - mStartTime) + " ms");
+        mStartTime = 0;
+        reportFullyDrawn();
+    }
+
     @Override
     protected void onActivityResult(int requestCode, int resultCode, Intent data)  {
         super.onActivityResult(requestCode, resultCode, data);
@@ -140,6 +255,7 @@ public class DetailActivity extends AppCompatActivity
             try {
                 Bitmap bitmap = MediaStore.Images.Media.getBitmap(this.getContentResolver(), imageUri);
                 mPictureImageView.setImageBitmap(bitmap);
+                mPictureChanged = true;
             } catch(IOException e) {
                 e.printStackTrace();
             }
@@ -150,32 +266,38 @@ public class DetailActivity extends AppCompatActivity
      * Save product into database.
      */
     private void saveProduct() {
-        String quantityString = mQuantityTextView.getText().toString().trim();
-
-        Bitmap bitmap = ((BitmapDrawable) mPictureImageView.getDrawable()).getBitmap();
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        bitmap.compress(Bitmap.CompressFormat.JPEG, 100, baos);
-        byte[] pictureBytes = baos.toByteArray();
-
         /*
             Create a ContentValues object where column names are the keys,
             and product attributes from the editor are the values.
+            The quantity is written as a change of the quantity read, see below.
          */
         ContentValues values = new ContentValues();
-        values.put(ProductEntry.COLUMN_PRODUCT_QUANTITY, quantityString);
-        values.put(ProductEntry.COLUMN_PRODUCT_PICTURE, pictureBytes);
 
         /*
-            This is an EXISTING product,
-            so update the product with content URI mCurrentPetUri and pass in the new ContentValues.
-            Pass in null for the selection and selection args
-            because mCurrentPetUri will already identify
-            the correct row in the database that we want to modify.
+            Encode the picture with the configured format, quality and maximum dimension,
+            only if the user picked a new one: the stored picture is shown downsampled.
          */
-        int rowsAffected = getContentResolver().update(mCurrentProductUri, values, null, null);
+        if (mPictureChanged) {
+            Bitmap bitmap = ((BitmapDrawable) mPictureImageView.getDrawable()).getBitmap();
+            values.put(ProductEntry.COLUMN_PRODUCT_PICTURE, PictureEncoding.fromPreferences(this).encode(bitmap));
+        }
+
+        /*
+            This is an EXISTING product, it may have been sold from the list while this screen
+            was open: write the edit only over the version read, re-applying the quantity change
+            to the current quantity in case of conflict rather than overwriting the sales.
+         */
+        boolean saved = VersionedUpdates.applyQuantityDelta(
+                getContentResolver(),
+                mCurrentProductUri,
+                mVersion,
+                mLoadedQuantity,
+                mQuantity - mLoadedQuantity,
+                values
+        );
 
         /* Show a toast message depending on whether or not the update was successful. */
-        if (rowsAffected == 0) {
+        if (!saved) {
             /* If no rows were affected, then there was an error with the update. */
             Toast.makeText(
                     this,
@@ -223,15 +345,15 @@ public class DetailActivity extends AppCompatActivity
     @Override
     public Loader<Cursor> onCreateLoader(int i, Bundle bundle) {
         /*
-            Since the editor shows all product attributes, define a projection that contains
-            all columns from the product table.
+            Define a projection with the text fields of the product. The picture is read
+            and decoded apart, see {@link #loadPicture()}.
          */
         String[] projection = {
                 ProductEntry._ID,
                 ProductEntry.COLUMN_PRODUCT_NAME,
                 ProductEntry.COLUMN_PRODUCT_QUANTITY,
                 ProductEntry.COLUMN_PRODUCT_PRICE,
-                ProductEntry.COLUMN_PRODUCT_PICTURE
+                ProductEntry.COLUMN_PRODUCT_VERSION
         };
 
         /* This loader will execute the ContentProvider's query method on a background thread. */
@@ -257,30 +379,18 @@ public class DetailActivity extends AppCompatActivity
             (this should be the only row in the cursor).
          */
         if (cursor.moveToFirst()) {
-            /* Find the columns of product attributes that we're interested in. */
-            int nameColumnIndex = cursor.getColumnIndex(ProductEntry.COLUMN_PRODUCT_NAME);
-            int quantityColumnIndex = cursor.getColumnIndex(ProductEntry.COLUMN_PRODUCT_QUANTITY);
-            int priceColumnIndex = cursor.getColumnIndex(ProductEntry.COLUMN_PRODUCT_PRICE);
-            int pictureColumnIndex = cursor.getColumnIndex(ProductEntry.COLUMN_PRODUCT_PICTURE);
-
-            /* Extract out the value from the Cursor for the given column index. */
-            mNameString = cursor.getString(nameColumnIndex);
-            mQuantityString = cursor.getString(quantityColumnIndex);
-            mPriceString = cursor.getString(priceColumnIndex);
-            mPictureBytes = cursor.getBlob(pictureColumnIndex);
+            Product product = new ProductMapper(cursor).read(new Product());
 
-            mQuantity = Integer.parseInt(mQuantityString);
+            /* Keep the quantity changes not saved yet on top of the quantity read. */
+            int delta = mQuantity - mLoadedQuantity;
+            mLoadedQuantity = product.quantity;
+            mVersion = product.version;
 
             /* Update the views on the screen with the values from the database. */
-            mNameTextView.setText(mNameString);
-            mQuantityTextView.setText(mQuantityString);
-            mPriceTextView.setText(getString(R.string.product_price, mPriceString));
-            mPictureImageView.setImageBitmap(
-                    BitmapFactory.decodeByteArray(
-                            mPictureBytes,
-                            0,
-                            mPictureBytes.length
-                    )
+            showFields(
+                    product.name,
+                    Math.max(0, mLoadedQuantity + delta),
+                    product.priceCents
             );
         }
     }
@@ -340,6 +450,9 @@ public class DetailActivity extends AppCompatActivity
                         Toast.LENGTH_SHORT
                 ).show();
             } else {
+                /* The product is only marked as deleted, remove it for good after the undo window. */
+                InventoryJobService.schedulePurge(getApplicationContext());
+
                 /* Otherwise, the delete was successful and we can display a toast. */
                 Toast.makeText(
                         this,
@@ -22,9 +22,10 @@ import android.widget.EditText;
 import android.widget.ImageView;
 import android.widget.Toast;
 
+import com.example.android.inventoryapp.data.Product;
 import com.example.android.inventoryapp.data.ProductContract.ProductEntry;
+import com.example.android.inventoryapp.data.ProductMapper;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 
 /**
@@ -40,6 +41,11 @@ public class EditorActivity extends AppCompatActivity
      */
     private EditText mNameEditText;
 
+    /**
+     * EditText field to enter the product's SKU or barcode.
+     */
+    private EditText mSkuEditText;
+
     /**
      * EditText field to enter the product's quantity.
      */
@@ -61,6 +67,7 @@ public class EditorActivity extends AppCompatActivity
 
         /* Find all relevant views that we will need to read user input from. */
         mNameEditText = (EditText) findViewById(R.id.edit_product_name);
+        mSkuEditText = (EditText) findViewById(R.id.edit_product_sku);
         mQuantityEditText = (EditText) findViewById(R.id.edit_product_quantity);
         mPriceEditText = (EditText) findViewById(R.id.edit_product_price);
 
@@ -102,6 +109,7 @@ public class EditorActivity extends AppCompatActivity
     private boolean saveProduct() {
         /* Read from input fields and use trim to eliminate leading or trailing white space. */
         String nameString = mNameEditText.getText().toString().trim();
+        String skuString = mSkuEditText.getText().toString().trim();
         String quantityString = mQuantityEditText.getText().toString().trim();
         String priceString = mPriceEditText.getText().toString().trim();
 
@@ -115,10 +123,24 @@ public class EditorActivity extends AppCompatActivity
             return false;
         }
 
+        /* Read the typed amounts, prices are stored in cents. */
+        Product product = new Product();
+        try {
+            product.quantity = Integer.parseInt(quantityString);
+            product.priceCents = Product.parsePrice(priceString);
+        } catch (IllegalArgumentException e) {
+            Toast.makeText(
+                    this,
+                    getString(R.string.editor_save_product_invalid),
+                    Toast.LENGTH_SHORT
+            ).show();
+
+            return false;
+        }
+
+        /* Encode the picture with the configured format, quality and maximum dimension. */
         Bitmap bitmap = ((BitmapDrawable) mPictureImageView.getDrawable()).getBitmap();
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        bitmap.compress(Bitmap.CompressFormat.JPEG, 100, baos);
-        byte[] pictureBytes = baos.toByteArray();
+        byte[] pictureBytes = PictureEncoding.fromPreferences(this).encode(bitmap);
 
         /*
             Check if this is supposed to be a new product
@@ -141,11 +163,12 @@ public class EditorActivity extends AppCompatActivity
             Create a ContentValues object where column names are the keys,
             and product attributes from the editor are the values.
          */
-        ContentValues values = new ContentValues();
-        values.put(ProductEntry.COLUMN_PRODUCT_NAME, nameString);
-        values.put(ProductEntry.COLUMN_PRODUCT_QUANTITY, quantityString);
-        values.put(ProductEntry.COLUMN_PRODUCT_PRICE, priceString);
-        values.put(ProductEntry.COLUMN_PRODUCT_PICTURE, pictureBytes);
+        product.name = nameString;
+        if (!skuString.isEmpty()) {
+            product.sku = skuString;
+        }
+        product.picture = pictureBytes;
+        ContentValues values = product.toContentValues();
 
         /*
             This is a NEW product, so insert a new product into the provider,
@@ -237,27 +260,18 @@ public class EditorActivity extends AppCompatActivity
             (this should be the only row in the cursor).
          */
         if (cursor.moveToFirst()) {
-            /* Find the columns of product attributes that we're interested in. */
-            int nameColumnIndex = cursor.getColumnIndex(ProductEntry.COLUMN_PRODUCT_NAME);
-            int quantityColumnIndex = cursor.getColumnIndex(ProductEntry.COLUMN_PRODUCT_QUANTITY);
-            int priceColumnIndex = cursor.getColumnIndex(ProductEntry.COLUMN_PRODUCT_PRICE);
-            int productColumnIndex = cursor.getColumnIndex(ProductEntry.COLUMN_PRODUCT_PICTURE);
-
-            /* Extract out the value from the Cursor for the given column index. */
-            String name = cursor.getString(nameColumnIndex);
-            String quantity = cursor.getString(quantityColumnIndex);
-            String price = cursor.getString(priceColumnIndex);
-            byte[] picture = cursor.getBlob(productColumnIndex);
+            /* Extract out the product from the Cursor. */
+            Product product = new ProductMapper(cursor).read(new Product());
 
             /* Update the views on the screen with the values from the database. */
-            mNameEditText.setText(name);
-            mQuantityEditText.setText(quantity);
-            mPriceEditText.setText(price);
+            mNameEditText.setText(product.name);
+            mQuantityEditText.setText(String.valueOf(product.quantity));
+            mPriceEditText.setText(Product.formatPrice(product.priceCents));
             mPictureImageView.setImageBitmap(
                     BitmapFactory.decodeByteArray(
-                            picture,
+                            product.picture,
                             0,
-                            picture.length
+                            product.picture.length
                     )
             );
         }
@@ -2,23 +2,47 @@ package com.example.android.inventoryapp;
 
 import android.app.LoaderManager;
 import android.content.ContentUris;
+import android.content.Context;
 import android.content.CursorLoader;
 import android.content.Intent;
 import android.content.Loader;
 import android.content.res.Resources;
 import android.database.Cursor;
 import android.net.Uri;
+import android.os.AsyncTask;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.SystemClock;
 import android.support.design.widget.FloatingActionButton;
+import android.support.design.widget.Snackbar;
+import android.support.v4.content.FileProvider;
 import android.support.v7.app.AppCompatActivity;
+import android.support.v7.widget.SearchView;
+import android.text.format.Formatter;
 import android.util.Log;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
+import android.view.ViewTreeObserver;
 import android.widget.AdapterView;
 import android.widget.ListView;
+import android.widget.Toast;
 
+import com.example.android.inventoryapp.data.ProductBackup;
+import com.example.android.inventoryapp.data.ProductContract;
 import com.example.android.inventoryapp.data.ProductContract.ProductEntry;
+import com.example.android.inventoryapp.data.ProductMapper;
+import com.example.android.inventoryapp.snapshot.ProductSnapshotUpdater;
+import com.example.android.inventoryapp.snapshot.SnapshotCursor;
+import com.example.android.inventoryapp.startup.StartupTracer;
+import com.example.android.inventoryapp.sync.HttpSyncTransport;
+import com.example.android.inventoryapp.sync.ProviderSyncStore;
+import com.example.android.inventoryapp.sync.SyncEngine;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Displays list of products that were entered and stored in the app.
@@ -30,11 +54,48 @@ public class InventoryActivity extends AppCompatActivity
      */
     private static final int PRODUCT_LOADER = 0;
 
+    /**
+     * Loader argument with the text the product names are filtered with.
+     */
+    private static final String ARG_FILTER = "filter";
+
+    /**
+     * Name of the directory holding the database backups.
+     */
+    private static final String BACKUP_DIRECTORY = "backups";
+
+    /**
+     * Authority of the file provider sharing the reorder digests.
+     */
+    private static final String FILE_PROVIDER_AUTHORITY = "com.example.android.inventoryapp.files";
+
+    /**
+     * Delay between the last change of the products and the update of the list snapshot.
+     */
+    private static final long SNAPSHOT_UPDATE_DELAY_MILLIS = 2000;
+
+    private final Handler mSnapshotHandler = new Handler();
+
+    private boolean mSnapshotUpdatePending;
+
+    private final Runnable mSnapshotUpdate = new Runnable() {
+        @Override
+        public void run() {
+            mSnapshotUpdatePending = false;
+            ProductSnapshotUpdater.updateAsync(getApplicationContext());
+        }
+    };
+
     /**
      * Adapter for the ListView.
      */
     ProductCursorAdapter mCursorAdapter;
 
+    /**
+     * Text the list is filtered with, empty for every product.
+     */
+    private String mFilter = "";
+
     public static Resources sResources;
 
     @Override
@@ -68,6 +129,12 @@ public class InventoryActivity extends AppCompatActivity
         mCursorAdapter = new ProductCursorAdapter(this, null);
         productListView.setAdapter(mCursorAdapter);
 
+        /*
+            Render the snapshot of the list saved by the previous run right away. It is mapped, not read,
+            so this costs the same at any size; the live cursor replaces it when the loader delivers it.
+         */
+        mCursorAdapter.swapCursor(ProductSnapshotUpdater.openCursor(this));
+
         /* Setup the item click listener. */
         productListView.setOnItemClickListener(new AdapterView.OnItemClickListener() {
             @Override
@@ -87,6 +154,22 @@ public class InventoryActivity extends AppCompatActivity
                 /* Set the URI on the data field of the intent. */
                 intent.setData(currentProductUri);
 
+                /*
+                    Start reading the picture right away, and pass along the fields the list already
+                    has, so that the detail screen shows them on its first frame.
+                 */
+                PicturePrefetcher.prefetch(
+                        InventoryActivity.this,
+                        currentProductUri,
+                        getResources().getDimensionPixelSize(R.dimen.detail_picture_height)
+                );
+
+                ProductMapper product = new ProductMapper((Cursor) adapterView.getItemAtPosition(position));
+                intent.putExtra(DetailActivity.EXTRA_NAME, product.getName());
+                intent.putExtra(DetailActivity.EXTRA_QUANTITY, product.getQuantity());
+                intent.putExtra(DetailActivity.EXTRA_PRICE, product.getPriceCents());
+                intent.putExtra(DetailActivity.EXTRA_TAP_TIME, SystemClock.uptimeMillis());
+
                 /* Launch the {@link EditorActivity} to display the data for the current product. */
                 startActivity(intent);
             }
@@ -94,14 +177,272 @@ public class InventoryActivity extends AppCompatActivity
 
         /* Kick off the loader. */
         getLoaderManager().initLoader(PRODUCT_LOADER, null, this);
+
+        /* Record the first frame, and only then run the work the first frame does not need. */
+        final View decorView = getWindow().getDecorView();
+        decorView.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                decorView.getViewTreeObserver().removeOnPreDrawListener(this);
+
+                /* Posted from the pre-draw pass, this runs once the frame has been drawn. */
+                decorView.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        StartupTracer.get().mark(StartupTracer.FIRST_FRAME);
+                        runDeferredStartupWork();
+                    }
+                });
+
+                return true;
+            }
+        });
     }
 
     /**
-     * Helper method to delete all products in the database.
+     * Startup work kept off the critical path of the first frame.
+     */
+    private void runDeferredStartupWork() {
+        /* Keep the daily jobs scheduled, and finish any purge or alert drain interrupted earlier. */
+        InventoryJobService.scheduleReorderDigest(getApplicationContext());
+        InventoryJobService.scheduleArchive(getApplicationContext());
+        InventoryJobService.scheduleMaintenance(getApplicationContext());
+        InventoryJobService.scheduleValuationCompaction(getApplicationContext());
+        InventoryJobService.scheduleReservationSweep(getApplicationContext());
+        InventoryJobService.drainStockAlerts(getApplicationContext());
+        InventoryJobService.schedulePurge(getApplicationContext());
+    }
+
+    /**
+     * Helper method to delete all products in the database, in the background.
+     * The products disappear at once and can be brought back until the purge removes them.
      */
     private void deleteAllProducts() {
-        int rowsDeleted = getContentResolver().delete(ProductEntry.CONTENT_URI, null, null);
-        Log.v("InventoryActivity", rowsDeleted + " rows deleted from product database.");
+        final Context appContext = getApplicationContext();
+        new AsyncTask<Void, Void, Integer>() {
+            @Override
+            protected Integer doInBackground(Void... params) {
+                return appContext.getContentResolver().delete(ProductEntry.CONTENT_URI, null, null);
+            }
+
+            @Override
+            protected void onPostExecute(Integer rowsDeleted) {
+                Log.v("InventoryActivity", rowsDeleted + " rows deleted from product database.");
+                if (rowsDeleted == 0) {
+                    return;
+                }
+
+                InventoryJobService.schedulePurge(appContext);
+
+                Snackbar.make(
+                        findViewById(R.id.list),
+                        getResources().getQuantityString(R.plurals.products_deleted, rowsDeleted, rowsDeleted),
+                        Snackbar.LENGTH_LONG
+                ).setAction(R.string.action_undo, new View.OnClickListener() {
+                    @Override
+                    public void onClick(View view) {
+                        undoDelete();
+                    }
+                }).show();
+            }
+        }.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+    }
+
+    /**
+     * Helper method to bring back the products of the latest deletion, in the background.
+     */
+    private void undoDelete() {
+        final Context appContext = getApplicationContext();
+        new AsyncTask<Void, Void, Void>() {
+            @Override
+            protected Void doInBackground(Void... params) {
+                appContext.getContentResolver().call(
+                        ProductContract.BASE_CONTENT_URI, ProductContract.METHOD_UNDO_DELETE, null, null);
+                return null;
+            }
+        }.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+    }
+
+    /**
+     * Helper method to re-encode the stored pictures in the background with the current policy.
+     */
+    private void reencodePictures() {
+        Toast.makeText(this, getString(R.string.reencode_pictures_started), Toast.LENGTH_SHORT).show();
+
+        final Context appContext = getApplicationContext();
+        new AsyncTask<Void, Void, PictureReencodeJob.Report>() {
+            @Override
+            protected PictureReencodeJob.Report doInBackground(Void... params) {
+                return new PictureReencodeJob(appContext).run();
+            }
+
+            @Override
+            protected void onPostExecute(PictureReencodeJob.Report report) {
+                Toast.makeText(
+                        appContext,
+                        appContext.getString(
+                                R.string.reencode_pictures_finished,
+                                report.picturesReencoded,
+                                Formatter.formatShortFileSize(appContext, report.getBytesSaved())
+                        ),
+                        Toast.LENGTH_LONG
+                ).show();
+            }
+        }.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+    }
+
+    /**
+     * Directory holding the database backups.
+     */
+    private File getBackupDirectory() {
+        File directory = getExternalFilesDir(BACKUP_DIRECTORY);
+        return directory != null ? directory : new File(getFilesDir(), BACKUP_DIRECTORY);
+    }
+
+    /**
+     * Helper method to back up the database in the background.
+     * Pictures already saved by a previous backup are reused.
+     */
+    private void backupDatabase() {
+        final Context appContext = getApplicationContext();
+        final ProductBackup backup = new ProductBackup(appContext, getBackupDirectory());
+        new AsyncTask<Void, Void, Boolean>() {
+            @Override
+            protected Boolean doInBackground(Void... params) {
+                try {
+                    backup.backup(true);
+                    return true;
+                } catch (IOException e) {
+                    Log.e("InventoryActivity", "Backup failed", e);
+                    return false;
+                }
+            }
+
+            @Override
+            protected void onPostExecute(Boolean successful) {
+                Toast.makeText(
+                        appContext,
+                        successful ? R.string.backup_successful : R.string.backup_failed,
+                        Toast.LENGTH_SHORT
+                ).show();
+            }
+        }.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+    }
+
+    /**
+     * Helper method to restore the latest backup in the background.
+     */
+    private void restoreDatabase() {
+        final Context appContext = getApplicationContext();
+        final ProductBackup backup = new ProductBackup(appContext, getBackupDirectory());
+        new AsyncTask<Void, Void, Integer>() {
+            @Override
+            protected Integer doInBackground(Void... params) {
+                List<File> snapshots = backup.listSnapshots();
+                if (snapshots.isEmpty()) {
+                    return R.string.restore_no_backup;
+                }
+
+                try {
+                    backup.restore(snapshots.get(snapshots.size() - 1));
+                    ProductSnapshotUpdater.invalidate(appContext);
+                    return R.string.restore_successful;
+                } catch (IOException e) {
+                    Log.e("InventoryActivity", "Restore failed", e);
+                    return R.string.backup_failed;
+                }
+            }
+
+            @Override
+            protected void onPostExecute(Integer message) {
+                Toast.makeText(appContext, message, Toast.LENGTH_SHORT).show();
+            }
+        }.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+    }
+
+    /**
+     * Helper method to synchronize the inventory with the sync server in the background.
+     */
+    private void syncProducts() {
+        final Context appContext = getApplicationContext();
+        final SyncEngine engine = new SyncEngine(
+                new ProviderSyncStore(appContext),
+                new HttpSyncTransport(getString(R.string.sync_server_url)),
+                SyncEngine.DEFAULT_BATCH_SIZE
+        );
+        new AsyncTask<Void, Void, SyncEngine.Result>() {
+            @Override
+            protected SyncEngine.Result doInBackground(Void... params) {
+                try {
+                    return engine.sync();
+                } catch (IOException e) {
+                    Log.e("InventoryActivity", "Sync failed", e);
+                    return null;
+                }
+            }
+
+            @Override
+            protected void onPostExecute(SyncEngine.Result result) {
+                if (result == null) {
+                    Toast.makeText(appContext, R.string.sync_failed, Toast.LENGTH_SHORT).show();
+                } else {
+                    Toast.makeText(
+                            appContext,
+                            appContext.getString(R.string.sync_successful, result.changesPushed, result.changesPulled),
+                            Toast.LENGTH_SHORT
+                    ).show();
+                }
+            }
+        }.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+    }
+
+    /**
+     * Helper method to write the reorder digests in the background and share them all at once.
+     */
+    private void sendReorderDigests() {
+        final Context appContext = getApplicationContext();
+        new AsyncTask<Void, Void, List<ReorderDigestJob.Digest>>() {
+            @Override
+            protected List<ReorderDigestJob.Digest> doInBackground(Void... params) {
+                try {
+                    return new ReorderDigestJob(appContext).run();
+                } catch (IOException e) {
+                    Log.e("InventoryActivity", "Reorder digests failed", e);
+                    return null;
+                }
+            }
+
+            @Override
+            protected void onPostExecute(List<ReorderDigestJob.Digest> digests) {
+                if (digests == null) {
+                    Toast.makeText(appContext, R.string.reorder_failed, Toast.LENGTH_SHORT).show();
+                    return;
+                }
+
+                if (digests.isEmpty()) {
+                    Toast.makeText(appContext, R.string.reorder_nothing, Toast.LENGTH_SHORT).show();
+                    return;
+                }
+
+                String[] emails = new String[digests.size()];
+                ArrayList<Uri> files = new ArrayList<>(digests.size());
+                for (int i = 0; i < digests.size(); i++) {
+                    emails[i] = digests.get(i).email;
+                    files.add(FileProvider.getUriForFile(appContext, FILE_PROVIDER_AUTHORITY, digests.get(i).file));
+                }
+
+                Intent intent = new Intent(Intent.ACTION_SEND_MULTIPLE);
+                intent.setType("text/plain");
+                intent.putExtra(Intent.EXTRA_EMAIL, emails);
+                intent.putExtra(Intent.EXTRA_SUBJECT, getString(R.string.reorder_subject));
+                intent.putParcelableArrayListExtra(Intent.EXTRA_STREAM, files);
+                intent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
+
+                if (intent.resolveActivity(getPackageManager()) != null) {
+                    startActivity(intent);
+                }
+            }
+        }.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
     }
 
     @Override
@@ -111,9 +452,44 @@ public class InventoryActivity extends AppCompatActivity
             This adds menu items to the app bar.
          */
         getMenuInflater().inflate(R.menu.menu_inventory, menu);
+
+        SearchView searchView = (SearchView) menu.findItem(R.id.action_search).getActionView();
+        searchView.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
+            @Override
+            public boolean onQueryTextSubmit(String query) {
+                filterProducts(query);
+                return true;
+            }
+
+            @Override
+            public boolean onQueryTextChange(String newText) {
+                filterProducts(newText);
+                return true;
+            }
+        });
+
         return true;
     }
 
+    /**
+     * Show the products whose name contains the text, every product if it is empty.
+     *
+     * Restarting the loader on every keystroke runs only the latest query: the query in flight is
+     * cancelled (the loader cancels its CancellationSignal, which the provider passes to SQLite) and
+     * a query still waiting is replaced by the new one.
+     */
+    private void filterProducts(String text) {
+        String filter = text.trim();
+        if (filter.equals(mFilter)) {
+            return;
+        }
+
+        mFilter = filter;
+        Bundle args = new Bundle();
+        args.putString(ARG_FILTER, filter);
+        getLoaderManager().restartLoader(PRODUCT_LOADER, args, this);
+    }
+
     @Override
     public boolean onOptionsItemSelected(MenuItem item) {
         /* User clicked on a menu option in the app bar overflow menu. */
@@ -122,6 +498,36 @@ public class InventoryActivity extends AppCompatActivity
             case R.id.action_delete_all_entries:
                 deleteAllProducts();
 
+                return true;
+
+            /* Respond to a click on the "Optimize pictures" menu option. */
+            case R.id.action_reencode_pictures:
+                reencodePictures();
+
+                return true;
+
+            /* Respond to a click on the "Back up" menu option. */
+            case R.id.action_backup:
+                backupDatabase();
+
+                return true;
+
+            /* Respond to a click on the "Restore backup" menu option. */
+            case R.id.action_restore:
+                restoreDatabase();
+
+                return true;
+
+            /* Respond to a click on the "Sync now" menu option. */
+            case R.id.action_sync:
+                syncProducts();
+
+                return true;
+
+            /* Respond to a click on the "Order low stock" menu option. */
+            case R.id.action_reorder_digests:
+                sendReorderDigests();
+
                 return true;
         }
 
@@ -135,25 +541,81 @@ public class InventoryActivity extends AppCompatActivity
                 ProductEntry._ID,
                 ProductEntry.COLUMN_PRODUCT_NAME,
                 ProductEntry.COLUMN_PRODUCT_QUANTITY,
-                ProductEntry.COLUMN_PRODUCT_PRICE,
-                ProductEntry.COLUMN_PRODUCT_PICTURE
+                ProductEntry.COLUMN_PRODUCT_RESERVED,
+                ProductEntry.COLUMN_PRODUCT_PRICE
         };
 
+        /* Filter the names with the search text, if any. */
+        String filter = bundle == null ? "" : bundle.getString(ARG_FILTER, "");
+        String selection = null;
+        String[] selectionArgs = null;
+        if (!filter.isEmpty()) {
+            selection = ProductEntry.COLUMN_PRODUCT_NAME + " LIKE ? ESCAPE '\\'";
+            selectionArgs = new String[] { "%" + escapeLike(filter) + "%" };
+        }
+
         /* This loader will execute the ContentProvider's query method on a background thread. */
         return new CursorLoader(
                 this,                       // Parent activity context.
                 ProductEntry.CONTENT_URI,   // Provider content URI to query.
                 projection,                 // Columns to include in the resulting Cursor.
-                null,                       // No selection clause.
-                null,                       // No selection arguments.
+                selection,                  // Name filter, if any.
+                selectionArgs,              // Name filter pattern.
                 null                        // Default sort order.
         );
     }
 
+    /**
+     * Escape the LIKE wildcards of the text, so that it matches literally.
+     */
+    private static String escapeLike(String text) {
+        return text.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+
     @Override
     public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
         /* Update {@link ProductCursorAdapter} with this new cursor containing updated product data. */
-        mCursorAdapter.swapCursor(data);
+        Cursor previous = mCursorAdapter.swapCursor(data);
+
+        /* The loader owns its cursors, but the snapshot cursor is ours to close. */
+        if (previous instanceof SnapshotCursor) {
+            if (((SnapshotCursor) previous).isCorrupt()) {
+                ProductSnapshotUpdater.invalidate(this);
+            }
+            previous.close();
+        }
+
+        /* Bring the snapshot up to date once the changes settle. */
+        mSnapshotHandler.removeCallbacks(mSnapshotUpdate);
+        mSnapshotHandler.postDelayed(mSnapshotUpdate, SNAPSHOT_UPDATE_DELAY_MILLIS);
+        mSnapshotUpdatePending = true;
+
+        /* The first frame showing the products completes the cold start. */
+        if (!StartupTracer.get().hasRecorded(StartupTracer.FIRST_CONTENT_FRAME)) {
+            findViewById(R.id.list).post(new Runnable() {
+                @Override
+                public void run() {
+                    if (StartupTracer.get().hasRecorded(StartupTracer.FIRST_CONTENT_FRAME)) {
+                        return;
+                    }
+
+                    StartupTracer.get().mark(StartupTracer.FIRST_CONTENT_FRAME);
+                    reportFullyDrawn();
+                    InventoryApplication.saveStartupReport(getApplicationContext());
+                }
+            });
+        }
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+
+        /* Run a pending snapshot update now rather than lose it. */
+        if (mSnapshotUpdatePending) {
+            mSnapshotHandler.removeCallbacks(mSnapshotUpdate);
+            mSnapshotUpdate.run();
+        }
     }
 
     @Override
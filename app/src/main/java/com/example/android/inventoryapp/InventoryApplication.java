@@ -0,0 +1,104 @@
+package com.example.android.inventoryapp;
+
+import android.app.Application;
+import android.content.Context;
+import android.database.ContentObserver;
+import android.os.AsyncTask;
+import android.os.Process;
+import android.os.Trace;
+import android.util.Log;
+
+import com.example.android.inventoryapp.data.ProductContract;
+import com.example.android.inventoryapp.data.ProductContract.StockAlertEntry;
+import com.example.android.inventoryapp.startup.StartupTracer;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * {@link Application} of Inventory App: starts the startup tracing and opens the database
+ * in the background while the first activity inflates its views.
+ */
+public class InventoryApplication extends Application {
+    public static final String LOG_TAG = InventoryApplication.class.getSimpleName();
+
+    /**
+     * Name of the file holding the report of the last cold start, see {@link StartupTracer}.
+     */
+    public static final String STARTUP_REPORT_FILE = "startup_report.txt";
+
+    @Override
+    protected void attachBaseContext(Context base) {
+        super.attachBaseContext(base);
+
+        /*
+            The earliest point of the app code, before the content providers are created:
+            this is the origin of the startup report.
+         */
+        StartupTracer.get().setListener(new StartupTracer.Listener() {
+            @Override
+            public void onBegin(String name) {
+                Trace.beginSection(name);
+            }
+
+            @Override
+            public void onEnd(String name) {
+                Trace.endSection();
+            }
+        });
+    }
+
+    @Override
+    public void onCreate() {
+        StartupTracer.Section section = StartupTracer.get().begin(StartupTracer.APPLICATION_ON_CREATE);
+        super.onCreate();
+
+        /* Open the database now, in parallel with the inflation of the first activity. */
+        final Context appContext = getApplicationContext();
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                appContext.getContentResolver().call(
+                        ProductContract.BASE_CONTENT_URI, ProductContract.METHOD_WARM_UP, null, null);
+            }
+        });
+
+        /* The provider announces the queued stock alerts, drain them as they come. */
+        getContentResolver().registerContentObserver(StockAlertEntry.CONTENT_URI, false, new ContentObserver(null) {
+            @Override
+            public void onChange(boolean selfChange) {
+                InventoryJobService.drainStockAlerts(appContext);
+            }
+        });
+
+        section.end();
+    }
+
+    /**
+     * Log the startup report and save it for the startup budget check, in the background.
+     */
+    public static void saveStartupReport(Context context) {
+        final File file = new File(context.getFilesDir(), STARTUP_REPORT_FILE);
+        final String report = StartupTracer.get().report().toString();
+        Log.i(LOG_TAG, "Startup report:\n" + report);
+
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    OutputStream out = new FileOutputStream(file);
+                    try {
+                        out.write(report.getBytes("UTF-8"));
+                    } finally {
+                        out.close();
+                    }
+                } catch (IOException e) {
+                    Log.e(LOG_TAG, "Failed to save startup report", e);
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,219 @@
+package com.example.android.inventoryapp;
+
+import android.app.AlarmManager;
+import android.app.IntentService;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.BatteryManager;
+import android.os.Build;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.example.android.inventoryapp.data.ProductContract;
+
+import java.io.IOException;
+
+/**
+ * Runs the scheduled background jobs of the app, one intent at a time off the main thread.
+ */
+public class InventoryJobService extends IntentService {
+    public static final String LOG_TAG = InventoryJobService.class.getSimpleName();
+
+    /**
+     * Action running the {@link ReorderDigestJob}.
+     */
+    public static final String ACTION_REORDER_DIGEST = "com.example.android.inventoryapp.action.REORDER_DIGEST";
+
+    /**
+     * Action running the {@link ProductPurgeJob}.
+     */
+    public static final String ACTION_PURGE_DELETED = "com.example.android.inventoryapp.action.PURGE_DELETED";
+
+    /**
+     * Action running the {@link ProductArchiveJob}.
+     */
+    public static final String ACTION_ARCHIVE_COLD = "com.example.android.inventoryapp.action.ARCHIVE_COLD";
+
+    /**
+     * Action running the {@link DatabaseMaintenanceJob}, before the JobScheduler.
+     */
+    public static final String ACTION_MAINTENANCE = "com.example.android.inventoryapp.action.MAINTENANCE";
+
+    /**
+     * Action running the {@link StockAlertJob}.
+     */
+    public static final String ACTION_STOCK_ALERTS = "com.example.android.inventoryapp.action.STOCK_ALERTS";
+
+    /**
+     * Action running the {@link ReservationSweepJob}.
+     */
+    public static final String ACTION_SWEEP_RESERVATIONS = "com.example.android.inventoryapp.action.SWEEP_RESERVATIONS";
+
+    /**
+     * Action running the {@link ValuationCompactionJob}.
+     */
+    public static final String ACTION_COMPACT_VALUATIONS = "com.example.android.inventoryapp.action.COMPACT_VALUATIONS";
+
+    /**
+     * Margin after the undo window before the purge runs, in milliseconds.
+     */
+    private static final long PURGE_DELAY_MILLIS = 5 * 1000;
+
+    public InventoryJobService() {
+        super(LOG_TAG);
+    }
+
+    /**
+     * Schedule the daily reorder digest. Inexact, so that the system batches it with other alarms.
+     * Scheduling again replaces the previous alarm.
+     */
+    public static void scheduleReorderDigest(Context context) {
+        Intent intent = new Intent(context, InventoryJobService.class).setAction(ACTION_REORDER_DIGEST);
+        PendingIntent operation = PendingIntent.getService(context, 0, intent, PendingIntent.FLAG_UPDATE_CURRENT);
+
+        AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        alarmManager.setInexactRepeating(
+                AlarmManager.ELAPSED_REALTIME,
+                SystemClock.elapsedRealtime() + AlarmManager.INTERVAL_HOUR,
+                AlarmManager.INTERVAL_DAY,
+                operation
+        );
+    }
+
+    /**
+     * Schedule the daily archiving of the cold products, inexact like the reorder digest.
+     * Scheduling again replaces the previous alarm.
+     */
+    public static void scheduleArchive(Context context) {
+        Intent intent = new Intent(context, InventoryJobService.class).setAction(ACTION_ARCHIVE_COLD);
+        PendingIntent operation = PendingIntent.getService(context, 0, intent, PendingIntent.FLAG_UPDATE_CURRENT);
+
+        AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        alarmManager.setInexactRepeating(
+                AlarmManager.ELAPSED_REALTIME,
+                SystemClock.elapsedRealtime() + AlarmManager.INTERVAL_HALF_DAY,
+                AlarmManager.INTERVAL_DAY,
+                operation
+        );
+    }
+
+    /**
+     * Schedule the daily compaction of the valuation history, inexact like the reorder digest.
+     * Scheduling again replaces the previous alarm.
+     */
+    public static void scheduleValuationCompaction(Context context) {
+        Intent intent = new Intent(context, InventoryJobService.class).setAction(ACTION_COMPACT_VALUATIONS);
+        PendingIntent operation = PendingIntent.getService(context, 0, intent, PendingIntent.FLAG_UPDATE_CURRENT);
+
+        AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        alarmManager.setInexactRepeating(
+                AlarmManager.ELAPSED_REALTIME,
+                SystemClock.elapsedRealtime() + AlarmManager.INTERVAL_HALF_DAY,
+                AlarmManager.INTERVAL_DAY,
+                operation
+        );
+    }
+
+    /**
+     * Schedule the release of the expired reservations every quarter of an hour, inexact like the
+     * reorder digest. Reservations release the expired holds of their own product, so the sweep
+     * only has to keep the figures of the other products from lagging for long.
+     * Scheduling again replaces the previous alarm.
+     */
+    public static void scheduleReservationSweep(Context context) {
+        Intent intent = new Intent(context, InventoryJobService.class).setAction(ACTION_SWEEP_RESERVATIONS);
+        PendingIntent operation = PendingIntent.getService(context, 0, intent, PendingIntent.FLAG_UPDATE_CURRENT);
+
+        AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        alarmManager.setInexactRepeating(
+                AlarmManager.ELAPSED_REALTIME,
+                SystemClock.elapsedRealtime() + AlarmManager.INTERVAL_FIFTEEN_MINUTES,
+                AlarmManager.INTERVAL_FIFTEEN_MINUTES,
+                operation
+        );
+    }
+
+    /**
+     * Schedule the daily database maintenance, through the JobScheduler when available so that it
+     * waits for the device to be idle and charging. Before, an inexact alarm runs it when charging.
+     */
+    public static void scheduleMaintenance(Context context) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            MaintenanceJobService.schedule(context);
+            return;
+        }
+
+        Intent intent = new Intent(context, InventoryJobService.class).setAction(ACTION_MAINTENANCE);
+        PendingIntent operation = PendingIntent.getService(context, 0, intent, PendingIntent.FLAG_UPDATE_CURRENT);
+
+        AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        alarmManager.setInexactRepeating(
+                AlarmManager.ELAPSED_REALTIME,
+                SystemClock.elapsedRealtime() + AlarmManager.INTERVAL_HALF_DAY,
+                AlarmManager.INTERVAL_DAY,
+                operation
+        );
+    }
+
+    /**
+     * Return true if the device is plugged in.
+     */
+    private boolean isCharging() {
+        Intent battery = registerReceiver(null, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+        return battery != null && battery.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0) != 0;
+    }
+
+    /**
+     * Drain the stock alerts queue now. Requests made while a drain runs are queued behind it.
+     */
+    public static void drainStockAlerts(Context context) {
+        context.startService(new Intent(context, InventoryJobService.class).setAction(ACTION_STOCK_ALERTS));
+    }
+
+    /**
+     * Schedule the purge of the deleted products, just after the undo window of a deletion made now.
+     * Scheduling again replaces the previous alarm, the purge covers every deletion due by then.
+     */
+    public static void schedulePurge(Context context) {
+        Intent intent = new Intent(context, InventoryJobService.class).setAction(ACTION_PURGE_DELETED);
+        PendingIntent operation = PendingIntent.getService(context, 0, intent, PendingIntent.FLAG_UPDATE_CURRENT);
+
+        AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        alarmManager.set(
+                AlarmManager.ELAPSED_REALTIME,
+                SystemClock.elapsedRealtime() + ProductContract.DELETE_UNDO_WINDOW_MILLIS + PURGE_DELAY_MILLIS,
+                operation
+        );
+    }
+
+    @Override
+    protected void onHandleIntent(Intent intent) {
+        if (intent == null) {
+            return;
+        }
+
+        if (ACTION_REORDER_DIGEST.equals(intent.getAction())) {
+            try {
+                new ReorderDigestJob(this).run();
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Reorder digest failed", e);
+            }
+        } else if (ACTION_PURGE_DELETED.equals(intent.getAction())) {
+            new ProductPurgeJob(this).run();
+        } else if (ACTION_ARCHIVE_COLD.equals(intent.getAction())) {
+            new ProductArchiveJob(this).run();
+        } else if (ACTION_SWEEP_RESERVATIONS.equals(intent.getAction())) {
+            new ReservationSweepJob(this).run();
+        } else if (ACTION_COMPACT_VALUATIONS.equals(intent.getAction())) {
+            new ValuationCompactionJob(this).run();
+        } else if (ACTION_STOCK_ALERTS.equals(intent.getAction())) {
+            new StockAlertJob(this).run();
+        } else if (ACTION_MAINTENANCE.equals(intent.getAction())) {
+            if (isCharging()) {
+                new DatabaseMaintenanceJob(this).run();
+            }
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.android.inventoryapp;
+
+import android.annotation.TargetApi;
+import android.app.job.JobInfo;
+import android.app.job.JobParameters;
+import android.app.job.JobScheduler;
+import android.app.job.JobService;
+import android.content.ComponentName;
+import android.content.Context;
+import android.os.AsyncTask;
+import android.os.Build;
+
+/**
+ * Runs the {@link DatabaseMaintenanceJob} through the JobScheduler, while the device is idle and
+ * charging. Older versions use {@link InventoryJobService#ACTION_MAINTENANCE} instead.
+ */
+@TargetApi(Build.VERSION_CODES.LOLLIPOP)
+public class MaintenanceJobService extends JobService {
+    /**
+     * Id of the maintenance job, unique in the app.
+     */
+    private static final int JOB_ID = 1;
+
+    /**
+     * Minimum time between two runs, in milliseconds.
+     */
+    private static final long PERIOD_MILLIS = 24 * 60 * 60 * 1000;
+
+    private DatabaseMaintenanceJob mJob;
+
+    /**
+     * Schedule the daily maintenance, unless it already is.
+     */
+    public static void schedule(Context context) {
+        JobScheduler scheduler = (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        for (JobInfo pending : scheduler.getAllPendingJobs()) {
+            if (pending.getId() == JOB_ID) {
+                return;
+            }
+        }
+
+        scheduler.schedule(new JobInfo.Builder(JOB_ID, new ComponentName(context, MaintenanceJobService.class))
+                .setRequiresDeviceIdle(true)
+                .setRequiresCharging(true)
+                .setPeriodic(PERIOD_MILLIS)
+                .build());
+    }
+
+    @Override
+    public boolean onStartJob(final JobParameters params) {
+        mJob = new DatabaseMaintenanceJob(this);
+        new AsyncTask<Void, Void, Void>() {
+            @Override
+            protected Void doInBackground(Void... unused) {
+                mJob.run();
+                jobFinished(params, false);
+                return null;
+            }
+        }.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+
+        return true;
+    }
+
+    /**
+     * The device is no longer idle or charging: stop after the current step, the next run resumes.
+     */
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        mJob.cancel();
+        return false;
+    }
+}
@@ -0,0 +1,166 @@
+package com.example.android.inventoryapp;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.graphics.Bitmap;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Encoding policy (format, quality and maximum dimension) applied to every product picture
+ * before it is stored in the database.
+ */
+public final class PictureEncoding {
+    /**
+     * Name of the shared preferences file holding the encoding policy.
+     */
+    private static final String PREFS_NAME = "picture_encoding";
+
+    private static final String KEY_FORMAT = "format";
+    private static final String KEY_QUALITY = "quality";
+    private static final String KEY_MAX_DIMENSION = "max_dimension";
+
+    /**
+     * Default policy: WebP at quality 80, longest side capped at 1024 pixels.
+     * The pictures are only ever shown at thumbnail size, so this is visually identical
+     * to the former quality 100 JPEGs at a fraction of their size.
+     */
+    public static final PictureEncoding DEFAULT =
+            new PictureEncoding(Bitmap.CompressFormat.WEBP, 80, 1024);
+
+    private final Bitmap.CompressFormat mFormat;
+    private final int mQuality;
+    private final int mMaxDimension;
+
+    /**
+     * Constructs a new {@link PictureEncoding}.
+     *
+     * @param format       Compression format of the stored picture.
+     * @param quality      Compression quality, between 0 and 100.
+     * @param maxDimension Maximum width or height of the stored picture, in pixels.
+     */
+    public PictureEncoding(Bitmap.CompressFormat format, int quality, int maxDimension) {
+        if (quality < 0 || quality > 100) {
+            throw new IllegalArgumentException("Quality must be between 0 and 100.");
+        }
+
+        if (maxDimension <= 0) {
+            throw new IllegalArgumentException("Maximum dimension must be positive.");
+        }
+
+        mFormat = format;
+        mQuality = quality;
+        mMaxDimension = maxDimension;
+    }
+
+    /**
+     * Read the encoding policy configured for the app, falling back on {@link #DEFAULT}.
+     */
+    public static PictureEncoding fromPreferences(Context context) {
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+
+        return new PictureEncoding(
+                Bitmap.CompressFormat.valueOf(prefs.getString(KEY_FORMAT, DEFAULT.mFormat.name())),
+                prefs.getInt(KEY_QUALITY, DEFAULT.mQuality),
+                prefs.getInt(KEY_MAX_DIMENSION, DEFAULT.mMaxDimension)
+        );
+    }
+
+    /**
+     * Store this policy as the one used by the app.
+     */
+    public void saveToPreferences(Context context) {
+        context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)
+                .edit()
+                .putString(KEY_FORMAT, mFormat.name())
+                .putInt(KEY_QUALITY, mQuality)
+                .putInt(KEY_MAX_DIMENSION, mMaxDimension)
+                .apply();
+    }
+
+    public Bitmap.CompressFormat getFormat() { return mFormat; }
+
+    public int getQuality() { return mQuality; }
+
+    public int getMaxDimension() { return mMaxDimension; }
+
+    /**
+     * Scale the bitmap down to the maximum dimension (keeping its aspect ratio)
+     * and compress it with the format and quality of this policy.
+     *
+     * @return The encoded picture bytes.
+     */
+    public byte[] encode(Bitmap bitmap) {
+        Bitmap scaled = scaleDown(bitmap);
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        scaled.compress(mFormat, mQuality, baos);
+
+        /* Only recycle the intermediate copy, the caller still owns the original bitmap. */
+        if (scaled != bitmap) {
+            scaled.recycle();
+        }
+
+        return baos.toByteArray();
+    }
+
+    /**
+     * Return whether a picture of the given MIME type and dimensions is already stored with the
+     * format of this policy and within its maximum dimension. Encoding it again would only lose
+     * quality, lossy formats degrading on every pass.
+     *
+     * @param mimeType MIME type decoded by {@link android.graphics.BitmapFactory.Options#outMimeType}.
+     */
+    public boolean isEncoded(String mimeType, int width, int height) {
+        return getMimeType().equals(mimeType) && Math.max(width, height) <= mMaxDimension;
+    }
+
+    /**
+     * Return the MIME type of the pictures encoded with this policy.
+     */
+    public String getMimeType() {
+        switch (mFormat) {
+            case JPEG:
+                return "image/jpeg";
+            case PNG:
+                return "image/png";
+            default:
+                return "image/webp";
+        }
+    }
+
+    /**
+     * Return the largest power of two sample size that keeps the decoded picture
+     * at least as large as the maximum dimension. Used to decode pictures cheaply
+     * with {@link android.graphics.BitmapFactory.Options#inSampleSize}.
+     */
+    public int sampleSizeFor(int width, int height) {
+        int sampleSize = 1;
+        int longest = Math.max(width, height);
+
+        while (longest / (sampleSize * 2) >= mMaxDimension) {
+            sampleSize *= 2;
+        }
+
+        return sampleSize;
+    }
+
+    private Bitmap scaleDown(Bitmap bitmap) {
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        int longest = Math.max(width, height);
+
+        if (longest <= mMaxDimension) {
+            return bitmap;
+        }
+
+        float ratio = (float) mMaxDimension / longest;
+
+        return Bitmap.createScaledBitmap(
+                bitmap,
+                Math.max(1, Math.round(width * ratio)),
+                Math.max(1, Math.round(height * ratio)),
+                true
+        );
+    }
+}
@@ -0,0 +1,114 @@
+package com.example.android.inventoryapp;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+
+import com.example.android.inventoryapp.data.ProductContract.ProductEntry;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Reads and decodes the picture of a product in the background, ahead of the screen showing it.
+ *
+ * The list starts the prefetch when a row is tapped, so the read and the decode overlap with the
+ * start of {@link DetailActivity}, which then takes the result. Only the latest prefetch is kept.
+ */
+public final class PicturePrefetcher {
+    /**
+     * Single worker: a newer tap supersedes the previous one, there is no point decoding in parallel.
+     */
+    private static final ExecutorService sExecutor = Executors.newSingleThreadExecutor();
+
+    private static Uri sUri;
+    private static Future<Bitmap> sPicture;
+
+    private PicturePrefetcher() {}
+
+    /**
+     * Start reading the picture of the product, decoded at least as tall as the given height.
+     *
+     * @param context      of the app.
+     * @param productUri   Content URI of the product.
+     * @param targetHeight Height the picture is displayed at, in pixels.
+     */
+    public static synchronized void prefetch(Context context, final Uri productUri, final int targetHeight) {
+        if (productUri.equals(sUri)) {
+            return;
+        }
+
+        if (sPicture != null) {
+            sPicture.cancel(false);
+        }
+
+        final Context appContext = context.getApplicationContext();
+        sUri = productUri;
+        sPicture = sExecutor.submit(new Callable<Bitmap>() {
+            @Override
+            public Bitmap call() {
+                return load(appContext, productUri, targetHeight);
+            }
+        });
+    }
+
+    /**
+     * Take the prefetched picture of the product, starting the read now if it was not prefetched.
+     * The result is handed over only once.
+     */
+    public static synchronized Future<Bitmap> take(Context context, Uri productUri, int targetHeight) {
+        prefetch(context, productUri, targetHeight);
+
+        Future<Bitmap> picture = sPicture;
+        sUri = null;
+        sPicture = null;
+
+        return picture;
+    }
+
+    /**
+     * Read the picture column only and decode it with the largest sample size that keeps it at least
+     * as tall as the target height.
+     */
+    private static Bitmap load(Context context, Uri productUri, int targetHeight) {
+        Cursor cursor = context.getContentResolver().query(
+                productUri,
+                new String[] { ProductEntry.COLUMN_PRODUCT_PICTURE },
+                null,
+                null,
+                null
+        );
+        if (cursor == null) {
+            return null;
+        }
+
+        byte[] bytes;
+        try {
+            if (!cursor.moveToFirst()) {
+                return null;
+            }
+
+            bytes = cursor.getBlob(0);
+        } finally {
+            cursor.close();
+        }
+
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(bytes, 0, bytes.length, options);
+
+        int sampleSize = 1;
+        while (targetHeight > 0 && options.outHeight / (sampleSize * 2) >= targetHeight) {
+            sampleSize *= 2;
+        }
+
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize;
+
+        return BitmapFactory.decodeByteArray(bytes, 0, bytes.length, options);
+    }
+}
@@ -0,0 +1,275 @@
+package com.example.android.inventoryapp;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+import android.util.Log;
+
+import com.example.android.inventoryapp.data.ProductContract;
+import com.example.android.inventoryapp.data.ProductContract.ProductEntry;
+import com.example.android.inventoryapp.data.ProductDbHelper;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Maintenance job re-encoding the pictures already stored in the database with the current
+ * {@link PictureEncoding} policy.
+ *
+ * Products are processed in batches of {@link #BATCH_SIZE} ids across a bounded thread pool.
+ * The highest id of every completed batch is saved, so an interrupted run resumes where it stopped.
+ * Pictures already stored in the format and within the dimension of the policy are skipped.
+ */
+public class PictureReencodeJob {
+    public static final String LOG_TAG = PictureReencodeJob.class.getSimpleName();
+
+    /**
+     * Number of products read per batch.
+     */
+    private static final int BATCH_SIZE = 20;
+
+    /**
+     * Upper bound of the worker pool, decoding pictures is memory hungry.
+     */
+    private static final int MAX_THREADS = 4;
+
+    private static final String PREFS_NAME = "picture_reencode_job";
+    private static final String KEY_LAST_ID = "last_id";
+
+    /**
+     * Summary of a run of the job.
+     */
+    public static final class Report {
+        public int picturesVisited;
+        public int picturesReencoded;
+        public long bytesBefore;
+        public long bytesAfter;
+        public long databaseSizeBefore;
+        public long databaseSizeAfter;
+        public boolean completed;
+
+        public long getBytesSaved() { return bytesBefore - bytesAfter; }
+
+        @Override
+        public String toString() {
+            return picturesReencoded + "/" + picturesVisited + " pictures re-encoded, "
+                    + getBytesSaved() + " bytes saved, database "
+                    + databaseSizeBefore + " -> " + databaseSizeAfter + " bytes"
+                    + (completed ? "" : " (interrupted)");
+        }
+    }
+
+    private final Context mContext;
+    private final PictureEncoding mEncoding;
+    private final int mThreadCount;
+
+    private volatile boolean mCancelled;
+
+    /**
+     * Constructs a new {@link PictureReencodeJob} using the encoding policy configured for the app.
+     *
+     * @param context of the app.
+     */
+    public PictureReencodeJob(Context context) {
+        mContext = context.getApplicationContext();
+        mEncoding = PictureEncoding.fromPreferences(mContext);
+        mThreadCount = Math.max(1, Math.min(MAX_THREADS, Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * Ask a running job to stop after its current batch. Progress is kept for the next run.
+     */
+    public void cancel() { mCancelled = true; }
+
+    /**
+     * Re-encode every picture not processed yet. Must be called from a background thread.
+     *
+     * @return The report of this run.
+     */
+    public Report run() {
+        Report report = new Report();
+        report.databaseSizeBefore = getDatabaseSize(mContext);
+
+        SharedPreferences prefs = mContext.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        long lastId = prefs.getLong(KEY_LAST_ID, 0);
+
+        ExecutorService executor = Executors.newFixedThreadPool(mThreadCount);
+        try {
+            while (!mCancelled) {
+                long[] ids = nextBatch(lastId);
+                if (ids.length == 0) {
+                    report.completed = true;
+                    break;
+                }
+
+                /* Re-encode the whole batch in parallel and wait for it before saving progress. */
+                List<Future<long[]>> results = new ArrayList<>(ids.length);
+                for (long id : ids) {
+                    results.add(executor.submit(new ReencodeTask(id)));
+                }
+
+                for (Future<long[]> result : results) {
+                    long[] sizes = result.get();
+                    if (sizes == null) {
+                        continue;
+                    }
+
+                    report.picturesVisited++;
+                    report.bytesBefore += sizes[0];
+                    report.bytesAfter += sizes[1];
+                    if (sizes[1] < sizes[0]) {
+                        report.picturesReencoded++;
+                    }
+                }
+
+                lastId = ids[ids.length - 1];
+                prefs.edit().putLong(KEY_LAST_ID, lastId).apply();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            Log.e(LOG_TAG, "Picture re-encoding failed", e);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        /* Start over on the next run once every picture has been visited. */
+        if (report.completed) {
+            prefs.edit().remove(KEY_LAST_ID).apply();
+        }
+
+        report.databaseSizeAfter = getDatabaseSize(mContext);
+        Log.i(LOG_TAG, report.toString());
+
+        return report;
+    }
+
+    /**
+     * Return the ids of the next batch of products, in increasing order.
+     */
+    private long[] nextBatch(long afterId) {
+        Uri uri = ProductEntry.CONTENT_URI.buildUpon()
+                .appendQueryParameter(ProductContract.QUERY_PARAMETER_LIMIT, String.valueOf(BATCH_SIZE))
+                .build();
+
+        Cursor cursor = mContext.getContentResolver().query(
+                uri,
+                new String[] { ProductEntry._ID },
+                ProductEntry._ID + ">?",
+                new String[] { String.valueOf(afterId) },
+                ProductEntry._ID + " ASC"
+        );
+
+        if (cursor == null) {
+            return new long[0];
+        }
+
+        try {
+            long[] ids = new long[cursor.getCount()];
+            int i = 0;
+            while (cursor.moveToNext()) {
+                ids[i++] = cursor.getLong(0);
+            }
+
+            return ids;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Size on disk of the database, including its write-ahead log.
+     */
+    public static long getDatabaseSize(Context context) {
+        File database = context.getDatabasePath(ProductDbHelper.DATABASE_NAME);
+        File wal = new File(database.getPath() + "-wal");
+
+        return database.length() + wal.length();
+    }
+
+    /**
+     * Re-encode the picture of a single product.
+     * Returns its size before and after, or null if the product has no readable picture.
+     */
+    private class ReencodeTask implements Callable<long[]> {
+        private final long mId;
+
+        ReencodeTask(long id) { mId = id; }
+
+        @Override
+        public long[] call() {
+            ContentResolver resolver = mContext.getContentResolver();
+            Uri productUri = ContentUris.withAppendedId(ProductEntry.CONTENT_URI, mId);
+
+            byte[] original;
+            Cursor cursor = resolver.query(
+                    productUri,
+                    new String[] { ProductEntry.COLUMN_PRODUCT_PICTURE },
+                    null,
+                    null,
+                    null
+            );
+            if (cursor == null) {
+                return null;
+            }
+
+            try {
+                if (!cursor.moveToFirst()) {
+                    return null;
+                }
+                original = cursor.getBlob(0);
+            } finally {
+                cursor.close();
+            }
+
+            if (original == null || original.length == 0) {
+                return null;
+            }
+
+            /* Decode the picture already downsampled close to the target dimension. */
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inJustDecodeBounds = true;
+            BitmapFactory.decodeByteArray(original, 0, original.length, options);
+
+            /* Pictures already in the target format and size are left alone, each lossy pass degrades them. */
+            if (mEncoding.isEncoded(options.outMimeType, options.outWidth, options.outHeight)) {
+                return new long[] { original.length, original.length };
+            }
+
+            options.inSampleSize = mEncoding.sampleSizeFor(options.outWidth, options.outHeight);
+            options.inJustDecodeBounds = false;
+
+            Bitmap bitmap = BitmapFactory.decodeByteArray(original, 0, original.length, options);
+            if (bitmap == null) {
+                Log.w(LOG_TAG, "Cannot decode picture of " + productUri);
+                return null;
+            }
+
+            byte[] encoded = mEncoding.encode(bitmap);
+            bitmap.recycle();
+
+            /* Keep the original picture if the new encoding does not make it smaller. */
+            if (encoded.length >= original.length) {
+                return new long[] { original.length, original.length };
+            }
+
+            ContentValues values = new ContentValues();
+            values.put(ProductEntry.COLUMN_PRODUCT_PICTURE, encoded);
+            resolver.update(productUri, values, null, null);
+
+            return new long[] { original.length, encoded.length };
+        }
+    }
+}
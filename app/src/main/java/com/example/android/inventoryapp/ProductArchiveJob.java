@@ -0,0 +1,77 @@
+package com.example.android.inventoryapp;
+
+import android.content.Context;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.example.android.inventoryapp.data.ProductContract;
+
+/**
+ * Background job moving the cold products (out of stock, and discontinued or out of stock for
+ * {@link ProductContract#ARCHIVE_ZERO_STOCK_MILLIS}) to the archive database.
+ *
+ * Products are moved {@link #CHUNK_SIZE} at a time with a pause between chunks, like the
+ * {@link ProductPurgeJob}, so that the write lock of the hot database is only held briefly.
+ */
+public class ProductArchiveJob {
+    public static final String LOG_TAG = ProductArchiveJob.class.getSimpleName();
+
+    /**
+     * Number of products moved per chunk, pictures included.
+     */
+    private static final int CHUNK_SIZE = 32;
+
+    /**
+     * Pause between two chunks, in milliseconds.
+     */
+    private static final long PAUSE_MILLIS = 20;
+
+    private final Context mContext;
+
+    private volatile boolean mCancelled;
+
+    /**
+     * Constructs a new {@link ProductArchiveJob}.
+     *
+     * @param context of the app.
+     */
+    public ProductArchiveJob(Context context) {
+        mContext = context.getApplicationContext();
+    }
+
+    /**
+     * Ask a running job to stop after its current chunk.
+     */
+    public void cancel() { mCancelled = true; }
+
+    /**
+     * Move every cold product to the archive. Must be called from a background thread.
+     *
+     * @return The number of products archived.
+     */
+    public int run() {
+        int total = 0;
+
+        while (!mCancelled) {
+            Bundle result = mContext.getContentResolver().call(
+                    ProductContract.BASE_CONTENT_URI,
+                    ProductContract.METHOD_ARCHIVE_COLD,
+                    String.valueOf(CHUNK_SIZE),
+                    null
+            );
+
+            int archived = result == null ? 0 : result.getInt(ProductContract.EXTRA_COUNT);
+            total += archived;
+            if (archived < CHUNK_SIZE) {
+                break;
+            }
+
+            SystemClock.sleep(PAUSE_MILLIS);
+        }
+
+        Log.i(LOG_TAG, total + " cold products archived");
+
+        return total;
+    }
+}
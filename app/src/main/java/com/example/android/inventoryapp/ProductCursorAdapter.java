@@ -1,10 +1,7 @@
 package com.example.android.inventoryapp;
 
-import android.content.ContentUris;
-import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
-import android.net.Uri;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -12,7 +9,10 @@ import android.widget.Button;
 import android.widget.CursorAdapter;
 import android.widget.TextView;
 
-import com.example.android.inventoryapp.data.ProductContract.ProductEntry;
+import com.example.android.inventoryapp.data.Product;
+import com.example.android.inventoryapp.data.ProductBatchClient;
+import com.example.android.inventoryapp.data.ProductMapper;
+import com.example.android.inventoryapp.startup.StartupTracer;
 
 import static com.example.android.inventoryapp.InventoryActivity.sResources;
 
@@ -30,6 +30,11 @@ public class ProductCursorAdapter extends CursorAdapter {
      */
     public ProductCursorAdapter(Context context, Cursor c) { super(context, c, 0 /* Flags */); }
 
+    /**
+     * Reads the rows of the current cursor, created again when the cursor is swapped.
+     */
+    private ProductMapper mMapper;
+
     /**
      * Makes a new blank list item view. No data is set (or bound) to the views yet.
      *
@@ -41,7 +46,16 @@ public class ProductCursorAdapter extends CursorAdapter {
     @Override
     public View newView(Context context, Cursor cursor, ViewGroup parent) {
         /* Inflate a list item view using the layout specified in list_item.xml. */
-        return LayoutInflater.from(context).inflate(R.layout.list_item, parent, false);
+        View view = LayoutInflater.from(context).inflate(R.layout.list_item, parent, false);
+
+        /* The listener is bound to each product shown by the view, see bindView. */
+        SaleClickListener saleListener = new SaleClickListener(
+                context, (TextView) view.findViewById(R.id.quantity));
+        Button saleButton = (Button) view.findViewById(R.id.sale);
+        saleButton.setOnClickListener(saleListener);
+        saleButton.setTag(saleListener);
+
+        return view;
     }
 
     /**
@@ -54,58 +68,68 @@ public class ProductCursorAdapter extends CursorAdapter {
      * @param cursor  The cursor from which to get the data. The cursor is already moved to the correct row.
      */
     @Override
-    public void bindView(View view, final Context context, Cursor cursor) {
-        final Uri currentProductUri = ContentUris.withAppendedId(ProductEntry.CONTENT_URI, cursor.getPosition() + 1);
+    public void bindView(View view, Context context, Cursor cursor) {
+        StartupTracer.Section section = StartupTracer.get().begin(StartupTracer.FIRST_BIND_VIEW);
+
+        if (mMapper == null || !mMapper.isFor(cursor)) {
+            mMapper = new ProductMapper(cursor);
+        }
 
         /* Find individual views that we want to modify in the list item layout. */
         TextView nameTextView = (TextView) view.findViewById(R.id.name);
-        final TextView quantityTextView = (TextView) view.findViewById(R.id.quantity);
+        TextView quantityTextView = (TextView) view.findViewById(R.id.quantity);
         TextView priceTextView = (TextView) view.findViewById(R.id.price);
 
-        /* Find the columns of product attributes that we're interested in. */
-        int nameColumnIndex = cursor.getColumnIndex(ProductEntry.COLUMN_PRODUCT_NAME);
-        int quantityColumnIndex = cursor.getColumnIndex(ProductEntry.COLUMN_PRODUCT_QUANTITY);
-        int priceColumnIndex = cursor.getColumnIndex(ProductEntry.COLUMN_PRODUCT_PRICE);
-
-        /* Read the product attributes from the Cursor for the current product. */
-        String productName = cursor.getString(nameColumnIndex);
-        String productQuantity = cursor.getString(quantityColumnIndex);
-        String productPrice = cursor.getString(priceColumnIndex);
+        /* Read the product attributes from the Cursor for the current product. Units on hold are not for sale. */
+        int quantity = mMapper.getAvailable();
 
         /* Update the TextViews with the attributes for the current product. */
-        nameTextView.setText(productName);
-        quantityTextView.setText(productQuantity);
-        priceTextView.setText(sResources.getString(R.string.product_price, productPrice));
+        nameTextView.setText(mMapper.getName());
+        quantityTextView.setText(String.valueOf(quantity));
+        priceTextView.setText(sResources.getString(R.string.product_price, Product.formatPrice(mMapper.getPriceCents())));
 
-        Button saleButton = (Button) view.findViewById(R.id.sale);
-        saleButton.setOnClickListener(new View.OnClickListener() {
-            @Override
-            public void onClick(View v) {
-                String quantityString = quantityTextView.getText().toString().trim();
-                int quantity = Integer.parseInt(quantityString);
-
-                if (quantity != 0) {
-                    quantity--;
-                    quantityTextView.setText(String.format("%1$s", Integer.toString(quantity)));
-                    quantityString = quantityTextView.getText().toString().trim();
-
-                    /*
-                        Create a ContentValues object where column names are the keys,
-                        and product attributes from the editor are the values.
-                     */
-                    ContentValues values = new ContentValues();
-                    values.put(ProductEntry.COLUMN_PRODUCT_QUANTITY, quantityString);
-
-                    /*
-                        This is an EXISTING product,
-                        so update the product with content URI mCurrentPetUri and pass in the new ContentValues.
-                        Pass in null for the selection and selection args
-                        because mCurrentPetUri will already identify
-                        the correct row in the database that we want to modify.
-                     */
-                    context.getContentResolver().update(currentProductUri, values, null, null);
+        SaleClickListener saleListener = (SaleClickListener) view.findViewById(R.id.sale).getTag();
+        saleListener.bind(mMapper.getId(), quantity);
+
+        section.end();
+    }
+
+    /**
+     * Sells one unit of the product shown by a list item. The sale is a delta rather than the new
+     * quantity, so that two clerks selling from stale lists cannot sell the same last unit: the
+     * provider refuses the second sale.
+     */
+    private static final class SaleClickListener implements View.OnClickListener {
+        private final Context mContext;
+        private final TextView mQuantityTextView;
+        private long mId;
+        private int mQuantity;
+
+        SaleClickListener(Context context, TextView quantityTextView) {
+            mContext = context;
+            mQuantityTextView = quantityTextView;
+        }
+
+        void bind(long id, int quantity) {
+            mId = id;
+            mQuantity = quantity;
+        }
+
+        @Override
+        public void onClick(View v) {
+            if (mQuantity != 0) {
+                mQuantity--;
+                mQuantityTextView.setText(String.valueOf(mQuantity));
+
+                int[] quantities = new ProductBatchClient(mContext.getContentResolver())
+                        .applyQuantityDeltas(new long[] { mId }, new int[] { -1 });
+
+                /* Refused: the last units were sold or held elsewhere, and no reload comes for nothing. */
+                if (quantities[0] == -1) {
+                    mQuantity = 0;
+                    mQuantityTextView.setText(String.valueOf(mQuantity));
                 }
             }
-        });
+        }
     }
-}
\ No newline at end of file
+}
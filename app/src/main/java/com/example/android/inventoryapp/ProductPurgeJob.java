@@ -0,0 +1,77 @@
+package com.example.android.inventoryapp;
+
+import android.content.Context;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.example.android.inventoryapp.data.ProductContract;
+
+/**
+ * Background job physically removing the deleted products once their undo window has passed.
+ *
+ * Products are removed {@link #CHUNK_SIZE} at a time, each chunk in its own short transaction,
+ * with a pause between chunks so that other writers get the write lock in between.
+ */
+public class ProductPurgeJob {
+    public static final String LOG_TAG = ProductPurgeJob.class.getSimpleName();
+
+    /**
+     * Number of products removed per transaction. Pictures are at most a few hundred kilobytes,
+     * so a chunk holds the write lock for a few milliseconds.
+     */
+    private static final int CHUNK_SIZE = 32;
+
+    /**
+     * Pause between two chunks, in milliseconds.
+     */
+    private static final long PAUSE_MILLIS = 20;
+
+    private final Context mContext;
+
+    private volatile boolean mCancelled;
+
+    /**
+     * Constructs a new {@link ProductPurgeJob}.
+     *
+     * @param context of the app.
+     */
+    public ProductPurgeJob(Context context) {
+        mContext = context.getApplicationContext();
+    }
+
+    /**
+     * Ask a running job to stop after its current chunk.
+     */
+    public void cancel() { mCancelled = true; }
+
+    /**
+     * Remove every deleted product past its undo window. Must be called from a background thread.
+     *
+     * @return The number of products removed.
+     */
+    public int run() {
+        int total = 0;
+
+        while (!mCancelled) {
+            Bundle result = mContext.getContentResolver().call(
+                    ProductContract.BASE_CONTENT_URI,
+                    ProductContract.METHOD_PURGE_DELETED,
+                    String.valueOf(CHUNK_SIZE),
+                    null
+            );
+
+            int purged = result == null ? 0 : result.getInt(ProductContract.EXTRA_COUNT);
+            total += purged;
+            if (purged < CHUNK_SIZE) {
+                break;
+            }
+
+            SystemClock.sleep(PAUSE_MILLIS);
+        }
+
+        Log.i(LOG_TAG, total + " deleted products purged");
+
+        return total;
+    }
+}
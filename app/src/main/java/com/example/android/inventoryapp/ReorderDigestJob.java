@@ -0,0 +1,172 @@
+package com.example.android.inventoryapp;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.os.Bundle;
+import android.util.Log;
+
+import com.example.android.inventoryapp.data.ProductContract;
+import com.example.android.inventoryapp.data.ProductContract.ReorderEntry;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Background job writing one order digest per supplier from the reorder list.
+ *
+ * The reorder list is first refreshed with the products changed since the previous run only,
+ * then read with a single query grouped by supplier. Products without a supplier are ordered
+ * from the default supplier address.
+ */
+public class ReorderDigestJob {
+    public static final String LOG_TAG = ReorderDigestJob.class.getSimpleName();
+
+    /**
+     * Name of the directory holding the digests, shared through the app file provider.
+     */
+    public static final String DIGEST_DIRECTORY = "digests";
+
+    /**
+     * Suffix of the digest files.
+     */
+    private static final String DIGEST_SUFFIX = ".txt";
+
+    /**
+     * A digest written for one supplier.
+     */
+    public static final class Digest {
+        public final String email;
+        public final File file;
+        public final int productCount;
+
+        Digest(String email, File file, int productCount) {
+            this.email = email;
+            this.file = file;
+            this.productCount = productCount;
+        }
+    }
+
+    private final Context mContext;
+
+    /**
+     * Constructs a new {@link ReorderDigestJob}.
+     *
+     * @param context of the app.
+     */
+    public ReorderDigestJob(Context context) {
+        mContext = context.getApplicationContext();
+    }
+
+    /**
+     * Directory of the digests.
+     */
+    public static File getDigestDirectory(Context context) {
+        return new File(context.getFilesDir(), DIGEST_DIRECTORY);
+    }
+
+    /**
+     * Refresh the reorder list and write the digests, replacing those of the previous run.
+     * Must be called from a background thread.
+     *
+     * @return The digests written, one per supplier with products to reorder.
+     */
+    public List<Digest> run() throws IOException {
+        Bundle refreshed = mContext.getContentResolver().call(
+                ProductContract.BASE_CONTENT_URI, ProductContract.METHOD_REFRESH_REORDERS, null, null);
+        Log.i(LOG_TAG, (refreshed == null ? 0 : refreshed.getInt(ProductContract.EXTRA_COUNT))
+                + " products evaluated for reorder");
+
+        File directory = getDigestDirectory(mContext);
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+
+        File[] previous = directory.listFiles();
+        if (previous != null) {
+            for (File file : previous) {
+                file.delete();
+            }
+        }
+
+        List<Digest> digests = new ArrayList<>();
+
+        Cursor cursor = mContext.getContentResolver().query(ReorderEntry.CONTENT_URI, null, null, null, null);
+        if (cursor == null) {
+            return digests;
+        }
+
+        try {
+            int supplierIdColumnIndex = cursor.getColumnIndex(ReorderEntry.COLUMN_SUPPLIER_ID);
+            int supplierNameColumnIndex = cursor.getColumnIndex(ReorderEntry.COLUMN_SUPPLIER_NAME);
+            int supplierEmailColumnIndex = cursor.getColumnIndex(ReorderEntry.COLUMN_SUPPLIER_EMAIL);
+            int productNameColumnIndex = cursor.getColumnIndex(ReorderEntry.COLUMN_PRODUCT_NAME);
+            int quantityColumnIndex = cursor.getColumnIndex(ReorderEntry.COLUMN_PRODUCT_QUANTITY);
+            int reorderLevelColumnIndex = cursor.getColumnIndex(ReorderEntry.COLUMN_PRODUCT_REORDER_LEVEL);
+
+            /* Rows come grouped by supplier, a digest is complete when the supplier changes. */
+            Writer writer = null;
+            String email = null;
+            File file = null;
+            int productCount = 0;
+            long currentSupplierId = Long.MIN_VALUE;
+
+            try {
+                while (cursor.moveToNext()) {
+                    boolean linked = !cursor.isNull(supplierEmailColumnIndex);
+                    long supplierId = linked ? cursor.getLong(supplierIdColumnIndex) : -1;
+
+                    if (writer == null || supplierId != currentSupplierId) {
+                        if (writer != null) {
+                            writer.close();
+                            digests.add(new Digest(email, file, productCount));
+                        }
+
+                        currentSupplierId = supplierId;
+                        email = linked
+                                ? cursor.getString(supplierEmailColumnIndex)
+                                : mContext.getString(R.string.supplier_email);
+                        String name = linked
+                                ? cursor.getString(supplierNameColumnIndex)
+                                : mContext.getString(R.string.digest_default_supplier);
+                        file = new File(directory, (linked ? "supplier-" + supplierId : "default") + DIGEST_SUFFIX);
+                        productCount = 0;
+
+                        writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+                        writer.write(mContext.getString(R.string.digest_header, name, email));
+                        writer.write('\n');
+                    }
+
+                    writer.write(mContext.getString(
+                            R.string.digest_line,
+                            cursor.getString(productNameColumnIndex),
+                            cursor.getInt(quantityColumnIndex),
+                            cursor.getInt(reorderLevelColumnIndex)
+                    ));
+                    writer.write('\n');
+                    productCount++;
+                }
+
+                if (writer != null) {
+                    writer.close();
+                    writer = null;
+                    digests.add(new Digest(email, file, productCount));
+                }
+            } finally {
+                if (writer != null) {
+                    writer.close();
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+
+        Log.i(LOG_TAG, digests.size() + " reorder digests written");
+
+        return digests;
+    }
+}
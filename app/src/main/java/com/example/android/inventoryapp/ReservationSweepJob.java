@@ -0,0 +1,77 @@
+package com.example.android.inventoryapp;
+
+import android.content.Context;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.example.android.inventoryapp.data.ProductContract;
+
+/**
+ * Background job releasing the reservations that have expired, so that their units are available
+ * to sell again without waiting for the next reservation of their product.
+ *
+ * Holds are released {@link #CHUNK_SIZE} at a time, earliest expiry first, each chunk in its own
+ * short transaction reading the expiry index, with a pause between chunks like the purge.
+ */
+public class ReservationSweepJob {
+    public static final String LOG_TAG = ReservationSweepJob.class.getSimpleName();
+
+    /**
+     * Number of holds released per transaction. A hold is a small row and a product update.
+     */
+    private static final int CHUNK_SIZE = 128;
+
+    /**
+     * Pause between two chunks, in milliseconds.
+     */
+    private static final long PAUSE_MILLIS = 20;
+
+    private final Context mContext;
+
+    private volatile boolean mCancelled;
+
+    /**
+     * Constructs a new {@link ReservationSweepJob}.
+     *
+     * @param context of the app.
+     */
+    public ReservationSweepJob(Context context) {
+        mContext = context.getApplicationContext();
+    }
+
+    /**
+     * Ask a running job to stop after its current chunk.
+     */
+    public void cancel() { mCancelled = true; }
+
+    /**
+     * Release every expired hold. Must be called from a background thread.
+     *
+     * @return The number of holds released.
+     */
+    public int run() {
+        int total = 0;
+
+        while (!mCancelled) {
+            Bundle result = mContext.getContentResolver().call(
+                    ProductContract.BASE_CONTENT_URI,
+                    ProductContract.METHOD_EXPIRE_RESERVATIONS,
+                    String.valueOf(CHUNK_SIZE),
+                    null
+            );
+
+            int released = result == null ? 0 : result.getInt(ProductContract.EXTRA_COUNT);
+            total += released;
+            if (released < CHUNK_SIZE) {
+                break;
+            }
+
+            SystemClock.sleep(PAUSE_MILLIS);
+        }
+
+        Log.i(LOG_TAG, total + " expired reservations released");
+
+        return total;
+    }
+}
@@ -0,0 +1,153 @@
+package com.example.android.inventoryapp;
+
+import android.app.PendingIntent;
+import android.content.ContentResolver;
+import android.content.Context;
+import android.content.Intent;
+import android.database.Cursor;
+import android.support.v4.app.NotificationCompat;
+import android.support.v4.app.NotificationManagerCompat;
+import android.util.Log;
+
+import com.example.android.inventoryapp.data.ProductContract.ProductEntry;
+import com.example.android.inventoryapp.data.ProductContract.StockAlertEntry;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Background job draining the stock alerts queue into a notification of the products low on stock.
+ *
+ * The alerts only tell that the stock of some products crossed their reorder level, and the database
+ * keeps the set of the products at or below it from their crossings. The notification lists that set,
+ * so that it replaces the previous one without dropping its products, and it is cancelled once none
+ * is left: the cost follows the alerts and the low products, never the size of the catalog. The
+ * notification is posted before the alerts are removed from the queue, so that an interrupted drain
+ * shows them again rather than losing them.
+ */
+public class StockAlertJob {
+    public static final String LOG_TAG = StockAlertJob.class.getSimpleName();
+
+    /**
+     * Id of the low stock notification, replaced by every drain.
+     */
+    private static final int NOTIFICATION_ID = 1;
+
+    /**
+     * Number of products listed in the notification, the others are counted.
+     */
+    private static final int MAX_LINES = 5;
+
+    private static final String[] PROJECTION = {
+            "COUNT(*)",
+            "MAX(" + StockAlertEntry._ID + ")"
+    };
+
+    private static final String[] LOW_PRODUCTS_PROJECTION = {
+            ProductEntry.COLUMN_PRODUCT_NAME,
+            ProductEntry.COLUMN_PRODUCT_QUANTITY
+    };
+
+    private final Context mContext;
+
+    /**
+     * Constructs a new {@link StockAlertJob}.
+     *
+     * @param context of the app.
+     */
+    public StockAlertJob(Context context) {
+        mContext = context.getApplicationContext();
+    }
+
+    /**
+     * Drain the queue. Must be called from a background thread.
+     *
+     * @return The number of alerts drained.
+     */
+    public int run() {
+        ContentResolver resolver = mContext.getContentResolver();
+
+        /* The alerts queued up to now, the later ones are left for the next drain. */
+        Cursor cursor = resolver.query(StockAlertEntry.CONTENT_URI, PROJECTION, null, null, null);
+        if (cursor == null) {
+            return 0;
+        }
+
+        int total;
+        long lastId;
+        try {
+            cursor.moveToFirst();
+            total = cursor.getInt(0);
+            lastId = cursor.getLong(1);
+        } finally {
+            cursor.close();
+        }
+
+        if (total == 0) {
+            return 0;
+        }
+
+        int lowCount = notifyLowStock(resolver);
+        resolver.delete(StockAlertEntry.CONTENT_URI, StockAlertEntry._ID + " <= ?",
+                new String[] { String.valueOf(lastId) });
+
+        Log.i(LOG_TAG, total + " stock alerts drained, " + lowCount + " products low on stock");
+
+        return total;
+    }
+
+    /**
+     * Post the notification of the products at or below their reorder level, lowest quantity
+     * first, or cancel it if there are none.
+     *
+     * @return The number of products low on stock.
+     */
+    private int notifyLowStock(ContentResolver resolver) {
+        Cursor cursor = resolver.query(ProductEntry.LOW_STOCK_URI, LOW_PRODUCTS_PROJECTION, null, null,
+                ProductEntry.COLUMN_PRODUCT_QUANTITY + " ASC, " + ProductEntry._ID + " ASC");
+        if (cursor == null) {
+            return 0;
+        }
+
+        int lowCount;
+        List<String> lines = new ArrayList<>(MAX_LINES);
+        try {
+            lowCount = cursor.getCount();
+            while (lines.size() < MAX_LINES && cursor.moveToNext()) {
+                lines.add(mContext.getString(R.string.stock_alert_line, cursor.getString(0), cursor.getInt(1)));
+            }
+        } finally {
+            cursor.close();
+        }
+
+        NotificationManagerCompat notificationManager = NotificationManagerCompat.from(mContext);
+        if (lowCount == 0) {
+            notificationManager.cancel(NOTIFICATION_ID);
+            return 0;
+        }
+
+        String title = mContext.getResources().getQuantityString(R.plurals.stock_alert_title, lowCount, lowCount);
+
+        NotificationCompat.InboxStyle style = new NotificationCompat.InboxStyle().setBigContentTitle(title);
+        for (String line : lines) {
+            style.addLine(line);
+        }
+        if (lowCount > MAX_LINES) {
+            style.setSummaryText(mContext.getString(R.string.stock_alert_more, lowCount - MAX_LINES));
+        }
+
+        Intent intent = new Intent(mContext, InventoryActivity.class);
+        PendingIntent contentIntent = PendingIntent.getActivity(mContext, 0, intent, PendingIntent.FLAG_UPDATE_CURRENT);
+
+        notificationManager.notify(NOTIFICATION_ID, new NotificationCompat.Builder(mContext)
+                .setSmallIcon(R.mipmap.ic_launcher)
+                .setContentTitle(title)
+                .setContentText(lines.get(0))
+                .setStyle(style)
+                .setContentIntent(contentIntent)
+                .setAutoCancel(true)
+                .build());
+
+        return lowCount;
+    }
+}
@@ -0,0 +1,49 @@
+package com.example.android.inventoryapp;
+
+import android.content.Context;
+import android.os.Bundle;
+import android.util.Log;
+
+import com.example.android.inventoryapp.data.ProductContract;
+
+/**
+ * Background job downsampling the valuation history: daily buckets older than
+ * {@link ProductContract#VALUATION_DAILY_MILLIS} become weekly, and weekly ones older than
+ * {@link ProductContract#VALUATION_WEEKLY_MILLIS} monthly.
+ *
+ * Run daily, it finds a week of days at most to compact, so the whole pass is a single short
+ * transaction, unlike the purge and the archive that work in chunks.
+ */
+public class ValuationCompactionJob {
+    public static final String LOG_TAG = ValuationCompactionJob.class.getSimpleName();
+
+    private final Context mContext;
+
+    /**
+     * Constructs a new {@link ValuationCompactionJob}.
+     *
+     * @param context of the app.
+     */
+    public ValuationCompactionJob(Context context) {
+        mContext = context.getApplicationContext();
+    }
+
+    /**
+     * Downsample the old buckets. Must be called from a background thread.
+     *
+     * @return The number of buckets downsampled.
+     */
+    public int run() {
+        Bundle result = mContext.getContentResolver().call(
+                ProductContract.BASE_CONTENT_URI,
+                ProductContract.METHOD_COMPACT_VALUATIONS,
+                null,
+                null
+        );
+
+        int compacted = result == null ? 0 : result.getInt(ProductContract.EXTRA_COUNT);
+        Log.i(LOG_TAG, compacted + " valuation buckets downsampled");
+
+        return compacted;
+    }
+}
@@ -0,0 +1,136 @@
+package com.example.android.inventoryapp.data;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+
+import com.example.android.inventoryapp.data.ProductContract.ProductEntry;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Database helper of the archive, the cold tier of the products, see {@link ArchiveOperations}.
+ *
+ * The archive is its own database file with a products table mirroring the hot one, and the
+ * hot database ATTACHed as {@link #HOT_SCHEMA}, so that products move between the two in SQL.
+ * The attachment is made here rather than by {@link ProductDbHelper}: attaching a database turns
+ * write-ahead logging off on the connection, which the hot database relies on for its readers.
+ */
+class ArchiveDbHelper extends SQLiteOpenHelper {
+    /**
+     * Name of the archive database file.
+     */
+    static final String DATABASE_NAME = "inventory_archive.db";
+
+    private static final int DATABASE_VERSION = 2;
+
+    /**
+     * Schema name of the attached hot database.
+     */
+    static final String HOT_SCHEMA = "hot";
+
+    /**
+     * Time the product was archived, in milliseconds since the epoch. Only in the archive.
+     *
+     * Type : INTEGER
+     */
+    static final String COLUMN_ARCHIVED_AT = "archived_at";
+
+    private final String mHotPath;
+
+    /**
+     * Columns of the hot products table, read when the archive is opened.
+     */
+    private List<String> mProductColumns;
+
+    ArchiveDbHelper(Context context) {
+        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        mHotPath = context.getDatabasePath(ProductDbHelper.DATABASE_NAME).getPath();
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        /* The other columns are copied from the hot table when the archive is opened. */
+        db.execSQL("CREATE TABLE " + ProductEntry.TABLE_NAME + " ("
+                + ProductEntry._ID + " INTEGER PRIMARY KEY, "
+                + COLUMN_ARCHIVED_AT + " INTEGER NOT NULL);");
+    }
+
+    /**
+     * Version 2: prices in cents, as in version 9 of {@link ProductDbHelper}. The price column
+     * is missing if the archive was never opened after its creation.
+     */
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        if (oldVersion < 2) {
+            for (String[] column : readColumns(db, "main")) {
+                if (ProductEntry.COLUMN_PRODUCT_PRICE.equals(column[0])) {
+                    db.execSQL(ProductDbHelper.PRICE_TO_CENTS);
+                }
+            }
+        }
+    }
+
+    /**
+     * Attach the hot database, then add the columns the hot products table gained since the
+     * last opening, so that the archive follows the upgrades of {@link ProductDbHelper}.
+     * The hot database must have been opened, and upgraded, first.
+     */
+    @Override
+    public void onOpen(SQLiteDatabase db) {
+        super.onOpen(db);
+
+        db.execSQL("ATTACH DATABASE ? AS " + HOT_SCHEMA, new Object[] { mHotPath });
+
+        Set<String> archiveColumns = new HashSet<>();
+        for (String[] column : readColumns(db, "main")) {
+            archiveColumns.add(column[0]);
+        }
+
+        List<String> hotColumns = new ArrayList<>();
+        for (String[] column : readColumns(db, HOT_SCHEMA)) {
+            hotColumns.add(column[0]);
+            if (!archiveColumns.contains(column[0])) {
+                /* No constraint nor default: the archive only receives complete rows. */
+                db.execSQL("ALTER TABLE " + ProductEntry.TABLE_NAME + " ADD COLUMN " + column[0] + " " + column[1]);
+            }
+        }
+
+        /* Pulled changes find their archived products by global id, see ArchiveOperations#unarchive. */
+        db.execSQL("CREATE INDEX IF NOT EXISTS main.archive_products_global_id ON " + ProductEntry.TABLE_NAME + " ("
+                + ProductEntry.COLUMN_PRODUCT_GLOBAL_ID + ")");
+
+        mProductColumns = hotColumns;
+    }
+
+    /**
+     * Return the columns of the hot products table, the ones shared by both tiers.
+     */
+    List<String> getProductColumns() {
+        getWritableDatabase();
+        return mProductColumns;
+    }
+
+    /**
+     * Return the name and declared type of the columns of the products table of the schema.
+     */
+    private static List<String[]> readColumns(SQLiteDatabase db, String schema) {
+        List<String[]> columns = new ArrayList<>();
+        Cursor cursor = db.rawQuery("PRAGMA " + schema + ".table_info(" + ProductEntry.TABLE_NAME + ")", null);
+        try {
+            int nameIndex = cursor.getColumnIndexOrThrow("name");
+            int typeIndex = cursor.getColumnIndexOrThrow("type");
+            while (cursor.moveToNext()) {
+                columns.add(new String[] { cursor.getString(nameIndex), cursor.getString(typeIndex) });
+            }
+        } finally {
+            cursor.close();
+        }
+
+        return columns;
+    }
+}
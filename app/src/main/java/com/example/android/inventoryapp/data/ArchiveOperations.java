@@ -0,0 +1,190 @@
+package com.example.android.inventoryapp.data;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.CancellationSignal;
+import android.text.TextUtils;
+
+import com.example.android.inventoryapp.data.ProductContract.DeletedProductEntry;
+import com.example.android.inventoryapp.data.ProductContract.ProductEntry;
+import com.example.android.inventoryapp.data.ProductContract.ReorderEntry;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Archive tier of {@link ProductProvider}: cold products are moved, pictures included, from the
+ * hot products table to the archive database of {@link ArchiveDbHelper}, so that the hot table,
+ * its indexes and its backups only hold the products still in use.
+ *
+ * Every statement runs on the archive connection, where the hot tables are qualified with
+ * {@link ArchiveDbHelper#HOT_SCHEMA}.
+ */
+final class ArchiveOperations {
+    private static final String HOT_PRODUCTS = ArchiveDbHelper.HOT_SCHEMA + "." + ProductEntry.TABLE_NAME;
+    private static final String ARCHIVED_PRODUCTS = "main." + ProductEntry.TABLE_NAME;
+
+    /**
+     * Selection of the live hot products.
+     */
+    private static final String SELECTION_HOT_LIVE = ProductEntry._ID + " NOT IN (SELECT "
+            + DeletedProductEntry.COLUMN_PRODUCT_ID + " FROM " + ArchiveDbHelper.HOT_SCHEMA + "."
+            + DeletedProductEntry.TABLE_NAME + ")";
+
+    /**
+     * Selection of the cold hot products: out of stock, and discontinued or out of stock since the time
+     * given as argument. Products still holding stock, lots or reservations stay hot, with them, so that
+     * an archive run leaves the units and value of the valuation history and of the categories as they were.
+     */
+    private static final String SELECTION_COLD = "(" + ProductEntry.COLUMN_PRODUCT_DISCONTINUED + " = 1 OR "
+            + ProductEntry.COLUMN_PRODUCT_ZERO_STOCK_SINCE + " <= ?) AND "
+            + ProductEntry.COLUMN_PRODUCT_QUANTITY + " = 0 AND "
+            + ProductEntry.COLUMN_PRODUCT_LOT_QUANTITY + " = 0 AND "
+            + ProductEntry.COLUMN_PRODUCT_RESERVED + " = 0 AND " + SELECTION_HOT_LIVE;
+
+    /**
+     * Number of global ids bound per statement, below the limit of 999 arguments of SQLite.
+     */
+    private static final int MAX_GLOBAL_IDS = 500;
+
+    private ArchiveOperations() {}
+
+    /**
+     * Move at most limit cold products to the archive.
+     *
+     * The products are first copied, then removed from the hot table, in two transactions: a
+     * transaction over two database files is not atomic in write-ahead logging mode. A crash in
+     * between leaves the products in both tiers, which {@link #query} hides and the next call cleans up.
+     *
+     * @param now Current time, in milliseconds since the epoch.
+     * @return The number of products moved, 0 once there is nothing left to archive.
+     */
+    static int archive(SQLiteDatabase db, List<String> columns, int limit, long now) {
+        String[] coldArgs = new String[] { String.valueOf(now - ProductContract.ARCHIVE_ZERO_STOCK_MILLIS) };
+        String columnList = TextUtils.join(", ", columns);
+
+        StringBuilder ids = new StringBuilder();
+        Cursor cursor = db.query(
+                HOT_PRODUCTS,
+                new String[] { ProductEntry._ID },
+                SELECTION_COLD,
+                coldArgs,
+                null,
+                null,
+                null,
+                String.valueOf(limit)
+        );
+        int count;
+        try {
+            count = cursor.getCount();
+            while (cursor.moveToNext()) {
+                ids.append(ids.length() == 0 ? "" : ",").append(cursor.getLong(0));
+            }
+        } finally {
+            cursor.close();
+        }
+
+        if (count != 0) {
+            db.beginTransaction();
+            try {
+                db.execSQL("INSERT OR REPLACE INTO " + ARCHIVED_PRODUCTS + " (" + columnList + ", "
+                        + ArchiveDbHelper.COLUMN_ARCHIVED_AT + ") SELECT " + columnList + ", ? FROM " + HOT_PRODUCTS
+                        + " WHERE " + ProductEntry._ID + " IN (" + ids + ")", new Object[] { now });
+
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        }
+
+        /* Also removes the copies left behind by an interrupted call. */
+        db.beginTransaction();
+        try {
+            /* Walks the small hot tables, probing the archive by primary key. */
+            String archived = " WHERE EXISTS (SELECT 1 FROM " + ARCHIVED_PRODUCTS + " a WHERE a." + ProductEntry._ID + " = ";
+            db.execSQL("DELETE FROM " + ArchiveDbHelper.HOT_SCHEMA + "." + ReorderEntry.TABLE_NAME + archived
+                    + ReorderEntry.TABLE_NAME + "." + ReorderEntry.COLUMN_PRODUCT_ID + ")");
+            db.execSQL("DELETE FROM " + HOT_PRODUCTS + archived + ProductEntry.TABLE_NAME + "." + ProductEntry._ID + ")");
+
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        return count;
+    }
+
+    /**
+     * Move the archived products of the given global ids back to the hot table, so that they can be
+     * written again. Like {@link #archive}, the products are first copied, then removed from the
+     * archive: a crash in between leaves them in both tiers, and the next move cleans up.
+     *
+     * @return The number of products moved.
+     */
+    static int unarchive(SQLiteDatabase db, List<String> columns, String[] globalIds) {
+        String columnList = TextUtils.join(", ", columns);
+        int count = 0;
+
+        for (int start = 0; start < globalIds.length; start += MAX_GLOBAL_IDS) {
+            String[] chunk = Arrays.copyOfRange(globalIds, start, Math.min(globalIds.length, start + MAX_GLOBAL_IDS));
+            String selection = ProductEntry.COLUMN_PRODUCT_GLOBAL_ID + " IN ("
+                    + TextUtils.join(", ", Collections.nCopies(chunk.length, "?")) + ")";
+
+            db.beginTransaction();
+            try {
+                db.execSQL("INSERT INTO " + HOT_PRODUCTS + " (" + columnList + ") SELECT " + columnList + " FROM "
+                        + ARCHIVED_PRODUCTS + " WHERE " + selection + " AND " + ProductEntry._ID
+                        + " NOT IN (SELECT " + ProductEntry._ID + " FROM " + HOT_PRODUCTS + ")", chunk);
+
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+
+            db.beginTransaction();
+            try {
+                count += db.delete(ARCHIVED_PRODUCTS, selection, chunk);
+
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Query the live hot products together with the archived ones. A product found in both
+     * tiers, after an interrupted move, is only returned once, from the hot table.
+     */
+    static Cursor query(
+            SQLiteDatabase db,
+            List<String> columns,
+            String[] projection,
+            String selection,
+            String[] selectionArgs,
+            String sortOrder,
+            String limit,
+            CancellationSignal cancellationSignal
+    ) {
+        String columnList = TextUtils.join(", ", columns);
+        String union = "(SELECT " + columnList + " FROM " + HOT_PRODUCTS + " WHERE " + SELECTION_HOT_LIVE
+                + " UNION ALL SELECT " + columnList + " FROM " + ARCHIVED_PRODUCTS + " WHERE " + ProductEntry._ID
+                + " NOT IN (SELECT " + ProductEntry._ID + " FROM " + HOT_PRODUCTS + "))";
+
+        return db.query(
+                false,
+                union,
+                projection,
+                selection,
+                selectionArgs,
+                null,
+                null,
+                sortOrder,
+                limit,
+                cancellationSignal
+        );
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.android.inventoryapp.data;
+
+/**
+ * Splits the batches of {@link ProductBatchClient} into chunks whose Binder transactions stay well
+ * below the transaction buffer, which is 1 MB for all the transactions in flight in a process.
+ */
+final class BatchChunker {
+    /**
+     * Budget of the arrays of a chunk, in the request and in the reply.
+     */
+    static final int MAX_CHUNK_BYTES = 128 * 1024;
+
+    /**
+     * Size of a long in a parcelled array.
+     */
+    static final int LONG_BYTES = 8;
+
+    /**
+     * Size of an int in a parcelled array.
+     */
+    static final int INT_BYTES = 4;
+
+    private BatchChunker() {}
+
+    /**
+     * Return the number of items of a fixed size fitting the budget, at least 1.
+     */
+    static int chunkSize(int bytesPerItem, int maxBytes) {
+        return Math.max(1, maxBytes / bytesPerItem);
+    }
+
+    /**
+     * Return the end (exclusive) of the chunk of strings starting at start that fits the budget,
+     * with at least one string in the chunk.
+     */
+    static int chunkEnd(String[] values, int start, int maxBytes) {
+        int end = start;
+        int bytes = 0;
+        while (end < values.length) {
+            bytes += parcelledSize(values[end]);
+            if (bytes > maxBytes && end > start) {
+                break;
+            }
+            end++;
+        }
+
+        return end;
+    }
+
+    /**
+     * Size of a string in a parcel: its length, then its UTF-16 characters and a terminator padded to 4 bytes.
+     */
+    static int parcelledSize(String value) {
+        if (value == null) {
+            return 4;
+        }
+
+        return 4 + (((value.length() + 1) * 2 + 3) & ~3);
+    }
+}
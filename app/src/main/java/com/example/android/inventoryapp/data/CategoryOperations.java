@@ -0,0 +1,271 @@
+package com.example.android.inventoryapp.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.CancellationSignal;
+import android.text.TextUtils;
+
+import com.example.android.inventoryapp.data.ProductContract.CategoryEntry;
+import com.example.android.inventoryapp.data.ProductContract.CategoryPathEntry;
+import com.example.android.inventoryapp.data.ProductContract.ProductEntry;
+
+/**
+ * Categories of {@link ProductProvider}, behind {@link CategoryEntry#CONTENT_URI}.
+ *
+ * The closure table is written here, with the categories. The rollups are written by the triggers
+ * of {@link ProductDbHelper} as the products change, and here only when a subtree moves: its
+ * rollups then leave the old ancestors and join the new ones, without reading its products.
+ */
+final class CategoryOperations {
+    /**
+     * Selection of the subtree of the category given as argument, on the category id of the products.
+     */
+    private static final String SELECTION_SUBTREE = ProductEntry.COLUMN_PRODUCT_CATEGORY_ID + " IN (SELECT "
+            + CategoryPathEntry.COLUMN_DESCENDANT_ID + " FROM " + CategoryPathEntry.TABLE_NAME + " WHERE "
+            + CategoryPathEntry.COLUMN_ANCESTOR_ID + " = ?)";
+
+    private CategoryOperations() {}
+
+    /**
+     * Insert a category, under its parent if it has one.
+     *
+     * @return The id of the category.
+     */
+    static long insert(SQLiteDatabase db, ContentValues values) {
+        validate(values, true);
+        Long parentId = values.getAsLong(CategoryEntry.COLUMN_CATEGORY_PARENT_ID);
+
+        long id;
+        db.beginTransaction();
+        try {
+            if (parentId != null) {
+                checkExists(db, parentId);
+            }
+
+            id = db.insertOrThrow(CategoryEntry.TABLE_NAME, null, values);
+
+            /* The paths to the ancestors are those of the parent, one level deeper, and the path to itself. */
+            db.execSQL("INSERT INTO " + CategoryPathEntry.TABLE_NAME + " (" + CategoryPathEntry.COLUMN_ANCESTOR_ID
+                    + ", " + CategoryPathEntry.COLUMN_DESCENDANT_ID + ", " + CategoryPathEntry.COLUMN_DEPTH
+                    + ") SELECT " + CategoryPathEntry.COLUMN_ANCESTOR_ID + ", ?, " + CategoryPathEntry.COLUMN_DEPTH
+                    + " + 1 FROM " + CategoryPathEntry.TABLE_NAME + " WHERE " + CategoryPathEntry.COLUMN_DESCENDANT_ID
+                    + " = ? UNION ALL SELECT ?, ?, 0", new Object[] { id, parentId, id, id });
+
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        return id;
+    }
+
+    /**
+     * Rename a category, or move it with its subtree under another parent.
+     *
+     * @return The number of categories updated, 0 or 1.
+     */
+    static int update(SQLiteDatabase db, long id, ContentValues values) {
+        validate(values, false);
+
+        int rowsUpdated;
+        db.beginTransaction();
+        try {
+            Cursor cursor = db.query(
+                    CategoryEntry.TABLE_NAME,
+                    new String[] { CategoryEntry.COLUMN_CATEGORY_PARENT_ID },
+                    CategoryEntry._ID + " = ?",
+                    new String[] { String.valueOf(id) },
+                    null,
+                    null,
+                    null
+            );
+            Long oldParentId;
+            try {
+                if (!cursor.moveToFirst()) {
+                    return 0;
+                }
+                oldParentId = cursor.isNull(0) ? null : cursor.getLong(0);
+            } finally {
+                cursor.close();
+            }
+
+            if (values.containsKey(CategoryEntry.COLUMN_CATEGORY_PARENT_ID)) {
+                Long parentId = values.getAsLong(CategoryEntry.COLUMN_CATEGORY_PARENT_ID);
+                if (parentId == null ? oldParentId != null : !parentId.equals(oldParentId)) {
+                    move(db, id, parentId);
+                }
+            }
+
+            rowsUpdated = db.update(CategoryEntry.TABLE_NAME, values, CategoryEntry._ID + " = ?",
+                    new String[] { String.valueOf(id) });
+
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        return rowsUpdated;
+    }
+
+    /**
+     * Move the subtree of the category under the given parent, null for the top level,
+     * within the current transaction.
+     */
+    private static void move(SQLiteDatabase db, long id, Long parentId) {
+        if (parentId != null) {
+            checkExists(db, parentId);
+            if (DatabaseUtils.longForQuery(db, "SELECT COUNT(*) FROM " + CategoryPathEntry.TABLE_NAME + " WHERE "
+                    + CategoryPathEntry.COLUMN_ANCESTOR_ID + " = ? AND " + CategoryPathEntry.COLUMN_DESCENDANT_ID
+                    + " = ?", new String[] { String.valueOf(id), String.valueOf(parentId) }) != 0) {
+                throw new IllegalArgumentException("Category " + id + " cannot move under its own subtree");
+            }
+        }
+
+        String subtree = " IN (SELECT " + CategoryPathEntry.COLUMN_DESCENDANT_ID + " FROM "
+                + CategoryPathEntry.TABLE_NAME + " WHERE " + CategoryPathEntry.COLUMN_ANCESTOR_ID + " = " + id + ")";
+
+        addRollupsToAncestors(db, id, "-");
+
+        /* Cut the paths from the ancestors outside the subtree, then link the subtree to the new ones. */
+        db.execSQL("DELETE FROM " + CategoryPathEntry.TABLE_NAME + " WHERE "
+                + CategoryPathEntry.COLUMN_DESCENDANT_ID + subtree + " AND "
+                + CategoryPathEntry.COLUMN_ANCESTOR_ID + " NOT" + subtree);
+        if (parentId != null) {
+            db.execSQL("INSERT INTO " + CategoryPathEntry.TABLE_NAME + " (" + CategoryPathEntry.COLUMN_ANCESTOR_ID
+                    + ", " + CategoryPathEntry.COLUMN_DESCENDANT_ID + ", " + CategoryPathEntry.COLUMN_DEPTH
+                    + ") SELECT ancestor." + CategoryPathEntry.COLUMN_ANCESTOR_ID + ", descendant."
+                    + CategoryPathEntry.COLUMN_DESCENDANT_ID + ", ancestor." + CategoryPathEntry.COLUMN_DEPTH
+                    + " + descendant." + CategoryPathEntry.COLUMN_DEPTH + " + 1 FROM " + CategoryPathEntry.TABLE_NAME
+                    + " AS ancestor, " + CategoryPathEntry.TABLE_NAME + " AS descendant WHERE ancestor."
+                    + CategoryPathEntry.COLUMN_DESCENDANT_ID + " = ? AND descendant."
+                    + CategoryPathEntry.COLUMN_ANCESTOR_ID + " = ?", new Object[] { parentId, id });
+        }
+
+        addRollupsToAncestors(db, id, "+");
+    }
+
+    /**
+     * Add (sign +) or remove (sign -) the rollups of the category to or from those of its ancestors.
+     */
+    private static void addRollupsToAncestors(SQLiteDatabase db, long id, String sign) {
+        StringBuilder sql = new StringBuilder("UPDATE " + CategoryEntry.TABLE_NAME + " SET ");
+        String[] columns = {
+                CategoryEntry.COLUMN_CATEGORY_ITEM_COUNT,
+                CategoryEntry.COLUMN_CATEGORY_UNITS,
+                CategoryEntry.COLUMN_CATEGORY_VALUE
+        };
+        for (int i = 0; i < columns.length; i++) {
+            sql.append(i == 0 ? "" : ", ").append(columns[i]).append(" = ").append(columns[i]).append(' ')
+                    .append(sign).append(" (SELECT ").append(columns[i]).append(" FROM ")
+                    .append(CategoryEntry.TABLE_NAME).append(" WHERE ").append(CategoryEntry._ID).append(" = ?)");
+        }
+        sql.append(" WHERE ").append(CategoryEntry._ID).append(" IN (SELECT ")
+                .append(CategoryPathEntry.COLUMN_ANCESTOR_ID).append(" FROM ").append(CategoryPathEntry.TABLE_NAME)
+                .append(" WHERE ").append(CategoryPathEntry.COLUMN_DESCENDANT_ID).append(" = ? AND ")
+                .append(CategoryPathEntry.COLUMN_DEPTH).append(" > 0)");
+
+        db.execSQL(sql.toString(), new Object[] { id, id, id, id });
+    }
+
+    /**
+     * Delete a category without sub-categories. Its products, deleted ones included, are left
+     * without category.
+     *
+     * @return The number of categories deleted, 0 or 1.
+     */
+    static int delete(SQLiteDatabase db, long id) {
+        int rowsDeleted;
+        db.beginTransaction();
+        try {
+            if (DatabaseUtils.longForQuery(db, "SELECT COUNT(*) FROM " + CategoryEntry.TABLE_NAME + " WHERE "
+                    + CategoryEntry.COLUMN_CATEGORY_PARENT_ID + " = ?", new String[] { String.valueOf(id) }) != 0) {
+                throw new IllegalArgumentException("Category " + id + " has sub-categories");
+            }
+
+            ContentValues unlinked = new ContentValues();
+            unlinked.putNull(ProductEntry.COLUMN_PRODUCT_CATEGORY_ID);
+            db.update(ProductEntry.TABLE_NAME, unlinked, ProductEntry.COLUMN_PRODUCT_CATEGORY_ID + " = ?",
+                    new String[] { String.valueOf(id) });
+
+            db.delete(CategoryPathEntry.TABLE_NAME, CategoryPathEntry.COLUMN_DESCENDANT_ID + " = ?",
+                    new String[] { String.valueOf(id) });
+            rowsDeleted = db.delete(CategoryEntry.TABLE_NAME, CategoryEntry._ID + " = ?",
+                    new String[] { String.valueOf(id) });
+
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        return rowsDeleted;
+    }
+
+    /**
+     * Query the live products of the category and of its descendants.
+     */
+    static Cursor queryProducts(SQLiteDatabase db, long id, String[] projection, String selection,
+                                String[] selectionArgs, String sortOrder, String limit,
+                                CancellationSignal cancellationSignal) {
+        String where = SELECTION_SUBTREE;
+        String[] whereArgs;
+        if (selectionArgs == null) {
+            whereArgs = new String[] { String.valueOf(id) };
+        } else {
+            whereArgs = new String[selectionArgs.length + 1];
+            whereArgs[0] = String.valueOf(id);
+            System.arraycopy(selectionArgs, 0, whereArgs, 1, selectionArgs.length);
+        }
+        if (!TextUtils.isEmpty(selection)) {
+            where += " AND (" + selection + ")";
+        }
+
+        return db.query(
+                false,
+                ProductEntry.TABLE_NAME,
+                projection,
+                DeletionOperations.live(where),
+                whereArgs,
+                null,
+                null,
+                sortOrder,
+                limit,
+                cancellationSignal
+        );
+    }
+
+    /**
+     * Check that the values describe a valid category, throw an exception otherwise.
+     */
+    private static void validate(ContentValues values, boolean required) {
+        if (required || values.containsKey(CategoryEntry.COLUMN_CATEGORY_NAME)) {
+            if (TextUtils.isEmpty(values.getAsString(CategoryEntry.COLUMN_CATEGORY_NAME))) {
+                throw new IllegalArgumentException("Category requires a name.");
+            }
+        }
+
+        if (values.containsKey(CategoryEntry.COLUMN_CATEGORY_ITEM_COUNT)
+                || values.containsKey(CategoryEntry.COLUMN_CATEGORY_UNITS)
+                || values.containsKey(CategoryEntry.COLUMN_CATEGORY_VALUE)) {
+            throw new IllegalArgumentException("Category rollups are maintained by the products.");
+        }
+    }
+
+    /**
+     * Check that the category of the product values, if any, exists, throw an exception otherwise.
+     */
+    static void checkProductCategory(SQLiteDatabase db, ContentValues values) {
+        Long id = values.getAsLong(ProductEntry.COLUMN_PRODUCT_CATEGORY_ID);
+        if (id != null) {
+            checkExists(db, id);
+        }
+    }
+
+    private static void checkExists(SQLiteDatabase db, long id) {
+        if (DatabaseUtils.longForQuery(db, "SELECT COUNT(*) FROM " + CategoryEntry.TABLE_NAME + " WHERE "
+                + CategoryEntry._ID + " = ?", new String[] { String.valueOf(id) }) == 0) {
+            throw new IllegalArgumentException("Unknown category " + id);
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package com.example.android.inventoryapp.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.text.TextUtils;
+
+import com.example.android.inventoryapp.data.ProductContract.DeletedProductEntry;
+import com.example.android.inventoryapp.data.ProductContract.LotEntry;
+import com.example.android.inventoryapp.data.ProductContract.ProductEntry;
+import com.example.android.inventoryapp.data.ProductContract.ReservationEntry;
+
+/**
+ * Soft deletion of the products of {@link ProductProvider}.
+ *
+ * Deleting only lists the product ids in the deleted products table, which never touches the
+ * product rows and their pictures. The rows are removed later by {@link #purge}, a few at a time.
+ */
+final class DeletionOperations {
+    /**
+     * Selection excluding the deleted products, to be combined with any selection on the products table.
+     */
+    static final String SELECTION_LIVE = ProductEntry._ID + " NOT IN (SELECT "
+            + DeletedProductEntry.COLUMN_PRODUCT_ID + " FROM " + DeletedProductEntry.TABLE_NAME + ")";
+
+    /**
+     * Deletion time of the deletions pulled by the sync. Undoing one would bring back a product the
+     * other stores deleted, and not dirty, so they are out of the undo window from the start and
+     * go with the next purge.
+     */
+    static final long DELETED_AT_REMOTE = 0;
+
+    private DeletionOperations() {}
+
+    /**
+     * Combine the selection with {@link #SELECTION_LIVE}.
+     */
+    static String live(String selection) {
+        return TextUtils.isEmpty(selection) ? SELECTION_LIVE : "(" + selection + ") AND " + SELECTION_LIVE;
+    }
+
+    /**
+     * Mark the live products matching the selection as deleted at the given time, within the
+     * current transaction.
+     *
+     * @return The number of products deleted.
+     */
+    static int markDeleted(SQLiteDatabase db, long changeVersion, long deletedAt, String selection,
+            String[] selectionArgs) {
+        SQLiteStatement statement = db.compileStatement("INSERT INTO " + DeletedProductEntry.TABLE_NAME + " ("
+                + DeletedProductEntry.COLUMN_PRODUCT_ID + ", " + DeletedProductEntry.COLUMN_DELETED_AT + ", "
+                + DeletedProductEntry.COLUMN_CHANGE_VERSION + ") SELECT " + ProductEntry._ID + ", ?, ? FROM "
+                + ProductEntry.TABLE_NAME + " WHERE " + live(selection));
+        try {
+            statement.bindLong(1, deletedAt);
+            statement.bindLong(2, changeVersion);
+            if (selectionArgs != null) {
+                for (int i = 0; i < selectionArgs.length; i++) {
+                    statement.bindString(3 + i, selectionArgs[i]);
+                }
+            }
+
+            return statement.executeUpdateDelete();
+        } finally {
+            statement.close();
+        }
+    }
+
+    /**
+     * Bring back the products of the latest deletion still in its undo window, in one transaction.
+     * Remote deletions are never in the window, see {@link #DELETED_AT_REMOTE}.
+     * The restored products get a new change version, so that the readers of the changes since a
+     * version see them again.
+     *
+     * @return The number of products restored.
+     */
+    static int undoLatest(SQLiteDatabase db) {
+        String inWindow = DeletedProductEntry.COLUMN_DELETED_AT + " > ?";
+        String selection = DeletedProductEntry.COLUMN_CHANGE_VERSION + " = (SELECT MAX("
+                + DeletedProductEntry.COLUMN_CHANGE_VERSION + ") FROM " + DeletedProductEntry.TABLE_NAME + " WHERE "
+                + inWindow + ") AND " + inWindow;
+        String windowStart = String.valueOf(System.currentTimeMillis() - ProductContract.DELETE_UNDO_WINDOW_MILLIS);
+        String[] selectionArgs = new String[] { windowStart, windowStart };
+        int restored;
+
+        db.beginTransaction();
+        try {
+            ContentValues values = new ContentValues();
+            values.put(ProductEntry.COLUMN_PRODUCT_CHANGE_VERSION, ProductSyncOperations.nextChangeVersion(db));
+            db.update(ProductEntry.TABLE_NAME, values, ProductEntry._ID + " IN (SELECT "
+                    + DeletedProductEntry.COLUMN_PRODUCT_ID + " FROM " + DeletedProductEntry.TABLE_NAME + " WHERE "
+                    + selection + ")", selectionArgs);
+            restored = db.delete(DeletedProductEntry.TABLE_NAME, selection, selectionArgs);
+
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        return restored;
+    }
+
+    /**
+     * Physically remove at most limit deleted products whose undo window has passed, in one
+     * transaction. Tombstones are recorded for the sync, like any other deletion.
+     * The transaction only covers limit rows, so the write lock is released quickly.
+     *
+     * @return The number of products removed, 0 once there is nothing left to purge.
+     */
+    static int purge(SQLiteDatabase db, int limit) {
+        int purged;
+
+        db.beginTransaction();
+        try {
+            StringBuilder ids = new StringBuilder();
+            Cursor cursor = db.query(
+                    DeletedProductEntry.TABLE_NAME,
+                    new String[] { DeletedProductEntry.COLUMN_PRODUCT_ID },
+                    DeletedProductEntry.COLUMN_DELETED_AT + " <= ?",
+                    new String[] { String.valueOf(System.currentTimeMillis() - ProductContract.DELETE_UNDO_WINDOW_MILLIS) },
+                    null,
+                    null,
+                    null,
+                    String.valueOf(limit)
+            );
+            try {
+                purged = cursor.getCount();
+                while (cursor.moveToNext()) {
+                    ids.append(ids.length() == 0 ? "" : ",").append(cursor.getLong(0));
+                }
+            } finally {
+                cursor.close();
+            }
+
+            if (purged != 0) {
+                remove(db, ProductSyncOperations.nextChangeVersion(db), ids.toString());
+            }
+
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        return purged;
+    }
+
+    /**
+     * Purge at once the deleted product holding the given SKU, if any, within the current
+     * transaction and its change version, so that a live product can take the SKU: the SKU index is unique and deleted
+     * products keep theirs until their purge. The deletion can no longer be undone.
+     *
+     * @return The number of products removed, 0 or 1.
+     */
+    static int releaseSku(SQLiteDatabase db, long changeVersion, String sku) {
+        if (sku == null) {
+            return 0;
+        }
+
+        Cursor cursor = db.query(
+                ProductEntry.TABLE_NAME,
+                new String[] { ProductEntry._ID },
+                ProductEntry.COLUMN_PRODUCT_SKU + " = ? AND " + ProductEntry._ID + " IN (SELECT "
+                        + DeletedProductEntry.COLUMN_PRODUCT_ID + " FROM " + DeletedProductEntry.TABLE_NAME + ")",
+                new String[] { sku },
+                null,
+                null,
+                null
+        );
+        try {
+            if (!cursor.moveToFirst()) {
+                return 0;
+            }
+            remove(db, changeVersion, String.valueOf(cursor.getLong(0)));
+        } finally {
+            cursor.close();
+        }
+
+        return 1;
+    }
+
+    /**
+     * Remove the deleted products of the given comma separated ids with their lots and holds,
+     * recording their tombstones with the given change version, within the current transaction.
+     */
+    private static void remove(SQLiteDatabase db, long changeVersion, String ids) {
+        String selection = ProductEntry._ID + " IN (" + ids + ")";
+        ProductSyncOperations.recordTombstones(db, changeVersion, selection, null);
+        db.delete(ProductEntry.TABLE_NAME, selection, null);
+        db.delete(DeletedProductEntry.TABLE_NAME,
+                DeletedProductEntry.COLUMN_PRODUCT_ID + " IN (" + ids + ")", null);
+        db.delete(LotEntry.TABLE_NAME, LotEntry.COLUMN_PRODUCT_ID + " IN (" + ids + ")", null);
+        db.delete(ReservationEntry.TABLE_NAME, ReservationEntry.COLUMN_PRODUCT_ID + " IN (" + ids + ")", null);
+    }
+}
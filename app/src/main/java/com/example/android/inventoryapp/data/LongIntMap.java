@@ -0,0 +1,143 @@
+package com.example.android.inventoryapp.data;
+
+/**
+ * Map of positive long keys (product ids) to int values, with open addressing in two primitive
+ * arrays: no boxing and no entry objects, 24 to 48 bytes per key. Keys cannot be removed.
+ *
+ * The slots can be walked with {@link #capacity()}, {@link #hasKeyAt(int)}, {@link #keyAt(int)}
+ * and {@link #valueAt(int)}; a slot stays the same until the map grows.
+ */
+final class LongIntMap {
+    /* 0 marks an empty slot, which is why keys must be positive. */
+    private long[] mKeys;
+    private int[] mValues;
+    private int mSize;
+    private int mMask;
+
+    /**
+     * @param expectedSize Number of keys the map holds without growing.
+     */
+    LongIntMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, expectedSize * 2 - 1)) * 2;
+        allocate(capacity);
+    }
+
+    int size() {
+        return mSize;
+    }
+
+    /**
+     * Return the value of the key, or the given default if the key is absent.
+     */
+    int get(long key, int defaultValue) {
+        int slot = slotOf(key);
+        return slot == -1 ? defaultValue : mValues[slot];
+    }
+
+    void put(long key, int value) {
+        /* Insert first: it may grow the arrays. */
+        int slot = insert(key);
+        mValues[slot] = value;
+    }
+
+    /**
+     * Add the delta to the value of the key, starting from 0 if the key is absent.
+     *
+     * @return The new value.
+     */
+    int add(long key, int delta) {
+        int slot = insert(key);
+        mValues[slot] += delta;
+        return mValues[slot];
+    }
+
+    /**
+     * Return the slot of the key, or -1 if the key is absent.
+     */
+    int slotOf(long key) {
+        checkKey(key);
+        for (int slot = hash(key) & mMask; ; slot = (slot + 1) & mMask) {
+            if (mKeys[slot] == key) {
+                return slot;
+            }
+            if (mKeys[slot] == 0) {
+                return -1;
+            }
+        }
+    }
+
+    int capacity() {
+        return mKeys.length;
+    }
+
+    boolean hasKeyAt(int slot) {
+        return mKeys[slot] != 0;
+    }
+
+    long keyAt(int slot) {
+        return mKeys[slot];
+    }
+
+    int valueAt(int slot) {
+        return mValues[slot];
+    }
+
+    /**
+     * Return the slot of the key, adding the key with the value 0 if it is absent.
+     */
+    private int insert(long key) {
+        checkKey(key);
+        if ((mSize + 1) * 2 > mKeys.length) {
+            grow();
+        }
+
+        int slot = hash(key) & mMask;
+        while (mKeys[slot] != 0) {
+            if (mKeys[slot] == key) {
+                return slot;
+            }
+            slot = (slot + 1) & mMask;
+        }
+
+        mKeys[slot] = key;
+        mSize++;
+        return slot;
+    }
+
+    private void grow() {
+        long[] keys = mKeys;
+        int[] values = mValues;
+        allocate(keys.length * 2);
+
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != 0) {
+                int slot = hash(keys[i]) & mMask;
+                while (mKeys[slot] != 0) {
+                    slot = (slot + 1) & mMask;
+                }
+                mKeys[slot] = keys[i];
+                mValues[slot] = values[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        mKeys = new long[capacity];
+        mValues = new int[capacity];
+        mMask = capacity - 1;
+    }
+
+    /**
+     * Spread the bits of the key, so that consecutive ids do not cluster.
+     */
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private static void checkKey(long key) {
+        if (key <= 0) {
+            throw new IllegalArgumentException("Keys must be positive, got " + key);
+        }
+    }
+}
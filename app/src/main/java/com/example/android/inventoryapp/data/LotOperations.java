@@ -0,0 +1,207 @@
+package com.example.android.inventoryapp.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.os.CancellationSignal;
+import android.text.TextUtils;
+
+import com.example.android.inventoryapp.data.ProductContract.DeletedProductEntry;
+import com.example.android.inventoryapp.data.ProductContract.LotDepletionEntry;
+import com.example.android.inventoryapp.data.ProductContract.LotEntry;
+import com.example.android.inventoryapp.data.ProductContract.ProductEntry;
+import com.example.android.inventoryapp.sync.SyncChange;
+
+/**
+ * Lots of {@link ProductProvider}, behind {@link LotEntry#CONTENT_URI}.
+ *
+ * The lot quantity of the products is maintained by the triggers of {@link ProductDbHelper}. A
+ * decrease of a quantity, whatever statement writes it, queues its units in
+ * {@link LotDepletionEntry#TABLE_NAME}; every write decreasing quantities then calls
+ * {@link #deplete(SQLiteDatabase)} before it commits, which empties the whole queue.
+ */
+final class LotOperations {
+    /**
+     * Selection of the lots of live products. It only reads the product id of the lot, which the
+     * indexes of the lots cover.
+     */
+    private static final String SELECTION_LIVE = LotEntry.COLUMN_PRODUCT_ID + " NOT IN (SELECT "
+            + DeletedProductEntry.COLUMN_PRODUCT_ID + " FROM " + DeletedProductEntry.TABLE_NAME + ")";
+
+    private LotOperations() {}
+
+    /**
+     * Receive a lot: insert it and add its units to the quantity of its product, in a single transaction.
+     *
+     * @return The id of the lot.
+     */
+    static long receive(SQLiteDatabase db, ContentValues values) {
+        Long productId = values.getAsLong(LotEntry.COLUMN_PRODUCT_ID);
+        if (productId == null) {
+            throw new IllegalArgumentException("Lot requires a product.");
+        }
+        if (TextUtils.isEmpty(values.getAsString(LotEntry.COLUMN_LOT_CODE))) {
+            throw new IllegalArgumentException("Lot requires a lot code.");
+        }
+        if (values.getAsLong(LotEntry.COLUMN_EXPIRES_AT) == null) {
+            throw new IllegalArgumentException("Lot requires an expiry date.");
+        }
+        Integer quantity = values.getAsInteger(LotEntry.COLUMN_QUANTITY);
+        if (quantity == null || quantity <= 0) {
+            throw new IllegalArgumentException("Lot requires valid quantity.");
+        }
+
+        long id;
+        db.beginTransaction();
+        try {
+            SQLiteStatement update = db.compileStatement("UPDATE " + ProductEntry.TABLE_NAME + " SET "
+                    + ProductEntry.COLUMN_PRODUCT_QUANTITY + " = " + ProductEntry.COLUMN_PRODUCT_QUANTITY + " + ?, "
+                    + ProductEntry.COLUMN_PRODUCT_CHANGE_VERSION + " = ?, "
+                    + ProductEntry.COLUMN_PRODUCT_VERSION + " = " + ProductEntry.COLUMN_PRODUCT_VERSION + " + 1, "
+                    + ProductEntry.COLUMN_PRODUCT_DIRTY + " = " + ProductEntry.COLUMN_PRODUCT_DIRTY + " | ? WHERE "
+                    + ProductEntry._ID + " = ? AND " + DeletionOperations.SELECTION_LIVE);
+            try {
+                update.bindLong(1, quantity);
+                update.bindLong(2, ProductSyncOperations.nextChangeVersion(db));
+                update.bindLong(3, SyncChange.FIELD_QUANTITY);
+                update.bindLong(4, productId);
+                if (update.executeUpdateDelete() == 0) {
+                    throw new IllegalArgumentException("Lot of unknown product " + productId);
+                }
+            } finally {
+                update.close();
+            }
+
+            id = db.insertOrThrow(LotEntry.TABLE_NAME, null, values);
+
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        return id;
+    }
+
+    /**
+     * Take the queued units from the lots expiring first, and empty the queue. The lots of each
+     * product are walked once in expiry order, taking from each the smaller of the units left and
+     * its quantity: the lots emptied are deleted and the last one reduced. Units beyond the lots
+     * are dropped, the stock outside any lot is not tracked. Must be called in the transaction of
+     * the write that decreased the quantities.
+     */
+    static void deplete(SQLiteDatabase db) {
+        Cursor queued = db.rawQuery("SELECT " + LotDepletionEntry.COLUMN_PRODUCT_ID + ", SUM("
+                + LotDepletionEntry.COLUMN_UNITS + ") FROM " + LotDepletionEntry.TABLE_NAME + " GROUP BY "
+                + LotDepletionEntry.COLUMN_PRODUCT_ID, null);
+        try {
+            if (queued.getCount() == 0) {
+                return;
+            }
+
+            /* The lots emptied come first in expiry order: a range of the index up to the last one. */
+            SQLiteStatement delete = db.compileStatement("DELETE FROM " + LotEntry.TABLE_NAME + " WHERE "
+                    + LotEntry.COLUMN_PRODUCT_ID + " = ? AND (" + LotEntry.COLUMN_EXPIRES_AT + " < ?2 OR ("
+                    + LotEntry.COLUMN_EXPIRES_AT + " = ?2 AND " + LotEntry._ID + " <= ?))");
+            SQLiteStatement update = db.compileStatement("UPDATE " + LotEntry.TABLE_NAME + " SET "
+                    + LotEntry.COLUMN_QUANTITY + " = " + LotEntry.COLUMN_QUANTITY + " - ? WHERE " + LotEntry._ID + " = ?");
+            try {
+                while (queued.moveToNext()) {
+                    depleteProduct(db, queued.getLong(0), queued.getLong(1), delete, update);
+                }
+            } finally {
+                delete.close();
+                update.close();
+            }
+        } finally {
+            queued.close();
+        }
+
+        db.execSQL("DELETE FROM " + LotDepletionEntry.TABLE_NAME);
+    }
+
+    private static void depleteProduct(SQLiteDatabase db, long productId, long units,
+                                       SQLiteStatement delete, SQLiteStatement update) {
+        long lastEmptiedId = -1;
+        long lastEmptiedExpiresAt = 0;
+        long partialId = -1;
+        long partialUnits = 0;
+
+        Cursor lots = db.query(LotEntry.TABLE_NAME,
+                new String[] { LotEntry._ID, LotEntry.COLUMN_EXPIRES_AT, LotEntry.COLUMN_QUANTITY },
+                LotEntry.COLUMN_PRODUCT_ID + " = ?", new String[] { String.valueOf(productId) },
+                null, null, LotEntry.COLUMN_EXPIRES_AT + ", " + LotEntry._ID);
+        try {
+            long left = units;
+            while (left > 0 && lots.moveToNext()) {
+                long take = Math.min(left, lots.getLong(2));
+                if (take == lots.getLong(2)) {
+                    lastEmptiedId = lots.getLong(0);
+                    lastEmptiedExpiresAt = lots.getLong(1);
+                } else {
+                    partialId = lots.getLong(0);
+                    partialUnits = take;
+                }
+                left -= take;
+            }
+        } finally {
+            lots.close();
+        }
+
+        if (lastEmptiedId != -1) {
+            delete.bindLong(1, productId);
+            delete.bindLong(2, lastEmptiedExpiresAt);
+            delete.bindLong(3, lastEmptiedId);
+            delete.executeUpdateDelete();
+        }
+        if (partialId != -1) {
+            update.bindLong(1, partialUnits);
+            update.bindLong(2, partialId);
+            update.executeUpdateDelete();
+        }
+    }
+
+    /**
+     * Query the lots of the live products, in expiry order unless sorted otherwise.
+     *
+     * @param expiresBefore Time the lots expire before, in milliseconds since the epoch, or null for every lot.
+     */
+    static Cursor query(SQLiteDatabase db, String[] projection, String selection, String[] selectionArgs,
+                        String sortOrder, Long expiresBefore, String limit, CancellationSignal cancellationSignal) {
+        String where = SELECTION_LIVE;
+        String[] whereArgs = selectionArgs;
+        if (expiresBefore != null) {
+            /* Range of the expiry index, so that the query does not read the lots expiring later. */
+            where = LotEntry.COLUMN_EXPIRES_AT + " < ? AND " + where;
+            whereArgs = prepend(String.valueOf(expiresBefore), selectionArgs);
+        }
+        if (!TextUtils.isEmpty(selection)) {
+            where += " AND (" + selection + ")";
+        }
+
+        return db.query(
+                false,
+                LotEntry.TABLE_NAME,
+                projection,
+                where,
+                whereArgs,
+                null,
+                null,
+                TextUtils.isEmpty(sortOrder) ? LotEntry.COLUMN_EXPIRES_AT : sortOrder,
+                limit,
+                cancellationSignal
+        );
+    }
+
+    private static String[] prepend(String arg, String[] args) {
+        if (args == null) {
+            return new String[] { arg };
+        }
+
+        String[] all = new String[args.length + 1];
+        all[0] = arg;
+        System.arraycopy(args, 0, all, 1, args.length);
+
+        return all;
+    }
+}
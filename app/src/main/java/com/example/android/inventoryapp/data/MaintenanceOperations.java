@@ -0,0 +1,207 @@
+package com.example.android.inventoryapp.data;
+
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Maintenance steps of {@link ProductProvider}, behind {@link ProductContract#METHOD_MAINTENANCE}.
+ *
+ * The steps that write work in small chunks, each its own short transaction, with a pause in
+ * between so that the foreground writers get the write lock. They stop once their budget is spent,
+ * the next run continues where they stopped.
+ */
+final class MaintenanceOperations {
+    private static final String LOG_TAG = MaintenanceOperations.class.getSimpleName();
+
+    /**
+     * Number of pages returned to the file system per transaction, 256 KB with 4 KB pages.
+     */
+    private static final int VACUUM_CHUNK_PAGES = 64;
+
+    /**
+     * Pause between two chunks, in milliseconds.
+     */
+    private static final long PAUSE_MILLIS = 20;
+
+    /**
+     * Value of PRAGMA auto_vacuum for incremental vacuum.
+     */
+    static final int AUTO_VACUUM_INCREMENTAL = 2;
+
+    private MaintenanceOperations() {}
+
+    /**
+     * Refresh the statistics of the query planner. PRAGMA optimize (SQLite 3.18) only analyzes the
+     * tables whose statistics are missing or stale. Older versions, and databases never analyzed,
+     * analyze every table, one per transaction.
+     */
+    static Bundle analyze(SQLiteDatabase db, long budgetMillis) {
+        long deadline = SystemClock.elapsedRealtime() + budgetMillis;
+
+        boolean analyzed = DatabaseUtils.longForQuery(db,
+                "SELECT COUNT(*) FROM sqlite_master WHERE name = 'sqlite_stat1'", null) != 0;
+        if (analyzed && supportsOptimize(DatabaseUtils.stringForQuery(db, "SELECT sqlite_version()", null))) {
+            execPragma(db, "PRAGMA optimize");
+            return result(0, true);
+        }
+
+        List<String> tables = new ArrayList<>();
+        Cursor cursor = db.rawQuery("SELECT name FROM sqlite_master WHERE type = 'table'"
+                + " AND name NOT LIKE 'sqlite_%' AND name != 'android_metadata'", null);
+        try {
+            while (cursor.moveToNext()) {
+                tables.add(cursor.getString(0));
+            }
+        } finally {
+            cursor.close();
+        }
+
+        int count = 0;
+        for (String table : tables) {
+            if (count != 0) {
+                if (SystemClock.elapsedRealtime() >= deadline) {
+                    return result(count, false);
+                }
+                SystemClock.sleep(PAUSE_MILLIS);
+            }
+
+            db.execSQL("ANALYZE " + table);
+            count++;
+        }
+
+        return result(count, true);
+    }
+
+    /**
+     * Return the free pages of the database to the file system, {@link #VACUUM_CHUNK_PAGES} at a time.
+     *
+     * Incremental vacuum needs auto_vacuum, which can only be turned on before the first table is
+     * created (see {@link ProductDbHelper#onConfigure}) or by a full VACUUM. A full VACUUM rewrites
+     * the whole database under the write lock, beyond any budget, so databases created before are
+     * left as they are and reported; they are converted when a backup is restored, see
+     * {@link ProductBackup#restore}.
+     */
+    static Bundle vacuum(SQLiteDatabase db, long budgetMillis) {
+        long deadline = SystemClock.elapsedRealtime() + budgetMillis;
+
+        if (DatabaseUtils.longForQuery(db, "PRAGMA auto_vacuum", null) != AUTO_VACUUM_INCREMENTAL) {
+            String message = "Incremental vacuum unavailable, "
+                    + DatabaseUtils.longForQuery(db, "PRAGMA freelist_count", null) + " free pages kept";
+            Log.w(LOG_TAG, message);
+            Bundle result = result(0, true);
+            result.putString(ProductContract.EXTRA_MESSAGE, message);
+            return result;
+        }
+
+        long reclaimed = 0;
+        long free = DatabaseUtils.longForQuery(db, "PRAGMA freelist_count", null);
+        while (free != 0) {
+            if (reclaimed != 0) {
+                if (SystemClock.elapsedRealtime() >= deadline) {
+                    return result(reclaimed, false);
+                }
+                SystemClock.sleep(PAUSE_MILLIS);
+            }
+
+            execPragma(db, "PRAGMA incremental_vacuum(" + VACUUM_CHUNK_PAGES + ")");
+            long left = DatabaseUtils.longForQuery(db, "PRAGMA freelist_count", null);
+            if (left >= free) {
+                /* No progress, leave the rest to the next run. */
+                return result(reclaimed, false);
+            }
+
+            reclaimed += free - left;
+            free = left;
+        }
+
+        return result(reclaimed, true);
+    }
+
+    /**
+     * Copy the write-ahead log back into the database, so that the space reclaimed by the vacuum
+     * reaches the file. The checkpoint is passive: it never waits for, nor blocks, the other connections.
+     */
+    static Bundle checkpoint(SQLiteDatabase db) {
+        Cursor cursor = db.rawQuery("PRAGMA wal_checkpoint(PASSIVE)", null);
+        try {
+            /* Columns: busy, frames in the log, frames checkpointed. */
+            if (!cursor.moveToFirst()) {
+                return result(0, true);
+            }
+
+            return result(Math.max(0, cursor.getLong(2)), cursor.getLong(2) == cursor.getLong(1));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Check the integrity of the database with PRAGMA quick_check, which skips the costly checks
+     * of the index contents. It only reads, in write-ahead logging mode writers are not blocked.
+     */
+    static Bundle quickCheck(SQLiteDatabase db) {
+        StringBuilder message = new StringBuilder();
+        int count = 0;
+
+        Cursor cursor = db.rawQuery("PRAGMA quick_check(10)", null);
+        try {
+            while (cursor.moveToNext()) {
+                message.append(message.length() == 0 ? "" : "\n").append(cursor.getString(0));
+                count++;
+            }
+        } finally {
+            cursor.close();
+        }
+
+        boolean ok = count == 1 && "ok".equals(message.toString());
+        if (!ok) {
+            Log.e(LOG_TAG, "Database integrity check failed: " + message);
+        }
+
+        Bundle result = result(ok ? 0 : count, true);
+        result.putString(ProductContract.EXTRA_MESSAGE, message.toString());
+        return result;
+    }
+
+    /**
+     * Return true if the SQLite version (such as "3.19.4") supports PRAGMA optimize, added in 3.18.
+     */
+    static boolean supportsOptimize(String version) {
+        String[] parts = version.split("\\.");
+        try {
+            int major = Integer.parseInt(parts[0]);
+            int minor = parts.length > 1 ? Integer.parseInt(parts[1]) : 0;
+            return major > 3 || (major == 3 && minor >= 18);
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Run a pragma that may return rows, which execSQL refuses on some versions.
+     */
+    private static void execPragma(SQLiteDatabase db, String pragma) {
+        Cursor cursor = db.rawQuery(pragma, null);
+        try {
+            while (cursor.moveToNext()) {
+                /* The rows only report what was done. */
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static Bundle result(long count, boolean done) {
+        Bundle result = new Bundle();
+        result.putInt(ProductContract.EXTRA_COUNT, (int) count);
+        result.putBoolean(ProductContract.EXTRA_DONE, done);
+        return result;
+    }
+}
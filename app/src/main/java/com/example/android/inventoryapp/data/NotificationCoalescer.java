@@ -0,0 +1,185 @@
+package com.example.android.inventoryapp.data;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Coalesces the change notifications of {@link ProductProvider}.
+ *
+ * The first notification of a window schedules a flush, the others of the same window join it, and
+ * each URI is delivered once per flush. When more than the collapse threshold of item URIs
+ * ("content://.../products/3") share a list URI, the list URI is delivered instead, which reaches their observers
+ * too. Inside a batch scope nothing is flushed, everything is delivered once the outermost scope ends.
+ * URIs are handled as strings, so this class does not depend on the platform.
+ */
+public final class NotificationCoalescer {
+    /**
+     * Delivers a notification, as {@code ContentResolver#notifyChange}.
+     */
+    public interface Sink {
+        void notifyChange(String uri);
+    }
+
+    /**
+     * Runs the flush after the given delay, on any thread.
+     */
+    public interface Scheduler {
+        void schedule(Runnable task, long delayMillis);
+    }
+
+    private final Sink mSink;
+    private final Scheduler mScheduler;
+    private final long mWindowMillis;
+    private final int mCollapseThreshold;
+
+    private final Set<String> mPending = new LinkedHashSet<>();
+    private boolean mScheduled;
+    private int mBatchDepth;
+
+    private final Runnable mFlush = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (NotificationCoalescer.this) {
+                mScheduled = false;
+                if (mBatchDepth != 0) {
+                    return;
+                }
+            }
+
+            flush();
+        }
+    };
+
+    /**
+     * Constructs a new {@link NotificationCoalescer}.
+     *
+     * @param sink              Destination of the notifications.
+     * @param scheduler         Scheduler of the flushes.
+     * @param windowMillis      Time a notification may wait for others, 0 to deliver at once.
+     * @param collapseThreshold Number of item URIs of a list above which the list URI is delivered instead.
+     */
+    public NotificationCoalescer(Sink sink, Scheduler scheduler, long windowMillis, int collapseThreshold) {
+        mSink = sink;
+        mScheduler = scheduler;
+        mWindowMillis = windowMillis;
+        mCollapseThreshold = collapseThreshold;
+    }
+
+    /**
+     * Queue a notification for the URI.
+     */
+    public void notifyChange(String uri) {
+        boolean deliverNow;
+        synchronized (this) {
+            mPending.add(uri);
+            deliverNow = mWindowMillis == 0 && mBatchDepth == 0;
+            if (!deliverNow && !mScheduled && mBatchDepth == 0) {
+                mScheduled = true;
+                mScheduler.schedule(mFlush, mWindowMillis);
+            }
+        }
+
+        if (deliverNow) {
+            flush();
+        }
+    }
+
+    /**
+     * Start a batch scope. Scopes nest, every scope must be ended with {@link #endBatch()}.
+     */
+    public synchronized void beginBatch() {
+        mBatchDepth++;
+    }
+
+    /**
+     * End a batch scope, flushing the notifications queued so far once the outermost scope ends.
+     */
+    public void endBatch() {
+        synchronized (this) {
+            if (mBatchDepth == 0) {
+                throw new IllegalStateException("No batch scope to end.");
+            }
+            if (--mBatchDepth != 0) {
+                return;
+            }
+        }
+
+        flush();
+    }
+
+    /**
+     * Deliver the queued notifications now.
+     */
+    public void flush() {
+        List<String> uris;
+        synchronized (this) {
+            if (mPending.isEmpty()) {
+                return;
+            }
+
+            uris = collapse(mPending, mCollapseThreshold);
+            mPending.clear();
+        }
+
+        for (String uri : uris) {
+            mSink.notifyChange(uri);
+        }
+    }
+
+    /**
+     * Replace the item URIs of every list with more than threshold of them by the list URI,
+     * and drop the item URIs of the lists notified anyway.
+     */
+    static List<String> collapse(Set<String> uris, int threshold) {
+        Map<String, Integer> itemCounts = new HashMap<>();
+        for (String uri : uris) {
+            String list = listOf(uri);
+            if (list != null) {
+                Integer count = itemCounts.get(list);
+                itemCounts.put(list, count == null ? 1 : count + 1);
+            }
+        }
+
+        Set<String> lists = new LinkedHashSet<>();
+        for (String uri : uris) {
+            String list = listOf(uri);
+            if (list == null) {
+                lists.add(uri);
+            } else if (itemCounts.get(list) > threshold) {
+                lists.add(list);
+            }
+        }
+
+        List<String> result = new ArrayList<>(lists);
+        for (String uri : uris) {
+            String list = listOf(uri);
+            if (list != null && !lists.contains(list)) {
+                result.add(uri);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Return the list URI of an item URI (whose last segment is an id), or null for other URIs.
+     */
+    static String listOf(String uri) {
+        int slash = uri.lastIndexOf('/');
+        if (slash <= 0 || slash == uri.length() - 1) {
+            return null;
+        }
+
+        for (int i = slash + 1; i < uri.length(); i++) {
+            if (!Character.isDigit(uri.charAt(i))) {
+                return null;
+            }
+        }
+
+        return uri.substring(0, slash);
+    }
+}
@@ -0,0 +1,158 @@
+package com.example.android.inventoryapp.data;
+
+import android.content.ContentValues;
+
+import com.example.android.inventoryapp.data.ProductContract.ProductEntry;
+
+/**
+ * A product row, with typed fields: quantities are ints and prices are long cents, never strings.
+ *
+ * Instances are mutable so that a list can read every row into the same one, see {@link ProductMapper}.
+ * Fields that were not read keep their defaults.
+ */
+public final class Product {
+    /**
+     * Largest price accepted, in cents, so that sums over many products cannot overflow.
+     */
+    public static final long MAX_PRICE_CENTS = Integer.MAX_VALUE;
+
+    public long id = -1;
+    public String name;
+    public String sku;
+    public int quantity;
+    public long priceCents;
+    public int reorderLevel;
+    public long version = -1;
+    public byte[] picture;
+
+    /**
+     * Return the values of the product for an insert: name, SKU (if any), quantity, price, reorder
+     * level and picture (if any).
+     */
+    public ContentValues toContentValues() {
+        ContentValues values = new ContentValues();
+        values.put(ProductEntry.COLUMN_PRODUCT_NAME, name);
+        if (sku != null) {
+            values.put(ProductEntry.COLUMN_PRODUCT_SKU, sku);
+        }
+        values.put(ProductEntry.COLUMN_PRODUCT_QUANTITY, quantity);
+        values.put(ProductEntry.COLUMN_PRODUCT_PRICE, priceCents);
+        values.put(ProductEntry.COLUMN_PRODUCT_REORDER_LEVEL, reorderLevel);
+        if (picture != null) {
+            values.put(ProductEntry.COLUMN_PRODUCT_PICTURE, picture);
+        }
+
+        return values;
+    }
+
+    /**
+     * Check that the values describe a valid product, throw an exception otherwise. This is the
+     * only validation of the products, used by every write of {@link ProductProvider}.
+     *
+     * @param required True if the name, quantity, price and picture must be present, as for a new product.
+     */
+    public static void validate(ContentValues values, boolean required) {
+        if (required || values.containsKey(ProductEntry.COLUMN_PRODUCT_NAME)) {
+            String name = values.getAsString(ProductEntry.COLUMN_PRODUCT_NAME);
+            if (name == null) {
+                throw new IllegalArgumentException("Product requires a name.");
+            }
+        }
+
+        if (required || values.containsKey(ProductEntry.COLUMN_PRODUCT_QUANTITY)) {
+            Integer quantity = values.getAsInteger(ProductEntry.COLUMN_PRODUCT_QUANTITY);
+            if (quantity == null || quantity < 0) {
+                throw new IllegalArgumentException("Product requires valid quantity.");
+            }
+        }
+
+        if (required || values.containsKey(ProductEntry.COLUMN_PRODUCT_PRICE)) {
+            /* A fractional value is a price in currency units, not in cents: refuse it rather than truncate it. */
+            Object raw = values.get(ProductEntry.COLUMN_PRODUCT_PRICE);
+            Long price = values.getAsLong(ProductEntry.COLUMN_PRODUCT_PRICE);
+            if (raw instanceof Float || raw instanceof Double
+                    || price == null || price < 0 || price > MAX_PRICE_CENTS) {
+                throw new IllegalArgumentException("Product requires valid price.");
+            }
+        }
+
+        if (values.containsKey(ProductEntry.COLUMN_PRODUCT_LOT_QUANTITY)) {
+            throw new IllegalArgumentException("Lot quantity is maintained by the lots.");
+        }
+
+        if (values.containsKey(ProductEntry.COLUMN_PRODUCT_RESERVED)) {
+            throw new IllegalArgumentException("Reserved units are maintained by the reservations.");
+        }
+
+        if (values.containsKey(ProductEntry.COLUMN_PRODUCT_REORDER_LEVEL)) {
+            Integer reorderLevel = values.getAsInteger(ProductEntry.COLUMN_PRODUCT_REORDER_LEVEL);
+            if (reorderLevel == null || reorderLevel < 0) {
+                throw new IllegalArgumentException("Product requires valid reorder level.");
+            }
+        }
+
+        if (required || values.containsKey(ProductEntry.COLUMN_PRODUCT_PICTURE)) {
+            byte[] picture = values.getAsByteArray(ProductEntry.COLUMN_PRODUCT_PICTURE);
+            if (picture == null) {
+                throw new IllegalArgumentException("Product requires a picture.");
+            }
+        }
+    }
+
+    /**
+     * Parse a price typed by the user, such as "12", "12.5" or "12,50", into cents.
+     *
+     * @throws IllegalArgumentException if the text is not a positive amount with at most 2 decimals.
+     */
+    public static long parsePrice(String text) {
+        long units = 0;
+        int decimals = -1;
+        long cents = 0;
+        int digits = 0;
+
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '.' || c == ',') {
+                if (decimals != -1) {
+                    throw new IllegalArgumentException("Invalid price " + text);
+                }
+                decimals = 0;
+            } else if (c >= '0' && c <= '9') {
+                digits++;
+                if (decimals == -1) {
+                    units = units * 10 + (c - '0');
+                    if (units > MAX_PRICE_CENTS / 100) {
+                        throw new IllegalArgumentException("Price too large " + text);
+                    }
+                } else if (++decimals > 2) {
+                    throw new IllegalArgumentException("Price with more than 2 decimals " + text);
+                } else {
+                    cents = cents * 10 + (c - '0');
+                }
+            } else {
+                throw new IllegalArgumentException("Invalid price " + text);
+            }
+        }
+
+        if (digits == 0) {
+            throw new IllegalArgumentException("Invalid price " + text);
+        }
+
+        /* "12.5" is 12 units and 50 cents. */
+        return units * 100 + (decimals == 1 ? cents * 10 : cents);
+    }
+
+    /**
+     * Format a price in cents with 2 decimals, such as "12.50".
+     */
+    public static String formatPrice(long cents) {
+        StringBuilder builder = new StringBuilder(12);
+        if (cents < 0) {
+            builder.append('-');
+            cents = -cents;
+        }
+
+        long fraction = cents % 100;
+        return builder.append(cents / 100).append('.').append(fraction < 10 ? "0" : "").append(fraction).toString();
+    }
+}
@@ -0,0 +1,497 @@
+package com.example.android.inventoryapp.data;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+import com.example.android.inventoryapp.data.ProductContract.ProductEntry;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Online backup and restore of the inventory database.
+ *
+ * A backup directory holds one gzipped snapshot per backup ({@code <timestamp>.db.gz}), a shared
+ * {@code pictures/} directory and a picture index. Pictures are left out of the snapshot and
+ * stored once per content hash. The index keeps the change version of every product at the last
+ * backup with the hash of its picture: a backup only reads and hashes the pictures of the products
+ * written since, the others keep their hash. It costs the small columns of the catalog and the
+ * pictures that changed.
+ *
+ * The snapshot is taken on a dedicated connection, in a single transaction copying the rows
+ * without the unchanged pictures, so the provider's writes only wait for that short copy.
+ */
+public class ProductBackup {
+    public static final String LOG_TAG = ProductBackup.class.getSimpleName();
+
+    /**
+     * Extension of the compressed database snapshots.
+     */
+    public static final String SNAPSHOT_EXTENSION = ".db.gz";
+
+    private static final String PICTURES_DIRECTORY = "pictures";
+
+    /**
+     * Table of the snapshot mapping each product to the hash of its picture file.
+     */
+    private static final String TABLE_PICTURES = "backup_pictures";
+
+    /**
+     * Database file of the backup directory holding the picture index.
+     */
+    private static final String PICTURE_INDEX = "pictures.db";
+
+    /**
+     * Table of the picture index: the change version and picture hash of every product at the last backup.
+     */
+    private static final String TABLE_PICTURE_INDEX = "picture_index";
+
+    /**
+     * Table of the temporary database receiving the pictures changed since the last backup.
+     */
+    private static final String TABLE_CHANGED_PICTURES = "changed_pictures";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Summary of a backup.
+     */
+    public static final class Report {
+        public File snapshot;
+        public int picturesWritten;
+        public int picturesReused;
+        public long bytesWritten;
+        public long durationMillis;
+
+        @Override
+        public String toString() {
+            return snapshot + ": " + picturesWritten + " pictures written, " + picturesReused
+                    + " reused, " + bytesWritten + " bytes in " + durationMillis + " ms";
+        }
+    }
+
+    private final Context mContext;
+    private final File mBackupDirectory;
+
+    /**
+     * Constructs a new {@link ProductBackup}.
+     *
+     * @param context         of the app.
+     * @param backupDirectory Directory holding the backups.
+     */
+    public ProductBackup(Context context, File backupDirectory) {
+        mContext = context.getApplicationContext();
+        mBackupDirectory = backupDirectory;
+    }
+
+    /**
+     * Take a consistent snapshot of the database and store it compressed in the backup directory.
+     * Must be called from a background thread.
+     *
+     * @param incremental If true, only the pictures changed since the last backup are read, and
+     *                    picture files already present in the backup directory are reused.
+     *                    Otherwise every picture is hashed and written again.
+     */
+    public Report backup(boolean incremental) throws IOException {
+        long start = System.nanoTime();
+        Report report = new Report();
+
+        File pictures = new File(mBackupDirectory, PICTURES_DIRECTORY);
+        if (!pictures.isDirectory() && !pictures.mkdirs()) {
+            throw new IOException("Cannot create " + pictures);
+        }
+
+        File database = mContext.getDatabasePath(ProductDbHelper.DATABASE_NAME);
+        File snapshot = new File(mContext.getCacheDir(), "backup-" + System.currentTimeMillis() + ".db");
+        File changed = new File(snapshot.getPath() + "-pictures");
+
+        SQLiteDatabase index = openPictureIndex(incremental);
+        try {
+            takeSnapshot(database, snapshot, new File(index.getPath()), changed);
+
+            /* Store the changed pictures, the snapshot then only holds the small columns. */
+            SQLiteDatabase db = SQLiteDatabase.openDatabase(snapshot.getPath(), null, SQLiteDatabase.OPEN_READWRITE);
+            SQLiteDatabase changedPictures = SQLiteDatabase.openDatabase(changed.getPath(), null,
+                    SQLiteDatabase.OPEN_READONLY);
+            try {
+                extractPictures(db, changedPictures, index, pictures, incremental, report);
+            } finally {
+                changedPictures.close();
+                db.close();
+            }
+
+            report.snapshot = new File(mBackupDirectory, System.currentTimeMillis() + SNAPSHOT_EXTENSION);
+            report.bytesWritten += copy(
+                    new FileInputStream(snapshot),
+                    new GZIPOutputStream(new FileOutputStream(report.snapshot), BUFFER_SIZE)
+            );
+        } finally {
+            index.close();
+            SQLiteDatabase.deleteDatabase(snapshot);
+            SQLiteDatabase.deleteDatabase(changed);
+        }
+
+        report.durationMillis = (System.nanoTime() - start) / 1000000;
+        Log.i(LOG_TAG, "Backup " + report);
+
+        return report;
+    }
+
+    /**
+     * Restore the database from the given compressed snapshot of the backup directory.
+     * The current database is replaced atomically and the provider re-opens it.
+     * Must be called from a background thread.
+     */
+    public void restore(File snapshot) throws IOException {
+        File database = mContext.getDatabasePath(ProductDbHelper.DATABASE_NAME);
+        File prepared = new File(database.getParentFile(), ProductDbHelper.DATABASE_NAME + ".restore");
+
+        copy(new GZIPInputStream(new FileInputStream(snapshot), BUFFER_SIZE), new FileOutputStream(prepared));
+
+        /*
+            Put the pictures back into the restored database before swapping it in. The file is not
+            in use yet, so this is where a database without incremental vacuum is converted by a full
+            VACUUM, which would block every writer of the live database.
+         */
+        SQLiteDatabase db = SQLiteDatabase.openDatabase(prepared.getPath(), null, SQLiteDatabase.OPEN_READWRITE);
+        try {
+            restorePictures(db, new File(mBackupDirectory, PICTURES_DIRECTORY));
+            if (DatabaseUtils.longForQuery(db, "PRAGMA auto_vacuum", null)
+                    != MaintenanceOperations.AUTO_VACUUM_INCREMENTAL) {
+                db.execSQL("PRAGMA auto_vacuum = INCREMENTAL");
+                db.execSQL("VACUUM");
+            }
+        } finally {
+            db.close();
+        }
+
+        try {
+            mContext.getContentResolver().call(
+                    ProductContract.BASE_CONTENT_URI,
+                    ProductContract.METHOD_RESTORE,
+                    prepared.getPath(),
+                    null
+            );
+        } catch (IllegalStateException e) {
+            prepared.delete();
+            throw new IOException("Cannot restore " + snapshot, e);
+        }
+
+        /*
+            The restored database counts its change versions again from those of the snapshot:
+            the index can no longer tell which pictures changed, the next backup hashes them all.
+         */
+        SQLiteDatabase.deleteDatabase(new File(mBackupDirectory, PICTURE_INDEX));
+    }
+
+    /**
+     * Return the snapshots of the backup directory, oldest first.
+     */
+    public List<File> listSnapshots() {
+        List<File> snapshots = new ArrayList<>();
+        File[] files = mBackupDirectory.listFiles();
+        if (files == null) {
+            return snapshots;
+        }
+
+        for (File file : files) {
+            if (file.getName().endsWith(SNAPSHOT_EXTENSION)) {
+                snapshots.add(file);
+            }
+        }
+
+        Collections.sort(snapshots);
+        return snapshots;
+    }
+
+    /**
+     * Open the picture index of the backup directory, emptied unless the backup is incremental.
+     */
+    private SQLiteDatabase openPictureIndex(boolean incremental) {
+        SQLiteDatabase index = SQLiteDatabase.openOrCreateDatabase(new File(mBackupDirectory, PICTURE_INDEX), null);
+        index.execSQL("CREATE TABLE IF NOT EXISTS " + TABLE_PICTURE_INDEX + " (product_id INTEGER PRIMARY KEY, "
+                + "change_version INTEGER NOT NULL, hash TEXT NOT NULL)");
+        if (!incremental) {
+            index.delete(TABLE_PICTURE_INDEX, null, null);
+        }
+
+        return index;
+    }
+
+    /**
+     * Write a transactionally consistent copy of the database to the target file, without the
+     * pictures, and the pictures of the products changed since the index to the changed file.
+     *
+     * The copy runs on its own connection: create the tables in the target, copy every table
+     * with an INSERT ... SELECT, all of them in one transaction so that they are consistent with
+     * each other, then create the indexes and triggers. The unchanged products take their picture
+     * hash from the index in the same transaction, and the index forgets the products gone.
+     *
+     * The triggers only exist once the rows are copied: the derived columns and tables they
+     * maintain (lot quantities, reserved units, rollups, valuation, stock alerts) are copied as
+     * they are, not updated a second time by the copy. The copy holds the write lock for its
+     * time, the provider's writes wait for it: it reads no unchanged picture, unlike VACUUM INTO.
+     */
+    private static void takeSnapshot(File database, File target, File index, File changed) {
+        SQLiteDatabase source = SQLiteDatabase.openDatabase(database.getPath(), null, SQLiteDatabase.OPEN_READWRITE);
+        try {
+            List<String> tables = new ArrayList<>();
+            List<String> schema = new ArrayList<>();
+
+            SQLiteDatabase snapshot = SQLiteDatabase.openOrCreateDatabase(target, null);
+            try {
+                Cursor cursor = source.rawQuery(
+                        "SELECT type, name, sql FROM sqlite_master WHERE sql NOT NULL"
+                                + " AND name NOT LIKE 'sqlite_%' AND name != 'android_metadata'",
+                        null
+                );
+                try {
+                    while (cursor.moveToNext()) {
+                        if ("table".equals(cursor.getString(0))) {
+                            tables.add(cursor.getString(1));
+                            snapshot.execSQL(cursor.getString(2));
+                        } else {
+                            schema.add(cursor.getString(2));
+                        }
+                    }
+                } finally {
+                    cursor.close();
+                }
+
+                snapshot.execSQL("CREATE TABLE " + TABLE_PICTURES + " (product_id INTEGER PRIMARY KEY, hash TEXT NOT NULL)");
+                snapshot.setVersion(source.getVersion());
+            } finally {
+                snapshot.close();
+            }
+
+            SQLiteDatabase changedPictures = SQLiteDatabase.openOrCreateDatabase(changed, null);
+            try {
+                changedPictures.execSQL("CREATE TABLE " + TABLE_CHANGED_PICTURES + " (product_id INTEGER PRIMARY KEY, "
+                        + "change_version INTEGER NOT NULL, picture BLOB NOT NULL)");
+            } finally {
+                changedPictures.close();
+            }
+
+            copyTables(source, tables, target, index, changed);
+
+            snapshot = SQLiteDatabase.openDatabase(target.getPath(), null, SQLiteDatabase.OPEN_READWRITE);
+            try {
+                for (String sql : schema) {
+                    snapshot.execSQL(sql);
+                }
+            } finally {
+                snapshot.close();
+            }
+        } finally {
+            source.close();
+        }
+    }
+
+    /**
+     * Copy the tables of the source into the target in one transaction, see {@link #takeSnapshot}.
+     */
+    private static void copyTables(SQLiteDatabase source, List<String> tables, File target, File index, File changed) {
+        /* The columns of the products in their order, the picture left empty. */
+        StringBuilder columns = new StringBuilder();
+        Cursor cursor = source.rawQuery("PRAGMA table_info(" + ProductEntry.TABLE_NAME + ")", null);
+        try {
+            while (cursor.moveToNext()) {
+                String column = cursor.getString(cursor.getColumnIndexOrThrow("name"));
+                columns.append(columns.length() == 0 ? "" : ", ")
+                        .append(ProductEntry.COLUMN_PRODUCT_PICTURE.equals(column) ? "X''" : column);
+            }
+        } finally {
+            cursor.close();
+        }
+
+        String indexed = " FROM pictures." + TABLE_PICTURE_INDEX + " AS i WHERE i.product_id = p."
+                + ProductEntry._ID + " AND i.change_version = p." + ProductEntry.COLUMN_PRODUCT_CHANGE_VERSION;
+
+        source.execSQL("ATTACH DATABASE ? AS snapshot", new Object[] { target.getPath() });
+        source.execSQL("ATTACH DATABASE ? AS pictures", new Object[] { index.getPath() });
+        source.execSQL("ATTACH DATABASE ? AS changed", new Object[] { changed.getPath() });
+        try {
+            source.beginTransaction();
+            try {
+                for (String table : tables) {
+                    source.execSQL("INSERT INTO snapshot." + table + " SELECT "
+                            + (ProductEntry.TABLE_NAME.equals(table) ? columns : "*") + " FROM main." + table);
+                }
+
+                /* The copy moved the AUTOINCREMENT counters to the highest ids, not to the ones of the source. */
+                source.execSQL("DELETE FROM snapshot.sqlite_sequence");
+                source.execSQL("INSERT INTO snapshot.sqlite_sequence SELECT * FROM main.sqlite_sequence");
+
+                source.execSQL("INSERT INTO snapshot." + TABLE_PICTURES + " SELECT p." + ProductEntry._ID
+                        + ", (SELECT i.hash" + indexed + ") FROM main." + ProductEntry.TABLE_NAME + " AS p"
+                        + " WHERE EXISTS (SELECT 1" + indexed + ")");
+                source.execSQL("INSERT INTO changed." + TABLE_CHANGED_PICTURES + " SELECT p." + ProductEntry._ID
+                        + ", p." + ProductEntry.COLUMN_PRODUCT_CHANGE_VERSION + ", p." + ProductEntry.COLUMN_PRODUCT_PICTURE
+                        + " FROM main." + ProductEntry.TABLE_NAME + " AS p WHERE NOT EXISTS (SELECT 1" + indexed + ")");
+                source.execSQL("DELETE FROM pictures." + TABLE_PICTURE_INDEX + " WHERE product_id NOT IN (SELECT "
+                        + ProductEntry._ID + " FROM main." + ProductEntry.TABLE_NAME + ")");
+
+                source.setTransactionSuccessful();
+            } finally {
+                source.endTransaction();
+            }
+        } finally {
+            source.execSQL("DETACH DATABASE changed");
+            source.execSQL("DETACH DATABASE pictures");
+            source.execSQL("DETACH DATABASE snapshot");
+        }
+    }
+
+    /**
+     * Store the changed pictures as files named by their hash, and record that hash in the
+     * snapshot and in the index. The unchanged pictures already have theirs.
+     */
+    private static void extractPictures(SQLiteDatabase db, SQLiteDatabase changed, SQLiteDatabase index,
+                                        File pictures, boolean incremental, Report report) throws IOException {
+        report.picturesReused += (int) DatabaseUtils.queryNumEntries(db, TABLE_PICTURES);
+
+        db.beginTransaction();
+        index.beginTransaction();
+        try {
+            Cursor cursor = changed.query(
+                    TABLE_CHANGED_PICTURES,
+                    new String[] { "product_id", "change_version", "picture" },
+                    null, null, null, null, null
+            );
+            try {
+                ContentValues values = new ContentValues();
+                while (cursor.moveToNext()) {
+                    byte[] picture = cursor.getBlob(2);
+                    String hash = sha1(picture);
+
+                    File file = new File(pictures, hash);
+                    if (incremental && file.exists()) {
+                        report.picturesReused++;
+                    } else {
+                        OutputStream out = new FileOutputStream(file);
+                        try {
+                            out.write(picture);
+                        } finally {
+                            out.close();
+                        }
+                        report.picturesWritten++;
+                        report.bytesWritten += picture.length;
+                    }
+
+                    values.clear();
+                    values.put("product_id", cursor.getLong(0));
+                    values.put("hash", hash);
+                    db.insert(TABLE_PICTURES, null, values);
+
+                    values.put("change_version", cursor.getLong(1));
+                    index.replace(TABLE_PICTURE_INDEX, null, values);
+                }
+            } finally {
+                cursor.close();
+            }
+
+            index.setTransactionSuccessful();
+            db.setTransactionSuccessful();
+        } finally {
+            index.endTransaction();
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Reverse of {@link #extractPictures}.
+     */
+    private static void restorePictures(SQLiteDatabase db, File pictures) throws IOException {
+        db.beginTransaction();
+        try {
+            Cursor cursor = db.query(TABLE_PICTURES, new String[] { "product_id", "hash" }, null, null, null, null, null);
+            try {
+                ContentValues values = new ContentValues();
+                while (cursor.moveToNext()) {
+                    File file = new File(pictures, cursor.getString(1));
+                    byte[] picture = new byte[(int) file.length()];
+
+                    InputStream in = new FileInputStream(file);
+                    try {
+                        int offset = 0;
+                        int read;
+                        while (offset < picture.length
+                                && (read = in.read(picture, offset, picture.length - offset)) != -1) {
+                            offset += read;
+                        }
+                    } finally {
+                        in.close();
+                    }
+
+                    values.clear();
+                    values.put(ProductEntry.COLUMN_PRODUCT_PICTURE, picture);
+                    db.update(
+                            ProductEntry.TABLE_NAME,
+                            values,
+                            ProductEntry._ID + "=?",
+                            new String[] { String.valueOf(cursor.getLong(0)) }
+                    );
+                }
+            } finally {
+                cursor.close();
+            }
+
+            db.execSQL("DROP TABLE " + TABLE_PICTURES);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Copy the input stream to the output stream and close both.
+     *
+     * @return The number of bytes copied.
+     */
+    private static long copy(InputStream in, OutputStream out) throws IOException {
+        long total = 0;
+        try {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+                total += read;
+            }
+        } finally {
+            in.close();
+            out.close();
+        }
+
+        return total;
+    }
+
+    private static String sha1(byte[] data) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(data);
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16));
+                hex.append(Character.forDigit(b & 0xF, 16));
+            }
+
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
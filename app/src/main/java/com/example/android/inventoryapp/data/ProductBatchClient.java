@@ -0,0 +1,114 @@
+package com.example.android.inventoryapp.data;
+
+import android.content.ContentResolver;
+import android.os.Bundle;
+
+/**
+ * Client of the batched stock methods of {@link ProductProvider}, for the apps holding
+ * {@link ProductContract#PERMISSION_ACCESS_STOCK}.
+ *
+ * A batch costs one IPC per chunk instead of one per product. Batches are split in chunks that
+ * keep each transaction well below the Binder limit; each chunk is applied in its own transaction.
+ */
+public class ProductBatchClient {
+    private final ContentResolver mResolver;
+    private final int mMaxChunkBytes;
+
+    public ProductBatchClient(ContentResolver resolver) {
+        this(resolver, BatchChunker.MAX_CHUNK_BYTES);
+    }
+
+    ProductBatchClient(ContentResolver resolver, int maxChunkBytes) {
+        mResolver = resolver;
+        mMaxChunkBytes = maxChunkBytes;
+    }
+
+    /**
+     * Return the quantities of the products, -1 for the unknown ones.
+     */
+    public int[] getQuantities(long[] ids) {
+        int[] quantities = new int[ids.length];
+        int chunkSize = BatchChunker.chunkSize(BatchChunker.LONG_BYTES, mMaxChunkBytes);
+        for (int start = 0; start < ids.length; start += chunkSize) {
+            int end = Math.min(ids.length, start + chunkSize);
+
+            Bundle extras = new Bundle();
+            extras.putLongArray(ProductContract.EXTRA_IDS, slice(ids, start, end));
+
+            Bundle result = call(ProductContract.METHOD_GET_QUANTITIES, extras);
+            int[] chunk = result.getIntArray(ProductContract.EXTRA_QUANTITIES);
+            System.arraycopy(chunk, 0, quantities, start, chunk.length);
+        }
+
+        return quantities;
+    }
+
+    /**
+     * Add the deltas to the quantities of the products, see {@link ProductContract#METHOD_APPLY_QUANTITY_DELTAS}.
+     *
+     * @return The new quantities, -1 for the products not updated.
+     */
+    public int[] applyQuantityDeltas(long[] ids, int[] deltas) {
+        if (ids.length != deltas.length) {
+            throw new IllegalArgumentException("Got " + ids.length + " ids for " + deltas.length + " deltas");
+        }
+
+        int[] quantities = new int[ids.length];
+        int chunkSize = BatchChunker.chunkSize(
+                BatchChunker.LONG_BYTES + BatchChunker.INT_BYTES, mMaxChunkBytes);
+        for (int start = 0; start < ids.length; start += chunkSize) {
+            int end = Math.min(ids.length, start + chunkSize);
+
+            Bundle extras = new Bundle();
+            extras.putLongArray(ProductContract.EXTRA_IDS, slice(ids, start, end));
+            int[] deltaChunk = new int[end - start];
+            System.arraycopy(deltas, start, deltaChunk, 0, deltaChunk.length);
+            extras.putIntArray(ProductContract.EXTRA_DELTAS, deltaChunk);
+
+            Bundle result = call(ProductContract.METHOD_APPLY_QUANTITY_DELTAS, extras);
+            int[] chunk = result.getIntArray(ProductContract.EXTRA_QUANTITIES);
+            System.arraycopy(chunk, 0, quantities, start, chunk.length);
+        }
+
+        return quantities;
+    }
+
+    /**
+     * Return the ids of the products with the SKUs, -1 for the unknown ones.
+     */
+    public long[] resolveSkus(String[] skus) {
+        long[] ids = new long[skus.length];
+        int start = 0;
+        while (start < skus.length) {
+            int end = BatchChunker.chunkEnd(skus, start, mMaxChunkBytes);
+
+            String[] skuChunk = new String[end - start];
+            System.arraycopy(skus, start, skuChunk, 0, skuChunk.length);
+            Bundle extras = new Bundle();
+            extras.putStringArray(ProductContract.EXTRA_SKUS, skuChunk);
+
+            Bundle result = call(ProductContract.METHOD_RESOLVE_SKUS, extras);
+            long[] chunk = result.getLongArray(ProductContract.EXTRA_IDS);
+            System.arraycopy(chunk, 0, ids, start, chunk.length);
+
+            start = end;
+        }
+
+        return ids;
+    }
+
+    private Bundle call(String method, Bundle extras) {
+        Bundle result = mResolver.call(ProductContract.BASE_CONTENT_URI, method, null, extras);
+        if (result == null) {
+            throw new IllegalStateException("No result for " + method);
+        }
+
+        return result;
+    }
+
+    private static long[] slice(long[] values, int start, int end) {
+        long[] slice = new long[end - start];
+        System.arraycopy(values, start, slice, 0, slice.length);
+        return slice;
+    }
+}
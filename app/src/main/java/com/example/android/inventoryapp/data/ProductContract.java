@@ -1,9 +1,12 @@
 package com.example.android.inventoryapp.data;
 
 import android.content.ContentResolver;
+import android.content.ContentUris;
 import android.net.Uri;
 import android.provider.BaseColumns;
 
+import com.example.android.inventoryapp.sync.SyncChange;
+
 /**
  * API Contract for Inventory App.
  */
@@ -37,6 +40,378 @@ public final class ProductContract {
      */
     public static final String PATH_PRODUCTS = "products";
 
+    /**
+     * Possible path for looking at supplier data.
+     */
+    public static final String PATH_SUPPLIERS = "suppliers";
+
+    /**
+     * Possible path for looking at the reorder list, the products at or below their reorder level.
+     */
+    public static final String PATH_REORDERS = "reorders";
+
+    /**
+     * Possible path for looking at the stock alerts, the crossings of the reorder levels.
+     */
+    public static final String PATH_STOCK_ALERTS = "stock_alerts";
+
+    /**
+     * Possible path for looking at the stock adjustments, the quantity corrections of the stocktakes.
+     */
+    public static final String PATH_ADJUSTMENTS = "adjustments";
+
+    /**
+     * Possible path for looking at the lots, the units of the products by expiry date.
+     */
+    public static final String PATH_LOTS = "lots";
+
+    /**
+     * Possible path for looking at the categories, the departments and sub-categories of the products.
+     * Appended with a category id and {@link #PATH_PRODUCTS}, it lists the products of the subtree:
+     * content://com.example.android.inventoryapp/categories/3/products.
+     */
+    public static final String PATH_CATEGORIES = "categories";
+
+    /**
+     * Possible path for looking at the valuation history, the units and value of the stock over time.
+     */
+    public static final String PATH_VALUATIONS = "valuations";
+
+    /**
+     * Path of the change log of the products, appended to the products path:
+     * content://com.example.android.inventoryapp/products/changes?since=42 returns the changes
+     * (including deletions) made after change version 42, in change version order.
+     */
+    public static final String PATH_CHANGES = "changes";
+
+    /**
+     * Path of the SKU lookups, appended to the products path:
+     * content://com.example.android.inventoryapp/products/sku/4006381333931 returns the product
+     * with that SKU or barcode.
+     */
+    public static final String PATH_SKU = "sku";
+
+    /**
+     * Path of the products at or below their reorder level, appended to the products path:
+     * content://com.example.android.inventoryapp/products/low_stock.
+     */
+    public static final String PATH_LOW_STOCK = "low_stock";
+
+    /**
+     * Query parameter of {@link #PATH_CHANGES} giving the change token to start after.
+     */
+    public static final String QUERY_PARAMETER_SINCE = "since";
+
+    /**
+     * Optional query parameter limiting the number of rows returned by a query, for instance
+     * content://com.example.android.inventoryapp/products?limit=20.
+     */
+    public static final String QUERY_PARAMETER_LIMIT = "limit";
+
+    /**
+     * Optional query parameter of the lots queries keeping the lots expiring before the given time,
+     * in milliseconds since the epoch, see {@link LotEntry#buildExpiringUri}.
+     */
+    public static final String QUERY_PARAMETER_EXPIRES_BEFORE = "expires_before";
+
+    /**
+     * Query parameter of the valuation queries giving the start of the time range, inclusive, in
+     * milliseconds since the epoch, see {@link ValuationEntry#buildRangeUri}.
+     */
+    public static final String QUERY_PARAMETER_FROM = "from";
+
+    /**
+     * Query parameter of the valuation queries giving the end of the time range, exclusive, in
+     * milliseconds since the epoch.
+     */
+    public static final String QUERY_PARAMETER_TO = "to";
+
+    /**
+     * Optional query parameter of a product update, applying it only if the product is still at
+     * the given {@link ProductEntry#COLUMN_PRODUCT_VERSION}. An update returning 0 rows then means
+     * that the product was written meanwhile (or deleted): read it again and re-apply the change.
+     */
+    public static final String QUERY_PARAMETER_EXPECTED_VERSION = "expected_version";
+
+    /**
+     * Optional query parameter of the product queries adding other products to the hot ones,
+     * for instance content://com.example.android.inventoryapp/products?include=archive.
+     */
+    public static final String QUERY_PARAMETER_INCLUDE = "include";
+
+    /**
+     * Value of {@link #QUERY_PARAMETER_INCLUDE} adding the archived products.
+     * Archived products are read-only: updates and deletions only reach the hot products.
+     */
+    public static final String INCLUDE_ARCHIVE = "archive";
+
+    /**
+     * Provider method (see {@link android.content.ContentResolver#call}) replacing the database
+     * with the prepared file whose path is given as argument, then re-opening it.
+     */
+    public static final String METHOD_RESTORE = "restore";
+
+    /**
+     * Provider method returning the sync state (see {@link SyncStateEntry}) as a Bundle.
+     */
+    public static final String METHOD_GET_SYNC_STATE = "get_sync_state";
+
+    /**
+     * Provider method collecting the local changes to push, given the maximum number of changes
+     * as argument. The encoded batch is returned in {@link #EXTRA_BATCH} and recorded as pending.
+     */
+    public static final String METHOD_COLLECT_CHANGES = "collect_changes";
+
+    /**
+     * Provider method acknowledging the pushed batch given in {@link #EXTRA_BATCH}.
+     */
+    public static final String METHOD_ACKNOWLEDGE_PUSH = "acknowledge_push";
+
+    /**
+     * Provider method merging the pulled batch given in {@link #EXTRA_BATCH}.
+     */
+    public static final String METHOD_APPLY_REMOTE = "apply_remote";
+
+    /**
+     * Provider method selling products by SKU, for barcode scanners. The argument is the SKU and
+     * {@link #EXTRA_QUANTITY} the number of units sold, positive (1 if absent). The result holds the
+     * {@link #EXTRA_ID} of the product (-1 if unknown) and the remaining {@link #EXTRA_QUANTITY}.
+     * Nothing is sold if too few units are available to sell.
+     */
+    public static final String METHOD_SELL_SKU = "sell_sku";
+
+    /**
+     * Provider method bringing the reorder list up to date with the products changed since its last
+     * refresh. Returns the number of products evaluated in {@link #EXTRA_COUNT}.
+     */
+    public static final String METHOD_REFRESH_REORDERS = "refresh_reorders";
+
+    /**
+     * Provider method opening the database, and upgrading it if needed, ahead of the first query.
+     */
+    public static final String METHOD_WARM_UP = "warm_up";
+
+    /**
+     * Provider method bringing back the products of the latest deletion still in its undo window.
+     * Returns the number of products restored in {@link #EXTRA_COUNT}.
+     */
+    public static final String METHOD_UNDO_DELETE = "undo_delete";
+
+    /**
+     * Provider method physically removing, in one short transaction, at most arg deleted products
+     * whose undo window has passed. Returns the number of products removed in {@link #EXTRA_COUNT}.
+     */
+    public static final String METHOD_PURGE_DELETED = "purge_deleted";
+
+    /**
+     * Provider method returning, in {@link #EXTRA_QUANTITIES}, the quantities of the products whose
+     * ids are given in {@link #EXTRA_IDS}, -1 for the unknown ones. See {@link ProductBatchClient}.
+     */
+    public static final String METHOD_GET_QUANTITIES = "get_quantities";
+
+    /**
+     * Provider method adding the {@link #EXTRA_DELTAS} to the quantities of the products of
+     * {@link #EXTRA_IDS}, in a single transaction. A delta that would take more units than are
+     * available to sell is not applied. Returns the new quantities in {@link #EXTRA_QUANTITIES}, -1 for the products not updated.
+     */
+    public static final String METHOD_APPLY_QUANTITY_DELTAS = "apply_quantity_deltas";
+
+    /**
+     * Provider method returning, in {@link #EXTRA_IDS}, the ids of the products whose SKUs are given
+     * in {@link #EXTRA_SKUS}, -1 for the unknown ones.
+     */
+    public static final String METHOD_RESOLVE_SKUS = "resolve_skus";
+
+    /**
+     * Provider method correcting the quantities of the products of {@link #EXTRA_IDS} to the counted
+     * {@link #EXTRA_QUANTITIES}, in a single transaction, each correction recorded as an
+     * {@link AdjustmentEntry} of the stocktake whose id is given as argument. A product is only
+     * corrected if its quantity is still the one of {@link #EXTRA_EXPECTED_QUANTITIES} the counts
+     * were compared with. Returns the corrected quantities in {@link #EXTRA_QUANTITIES}, -1 for the
+     * products not corrected, and the number corrected in {@link #EXTRA_COUNT}. See {@link Stocktake}.
+     */
+    public static final String METHOD_APPLY_STOCKTAKE = "apply_stocktake";
+
+    /**
+     * Provider method holding {@link #EXTRA_QUANTITY} units (1 if absent) of the product whose id is
+     * given as argument, for {@link #EXTRA_TTL_MILLIS} milliseconds. The units are held only if that
+     * many are available to sell, see {@link ProductEntry#COLUMN_PRODUCT_RESERVED}. The result holds
+     * the {@link #EXTRA_RESERVATION_ID} of the hold (-1 if nothing was held) and the units still
+     * available in {@link #EXTRA_QUANTITY} (-1 if the product is unknown).
+     */
+    public static final String METHOD_RESERVE = "reserve";
+
+    /**
+     * Provider method selling the units of the hold whose id is given as argument, and removing the
+     * hold, in a single transaction. Returns the remaining quantity of the product in
+     * {@link #EXTRA_QUANTITY}, or -1 if the hold is unknown, released or expired.
+     */
+    public static final String METHOD_CONFIRM_RESERVATION = "confirm_reservation";
+
+    /**
+     * Provider method giving back the units of the hold whose id is given as argument, without
+     * selling them. Returns the number of holds released, 0 or 1, in {@link #EXTRA_COUNT}.
+     */
+    public static final String METHOD_RELEASE_RESERVATION = "release_reservation";
+
+    /**
+     * Provider method releasing, in one short transaction, at most arg holds that have expired,
+     * earliest first. Returns the number of holds released in {@link #EXTRA_COUNT}.
+     */
+    public static final String METHOD_EXPIRE_RESERVATIONS = "expire_reservations";
+
+    /**
+     * Provider method downsampling the valuation history: the daily buckets older than
+     * {@link #VALUATION_DAILY_MILLIS} become weekly, and the weekly ones older than
+     * {@link #VALUATION_WEEKLY_MILLIS} monthly. Returns the number of buckets downsampled in
+     * {@link #EXTRA_COUNT}.
+     */
+    public static final String METHOD_COMPACT_VALUATIONS = "compact_valuations";
+
+    /**
+     * Permission other apps need to access the provider. It is granted to the apps signed with the
+     * same certificate, such as the point of sale app.
+     */
+    public static final String PERMISSION_ACCESS_STOCK = "com.example.android.inventoryapp.permission.ACCESS_STOCK";
+
+    /**
+     * Provider method moving, in small transactions, at most arg cold products (out of stock, and
+     * discontinued or out of stock for {@link #ARCHIVE_ZERO_STOCK_MILLIS}) with their pictures to the archive database.
+     * Returns the number of products moved in {@link #EXTRA_COUNT}.
+     */
+    public static final String METHOD_ARCHIVE_COLD = "archive_cold";
+
+    /**
+     * Provider method running one step of the database maintenance, named by the argument:
+     * {@link #MAINTENANCE_ANALYZE}, {@link #MAINTENANCE_VACUUM}, {@link #MAINTENANCE_CHECKPOINT} or
+     * {@link #MAINTENANCE_QUICK_CHECK}. The step works in short chunks, yielding to the other writers,
+     * and stops after the time given in {@link #EXTRA_BUDGET_MILLIS}. Returns the amount of work done
+     * in {@link #EXTRA_COUNT}, whether the step completed in {@link #EXTRA_DONE}, and the result of
+     * the integrity check, or why the vacuum was skipped, in {@link #EXTRA_MESSAGE}.
+     */
+    public static final String METHOD_MAINTENANCE = "maintenance";
+
+    /**
+     * Provider method switching the workload trace on ("true") or off ("false"). While on, every
+     * operation of the provider is recorded, with its values redacted, to rotating files in the
+     * traces directory of the app, to be replayed on the JVM by WorkloadReplayTest. The setting
+     * survives restarts of the app.
+     */
+    public static final String METHOD_SET_WORKLOAD_TRACE = "set_workload_trace";
+
+    /**
+     * Maintenance step refreshing the statistics of the query planner. Counts the tables analyzed.
+     */
+    public static final String MAINTENANCE_ANALYZE = "analyze";
+
+    /**
+     * Maintenance step returning the free pages to the file system. Counts the pages reclaimed.
+     * Skipped, with a message, on databases created without incremental vacuum.
+     */
+    public static final String MAINTENANCE_VACUUM = "vacuum";
+
+    /**
+     * Maintenance step copying the write-ahead log back into the database. Counts the frames copied.
+     */
+    public static final String MAINTENANCE_CHECKPOINT = "checkpoint";
+
+    /**
+     * Maintenance step checking the integrity of the database, without the slow index checks.
+     */
+    public static final String MAINTENANCE_QUICK_CHECK = "quick_check";
+
+    /**
+     * Time a product stays out of stock before it is archived, in milliseconds.
+     */
+    public static final long ARCHIVE_ZERO_STOCK_MILLIS = 90L * 24 * 60 * 60 * 1000;
+
+    /**
+     * Age after which the daily buckets of the valuation history are compacted into weekly ones,
+     * in milliseconds, see {@link #METHOD_COMPACT_VALUATIONS}.
+     */
+    public static final long VALUATION_DAILY_MILLIS = 35L * 24 * 60 * 60 * 1000;
+
+    /**
+     * Age after which the weekly buckets of the valuation history are compacted into monthly ones,
+     * in milliseconds. Monthly buckets are kept.
+     */
+    public static final long VALUATION_WEEKLY_MILLIS = 365L * 24 * 60 * 60 * 1000;
+
+    /**
+     * Time during which a deletion can be undone, in milliseconds.
+     */
+    public static final long DELETE_UNDO_WINDOW_MILLIS = 30 * 1000;
+
+    /**
+     * Bundle extra holding a number of rows.
+     */
+    public static final String EXTRA_COUNT = "count";
+
+    /**
+     * Bundle extra holding a product id.
+     */
+    public static final String EXTRA_ID = "id";
+
+    /**
+     * Bundle extra holding a quantity.
+     */
+    public static final String EXTRA_QUANTITY = "quantity";
+
+    /**
+     * Bundle extra holding a reservation id.
+     */
+    public static final String EXTRA_RESERVATION_ID = "reservation_id";
+
+    /**
+     * Bundle extra holding the time to live of a reservation, in milliseconds.
+     */
+    public static final String EXTRA_TTL_MILLIS = "ttl_millis";
+
+    /**
+     * Bundle extra holding an array of product ids.
+     */
+    public static final String EXTRA_IDS = "ids";
+
+    /**
+     * Bundle extra holding an array of quantities.
+     */
+    public static final String EXTRA_QUANTITIES = "quantities";
+
+    /**
+     * Bundle extra holding an array of quantity changes.
+     */
+    public static final String EXTRA_DELTAS = "deltas";
+
+    /**
+     * Bundle extra holding an array of quantities expected in the database.
+     */
+    public static final String EXTRA_EXPECTED_QUANTITIES = "expected_quantities";
+
+    /**
+     * Bundle extra holding an array of SKUs.
+     */
+    public static final String EXTRA_SKUS = "skus";
+
+    /**
+     * Bundle extra holding a time budget, in milliseconds.
+     */
+    public static final String EXTRA_BUDGET_MILLIS = "budget_millis";
+
+    /**
+     * Bundle extra holding whether an operation completed.
+     */
+    public static final String EXTRA_DONE = "done";
+
+    /**
+     * Bundle extra holding a message, such as the result of an integrity check.
+     */
+    public static final String EXTRA_MESSAGE = "message";
+
+    /**
+     * Bundle extra holding a {@link com.example.android.inventoryapp.sync.SyncCodec} encoded batch.
+     */
+    public static final String EXTRA_BATCH = "batch";
+
     /**
      * Inner class that defines constant values for the products database table.
      * Each entry in the table represents a single product.
@@ -98,6 +473,803 @@ public final class ProductContract {
          * Type : BLOB
          */
         public final static String COLUMN_PRODUCT_PICTURE = "picture";
+
+        /**
+         * SKU or barcode of the product, optional and unique. Taking the SKU of a deleted product
+         * purges it at once, its deletion can no longer be undone.
+         *
+         * Type : TEXT
+         */
+        public final static String COLUMN_PRODUCT_SKU = "sku";
+
+        /**
+         * Id of the supplier of the product in the suppliers table, optional.
+         *
+         * Type : INTEGER
+         */
+        public final static String COLUMN_PRODUCT_SUPPLIER_ID = "supplier_id";
+
+        /**
+         * Quantity at or below which the product has to be reordered.
+         *
+         * Type : INTEGER
+         */
+        public final static String COLUMN_PRODUCT_REORDER_LEVEL = "reorder_level";
+
+        /**
+         * Whether the product is no longer stocked, 1 if so. Discontinued products are moved
+         * to the archive, see {@link ProductContract#METHOD_ARCHIVE_COLD}.
+         *
+         * Type : INTEGER
+         */
+        public final static String COLUMN_PRODUCT_DISCONTINUED = "discontinued";
+
+        /**
+         * Time the quantity went down to 0, in milliseconds since the epoch, NULL while in stock.
+         * Maintained by the database.
+         *
+         * Type : INTEGER
+         */
+        public final static String COLUMN_PRODUCT_ZERO_STOCK_SINCE = "zero_stock_since";
+
+        /**
+         * Units of the quantity held in lots, the sum of the quantities of the {@link LotEntry lots}
+         * of the product, at most the quantity. Maintained by the database.
+         *
+         * Type : INTEGER
+         */
+        public final static String COLUMN_PRODUCT_LOT_QUANTITY = "lot_quantity";
+
+        /**
+         * Units of the quantity held by unexpired {@link ReservationEntry reservations}. The units
+         * available to sell are the quantity minus the reserved units: the sales and the negative
+         * deltas are refused beyond them. Maintained by the database.
+         *
+         * Type : INTEGER
+         */
+        public final static String COLUMN_PRODUCT_RESERVED = "reserved";
+
+        /**
+         * Id of the category of the product in the categories table, optional.
+         *
+         * Type : INTEGER
+         */
+        public final static String COLUMN_PRODUCT_CATEGORY_ID = "category_id";
+
+        /**
+         * Identifier of the product shared by every store, used by the sync.
+         *
+         * Type : TEXT
+         */
+        public final static String COLUMN_PRODUCT_GLOBAL_ID = "global_id";
+
+        /**
+         * Change version of the last write of the product. Every write transaction of the provider
+         * takes the next value of a monotonic counter.
+         *
+         * Type : INTEGER
+         */
+        public final static String COLUMN_PRODUCT_CHANGE_VERSION = "change_version";
+
+        /**
+         * Quantity of the product known by the sync server, including the pushed deltas.
+         * The local delta not pushed yet is quantity - quantity_synced.
+         *
+         * Type : INTEGER
+         */
+        public final static String COLUMN_PRODUCT_QUANTITY_SYNCED = "quantity_synced";
+
+        /**
+         * Flags ({@link SyncChange#FIELD_NAME}, ...) of the fields changed since the last push.
+         *
+         * Type : INTEGER
+         */
+        public final static String COLUMN_PRODUCT_DIRTY = "dirty";
+
+        /**
+         * Version of the row, incremented by every write of the product fields. An update can be
+         * made conditional on it, see {@link ProductContract#QUERY_PARAMETER_EXPECTED_VERSION}.
+         *
+         * Type : INTEGER
+         */
+        public final static String COLUMN_PRODUCT_VERSION = "version";
+
+        /**
+         * Local quantity delta not pushed yet, computed column of the change log.
+         */
+        public final static String COLUMN_QUANTITY_DELTA = "quantity_delta";
+
+        /**
+         * True for the deletions of the change log, computed column.
+         */
+        public final static String COLUMN_DELETED = "deleted";
+
+        /**
+         * The content URI to access the change log of the products in the provider.
+         */
+        public static final Uri CHANGES_URI = Uri.withAppendedPath(CONTENT_URI, PATH_CHANGES);
+
+        /**
+         * The content URI to access the live products at or below their reorder level, read from the
+         * low stock set kept by the database rather than from the whole table. Takes the projection,
+         * selection and sort order of {@link #CONTENT_URI}.
+         */
+        public static final Uri LOW_STOCK_URI = Uri.withAppendedPath(CONTENT_URI, PATH_LOW_STOCK);
+
+        /**
+         * Return the content URI of the product with the given SKU.
+         */
+        public static Uri buildSkuUri(String sku) {
+            return CONTENT_URI.buildUpon().appendPath(PATH_SKU).appendPath(sku).build();
+        }
+    }
+
+    /**
+     * Inner class that defines constant values for the suppliers database table.
+     * Each entry represents a single supplier, products link to it.
+     */
+    public static final class SupplierEntry implements BaseColumns {
+        /**
+         * The content URI to access the supplier data in the provider.
+         */
+        public static final Uri CONTENT_URI = Uri.withAppendedPath(BASE_CONTENT_URI, PATH_SUPPLIERS);
+
+        /**
+         * The MIME type of the {@link #CONTENT_URI} for a list of suppliers.
+         */
+        public static final String CONTENT_LIST_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_SUPPLIERS;
+
+        /**
+         * The MIME type of the {@link #CONTENT_URI} for a single supplier.
+         */
+        public static final String CONTENT_ITEM_TYPE =
+                ContentResolver.CURSOR_ITEM_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_SUPPLIERS;
+
+        /**
+         * Name of database table for suppliers.
+         */
+        public final static String TABLE_NAME = "suppliers";
+
+        /**
+         * Name of the supplier.
+         *
+         * Type : TEXT
+         */
+        public final static String COLUMN_SUPPLIER_NAME = "name";
+
+        /**
+         * Email address receiving the orders of the supplier.
+         *
+         * Type : TEXT
+         */
+        public final static String COLUMN_SUPPLIER_EMAIL = "email";
+    }
+
+    /**
+     * Inner class that defines constant values for the categories database table.
+     * Categories form a tree: a category without parent is a department. Each category holds the
+     * rollups of its subtree, the live products of the category and of all its descendants,
+     * maintained by the database on every write of a product, so reading the totals of a
+     * subtree is reading a single row at any depth.
+     */
+    public static final class CategoryEntry implements BaseColumns {
+        /**
+         * The content URI to access the categories in the provider.
+         */
+        public static final Uri CONTENT_URI = Uri.withAppendedPath(BASE_CONTENT_URI, PATH_CATEGORIES);
+
+        /**
+         * The MIME type of the {@link #CONTENT_URI} for a list of categories.
+         */
+        public static final String CONTENT_LIST_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_CATEGORIES;
+
+        /**
+         * The MIME type of the {@link #CONTENT_URI} for a single category.
+         */
+        public static final String CONTENT_ITEM_TYPE =
+                ContentResolver.CURSOR_ITEM_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_CATEGORIES;
+
+        /**
+         * Name of database table for the categories.
+         */
+        public final static String TABLE_NAME = "categories";
+
+        /**
+         * Name of the category.
+         *
+         * Type : TEXT
+         */
+        public final static String COLUMN_CATEGORY_NAME = "name";
+
+        /**
+         * Id of the parent category, NULL for a department. Updating it moves the whole subtree.
+         *
+         * Type : INTEGER
+         */
+        public final static String COLUMN_CATEGORY_PARENT_ID = "parent_id";
+
+        /**
+         * Number of live products in the subtree, archived products excepted. Maintained by the database.
+         *
+         * Type : INTEGER
+         */
+        public final static String COLUMN_CATEGORY_ITEM_COUNT = "item_count";
+
+        /**
+         * Units in stock in the subtree, the sum of the quantities. Maintained by the database.
+         *
+         * Type : INTEGER
+         */
+        public final static String COLUMN_CATEGORY_UNITS = "units";
+
+        /**
+         * Value of the stock of the subtree, in cents: the sum of quantity times price.
+         * Maintained by the database.
+         *
+         * Type : INTEGER
+         */
+        public final static String COLUMN_CATEGORY_VALUE = "value";
+
+        /**
+         * Return the content URI of the live products of the category and of its descendants.
+         */
+        public static Uri buildProductsUri(long id) {
+            return ContentUris.withAppendedId(CONTENT_URI, id).buildUpon().appendPath(PATH_PRODUCTS).build();
+        }
+    }
+
+    /**
+     * Inner class that defines constant values for the closure table of the categories, written by
+     * the provider only. Each entry links a category to one of its descendants, itself included at depth
+     * 0, so the subtree of a category is a range of the primary key, without recursion.
+     */
+    public static final class CategoryPathEntry {
+        /**
+         * Name of database table for the paths of the categories.
+         */
+        public final static String TABLE_NAME = "category_paths";
+
+        /**
+         * Id of the ancestor category.
+         *
+         * Type : INTEGER
+         */
+        public final static String COLUMN_ANCESTOR_ID = "ancestor_id";
+
+        /**
+         * Id of the descendant category.
+         *
+         * Type : INTEGER
+         */
+        public final static String COLUMN_DESCENDANT_ID = "descendant_id";
+
+        /**
+         * Number of levels between the ancestor and the descendant.
+         *
+         * Type : INTEGER
+         */
+        public final static String COLUMN_DEPTH = "depth";
+    }
+
+    /**
+     * Inner class that defines constant values for the reorder list database table.
+     * Each entry is a product at or below its reorder level, kept up to date incrementally.
+     */
+    public static final class ReorderEntry {
+        /**
+         * The content URI to access the reorder list in the provider, grouped by supplier.
+         * Rows have the columns {@link #COLUMN_SUPPLIER_ID}, {@link #COLUMN_SUPPLIER_NAME},
+         * {@link #COLUMN_SUPPLIER_EMAIL}, {@link #COLUMN_PRODUCT_ID}, {@link #COLUMN_PRODUCT_NAME},
+         * {@link #COLUMN_PRODUCT_QUANTITY} and {@link #COLUMN_PRODUCT_REORDER_LEVEL}.
+         */
+        public static final Uri CONTENT_URI = Uri.withAppendedPath(BASE_CONTENT_URI, PATH_REORDERS);
+
+        /**
+         * The MIME type of the {@link #CONTENT_URI}.
+         */
+        public static final String CONTENT_LIST_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_REORDERS;
+
+        /**
+         * Name of database table for the reorder list.
+         */
+        public final static String TABLE_NAME = "reorder_list";
+
+        public final static String COLUMN_PRODUCT_ID = "product_id";
+        public final static String COLUMN_SUPPLIER_ID = "supplier_id";
+
+        /* Columns of the joined rows of CONTENT_URI. */
+        public final static String COLUMN_SUPPLIER_NAME = "supplier_name";
+        public final static String COLUMN_SUPPLIER_EMAIL = "supplier_email";
+        public final static String COLUMN_PRODUCT_NAME = "product_name";
+        public final static String COLUMN_PRODUCT_QUANTITY = "quantity";
+        public final static String COLUMN_PRODUCT_REORDER_LEVEL = "reorder_level";
+    }
+
+    /**
+     * Inner class that defines constant values for the stock alerts queue.
+     * Each entry records a product crossing its reorder level, in either direction. Entries are
+     * written by the database with the quantity change, in its transaction, and stay until the
+     * notifications drain them: query the oldest ones, then delete up to the last one handled.
+     */
+    public static final class StockAlertEntry implements BaseColumns {
+        /**
+         * The content URI to access the stock alerts in the provider, notified when alerts are queued.
+         * Supports {@link ProductContract#QUERY_PARAMETER_LIMIT}.
+         */
+        public static final Uri CONTENT_URI = Uri.withAppendedPath(BASE_CONTENT_URI, PATH_STOCK_ALERTS);
+
+        /**
+         * The MIME type of the {@link #CONTENT_URI}.
+         */
+        public static final String CONTENT_LIST_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_STOCK_ALERTS;
+
+        /**
+         * Name of database table for the stock alerts.
+         */
+        public final static String TABLE_NAME = "stock_alerts";
+
+        /**
+         * Unique ID number of the alert, in the order the alerts were queued.
+         *
+         * Type : INTEGER
+         */
+        public final static String _ID = BaseColumns._ID;
+
+        /**
+         * Id of the product.
+         *
+         * Type : INTEGER
+         */
+        public final static String COLUMN_PRODUCT_ID = "product_id";
+
+        /**
+         * Name of the product when the alert was queued.
+         *
+         * Type : TEXT
+         */
+        public final static String COLUMN_PRODUCT_NAME = "product_name";
+
+        /**
+         * Quantity of the product after the crossing.
+         *
+         * Type : INTEGER
+         */
+        public final static String COLUMN_PRODUCT_QUANTITY = "quantity";
+
+        /**
+         * Reorder level of the product after the crossing.
+         *
+         * Type : INTEGER
+         */
+        public final static String COLUMN_PRODUCT_REORDER_LEVEL = "reorder_level";
+
+        /**
+         * 1 if the product went down to its reorder level or below, 0 if it went back above.
+         *
+         * Type : INTEGER
+         */
+        public final static String COLUMN_LOW = "low";
+
+        /**
+         * Time of the crossing, in milliseconds since the epoch.
+         *
+         * Type : INTEGER
+         */
+        public final static String COLUMN_CREATED_AT = "created_at";
+    }
+
+    /**
+     * Inner class that defines constant values for the stock adjustments database table.
+     * Each entry records the correction of the quantity of a product by a stocktake, written in the
+     * transaction of the correction. Entries are kept as the history of the counts.
+     */
+    public static final class AdjustmentEntry implements BaseColumns {
+        /**
+         * The content URI to access the stock adjustments in the provider, read only.
+         * Supports {@link ProductContract#QUERY_PARAMETER_LIMIT}.
+         */
+        public static final Uri CONTENT_URI = Uri.withAppendedPath(BASE_CONTENT_URI, PATH_ADJUSTMENTS);
+
+        /**
+         * The MIME type of the {@link #CONTENT_URI}.
+         */
+        public static final String CONTENT_LIST_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_ADJUSTMENTS;
+
+        /**
+         * Name of database table for the stock adjustments.
+         */
+        public final static String TABLE_NAME = "stock_adjustments";
+
+        /**
+         * Unique ID number of the adjustment, in the order the adjustments were made.
+         *
+         * Type : INTEGER
+         */
+        public final static String _ID = BaseColumns._ID;
+
+        /**
+         * Id of the product.
+         *
+         * Type : INTEGER
+         */
+        public final static String COLUMN_PRODUCT_ID = "product_id";
+
+        /**
+         * Id of the stocktake, the same for all the adjustments of a count.
+         *
+         * Type : INTEGER
+         */
+        public final static String COLUMN_STOCKTAKE_ID = "stocktake_id";
+
+        /**
+         * Quantity in the database before the correction.
+         *
+         * Type : INTEGER
+         */
+        public final static String COLUMN_QUANTITY_BEFORE = "quantity_before";
+
+        /**
+         * Counted quantity, the quantity after the correction.
+         *
+         * Type : INTEGER
+         */
+        public final static String COLUMN_QUANTITY_AFTER = "quantity_after";
+
+        /**
+         * Time of the correction, in milliseconds since the epoch.
+         *
+         * Type : INTEGER
+         */
+        public final static String COLUMN_CREATED_AT = "created_at";
+    }
+
+    /**
+     * Inner class that defines constant values for the lots database table.
+     * Each entry is a lot of units of a product sharing an expiry date. Receiving a lot adds its
+     * units to the quantity of the product; any decrease of the quantity, a sale or a correction,
+     * then takes its units from the lots expiring first, and an emptied lot is removed.
+     */
+    public static final class LotEntry implements BaseColumns {
+        /**
+         * The content URI to access the lots in the provider. An insertion receives a lot, the
+         * lots are otherwise read only. Queries are in expiry order unless sorted otherwise, and
+         * support {@link ProductContract#QUERY_PARAMETER_LIMIT} and
+         * {@link ProductContract#QUERY_PARAMETER_EXPIRES_BEFORE}.
+         */
+        public static final Uri CONTENT_URI = Uri.withAppendedPath(BASE_CONTENT_URI, PATH_LOTS);
+
+        /**
+         * The MIME type of the {@link #CONTENT_URI} for a list of lots.
+         */
+        public static final String CONTENT_LIST_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_LOTS;
+
+        /**
+         * Name of database table for the lots.
+         */
+        public final static String TABLE_NAME = "lots";
+
+        /**
+         * Unique ID number of the lot.
+         *
+         * Type : INTEGER
+         */
+        public final static String _ID = BaseColumns._ID;
+
+        /**
+         * Id of the product.
+         *
+         * Type : INTEGER
+         */
+        public final static String COLUMN_PRODUCT_ID = "product_id";
+
+        /**
+         * Code of the lot, as printed on the units.
+         *
+         * Type : TEXT
+         */
+        public final static String COLUMN_LOT_CODE = "lot_code";
+
+        /**
+         * Expiry date of the units, in milliseconds since the epoch.
+         *
+         * Type : INTEGER
+         */
+        public final static String COLUMN_EXPIRES_AT = "expires_at";
+
+        /**
+         * Units left in the lot, always positive.
+         *
+         * Type : INTEGER
+         */
+        public final static String COLUMN_QUANTITY = "quantity";
+
+        /**
+         * Return the content URI of the lots expiring within the given number of days from now,
+         * earliest first. Queried with columns of this class only, the query reads an index of
+         * the lots and not the table, however many lots there are.
+         */
+        public static Uri buildExpiringUri(long now, int days) {
+            return CONTENT_URI.buildUpon().appendQueryParameter(QUERY_PARAMETER_EXPIRES_BEFORE,
+                    String.valueOf(now + days * 24L * 60 * 60 * 1000)).build();
+        }
+    }
+
+    /**
+     * Inner class that defines constant values for the lot depletions queue, written by the database
+     * only. Each entry holds units taken from the quantity of a product, queued by the quantity change
+     * and taken from the lots of the product by the provider, before the write commits.
+     */
+    public static final class LotDepletionEntry {
+        /**
+         * Name of database table for the queued depletions.
+         */
+        public final static String TABLE_NAME = "lot_depletions";
+
+        /**
+         * Id of the product.
+         *
+         * Type : INTEGER
+         */
+        public final static String COLUMN_PRODUCT_ID = "product_id";
+
+        /**
+         * Units to take from the lots of the product, always positive.
+         *
+         * Type : INTEGER
+         */
+        public final static String COLUMN_UNITS = "units";
+    }
+
+    /**
+     * Inner class that defines constant values for the low stock set, written by the database only.
+     * Each entry is a product at or below its reorder level, added and removed with the stock alerts
+     * of its crossings, see {@link ProductEntry#LOW_STOCK_URI}.
+     */
+    public static final class LowStockEntry {
+        /**
+         * Name of database table for the low stock set.
+         */
+        public final static String TABLE_NAME = "low_stock";
+
+        /**
+         * Id of the product, unique.
+         *
+         * Type : INTEGER
+         */
+        public final static String COLUMN_PRODUCT_ID = "product_id";
+    }
+
+    /**
+     * Inner class that defines constant values for the reservations database table.
+     * Each entry holds units of a product for a sale until it expires, see
+     * {@link ProductContract#METHOD_RESERVE}. Expired holds are released in the background, see
+     * {@link ProductContract#METHOD_EXPIRE_RESERVATIONS}.
+     */
+    public static final class ReservationEntry implements BaseColumns {
+        /**
+         * Name of database table for the reservations.
+         */
+        public final static String TABLE_NAME = "reservations";
+
+        /**
+         * Unique ID number of the reservation.
+         *
+         * Type : INTEGER
+         */
+        public final static String _ID = BaseColumns._ID;
+
+        /**
+         * Id of the product.
+         *
+         * Type : INTEGER
+         */
+        public final static String COLUMN_PRODUCT_ID = "product_id";
+
+        /**
+         * Units held, always positive.
+         *
+         * Type : INTEGER
+         */
+        public final static String COLUMN_QUANTITY = "quantity";
+
+        /**
+         * Time the hold expires, in milliseconds since the epoch.
+         *
+         * Type : INTEGER
+         */
+        public final static String COLUMN_EXPIRES_AT = "expires_at";
+    }
+
+    /**
+     * Inner class that defines constant values for the valuation history database table.
+     * Each entry is a bucket of time, a day, a week or a month, with the units and the value of the
+     * live products at its end, or at the latest write for the current day. The current day is
+     * written by the database as the quantities and prices change, from the closing figures of the
+     * latest bucket: a time without bucket kept the figures of the bucket before it.
+     */
+    public static final class ValuationEntry {
+        /**
+         * The content URI to access the valuation history in the provider, read only. Queries are
+         * in time order and require {@link ProductContract#QUERY_PARAMETER_FROM} and
+         * {@link ProductContract#QUERY_PARAMETER_TO}.
+         */
+        public static final Uri CONTENT_URI = Uri.withAppendedPath(BASE_CONTENT_URI, PATH_VALUATIONS);
+
+        /**
+         * The MIME type of the {@link #CONTENT_URI} for a list of buckets.
+         */
+        public static final String CONTENT_LIST_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_VALUATIONS;
+
+        /**
+         * Name of database table for the valuation history.
+         */
+        public final static String TABLE_NAME = "valuation_history";
+
+        /**
+         * Start of the bucket, midnight UTC of its day, of the Monday of its week or of the first
+         * day of its month, in milliseconds since the epoch. Unique.
+         *
+         * Type : INTEGER
+         */
+        public final static String COLUMN_BUCKET_START = "bucket_start";
+
+        /**
+         * Length of the bucket: {@link #RESOLUTION_DAY}, {@link #RESOLUTION_WEEK} or {@link #RESOLUTION_MONTH}.
+         *
+         * Type : INTEGER
+         */
+        public final static String COLUMN_RESOLUTION = "resolution";
+
+        /**
+         * Units of the live products at the end of the bucket.
+         *
+         * Type : INTEGER
+         */
+        public final static String COLUMN_UNITS = "units";
+
+        /**
+         * Value of the live products at the end of the bucket, the sum of their quantities times
+         * their prices, in cents.
+         *
+         * Type : INTEGER
+         */
+        public final static String COLUMN_VALUE = "value";
+
+        /**
+         * Resolution of the buckets of a day, kept for {@link ProductContract#VALUATION_DAILY_MILLIS}.
+         */
+        public static final int RESOLUTION_DAY = 0;
+
+        /**
+         * Resolution of the buckets of a week, kept for {@link ProductContract#VALUATION_WEEKLY_MILLIS}.
+         */
+        public static final int RESOLUTION_WEEK = 1;
+
+        /**
+         * Resolution of the buckets of a month, kept forever.
+         */
+        public static final int RESOLUTION_MONTH = 2;
+
+        /**
+         * Return the content URI of the buckets starting within the given range, in milliseconds
+         * since the epoch, preceded by the bucket in effect at its start if any.
+         */
+        public static Uri buildRangeUri(long from, long to) {
+            return CONTENT_URI.buildUpon()
+                    .appendQueryParameter(QUERY_PARAMETER_FROM, String.valueOf(from))
+                    .appendQueryParameter(QUERY_PARAMETER_TO, String.valueOf(to))
+                    .build();
+        }
+    }
+
+    /**
+     * Inner class that defines constant values for the deleted products database table.
+     * Deleting products only lists them here, they are hidden at once and physically removed
+     * later in small chunks, see {@link #METHOD_PURGE_DELETED}.
+     */
+    public static final class DeletedProductEntry {
+        /**
+         * Name of database table for the deleted products.
+         */
+        public final static String TABLE_NAME = "deleted_products";
+
+        /**
+         * Id of the deleted product.
+         *
+         * Type : INTEGER
+         */
+        public final static String COLUMN_PRODUCT_ID = "product_id";
+
+        /**
+         * Time of the deletion, in milliseconds since the epoch. 0 for the deletions pulled by the
+         * sync, which cannot be undone.
+         *
+         * Type : INTEGER
+         */
+        public final static String COLUMN_DELETED_AT = "deleted_at";
+
+        /**
+         * Change version of the deletion, shared by the products deleted together.
+         *
+         * Type : INTEGER
+         */
+        public final static String COLUMN_CHANGE_VERSION = "change_version";
+    }
+
+    /**
+     * Inner class that defines constant values for the tombstones database table.
+     * Each entry records the deletion of a product, until it has been pushed.
+     */
+    public static final class TombstoneEntry implements BaseColumns {
+        /**
+         * Name of database table for tombstones.
+         */
+        public final static String TABLE_NAME = "tombstones";
+
+        /**
+         * Global identifier of the deleted product.
+         *
+         * Type : TEXT
+         */
+        public final static String COLUMN_GLOBAL_ID = "global_id";
+
+        /**
+         * Change version of the deletion.
+         *
+         * Type : INTEGER
+         */
+        public final static String COLUMN_CHANGE_VERSION = "change_version";
+    }
+
+    /**
+     * Inner class that defines constant values for the sync state database table,
+     * a small key/value table updated in the same transactions as the products.
+     */
+    public static final class SyncStateEntry {
+        /**
+         * Name of database table for the sync state.
+         */
+        public final static String TABLE_NAME = "sync_state";
+
+        public final static String COLUMN_KEY = "key";
+        public final static String COLUMN_VALUE = "value";
+
+        /**
+         * Last change version given to a write.
+         */
+        public final static String KEY_CHANGE_COUNTER = "change_counter";
+
+        /**
+         * Highest change version acknowledged by the sync server.
+         */
+        public final static String KEY_PUSHED_VERSION = "pushed_version";
+
+        /**
+         * Server change token of the last pulled batch.
+         */
+        public final static String KEY_SERVER_TOKEN = "server_token";
+
+        /**
+         * Identifier of this store for the sync server.
+         */
+        public final static String KEY_CLIENT_ID = "client_id";
+
+        /**
+         * Highest change version evaluated by the last refresh of the reorder list.
+         */
+        public final static String KEY_REORDER_VERSION = "reorder_version";
+
+        /**
+         * Encoded batch pushed but not acknowledged yet.
+         */
+        public final static String KEY_PENDING_PUSH = "pending_push";
     }
 }
 
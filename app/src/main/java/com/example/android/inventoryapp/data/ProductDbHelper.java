@@ -4,7 +4,24 @@ import android.content.Context;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 
+import com.example.android.inventoryapp.data.ProductContract.AdjustmentEntry;
+import com.example.android.inventoryapp.data.ProductContract.CategoryEntry;
+import com.example.android.inventoryapp.data.ProductContract.CategoryPathEntry;
+import com.example.android.inventoryapp.data.ProductContract.DeletedProductEntry;
+import com.example.android.inventoryapp.data.ProductContract.LotDepletionEntry;
+import com.example.android.inventoryapp.data.ProductContract.LotEntry;
+import com.example.android.inventoryapp.data.ProductContract.LowStockEntry;
 import com.example.android.inventoryapp.data.ProductContract.ProductEntry;
+import com.example.android.inventoryapp.data.ProductContract.ReorderEntry;
+import com.example.android.inventoryapp.data.ProductContract.ReservationEntry;
+import com.example.android.inventoryapp.data.ProductContract.StockAlertEntry;
+import com.example.android.inventoryapp.data.ProductContract.SupplierEntry;
+import com.example.android.inventoryapp.data.ProductContract.SyncStateEntry;
+import com.example.android.inventoryapp.data.ProductContract.TombstoneEntry;
+import com.example.android.inventoryapp.data.ProductContract.ValuationEntry;
+import com.example.android.inventoryapp.sync.SyncChange;
+
+import java.util.UUID;
 
 /**
  * Database helper for Inventory App. Manages database creation and version management.
@@ -16,12 +33,23 @@ public class ProductDbHelper extends SQLiteOpenHelper {
     /**
      * Name of the database file.
      */
-    private static final String DATABASE_NAME = "inventory.db";
+    public static final String DATABASE_NAME = "inventory.db";
 
     /**
      * Database version. If we change the database schema, we must increment the database version.
      */
-    private static final int DATABASE_VERSION = 1;
+    private static final int DATABASE_VERSION = 16;
+
+    /**
+     * Statement converting the prices of the products table from currency units to cents.
+     */
+    static final String PRICE_TO_CENTS = "UPDATE " + ProductEntry.TABLE_NAME + " SET "
+            + ProductEntry.COLUMN_PRODUCT_PRICE + " = CAST(ROUND(" + ProductEntry.COLUMN_PRODUCT_PRICE + " * 100) AS INTEGER)";
+
+    /**
+     * Start of the current day, midnight UTC, in milliseconds since the epoch, in SQL.
+     */
+    private static final String TODAY = "(CAST(strftime('%s', 'now') AS INTEGER) / 86400 * 86400000)";
 
     /**
      * Constructs a new instance of {@link ProductDbHelper}.
@@ -29,11 +57,38 @@ public class ProductDbHelper extends SQLiteOpenHelper {
      * @param context of the app.
      */
     public ProductDbHelper(Context context) {
-        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        this(context, DATABASE_NAME);
+    }
+
+    /**
+     * Constructs a new instance of {@link ProductDbHelper} on another database file, for tests and tools.
+     *
+     * @param context of the app.
+     * @param name    of the database file.
+     */
+    public ProductDbHelper(Context context, String name) {
+        super(context, name, null, DATABASE_VERSION);
+
+        /*
+            Write-ahead logging lets readers (list queries, backups) run concurrently
+            with the writer instead of waiting for each write transaction to finish.
+         */
+        setWriteAheadLoggingEnabled(true);
+    }
+
+    /**
+     * Turn incremental vacuum on, so that the maintenance can return the pages freed by deleted
+     * products to the file system. The setting only takes effect on a database without tables yet,
+     * that is before {@link #onCreate}: older databases are converted when a backup is restored.
+     */
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        db.execSQL("PRAGMA auto_vacuum = INCREMENTAL");
     }
 
     /**
      * This is called when the database is created for the first time.
+     * The version 1 schema is created, then upgraded like an existing database.
      */
     @Override
     public void onCreate(SQLiteDatabase db) {
@@ -47,13 +102,599 @@ public class ProductDbHelper extends SQLiteOpenHelper {
 
         /* Execute the SQL statement. */
         db.execSQL(SQL_CREATE_PRODUCTS_TABLE);
+
+        onUpgrade(db, 1, DATABASE_VERSION);
     }
 
     /**
      * This is called when the database needs to be upgraded.
+     * Each step upgrades the schema by one version, so any older database reaches the current one.
      */
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        /* The database is still at version 1, so there's nothing to do be done here. */
+        if (oldVersion < 2) {
+            upgradeToVersion2(db);
+        }
+        if (oldVersion < 3) {
+            upgradeToVersion3(db);
+        }
+        if (oldVersion < 4) {
+            upgradeToVersion4(db);
+        }
+        if (oldVersion < 5) {
+            upgradeToVersion5(db);
+        }
+        if (oldVersion < 6) {
+            upgradeToVersion6(db);
+        }
+        if (oldVersion < 7) {
+            upgradeToVersion7(db);
+        }
+        if (oldVersion < 8) {
+            upgradeToVersion8(db);
+        }
+        if (oldVersion < 9) {
+            upgradeToVersion9(db);
+        }
+        if (oldVersion < 10) {
+            upgradeToVersion10(db);
+        }
+        if (oldVersion < 11) {
+            upgradeToVersion11(db);
+        }
+        if (oldVersion < 12) {
+            upgradeToVersion12(db);
+        }
+        if (oldVersion < 13) {
+            upgradeToVersion13(db);
+        }
+        if (oldVersion < 14) {
+            upgradeToVersion14(db);
+        }
+        if (oldVersion < 15) {
+            upgradeToVersion15(db);
+        }
+        if (oldVersion < 16) {
+            upgradeToVersion16(db);
+        }
+    }
+
+    /**
+     * Version 2: change versions, tombstones and sync state for the delta sync.
+     */
+    private static void upgradeToVersion2(SQLiteDatabase db) {
+        db.execSQL("ALTER TABLE " + ProductEntry.TABLE_NAME + " ADD COLUMN "
+                + ProductEntry.COLUMN_PRODUCT_GLOBAL_ID + " TEXT");
+        db.execSQL("ALTER TABLE " + ProductEntry.TABLE_NAME + " ADD COLUMN "
+                + ProductEntry.COLUMN_PRODUCT_CHANGE_VERSION + " INTEGER NOT NULL DEFAULT 0");
+        db.execSQL("ALTER TABLE " + ProductEntry.TABLE_NAME + " ADD COLUMN "
+                + ProductEntry.COLUMN_PRODUCT_QUANTITY_SYNCED + " INTEGER NOT NULL DEFAULT 0");
+        db.execSQL("ALTER TABLE " + ProductEntry.TABLE_NAME + " ADD COLUMN "
+                + ProductEntry.COLUMN_PRODUCT_DIRTY + " INTEGER NOT NULL DEFAULT 0");
+
+        /* Existing products have never been pushed: give them an identity and mark them all dirty. */
+        db.execSQL("UPDATE " + ProductEntry.TABLE_NAME + " SET "
+                + ProductEntry.COLUMN_PRODUCT_GLOBAL_ID + " = lower(hex(randomblob(16))), "
+                + ProductEntry.COLUMN_PRODUCT_CHANGE_VERSION + " = " + ProductEntry._ID + ", "
+                + ProductEntry.COLUMN_PRODUCT_DIRTY + " = " + SyncChange.FIELD_ALL);
+
+        db.execSQL("CREATE UNIQUE INDEX products_global_id ON " + ProductEntry.TABLE_NAME
+                + " (" + ProductEntry.COLUMN_PRODUCT_GLOBAL_ID + ")");
+        db.execSQL("CREATE INDEX products_change_version ON " + ProductEntry.TABLE_NAME
+                + " (" + ProductEntry.COLUMN_PRODUCT_CHANGE_VERSION + ")");
+
+        db.execSQL("CREATE TABLE " + TombstoneEntry.TABLE_NAME + " ("
+                + TombstoneEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + TombstoneEntry.COLUMN_GLOBAL_ID + " TEXT NOT NULL UNIQUE, "
+                + TombstoneEntry.COLUMN_CHANGE_VERSION + " INTEGER NOT NULL);");
+        db.execSQL("CREATE INDEX tombstones_change_version ON " + TombstoneEntry.TABLE_NAME
+                + " (" + TombstoneEntry.COLUMN_CHANGE_VERSION + ")");
+
+        /* The value column has no declared type, it holds integers, text and blobs. */
+        db.execSQL("CREATE TABLE " + SyncStateEntry.TABLE_NAME + " ("
+                + SyncStateEntry.COLUMN_KEY + " TEXT PRIMARY KEY, "
+                + SyncStateEntry.COLUMN_VALUE + ");");
+        db.execSQL("INSERT INTO " + SyncStateEntry.TABLE_NAME + " VALUES ('"
+                + SyncStateEntry.KEY_CHANGE_COUNTER + "', (SELECT IFNULL(MAX(" + ProductEntry._ID + "), 0) FROM "
+                + ProductEntry.TABLE_NAME + "))");
+        db.execSQL("INSERT INTO " + SyncStateEntry.TABLE_NAME + " VALUES ('"
+                + SyncStateEntry.KEY_PUSHED_VERSION + "', 0)");
+        db.execSQL("INSERT INTO " + SyncStateEntry.TABLE_NAME + " VALUES ('"
+                + SyncStateEntry.KEY_SERVER_TOKEN + "', 0)");
+        db.execSQL("INSERT INTO " + SyncStateEntry.TABLE_NAME + " VALUES ('"
+                + SyncStateEntry.KEY_CLIENT_ID + "', ?)", new Object[] { UUID.randomUUID().toString() });
+    }
+
+    /**
+     * Version 3: optional SKU / barcode, unique, so a scan resolves through the index.
+     * SQLite unique indexes allow any number of NULL values, products without SKU are fine.
+     */
+    private static void upgradeToVersion3(SQLiteDatabase db) {
+        db.execSQL("ALTER TABLE " + ProductEntry.TABLE_NAME + " ADD COLUMN "
+                + ProductEntry.COLUMN_PRODUCT_SKU + " TEXT");
+        db.execSQL("CREATE UNIQUE INDEX products_sku ON " + ProductEntry.TABLE_NAME
+                + " (" + ProductEntry.COLUMN_PRODUCT_SKU + ")");
+    }
+
+    /**
+     * Version 4: suppliers, reorder levels and the incrementally maintained reorder list.
+     */
+    private static void upgradeToVersion4(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + SupplierEntry.TABLE_NAME + " ("
+                + SupplierEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + SupplierEntry.COLUMN_SUPPLIER_NAME + " TEXT NOT NULL, "
+                + SupplierEntry.COLUMN_SUPPLIER_EMAIL + " TEXT NOT NULL);");
+
+        db.execSQL("ALTER TABLE " + ProductEntry.TABLE_NAME + " ADD COLUMN "
+                + ProductEntry.COLUMN_PRODUCT_SUPPLIER_ID + " INTEGER REFERENCES "
+                + SupplierEntry.TABLE_NAME + " (" + SupplierEntry._ID + ")");
+        db.execSQL("ALTER TABLE " + ProductEntry.TABLE_NAME + " ADD COLUMN "
+                + ProductEntry.COLUMN_PRODUCT_REORDER_LEVEL + " INTEGER NOT NULL DEFAULT 0");
+        db.execSQL("CREATE INDEX products_supplier_id ON " + ProductEntry.TABLE_NAME
+                + " (" + ProductEntry.COLUMN_PRODUCT_SUPPLIER_ID + ")");
+
+        db.execSQL("CREATE TABLE " + ReorderEntry.TABLE_NAME + " ("
+                + ReorderEntry.COLUMN_PRODUCT_ID + " INTEGER PRIMARY KEY, "
+                + ReorderEntry.COLUMN_SUPPLIER_ID + " INTEGER);");
+        db.execSQL("CREATE INDEX reorder_list_supplier_id ON " + ReorderEntry.TABLE_NAME
+                + " (" + ReorderEntry.COLUMN_SUPPLIER_ID + ")");
+
+        /* Version 0: the first refresh evaluates every product. */
+        db.execSQL("INSERT INTO " + SyncStateEntry.TABLE_NAME + " VALUES ('"
+                + SyncStateEntry.KEY_REORDER_VERSION + "', 0)");
+    }
+
+    /**
+     * Version 5: deleted products awaiting their purge.
+     */
+    private static void upgradeToVersion5(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + DeletedProductEntry.TABLE_NAME + " ("
+                + DeletedProductEntry.COLUMN_PRODUCT_ID + " INTEGER PRIMARY KEY, "
+                + DeletedProductEntry.COLUMN_DELETED_AT + " INTEGER NOT NULL, "
+                + DeletedProductEntry.COLUMN_CHANGE_VERSION + " INTEGER NOT NULL);");
+    }
+
+    /**
+     * Version 6: row versions, for the optimistic concurrency of the edits.
+     */
+    private static void upgradeToVersion6(SQLiteDatabase db) {
+        db.execSQL("ALTER TABLE " + ProductEntry.TABLE_NAME + " ADD COLUMN "
+                + ProductEntry.COLUMN_PRODUCT_VERSION + " INTEGER NOT NULL DEFAULT 0");
+    }
+
+    /**
+     * Version 7: discontinued products and out of stock times, to find the products to archive.
+     */
+    private static void upgradeToVersion7(SQLiteDatabase db) {
+        db.execSQL("ALTER TABLE " + ProductEntry.TABLE_NAME + " ADD COLUMN "
+                + ProductEntry.COLUMN_PRODUCT_DISCONTINUED + " INTEGER NOT NULL DEFAULT 0");
+        db.execSQL("ALTER TABLE " + ProductEntry.TABLE_NAME + " ADD COLUMN "
+                + ProductEntry.COLUMN_PRODUCT_ZERO_STOCK_SINCE + " INTEGER");
+
+        /* Products out of stock today start counting now. */
+        String now = "CAST(strftime('%s', 'now') AS INTEGER) * 1000";
+        db.execSQL("UPDATE " + ProductEntry.TABLE_NAME + " SET " + ProductEntry.COLUMN_PRODUCT_ZERO_STOCK_SINCE
+                + " = " + now + " WHERE " + ProductEntry.COLUMN_PRODUCT_QUANTITY + " = 0");
+
+        /*
+            The out of stock time follows the quantity whichever statement writes it. The row is
+            only written again when the quantity reaches or leaves 0.
+         */
+        db.execSQL("CREATE TRIGGER products_zero_stock_insert AFTER INSERT ON " + ProductEntry.TABLE_NAME
+                + " WHEN NEW." + ProductEntry.COLUMN_PRODUCT_QUANTITY + " = 0 BEGIN UPDATE "
+                + ProductEntry.TABLE_NAME + " SET " + ProductEntry.COLUMN_PRODUCT_ZERO_STOCK_SINCE + " = " + now
+                + " WHERE " + ProductEntry._ID + " = NEW." + ProductEntry._ID + "; END");
+        db.execSQL("CREATE TRIGGER products_zero_stock_update AFTER UPDATE OF "
+                + ProductEntry.COLUMN_PRODUCT_QUANTITY + " ON " + ProductEntry.TABLE_NAME
+                + " WHEN (NEW." + ProductEntry.COLUMN_PRODUCT_QUANTITY + " = 0) != (OLD."
+                + ProductEntry.COLUMN_PRODUCT_QUANTITY + " = 0) BEGIN UPDATE " + ProductEntry.TABLE_NAME
+                + " SET " + ProductEntry.COLUMN_PRODUCT_ZERO_STOCK_SINCE + " = CASE WHEN NEW."
+                + ProductEntry.COLUMN_PRODUCT_QUANTITY + " = 0 THEN " + now + " END WHERE "
+                + ProductEntry._ID + " = NEW." + ProductEntry._ID + "; END");
+
+        db.execSQL("CREATE INDEX products_zero_stock_since ON " + ProductEntry.TABLE_NAME
+                + " (" + ProductEntry.COLUMN_PRODUCT_ZERO_STOCK_SINCE + ")");
+        db.execSQL("CREATE INDEX products_discontinued ON " + ProductEntry.TABLE_NAME
+                + " (" + ProductEntry.COLUMN_PRODUCT_DISCONTINUED + ")");
+    }
+
+    /**
+     * Version 8: stock alerts, queued by triggers when a quantity or a reorder level makes the
+     * product cross its reorder level. The check only compares the old and new row, whatever
+     * statement writes them (edits, sales, batches, sync), and inserts nothing otherwise.
+     */
+    private static void upgradeToVersion8(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + StockAlertEntry.TABLE_NAME + " ("
+                + StockAlertEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + StockAlertEntry.COLUMN_PRODUCT_ID + " INTEGER NOT NULL, "
+                + StockAlertEntry.COLUMN_PRODUCT_NAME + " TEXT, "
+                + StockAlertEntry.COLUMN_PRODUCT_QUANTITY + " INTEGER NOT NULL, "
+                + StockAlertEntry.COLUMN_PRODUCT_REORDER_LEVEL + " INTEGER NOT NULL, "
+                + StockAlertEntry.COLUMN_LOW + " INTEGER NOT NULL, "
+                + StockAlertEntry.COLUMN_CREATED_AT + " INTEGER NOT NULL);");
+
+        String insertAlert = " BEGIN INSERT INTO " + StockAlertEntry.TABLE_NAME + " ("
+                + StockAlertEntry.COLUMN_PRODUCT_ID + ", " + StockAlertEntry.COLUMN_PRODUCT_NAME + ", "
+                + StockAlertEntry.COLUMN_PRODUCT_QUANTITY + ", " + StockAlertEntry.COLUMN_PRODUCT_REORDER_LEVEL + ", "
+                + StockAlertEntry.COLUMN_LOW + ", " + StockAlertEntry.COLUMN_CREATED_AT + ") VALUES (NEW."
+                + ProductEntry._ID + ", NEW." + ProductEntry.COLUMN_PRODUCT_NAME + ", NEW."
+                + ProductEntry.COLUMN_PRODUCT_QUANTITY + ", NEW." + ProductEntry.COLUMN_PRODUCT_REORDER_LEVEL + ", "
+                + isLow("NEW") + ", CAST(strftime('%s', 'now') AS INTEGER) * 1000); END";
+
+        /* A new product starting at or below its reorder level crosses it. */
+        db.execSQL("CREATE TRIGGER products_stock_alert_insert AFTER INSERT ON " + ProductEntry.TABLE_NAME
+                + " WHEN " + isLow("NEW") + insertAlert);
+        db.execSQL("CREATE TRIGGER products_stock_alert_update AFTER UPDATE OF "
+                + ProductEntry.COLUMN_PRODUCT_QUANTITY + ", " + ProductEntry.COLUMN_PRODUCT_REORDER_LEVEL
+                + " ON " + ProductEntry.TABLE_NAME + " WHEN " + isLow("NEW") + " != " + isLow("OLD") + insertAlert);
+    }
+
+    /**
+     * Version 9: prices in cents. They were stored as typed, in currency units, some of them with
+     * decimals (kept as REAL by the INTEGER affinity of the column).
+     */
+    private static void upgradeToVersion9(SQLiteDatabase db) {
+        db.execSQL(PRICE_TO_CENTS);
+    }
+
+    /**
+     * Version 10: stock adjustments, the quantity corrections of the stocktakes.
+     */
+    private static void upgradeToVersion10(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + AdjustmentEntry.TABLE_NAME + " ("
+                + AdjustmentEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + AdjustmentEntry.COLUMN_PRODUCT_ID + " INTEGER NOT NULL, "
+                + AdjustmentEntry.COLUMN_STOCKTAKE_ID + " INTEGER NOT NULL, "
+                + AdjustmentEntry.COLUMN_QUANTITY_BEFORE + " INTEGER NOT NULL, "
+                + AdjustmentEntry.COLUMN_QUANTITY_AFTER + " INTEGER NOT NULL, "
+                + AdjustmentEntry.COLUMN_CREATED_AT + " INTEGER NOT NULL);");
+        db.execSQL("CREATE INDEX stock_adjustments_product_id ON " + AdjustmentEntry.TABLE_NAME
+                + " (" + AdjustmentEntry.COLUMN_PRODUCT_ID + ")");
+        db.execSQL("CREATE INDEX stock_adjustments_stocktake_id ON " + AdjustmentEntry.TABLE_NAME
+                + " (" + AdjustmentEntry.COLUMN_STOCKTAKE_ID + ")");
+    }
+
+    /**
+     * Version 11: lots, the units of a product by expiry date. The lot quantity of the products is
+     * the sum of the quantities of their lots, kept by triggers, and every decrease of a quantity
+     * (sales, batches, edits, stocktakes, sync) takes its units from the lots first, earliest
+     * expiry first, in the statement that writes the quantity. The units beyond the lot quantity
+     * are not tracked by lot, they come from the stock counted before the lots.
+     */
+    private static void upgradeToVersion11(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + LotEntry.TABLE_NAME + " ("
+                + LotEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + LotEntry.COLUMN_PRODUCT_ID + " INTEGER NOT NULL, "
+                + LotEntry.COLUMN_LOT_CODE + " TEXT NOT NULL, "
+                + LotEntry.COLUMN_EXPIRES_AT + " INTEGER NOT NULL, "
+                + LotEntry.COLUMN_QUANTITY + " INTEGER NOT NULL CHECK (" + LotEntry.COLUMN_QUANTITY + " > 0));");
+
+        /*
+            The depletion walks the lots of a product by expiry, and the expiry queries range over
+            all the lots by expiry: both indexes cover the columns they read, the table is not visited.
+         */
+        db.execSQL("CREATE INDEX lots_product_id_expires_at ON " + LotEntry.TABLE_NAME + " ("
+                + LotEntry.COLUMN_PRODUCT_ID + ", " + LotEntry.COLUMN_EXPIRES_AT + ", " + LotEntry.COLUMN_QUANTITY + ")");
+        db.execSQL("CREATE INDEX lots_expires_at ON " + LotEntry.TABLE_NAME + " ("
+                + LotEntry.COLUMN_EXPIRES_AT + ", " + LotEntry.COLUMN_PRODUCT_ID + ", "
+                + LotEntry.COLUMN_QUANTITY + ", " + LotEntry.COLUMN_LOT_CODE + ")");
+
+        db.execSQL("ALTER TABLE " + ProductEntry.TABLE_NAME + " ADD COLUMN "
+                + ProductEntry.COLUMN_PRODUCT_LOT_QUANTITY + " INTEGER NOT NULL DEFAULT 0");
+
+        /* The lot quantity only moves by the change of a lot, it is never summed again. */
+        db.execSQL("CREATE TRIGGER lots_insert AFTER INSERT ON " + LotEntry.TABLE_NAME
+                + addLotQuantity("NEW." + LotEntry.COLUMN_QUANTITY, "NEW"));
+        db.execSQL("CREATE TRIGGER lots_update AFTER UPDATE OF " + LotEntry.COLUMN_QUANTITY + " ON "
+                + LotEntry.TABLE_NAME + addLotQuantity("NEW." + LotEntry.COLUMN_QUANTITY
+                + " - OLD." + LotEntry.COLUMN_QUANTITY, "NEW"));
+        db.execSQL("CREATE TRIGGER lots_delete AFTER DELETE ON " + LotEntry.TABLE_NAME
+                + addLotQuantity("-OLD." + LotEntry.COLUMN_QUANTITY, "OLD"));
+
+        /*
+            The depletion first deletes the lots it empties: those whose running total, in expiry
+            order, is within the units to take. SQLite selects the rows of such a DELETE before
+            removing any, so the running totals are the ones before the sale. The units left are
+            then taken from the earliest remaining lot: the lot quantity tells how many the
+            deletions took. The lot triggers only write the lot quantity, which fires no trigger
+            of the products.
+         */
+        String units = "MIN(OLD." + ProductEntry.COLUMN_PRODUCT_QUANTITY + " - NEW."
+                + ProductEntry.COLUMN_PRODUCT_QUANTITY + ", NEW." + ProductEntry.COLUMN_PRODUCT_LOT_QUANTITY + ")";
+        String unitsLeft = units + " - NEW." + ProductEntry.COLUMN_PRODUCT_LOT_QUANTITY + " + (SELECT "
+                + ProductEntry.COLUMN_PRODUCT_LOT_QUANTITY + " FROM " + ProductEntry.TABLE_NAME + " WHERE "
+                + ProductEntry._ID + " = NEW." + ProductEntry._ID + ")";
+        db.execSQL("CREATE TRIGGER products_deplete_lots AFTER UPDATE OF " + ProductEntry.COLUMN_PRODUCT_QUANTITY
+                + " ON " + ProductEntry.TABLE_NAME + " WHEN NEW." + ProductEntry.COLUMN_PRODUCT_QUANTITY
+                + " < OLD." + ProductEntry.COLUMN_PRODUCT_QUANTITY + " AND NEW."
+                + ProductEntry.COLUMN_PRODUCT_LOT_QUANTITY + " > 0 BEGIN"
+                + " DELETE FROM " + LotEntry.TABLE_NAME + " WHERE " + LotEntry.COLUMN_PRODUCT_ID + " = NEW."
+                + ProductEntry._ID + " AND (SELECT SUM(earlier." + LotEntry.COLUMN_QUANTITY + ") FROM "
+                + LotEntry.TABLE_NAME + " AS earlier WHERE earlier." + LotEntry.COLUMN_PRODUCT_ID + " = NEW."
+                + ProductEntry._ID + " AND (earlier." + LotEntry.COLUMN_EXPIRES_AT + " < "
+                + LotEntry.TABLE_NAME + "." + LotEntry.COLUMN_EXPIRES_AT + " OR (earlier."
+                + LotEntry.COLUMN_EXPIRES_AT + " = " + LotEntry.TABLE_NAME + "." + LotEntry.COLUMN_EXPIRES_AT
+                + " AND earlier." + LotEntry._ID + " <= " + LotEntry.TABLE_NAME + "." + LotEntry._ID + "))) <= "
+                + units + ";"
+                + " UPDATE " + LotEntry.TABLE_NAME + " SET " + LotEntry.COLUMN_QUANTITY + " = "
+                + LotEntry.COLUMN_QUANTITY + " - (" + unitsLeft + ") WHERE " + LotEntry._ID + " = (SELECT "
+                + LotEntry._ID + " FROM " + LotEntry.TABLE_NAME + " WHERE " + LotEntry.COLUMN_PRODUCT_ID
+                + " = NEW." + ProductEntry._ID + " ORDER BY " + LotEntry.COLUMN_EXPIRES_AT + ", " + LotEntry._ID
+                + " LIMIT 1) AND " + unitsLeft + " > 0; END");
+    }
+
+    /**
+     * Version 12: categories, with their closure table and the rollups of their subtrees.
+     *
+     * The rollups follow the products whatever statement writes them, like the stock alerts:
+     * a product entering or leaving a category, or changing its quantity or price, updates the
+     * rollups of the ancestors of its category, found in the closure table. Soft deletions and
+     * their undo leave and re-enter the rollups, and the purge of a deleted product, already
+     * out of them, changes nothing.
+     */
+    private static void upgradeToVersion12(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + CategoryEntry.TABLE_NAME + " ("
+                + CategoryEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + CategoryEntry.COLUMN_CATEGORY_NAME + " TEXT NOT NULL, "
+                + CategoryEntry.COLUMN_CATEGORY_PARENT_ID + " INTEGER REFERENCES "
+                + CategoryEntry.TABLE_NAME + " (" + CategoryEntry._ID + "), "
+                + CategoryEntry.COLUMN_CATEGORY_ITEM_COUNT + " INTEGER NOT NULL DEFAULT 0, "
+                + CategoryEntry.COLUMN_CATEGORY_UNITS + " INTEGER NOT NULL DEFAULT 0, "
+                + CategoryEntry.COLUMN_CATEGORY_VALUE + " INTEGER NOT NULL DEFAULT 0);");
+        db.execSQL("CREATE INDEX categories_parent_id ON " + CategoryEntry.TABLE_NAME
+                + " (" + CategoryEntry.COLUMN_CATEGORY_PARENT_ID + ")");
+
+        db.execSQL("CREATE TABLE " + CategoryPathEntry.TABLE_NAME + " ("
+                + CategoryPathEntry.COLUMN_ANCESTOR_ID + " INTEGER NOT NULL, "
+                + CategoryPathEntry.COLUMN_DESCENDANT_ID + " INTEGER NOT NULL, "
+                + CategoryPathEntry.COLUMN_DEPTH + " INTEGER NOT NULL, "
+                + "PRIMARY KEY (" + CategoryPathEntry.COLUMN_ANCESTOR_ID + ", "
+                + CategoryPathEntry.COLUMN_DESCENDANT_ID + "));");
+        /* The ancestors of a category, read by every rollup update, without visiting the table. */
+        db.execSQL("CREATE INDEX category_paths_descendant_id ON " + CategoryPathEntry.TABLE_NAME + " ("
+                + CategoryPathEntry.COLUMN_DESCENDANT_ID + ", " + CategoryPathEntry.COLUMN_ANCESTOR_ID + ")");
+
+        db.execSQL("ALTER TABLE " + ProductEntry.TABLE_NAME + " ADD COLUMN "
+                + ProductEntry.COLUMN_PRODUCT_CATEGORY_ID + " INTEGER REFERENCES "
+                + CategoryEntry.TABLE_NAME + " (" + CategoryEntry._ID + ")");
+        db.execSQL("CREATE INDEX products_category_id ON " + ProductEntry.TABLE_NAME
+                + " (" + ProductEntry.COLUMN_PRODUCT_CATEGORY_ID + ")");
+
+        String live = " NOT IN (SELECT " + DeletedProductEntry.COLUMN_PRODUCT_ID + " FROM "
+                + DeletedProductEntry.TABLE_NAME + ")";
+        db.execSQL("CREATE TRIGGER products_rollup_insert AFTER INSERT ON " + ProductEntry.TABLE_NAME
+                + " WHEN NEW." + ProductEntry.COLUMN_PRODUCT_CATEGORY_ID + " IS NOT NULL BEGIN "
+                + addToRollups("+", "NEW") + " END");
+        db.execSQL("CREATE TRIGGER products_rollup_update AFTER UPDATE OF "
+                + ProductEntry.COLUMN_PRODUCT_CATEGORY_ID + ", " + ProductEntry.COLUMN_PRODUCT_QUANTITY + ", "
+                + ProductEntry.COLUMN_PRODUCT_PRICE + " ON " + ProductEntry.TABLE_NAME
+                + " WHEN (OLD." + ProductEntry.COLUMN_PRODUCT_CATEGORY_ID + " IS NOT NEW."
+                + ProductEntry.COLUMN_PRODUCT_CATEGORY_ID + " OR (NEW." + ProductEntry.COLUMN_PRODUCT_CATEGORY_ID
+                + " IS NOT NULL AND (OLD." + ProductEntry.COLUMN_PRODUCT_QUANTITY + " != NEW."
+                + ProductEntry.COLUMN_PRODUCT_QUANTITY + " OR OLD." + ProductEntry.COLUMN_PRODUCT_PRICE + " != NEW."
+                + ProductEntry.COLUMN_PRODUCT_PRICE + "))) AND NEW." + ProductEntry._ID + live
+                + " BEGIN " + addToRollups("-", "OLD") + " " + addToRollups("+", "NEW") + " END");
+        db.execSQL("CREATE TRIGGER products_rollup_delete AFTER DELETE ON " + ProductEntry.TABLE_NAME
+                + " WHEN OLD." + ProductEntry.COLUMN_PRODUCT_CATEGORY_ID + " IS NOT NULL AND OLD."
+                + ProductEntry._ID + live + " BEGIN " + addToRollups("-", "OLD") + " END");
+
+        /* A purged product is no longer in the products table when its deletion is removed. */
+        String deletedProduct = " FROM " + ProductEntry.TABLE_NAME + " WHERE " + ProductEntry._ID + " = ";
+        db.execSQL("CREATE TRIGGER deleted_products_rollup_insert AFTER INSERT ON " + DeletedProductEntry.TABLE_NAME
+                + " BEGIN " + addToRollups("-", ProductEntry.TABLE_NAME, deletedProduct + "NEW."
+                + DeletedProductEntry.COLUMN_PRODUCT_ID) + " END");
+        db.execSQL("CREATE TRIGGER deleted_products_rollup_delete AFTER DELETE ON " + DeletedProductEntry.TABLE_NAME
+                + " BEGIN " + addToRollups("+", ProductEntry.TABLE_NAME, deletedProduct + "OLD."
+                + DeletedProductEntry.COLUMN_PRODUCT_ID) + " END");
+    }
+
+    /**
+     * Version 13: reservations, units of a product held for a sale until they expire. The reserved
+     * units of the products are the sum of their holds, kept by triggers, so that the units
+     * available to sell, the quantity minus the reserved units, are read from the product row alone.
+     */
+    private static void upgradeToVersion13(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + ReservationEntry.TABLE_NAME + " ("
+                + ReservationEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + ReservationEntry.COLUMN_PRODUCT_ID + " INTEGER NOT NULL, "
+                + ReservationEntry.COLUMN_QUANTITY + " INTEGER NOT NULL CHECK ("
+                + ReservationEntry.COLUMN_QUANTITY + " > 0), "
+                + ReservationEntry.COLUMN_EXPIRES_AT + " INTEGER NOT NULL);");
+
+        /*
+            The sweeper takes the earliest holds of all the products, a reservation the expired
+            holds of its product only: each reads a range of its index, however many holds there are.
+         */
+        db.execSQL("CREATE INDEX reservations_expires_at ON " + ReservationEntry.TABLE_NAME
+                + " (" + ReservationEntry.COLUMN_EXPIRES_AT + ")");
+        db.execSQL("CREATE INDEX reservations_product_id_expires_at ON " + ReservationEntry.TABLE_NAME + " ("
+                + ReservationEntry.COLUMN_PRODUCT_ID + ", " + ReservationEntry.COLUMN_EXPIRES_AT + ")");
+
+        db.execSQL("ALTER TABLE " + ProductEntry.TABLE_NAME + " ADD COLUMN "
+                + ProductEntry.COLUMN_PRODUCT_RESERVED + " INTEGER NOT NULL DEFAULT 0");
+
+        /* Holds are only inserted and deleted, confirming one deletes it and sells its units. */
+        db.execSQL("CREATE TRIGGER reservations_insert AFTER INSERT ON " + ReservationEntry.TABLE_NAME
+                + addReserved("NEW." + ReservationEntry.COLUMN_QUANTITY, "NEW"));
+        db.execSQL("CREATE TRIGGER reservations_delete AFTER DELETE ON " + ReservationEntry.TABLE_NAME
+                + addReserved("-OLD." + ReservationEntry.COLUMN_QUANTITY, "OLD"));
+    }
+
+    /**
+     * Version 14: the valuation history, the units and value of the live products by day.
+     *
+     * The bucket of the current day moves by the change of each write, like the category rollups:
+     * the quantity delta times the price, plus the price delta times the quantity, whatever
+     * statement writes them. The first write of a day opens its bucket with the closing figures of
+     * the latest one. The figures of the products are only summed once, here, to open the history.
+     */
+    private static void upgradeToVersion14(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + ValuationEntry.TABLE_NAME + " ("
+                + ValuationEntry.COLUMN_BUCKET_START + " INTEGER PRIMARY KEY, "
+                + ValuationEntry.COLUMN_RESOLUTION + " INTEGER NOT NULL, "
+                + ValuationEntry.COLUMN_UNITS + " INTEGER NOT NULL, "
+                + ValuationEntry.COLUMN_VALUE + " INTEGER NOT NULL);");
+
+        String live = " NOT IN (SELECT " + DeletedProductEntry.COLUMN_PRODUCT_ID + " FROM "
+                + DeletedProductEntry.TABLE_NAME + ")";
+        db.execSQL("INSERT INTO " + ValuationEntry.TABLE_NAME + " (" + ValuationEntry.COLUMN_BUCKET_START + ", "
+                + ValuationEntry.COLUMN_RESOLUTION + ", " + ValuationEntry.COLUMN_UNITS + ", "
+                + ValuationEntry.COLUMN_VALUE + ") SELECT " + TODAY + ", " + ValuationEntry.RESOLUTION_DAY
+                + ", IFNULL(SUM(" + ProductEntry.COLUMN_PRODUCT_QUANTITY + "), 0), IFNULL(SUM("
+                + ProductEntry.COLUMN_PRODUCT_QUANTITY + " * " + ProductEntry.COLUMN_PRODUCT_PRICE + "), 0) FROM "
+                + ProductEntry.TABLE_NAME + " WHERE " + ProductEntry._ID + live);
+
+        String quantity = ProductEntry.COLUMN_PRODUCT_QUANTITY;
+        String price = ProductEntry.COLUMN_PRODUCT_PRICE;
+        db.execSQL("CREATE TRIGGER products_valuation_insert AFTER INSERT ON " + ProductEntry.TABLE_NAME
+                + " BEGIN " + addToValuation("NEW." + quantity, "NEW." + quantity + " * NEW." + price) + " END");
+        db.execSQL("CREATE TRIGGER products_valuation_update AFTER UPDATE OF " + quantity + ", " + price
+                + " ON " + ProductEntry.TABLE_NAME + " WHEN (OLD." + quantity + " != NEW." + quantity
+                + " OR OLD." + price + " != NEW." + price + ") AND NEW." + ProductEntry._ID + live + " BEGIN "
+                + addToValuation("NEW." + quantity + " - OLD." + quantity, "(NEW." + quantity + " - OLD."
+                + quantity + ") * NEW." + price + " + (NEW." + price + " - OLD." + price + ") * OLD." + quantity)
+                + " END");
+        db.execSQL("CREATE TRIGGER products_valuation_delete AFTER DELETE ON " + ProductEntry.TABLE_NAME
+                + " WHEN OLD." + ProductEntry._ID + live + " BEGIN "
+                + addToValuation("-OLD." + quantity, "-OLD." + quantity + " * OLD." + price) + " END");
+
+        /* Soft deletions leave the valuation and their undo comes back; a purged product is already out. */
+        String deletedProduct = " FROM " + ProductEntry.TABLE_NAME + " WHERE " + ProductEntry._ID + " = ";
+        String newProduct = deletedProduct + "NEW." + DeletedProductEntry.COLUMN_PRODUCT_ID;
+        String oldProduct = deletedProduct + "OLD." + DeletedProductEntry.COLUMN_PRODUCT_ID;
+        db.execSQL("CREATE TRIGGER deleted_products_valuation_insert AFTER INSERT ON "
+                + DeletedProductEntry.TABLE_NAME + " WHEN EXISTS (SELECT 1" + newProduct + ") BEGIN "
+                + addToValuation("-(SELECT " + quantity + newProduct + ")",
+                "-(SELECT " + quantity + " * " + price + newProduct + ")") + " END");
+        db.execSQL("CREATE TRIGGER deleted_products_valuation_delete AFTER DELETE ON "
+                + DeletedProductEntry.TABLE_NAME + " WHEN EXISTS (SELECT 1" + oldProduct + ") BEGIN "
+                + addToValuation("(SELECT " + quantity + oldProduct + ")",
+                "(SELECT " + quantity + " * " + price + oldProduct + ")") + " END");
+    }
+
+    /**
+     * Version 15: the depletion of the lots moves to {@link LotOperations#deplete}.
+     *
+     * The trigger of version 11 summed the earlier lots for every lot of the product, quadratic
+     * in its lots. A decrease of the quantity now only queues its units, and the provider takes
+     * them from the lots in one pass by expiry before the write commits.
+     */
+    private static void upgradeToVersion15(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + LotDepletionEntry.TABLE_NAME + " ("
+                + LotDepletionEntry.COLUMN_PRODUCT_ID + " INTEGER NOT NULL, "
+                + LotDepletionEntry.COLUMN_UNITS + " INTEGER NOT NULL);");
+
+        db.execSQL("DROP TRIGGER products_deplete_lots");
+        db.execSQL("CREATE TRIGGER products_queue_lot_depletion AFTER UPDATE OF "
+                + ProductEntry.COLUMN_PRODUCT_QUANTITY + " ON " + ProductEntry.TABLE_NAME + " WHEN NEW."
+                + ProductEntry.COLUMN_PRODUCT_QUANTITY + " < OLD." + ProductEntry.COLUMN_PRODUCT_QUANTITY
+                + " AND NEW." + ProductEntry.COLUMN_PRODUCT_LOT_QUANTITY + " > 0 BEGIN INSERT INTO "
+                + LotDepletionEntry.TABLE_NAME + " (" + LotDepletionEntry.COLUMN_PRODUCT_ID + ", "
+                + LotDepletionEntry.COLUMN_UNITS + ") VALUES (NEW." + ProductEntry._ID + ", OLD."
+                + ProductEntry.COLUMN_PRODUCT_QUANTITY + " - NEW." + ProductEntry.COLUMN_PRODUCT_QUANTITY + "); END");
+    }
+
+    /**
+     * Version 16: the low stock set, the products at or below their reorder level. It follows the
+     * stock alerts, which record every crossing, so that the notification of the products low on
+     * stock reads the set instead of filtering the whole products table.
+     */
+    private static void upgradeToVersion16(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + LowStockEntry.TABLE_NAME + " ("
+                + LowStockEntry.COLUMN_PRODUCT_ID + " INTEGER PRIMARY KEY);");
+        db.execSQL("INSERT INTO " + LowStockEntry.TABLE_NAME + " (" + LowStockEntry.COLUMN_PRODUCT_ID + ") SELECT "
+                + ProductEntry._ID + " FROM " + ProductEntry.TABLE_NAME + " WHERE "
+                + ProductEntry.COLUMN_PRODUCT_QUANTITY + " <= " + ProductEntry.COLUMN_PRODUCT_REORDER_LEVEL);
+
+        db.execSQL("CREATE TRIGGER stock_alerts_low_stock_insert AFTER INSERT ON " + StockAlertEntry.TABLE_NAME
+                + " WHEN NEW." + StockAlertEntry.COLUMN_LOW + " BEGIN INSERT OR IGNORE INTO " + LowStockEntry.TABLE_NAME
+                + " (" + LowStockEntry.COLUMN_PRODUCT_ID + ") VALUES (NEW." + StockAlertEntry.COLUMN_PRODUCT_ID + "); END");
+        db.execSQL("CREATE TRIGGER stock_alerts_low_stock_delete AFTER INSERT ON " + StockAlertEntry.TABLE_NAME
+                + " WHEN NOT NEW." + StockAlertEntry.COLUMN_LOW + " BEGIN DELETE FROM " + LowStockEntry.TABLE_NAME
+                + " WHERE " + LowStockEntry.COLUMN_PRODUCT_ID + " = NEW." + StockAlertEntry.COLUMN_PRODUCT_ID + "; END");
+
+        /* Purged and archived products leave the set, soft deleted ones are filtered out by the query. */
+        db.execSQL("CREATE TRIGGER products_low_stock_delete AFTER DELETE ON " + ProductEntry.TABLE_NAME
+                + " BEGIN DELETE FROM " + LowStockEntry.TABLE_NAME + " WHERE " + LowStockEntry.COLUMN_PRODUCT_ID
+                + " = OLD." + ProductEntry._ID + "; END");
+    }
+
+    /**
+     * Return the statement adding (sign +) or removing (sign -) the product of a trigger row (NEW
+     * or OLD) to or from the rollups of the ancestors of its category.
+     */
+    private static String addToRollups(String sign, String row) {
+        return addToRollups(sign, row, "");
+    }
+
+    /**
+     * Return the statement adding or removing a product to or from the rollups of the ancestors
+     * of its category, the product being a row of the given name, in the FROM clause given if any.
+     */
+    private static String addToRollups(String sign, String row, String from) {
+        String quantity = row + "." + ProductEntry.COLUMN_PRODUCT_QUANTITY;
+        String price = row + "." + ProductEntry.COLUMN_PRODUCT_PRICE;
+        String category = row + "." + ProductEntry.COLUMN_PRODUCT_CATEGORY_ID;
+        if (!from.isEmpty()) {
+            quantity = "(SELECT " + quantity + from + ")";
+            price = "(SELECT " + price + from + ")";
+            category = "(SELECT " + category + from + ")";
+        }
+
+        return "UPDATE " + CategoryEntry.TABLE_NAME + " SET "
+                + CategoryEntry.COLUMN_CATEGORY_ITEM_COUNT + " = " + CategoryEntry.COLUMN_CATEGORY_ITEM_COUNT
+                + " " + sign + " 1, "
+                + CategoryEntry.COLUMN_CATEGORY_UNITS + " = " + CategoryEntry.COLUMN_CATEGORY_UNITS
+                + " " + sign + " " + quantity + ", "
+                + CategoryEntry.COLUMN_CATEGORY_VALUE + " = " + CategoryEntry.COLUMN_CATEGORY_VALUE
+                + " " + sign + " " + quantity + " * " + price + " WHERE " + CategoryEntry._ID + " IN (SELECT "
+                + CategoryPathEntry.COLUMN_ANCESTOR_ID + " FROM " + CategoryPathEntry.TABLE_NAME + " WHERE "
+                + CategoryPathEntry.COLUMN_DESCENDANT_ID + " = " + category + ");";
+    }
+
+    /**
+     * Return the statements adding the given deltas of units and value to the valuation bucket of
+     * the current day, opened first with the closing figures of the latest bucket if needed.
+     */
+    private static String addToValuation(String units, String value) {
+        String latest = " FROM " + ValuationEntry.TABLE_NAME + " ORDER BY " + ValuationEntry.COLUMN_BUCKET_START
+                + " DESC LIMIT 1";
+
+        return "INSERT OR IGNORE INTO " + ValuationEntry.TABLE_NAME + " (" + ValuationEntry.COLUMN_BUCKET_START
+                + ", " + ValuationEntry.COLUMN_RESOLUTION + ", " + ValuationEntry.COLUMN_UNITS + ", "
+                + ValuationEntry.COLUMN_VALUE + ") VALUES (" + TODAY + ", " + ValuationEntry.RESOLUTION_DAY
+                + ", IFNULL((SELECT " + ValuationEntry.COLUMN_UNITS + latest + "), 0), IFNULL((SELECT "
+                + ValuationEntry.COLUMN_VALUE + latest + "), 0)); UPDATE " + ValuationEntry.TABLE_NAME + " SET "
+                + ValuationEntry.COLUMN_UNITS + " = " + ValuationEntry.COLUMN_UNITS + " + " + units + ", "
+                + ValuationEntry.COLUMN_VALUE + " = " + ValuationEntry.COLUMN_VALUE + " + " + value + " WHERE "
+                + ValuationEntry.COLUMN_BUCKET_START + " = " + TODAY + ";";
+    }
+
+    /**
+     * Return the body of a lot trigger adding the given delta to the lot quantity of the product
+     * of the trigger row (NEW or OLD).
+     */
+    private static String addLotQuantity(String delta, String row) {
+        return " BEGIN UPDATE " + ProductEntry.TABLE_NAME + " SET " + ProductEntry.COLUMN_PRODUCT_LOT_QUANTITY
+                + " = " + ProductEntry.COLUMN_PRODUCT_LOT_QUANTITY + " + " + delta + " WHERE "
+                + ProductEntry._ID + " = " + row + "." + LotEntry.COLUMN_PRODUCT_ID + "; END";
+    }
+
+    /**
+     * Return the body of a reservation trigger adding the given delta to the reserved units of the
+     * product of the trigger row (NEW or OLD).
+     */
+    private static String addReserved(String delta, String row) {
+        return " BEGIN UPDATE " + ProductEntry.TABLE_NAME + " SET " + ProductEntry.COLUMN_PRODUCT_RESERVED
+                + " = " + ProductEntry.COLUMN_PRODUCT_RESERVED + " + " + delta + " WHERE "
+                + ProductEntry._ID + " = " + row + "." + ReservationEntry.COLUMN_PRODUCT_ID + "; END";
+    }
+
+    /**
+     * Return the condition of a trigger row (NEW or OLD) being at or below its reorder level.
+     */
+    private static String isLow(String row) {
+        return "(" + row + "." + ProductEntry.COLUMN_PRODUCT_QUANTITY + " <= "
+                + row + "." + ProductEntry.COLUMN_PRODUCT_REORDER_LEVEL + ")";
     }
-}
\ No newline at end of file
+}
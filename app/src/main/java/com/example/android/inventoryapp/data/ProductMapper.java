@@ -0,0 +1,125 @@
+package com.example.android.inventoryapp.data;
+
+import android.database.Cursor;
+
+import com.example.android.inventoryapp.data.ProductContract.ProductEntry;
+
+/**
+ * Reads the products of a cursor into {@link Product}s through the typed getters of the cursor:
+ * no text to parse and no boxing. The column indexes are looked up once, when the mapper is created,
+ * so a mapper belongs to one cursor and must be created again when the cursor is swapped.
+ *
+ * Columns missing from the projection are skipped by {@link #read}, their getters throw.
+ */
+public final class ProductMapper {
+    private final Cursor mCursor;
+
+    private final int mIdIndex;
+    private final int mNameIndex;
+    private final int mSkuIndex;
+    private final int mQuantityIndex;
+    private final int mReservedIndex;
+    private final int mPriceIndex;
+    private final int mReorderLevelIndex;
+    private final int mVersionIndex;
+    private final int mPictureIndex;
+
+    public ProductMapper(Cursor cursor) {
+        mCursor = cursor;
+        mIdIndex = cursor.getColumnIndex(ProductEntry._ID);
+        mNameIndex = cursor.getColumnIndex(ProductEntry.COLUMN_PRODUCT_NAME);
+        mSkuIndex = cursor.getColumnIndex(ProductEntry.COLUMN_PRODUCT_SKU);
+        mQuantityIndex = cursor.getColumnIndex(ProductEntry.COLUMN_PRODUCT_QUANTITY);
+        mReservedIndex = cursor.getColumnIndex(ProductEntry.COLUMN_PRODUCT_RESERVED);
+        mPriceIndex = cursor.getColumnIndex(ProductEntry.COLUMN_PRODUCT_PRICE);
+        mReorderLevelIndex = cursor.getColumnIndex(ProductEntry.COLUMN_PRODUCT_REORDER_LEVEL);
+        mVersionIndex = cursor.getColumnIndex(ProductEntry.COLUMN_PRODUCT_VERSION);
+        mPictureIndex = cursor.getColumnIndex(ProductEntry.COLUMN_PRODUCT_PICTURE);
+    }
+
+    /**
+     * Return true if the mapper was created for this cursor.
+     */
+    public boolean isFor(Cursor cursor) {
+        return mCursor == cursor;
+    }
+
+    public long getId() {
+        return mCursor.getLong(check(mIdIndex, ProductEntry._ID));
+    }
+
+    public String getName() {
+        return mCursor.getString(check(mNameIndex, ProductEntry.COLUMN_PRODUCT_NAME));
+    }
+
+    public int getQuantity() {
+        return mCursor.getInt(check(mQuantityIndex, ProductEntry.COLUMN_PRODUCT_QUANTITY));
+    }
+
+    /**
+     * Return the units available to sell, the quantity minus the reserved units. The reserved
+     * units may be missing from the projection, as in the startup snapshot: the whole quantity
+     * is then taken as available.
+     */
+    public int getAvailable() {
+        int quantity = getQuantity();
+        if (mReservedIndex == -1) {
+            return quantity;
+        }
+
+        return Math.max(quantity - mCursor.getInt(mReservedIndex), 0);
+    }
+
+    public long getPriceCents() {
+        return mCursor.getLong(check(mPriceIndex, ProductEntry.COLUMN_PRODUCT_PRICE));
+    }
+
+    public long getVersion() {
+        return mCursor.getLong(check(mVersionIndex, ProductEntry.COLUMN_PRODUCT_VERSION));
+    }
+
+    public byte[] getPicture() {
+        return mCursor.getBlob(check(mPictureIndex, ProductEntry.COLUMN_PRODUCT_PICTURE));
+    }
+
+    /**
+     * Read the product at the current position of the cursor into the given product, and return it.
+     * The fields of the columns missing from the projection are left untouched.
+     */
+    public Product read(Product product) {
+        if (mIdIndex != -1) {
+            product.id = mCursor.getLong(mIdIndex);
+        }
+        if (mNameIndex != -1) {
+            product.name = mCursor.getString(mNameIndex);
+        }
+        if (mSkuIndex != -1) {
+            product.sku = mCursor.getString(mSkuIndex);
+        }
+        if (mQuantityIndex != -1) {
+            product.quantity = mCursor.getInt(mQuantityIndex);
+        }
+        if (mPriceIndex != -1) {
+            product.priceCents = mCursor.getLong(mPriceIndex);
+        }
+        if (mReorderLevelIndex != -1) {
+            product.reorderLevel = mCursor.getInt(mReorderLevelIndex);
+        }
+        if (mVersionIndex != -1) {
+            product.version = mCursor.getLong(mVersionIndex);
+        }
+        if (mPictureIndex != -1) {
+            product.picture = mCursor.getBlob(mPictureIndex);
+        }
+
+        return product;
+    }
+
+    private static int check(int index, String column) {
+        if (index == -1) {
+            throw new IllegalArgumentException("Column " + column + " is not in the projection.");
+        }
+
+        return index;
+    }
+}
@@ -1,15 +1,46 @@
 package com.example.android.inventoryapp.data;
 
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentResolver;
 import android.content.ContentUris;
 import android.content.ContentValues;
+import android.content.Context;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
 import android.net.Uri;
+import android.os.Binder;
+import android.os.Bundle;
+import android.os.CancellationSignal;
+import android.os.Process;
 import android.util.Log;
+import android.util.LruCache;
 
+import com.example.android.inventoryapp.R;
+import com.example.android.inventoryapp.data.ProductContract.AdjustmentEntry;
+import com.example.android.inventoryapp.data.ProductContract.CategoryEntry;
+import com.example.android.inventoryapp.data.ProductContract.LotEntry;
+import com.example.android.inventoryapp.data.ProductContract.LowStockEntry;
 import com.example.android.inventoryapp.data.ProductContract.ProductEntry;
+import com.example.android.inventoryapp.data.ProductContract.ReorderEntry;
+import com.example.android.inventoryapp.data.ProductContract.StockAlertEntry;
+import com.example.android.inventoryapp.data.ProductContract.SupplierEntry;
+import com.example.android.inventoryapp.data.ProductContract.ValuationEntry;
+import com.example.android.inventoryapp.startup.StartupTracer;
+import com.example.android.inventoryapp.sync.SyncBatch;
+import com.example.android.inventoryapp.sync.SyncChange;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * {@link ContentProvider} for Inventory App.
@@ -30,6 +61,76 @@ public class ProductProvider extends ContentProvider {
      */
     private static final int PRODUCT_ID = 101;
 
+    /**
+     * URI matcher code for the content URI of the change log of the products.
+     */
+    private static final int PRODUCT_CHANGES = 102;
+
+    /**
+     * URI matcher code for the content URI of a single product looked up by SKU.
+     */
+    private static final int PRODUCT_SKU = 103;
+
+    /**
+     * URI matcher code for the content URI of the products at or below their reorder level.
+     */
+    private static final int PRODUCTS_LOW_STOCK = 104;
+
+    /**
+     * URI matcher code for the content URI for the suppliers table.
+     */
+    private static final int SUPPLIERS = 200;
+
+    /**
+     * URI matcher code for the content URI for a single supplier in the suppliers table.
+     */
+    private static final int SUPPLIER_ID = 201;
+
+    /**
+     * URI matcher code for the content URI of the reorder list.
+     */
+    private static final int REORDERS = 300;
+
+    /**
+     * URI matcher code for the content URI of the stock alerts queue.
+     */
+    private static final int STOCK_ALERTS = 400;
+
+    /**
+     * URI matcher code for the content URI of the stock adjustments.
+     */
+    private static final int ADJUSTMENTS = 500;
+
+    /**
+     * URI matcher code for the content URI of the lots.
+     */
+    private static final int LOTS = 600;
+
+    /**
+     * URI matcher code for the content URI of the categories.
+     */
+    private static final int CATEGORIES = 700;
+
+    /**
+     * URI matcher code for the content URI of a single category, with its rollups.
+     */
+    private static final int CATEGORY_ID = 701;
+
+    /**
+     * URI matcher code for the content URI of the products of a category and of its descendants.
+     */
+    private static final int CATEGORY_PRODUCTS = 702;
+
+    /**
+     * URI matcher code for the content URI of the valuation history.
+     */
+    private static final int VALUATIONS = 800;
+
+    /**
+     * Number of recent SKU lookups kept in memory.
+     */
+    private static final int SKU_CACHE_SIZE = 256;
+
     /**
      * UriMatcher object to match a content URI to a corresponding code.
      * The input passed into the constructor represents the code to return for the root URI.
@@ -60,19 +161,210 @@ public class ProductProvider extends ContentProvider {
             "content://com.example.android.inventoryapp/products" (without a number at the end) doesn't match.
          */
         sUriMatcher.addURI(ProductContract.CONTENT_AUTHORITY, ProductContract.PATH_PRODUCTS + "/#", PRODUCT_ID);
+
+        /*
+            The content URI of the form "content://com.example.android.inventoryapp/products/changes" will map
+            to the integer code {@link #PRODUCT_CHANGES}. This URI is used to read the changes made after the
+            change token given by the "since" query parameter.
+         */
+        sUriMatcher.addURI(
+                ProductContract.CONTENT_AUTHORITY,
+                ProductContract.PATH_PRODUCTS + "/" + ProductContract.PATH_CHANGES,
+                PRODUCT_CHANGES
+        );
+
+        /*
+            The content URI of the form "content://com.example.android.inventoryapp/products/sku/*" will map
+            to the integer code {@link #PRODUCT_SKU}. The "*" wildcard matches the SKU or barcode.
+         */
+        sUriMatcher.addURI(
+                ProductContract.CONTENT_AUTHORITY,
+                ProductContract.PATH_PRODUCTS + "/" + ProductContract.PATH_SKU + "/*",
+                PRODUCT_SKU
+        );
+
+        /*
+            The content URI of the form "content://com.example.android.inventoryapp/products/low_stock" will
+            map to the integer code {@link #PRODUCTS_LOW_STOCK}, the products of the low stock set.
+         */
+        sUriMatcher.addURI(
+                ProductContract.CONTENT_AUTHORITY,
+                ProductContract.PATH_PRODUCTS + "/" + ProductContract.PATH_LOW_STOCK,
+                PRODUCTS_LOW_STOCK
+        );
+
+        /*
+            The content URIs of the form "content://com.example.android.inventoryapp/suppliers" and
+            "content://com.example.android.inventoryapp/suppliers/#" will map to the integer codes
+            {@link #SUPPLIERS} and {@link #SUPPLIER_ID}, like the products URIs.
+         */
+        sUriMatcher.addURI(ProductContract.CONTENT_AUTHORITY, ProductContract.PATH_SUPPLIERS, SUPPLIERS);
+        sUriMatcher.addURI(ProductContract.CONTENT_AUTHORITY, ProductContract.PATH_SUPPLIERS + "/#", SUPPLIER_ID);
+
+        /*
+            The content URI of the form "content://com.example.android.inventoryapp/reorders" will map to the
+            integer code {@link #REORDERS}. It is read only, see {@link ReorderEntry#CONTENT_URI}.
+         */
+        sUriMatcher.addURI(ProductContract.CONTENT_AUTHORITY, ProductContract.PATH_REORDERS, REORDERS);
+
+        /*
+            The content URI of the form "content://com.example.android.inventoryapp/stock_alerts" will map to
+            the integer code {@link #STOCK_ALERTS}. It is queried and deleted from, see {@link StockAlertEntry}.
+         */
+        sUriMatcher.addURI(ProductContract.CONTENT_AUTHORITY, ProductContract.PATH_STOCK_ALERTS, STOCK_ALERTS);
+
+        /*
+            The content URI of the form "content://com.example.android.inventoryapp/adjustments" will map to
+            the integer code {@link #ADJUSTMENTS}. It is read only, see {@link AdjustmentEntry}.
+         */
+        sUriMatcher.addURI(ProductContract.CONTENT_AUTHORITY, ProductContract.PATH_ADJUSTMENTS, ADJUSTMENTS);
+
+        /*
+            The content URI of the form "content://com.example.android.inventoryapp/lots" will map to the
+            integer code {@link #LOTS}. It is queried and inserted into, see {@link LotEntry}.
+         */
+        sUriMatcher.addURI(ProductContract.CONTENT_AUTHORITY, ProductContract.PATH_LOTS, LOTS);
+
+        /*
+            The content URIs of the form "content://com.example.android.inventoryapp/categories",
+            "content://com.example.android.inventoryapp/categories/#" and
+            "content://com.example.android.inventoryapp/categories/#/products" will map to the integer
+            codes {@link #CATEGORIES}, {@link #CATEGORY_ID} and {@link #CATEGORY_PRODUCTS}.
+         */
+        sUriMatcher.addURI(ProductContract.CONTENT_AUTHORITY, ProductContract.PATH_CATEGORIES, CATEGORIES);
+        sUriMatcher.addURI(ProductContract.CONTENT_AUTHORITY, ProductContract.PATH_CATEGORIES + "/#", CATEGORY_ID);
+        sUriMatcher.addURI(
+                ProductContract.CONTENT_AUTHORITY,
+                ProductContract.PATH_CATEGORIES + "/#/" + ProductContract.PATH_PRODUCTS,
+                CATEGORY_PRODUCTS
+        );
+
+        /*
+            The content URI of the form "content://com.example.android.inventoryapp/valuations" will map to
+            the integer code {@link #VALUATIONS}. It is read only, see {@link ValuationEntry}.
+         */
+        sUriMatcher.addURI(ProductContract.CONTENT_AUTHORITY, ProductContract.PATH_VALUATIONS, VALUATIONS);
     }
 
+    /**
+     * Thread delivering the coalesced change notifications.
+     */
+    private static final ScheduledExecutorService sNotificationExecutor =
+            Executors.newSingleThreadScheduledExecutor();
+
     /**
      * Database helper object.
      */
-    private ProductDbHelper mDbHelper;
+    private volatile ProductDbHelper mDbHelper;
+
+    /**
+     * Lock of the database helpers: every operation holds it shared and a restore exclusively, so
+     * that no binder thread uses a helper while the restore closes it and replaces its file.
+     */
+    private final ReentrantReadWriteLock mDatabaseLock = new ReentrantReadWriteLock();
+
+    /**
+     * Helper of the archive database, opened on first use, see {@link #getArchiveDatabase()}.
+     */
+    private ArchiveDbHelper mArchiveHelper;
+
+    /**
+     * Ids of the recently scanned SKUs, so that continuous scanning skips the index lookup.
+     * Only found SKUs are cached, it is cleared whenever a SKU may have changed.
+     */
+    private final LruCache<String, Long> mSkuCache = new LruCache<>(SKU_CACHE_SIZE);
+
+    /**
+     * Coalesces the change notifications of bursts of writes, see {@link #notifyChange(Uri)}.
+     */
+    private NotificationCoalescer mNotifier;
+
+    /**
+     * Id of the latest stock alert announced, see {@link #announceStockAlerts()}.
+     */
+    private volatile long mAnnouncedAlertId;
+
+    /**
+     * Recorder of the operations, null while the workload trace is off, see
+     * {@link ProductContract#METHOD_SET_WORKLOAD_TRACE}.
+     */
+    private volatile WorkloadTracer mTracer;
 
     @Override
     public boolean onCreate() {
+        StartupTracer.Section section = StartupTracer.get().begin(StartupTracer.PROVIDER_ON_CREATE);
+
+        /* Only create the helper, the database is opened by the warm-up or the first query. */
         mDbHelper = new ProductDbHelper(getContext());
+
+        final ContentResolver resolver = getContext().getContentResolver();
+        mNotifier = new NotificationCoalescer(
+                new NotificationCoalescer.Sink() {
+                    @Override
+                    public void notifyChange(String uri) {
+                        resolver.notifyChange(Uri.parse(uri), null);
+                        if (uri.startsWith(ProductEntry.CONTENT_URI.toString())) {
+                            announceStockAlerts();
+                        }
+                    }
+                },
+                new NotificationCoalescer.Scheduler() {
+                    @Override
+                    public void schedule(Runnable task, long delayMillis) {
+                        sNotificationExecutor.schedule(task, delayMillis, TimeUnit.MILLISECONDS);
+                    }
+                },
+                getContext().getResources().getInteger(R.integer.provider_notification_window_millis),
+                getContext().getResources().getInteger(R.integer.provider_notification_collapse_threshold)
+        );
+
+        /* Reading the preferences touches the disk, keep it off the startup path. */
+        sNotificationExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (getContext().getSharedPreferences(WorkloadTracer.PREFS_NAME, Context.MODE_PRIVATE)
+                        .getBoolean(WorkloadTracer.KEY_ENABLED, false)) {
+                    startWorkloadTrace();
+                }
+            }
+        });
+
+        section.end();
         return true;
     }
 
+    /**
+     * Return the readable database, tracing the first opening of the database.
+     */
+    private SQLiteDatabase getReadableDatabase() {
+        StartupTracer.Section section = StartupTracer.get().begin(StartupTracer.DATABASE_OPEN);
+        try {
+            return mDbHelper.getReadableDatabase();
+        } finally {
+            section.end();
+        }
+    }
+
+    /**
+     * Return the archive database, with the hot database attached. The hot database is opened
+     * first, so that the archive gets the columns of its latest version.
+     */
+    private synchronized SQLiteDatabase getArchiveDatabase() {
+        mDbHelper.getWritableDatabase();
+        if (mArchiveHelper == null) {
+            mArchiveHelper = new ArchiveDbHelper(getContext());
+        }
+
+        return mArchiveHelper.getWritableDatabase();
+    }
+
+    /**
+     * Return true if the query asks for the archived products too.
+     */
+    private static boolean includesArchive(Uri uri) {
+        return ProductContract.INCLUDE_ARCHIVE.equals(uri.getQueryParameter(ProductContract.QUERY_PARAMETER_INCLUDE));
+    }
+
     @Override
     public Cursor query(
             Uri uri,
@@ -80,9 +372,55 @@ public class ProductProvider extends ContentProvider {
             String selection,
             String[] selectionArgs,
             String sortOrder
+    ) {
+        return query(uri, projection, selection, selectionArgs, sortOrder, null);
+    }
+
+    /**
+     * Query with a cancellation signal, passed down to SQLite: a query cancelled by the caller, such
+     * as a list loader restarted with a new filter, stops at once with an OperationCanceledException
+     * instead of running to completion. The signal also covers the filling of the cursor window.
+     */
+    @Override
+    public Cursor query(
+            Uri uri,
+            String[] projection,
+            String selection,
+            String[] selectionArgs,
+            String sortOrder,
+            CancellationSignal cancellationSignal
+    ) {
+        StartupTracer.Section section = StartupTracer.get().begin(StartupTracer.FIRST_QUERY);
+        mDatabaseLock.readLock().lock();
+        try {
+            /* Count the rows: the cursor window is filled under the lock, and within the traced time. */
+            long start = System.nanoTime();
+            Cursor cursor = queryUri(uri, projection, selection, selectionArgs, sortOrder, cancellationSignal);
+            int rows = cursor == null ? -1 : cursor.getCount();
+
+            WorkloadTracer tracer = mTracer;
+            if (tracer != null) {
+                tracer.query(start, System.nanoTime() - start, uri, projection, selection, selectionArgs,
+                        sortOrder, rows);
+            }
+
+            return cursor;
+        } finally {
+            mDatabaseLock.readLock().unlock();
+            section.end();
+        }
+    }
+
+    private Cursor queryUri(
+            Uri uri,
+            String[] projection,
+            String selection,
+            String[] selectionArgs,
+            String sortOrder,
+            CancellationSignal cancellationSignal
     ) {
         /* Get readable database. */
-        SQLiteDatabase database = mDbHelper.getReadableDatabase();
+        SQLiteDatabase database = getReadableDatabase();
 
         /* This cursor will hold the result of the query. */
         Cursor cursor;
@@ -94,16 +432,26 @@ public class ProductProvider extends ContentProvider {
                 /*
                     For the PRODUCTS code, query the products table directly with the given
                     projection, selection, selection arguments, and sort order. The cursor
-                    could contain multiple rows of the products table.
+                    could contain multiple rows of the products table. Deleted products waiting
+                    for their purge are left out, here and in every other products URI.
+                    Archived products are only read when asked for, from the archive connection.
                  */
+                if (includesArchive(uri)) {
+                    cursor = queryWithArchive(uri, projection, selection, selectionArgs, sortOrder, cancellationSignal);
+                    break;
+                }
+
                 cursor = database.query(
+                        false,
                         ProductEntry.TABLE_NAME,
                         projection,
-                        selection,
+                        DeletionOperations.live(selection),
                         selectionArgs,
                         null,
                         null,
-                        sortOrder
+                        sortOrder,
+                        uri.getQueryParameter(ProductContract.QUERY_PARAMETER_LIMIT),
+                        cancellationSignal
                 );
 
                 break;
@@ -126,10 +474,15 @@ public class ProductProvider extends ContentProvider {
                     This will perform a query on the products table where the _id equals 3 to return a
                     Cursor containing that row of the table.
                  */
+                if (includesArchive(uri)) {
+                    cursor = queryWithArchive(uri, projection, selection, selectionArgs, sortOrder, cancellationSignal);
+                    break;
+                }
+
                 cursor = database.query(
                         ProductEntry.TABLE_NAME,
                         projection,
-                        selection,
+                        DeletionOperations.live(selection),
                         selectionArgs,
                         null,
                         null,
@@ -138,156 +491,545 @@ public class ProductProvider extends ContentProvider {
 
                 break;
 
-            default:
-                throw new IllegalArgumentException("Cannot query unknown URI " + uri);
-        }
-
-        /*
-            Set notification URI on the Cursor,
-            so we know what content URI the Cursor was created for.
-            If the data at this URI changes, then we know we need to update the Cursor.
-         */
-        cursor.setNotificationUri(getContext().getContentResolver(), uri);
-
-        /* Return the Cursor. */
-        return cursor;
-    }
+            case PRODUCT_SKU:
+                /*
+                    For the PRODUCT_SKU code, resolve the SKU to its product id (recent scans come from
+                    the cache, others from the unique index) and query that single row.
+                 */
+                long id = resolveSku(database, uri.getLastPathSegment());
+                selection = ProductEntry._ID + "=?";
+                selectionArgs = new String[] { String.valueOf(id) };
 
-    @Override
-    public Uri insert(Uri uri, ContentValues contentValues) {
-        final int match = sUriMatcher.match(uri);
-        switch (match) {
-            case PRODUCTS:
-                return insertProduct(uri, contentValues);
+                cursor = database.query(
+                        ProductEntry.TABLE_NAME,
+                        projection,
+                        DeletionOperations.live(selection),
+                        selectionArgs,
+                        null,
+                        null,
+                        sortOrder
+                );
 
-            default:
-                throw new IllegalArgumentException("Insertion is not supported for " + uri);
-        }
-    }
+                break;
 
-    /**
-     * Insert a product into the database with the given content values. Return the new content URI
-     * for that specific row in the database.
-     */
-    private Uri insertProduct(Uri uri, ContentValues values) {
-        /* Check that the name is not null. */
-        String name = values.getAsString(ProductEntry.COLUMN_PRODUCT_NAME);
-        if (name == null) {
-            throw new IllegalArgumentException("Product requires a name.");
-        }
+            case PRODUCTS_LOW_STOCK:
+                /*
+                    For the PRODUCTS_LOW_STOCK code, look up the products of the low stock set by
+                    their primary key: the cost follows the size of the set, not of the table.
+                 */
+                String lowStock = ProductEntry._ID + " IN (SELECT " + LowStockEntry.COLUMN_PRODUCT_ID
+                        + " FROM " + LowStockEntry.TABLE_NAME + ")";
 
-        /* Check that the quantity is valid. */
-        Integer quantity = values.getAsInteger(ProductEntry.COLUMN_PRODUCT_QUANTITY);
-        if (quantity == null && quantity < 0) {
-            throw new IllegalArgumentException("Product requires valid quantity.");
-        }
+                cursor = database.query(
+                        false,
+                        ProductEntry.TABLE_NAME,
+                        projection,
+                        lowStock + " AND " + DeletionOperations.live(selection),
+                        selectionArgs,
+                        null,
+                        null,
+                        sortOrder,
+                        uri.getQueryParameter(ProductContract.QUERY_PARAMETER_LIMIT),
+                        cancellationSignal
+                );
 
-        /* Check that the price is valid. */
-        Float price = values.getAsFloat(ProductEntry.COLUMN_PRODUCT_PRICE);
-        if (price == null && price < 0) {
-            throw new IllegalArgumentException("Product requires valid price.");
-        }
+                break;
 
-        byte[] picture = values.getAsByteArray(ProductEntry.COLUMN_PRODUCT_PICTURE);
-        if (picture == null) {
-            throw new IllegalArgumentException("Product requires a picture.");
-        }
+            case PRODUCT_CHANGES:
+                /*
+                    For the PRODUCT_CHANGES code, return the change log after the given token.
+                    The projection is fixed, see {@link ProductSyncOperations#queryChanges}.
+                 */
+                String since = uri.getQueryParameter(ProductContract.QUERY_PARAMETER_SINCE);
+                String limit = uri.getQueryParameter(ProductContract.QUERY_PARAMETER_LIMIT);
+                cursor = ProductSyncOperations.queryChanges(
+                        database,
+                        since == null ? 0 : Long.parseLong(since),
+                        limit == null ? Integer.MAX_VALUE : Integer.parseInt(limit)
+                );
 
-        /* Get writeable database. */
-        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+                break;
 
-        /* Insert the new product with the given values. */
-        long id = database.insert(ProductEntry.TABLE_NAME, null, values);
+            case SUPPLIERS:
+                cursor = database.query(
+                        false,
+                        SupplierEntry.TABLE_NAME,
+                        projection,
+                        selection,
+                        selectionArgs,
+                        null,
+                        null,
+                        sortOrder,
+                        null,
+                        cancellationSignal
+                );
 
-        /* If the ID is -1, then the insertion failed. Log an error and return null. */
-        if (id == -1) {
-            Log.e(LOG_TAG, "Failed to insert row for " + uri);
-            return null;
-        }
+                break;
 
-        /* Notify all listeners that the data has changed for the product content URI. */
-        getContext().getContentResolver().notifyChange(uri, null);
+            case SUPPLIER_ID:
+                selection = SupplierEntry._ID + "=?";
+                selectionArgs = new String[] { String.valueOf(ContentUris.parseId(uri)) };
 
-        /* Return the new URI with the ID (of the newly inserted row) appended at the end. */
-        return ContentUris.withAppendedId(uri, id);
-    }
+                cursor = database.query(
+                        SupplierEntry.TABLE_NAME,
+                        projection,
+                        selection,
+                        selectionArgs,
+                        null,
+                        null,
+                        sortOrder
+                );
 
-    @Override
-    public int update(
-            Uri uri,
-            ContentValues contentValues,
-            String selection,
-            String[] selectionArgs
-    ) {
-        final int match = sUriMatcher.match(uri);
-        switch (match) {
-            case PRODUCTS:
-                return updateProduct(uri, contentValues, selection, selectionArgs);
+                break;
 
-            case PRODUCT_ID:
+            case REORDERS:
                 /*
-                    For the PRODUCT_ID code, extract out the ID from the URI,
-                    so we know which row to update. Selection will be "_id=?" and selection
-                    arguments will be a String array containing the actual ID.
+                    For the REORDERS code, return the whole reorder list grouped by supplier.
+                    The projection is fixed, see {@link ReorderEntry#CONTENT_URI}.
                  */
-                selection = ProductEntry._ID + "=?";
-                selectionArgs = new String[] { String.valueOf(ContentUris.parseId(uri)) };
+                cursor = ReorderOperations.queryReorders(database, cancellationSignal);
 
-                return updateProduct(uri, contentValues, selection, selectionArgs);
-
-            default:
-                throw new IllegalArgumentException("Update is not supported for " + uri);
-        }
-    }
+                break;
+
+            case STOCK_ALERTS:
+                cursor = database.query(
+                        false,
+                        StockAlertEntry.TABLE_NAME,
+                        projection,
+                        selection,
+                        selectionArgs,
+                        null,
+                        null,
+                        sortOrder,
+                        uri.getQueryParameter(ProductContract.QUERY_PARAMETER_LIMIT),
+                        cancellationSignal
+                );
+
+                break;
+
+            case ADJUSTMENTS:
+                cursor = database.query(
+                        false,
+                        AdjustmentEntry.TABLE_NAME,
+                        projection,
+                        selection,
+                        selectionArgs,
+                        null,
+                        null,
+                        sortOrder,
+                        uri.getQueryParameter(ProductContract.QUERY_PARAMETER_LIMIT),
+                        cancellationSignal
+                );
+
+                break;
+
+            case CATEGORIES:
+                cursor = database.query(
+                        false,
+                        CategoryEntry.TABLE_NAME,
+                        projection,
+                        selection,
+                        selectionArgs,
+                        null,
+                        null,
+                        sortOrder,
+                        uri.getQueryParameter(ProductContract.QUERY_PARAMETER_LIMIT),
+                        cancellationSignal
+                );
+
+                break;
+
+            case CATEGORY_ID:
+                /* The rollups of the subtree are columns of the category: a primary key lookup at any depth. */
+                selection = CategoryEntry._ID + "=?";
+                selectionArgs = new String[] { String.valueOf(ContentUris.parseId(uri)) };
+
+                cursor = database.query(
+                        CategoryEntry.TABLE_NAME,
+                        projection,
+                        selection,
+                        selectionArgs,
+                        null,
+                        null,
+                        sortOrder
+                );
+
+                break;
+
+            case CATEGORY_PRODUCTS:
+                cursor = CategoryOperations.queryProducts(
+                        database,
+                        Long.parseLong(uri.getPathSegments().get(1)),
+                        projection,
+                        selection,
+                        selectionArgs,
+                        sortOrder,
+                        uri.getQueryParameter(ProductContract.QUERY_PARAMETER_LIMIT),
+                        cancellationSignal
+                );
+
+                break;
+
+            case LOTS:
+                String expiresBefore = uri.getQueryParameter(ProductContract.QUERY_PARAMETER_EXPIRES_BEFORE);
+                cursor = LotOperations.query(
+                        database,
+                        projection,
+                        selection,
+                        selectionArgs,
+                        sortOrder,
+                        expiresBefore == null ? null : Long.parseLong(expiresBefore),
+                        uri.getQueryParameter(ProductContract.QUERY_PARAMETER_LIMIT),
+                        cancellationSignal
+                );
+
+                break;
+
+            case VALUATIONS:
+                String from = uri.getQueryParameter(ProductContract.QUERY_PARAMETER_FROM);
+                String to = uri.getQueryParameter(ProductContract.QUERY_PARAMETER_TO);
+                if (from == null || to == null) {
+                    throw new IllegalArgumentException("Valuation query requires a time range " + uri);
+                }
+                cursor = ValuationOperations.query(
+                        database,
+                        projection,
+                        selection,
+                        selectionArgs,
+                        Long.parseLong(from),
+                        Long.parseLong(to),
+                        cancellationSignal
+                );
+
+                break;
+
+            default:
+                throw new IllegalArgumentException("Cannot query unknown URI " + uri);
+        }
 
-    /**
-     * Update products in the database with the given content values. Apply the changes to the rows
-     * specified in the selection and selection arguments (which could be 0 or 1 or more products).
-     * Return the number of rows that were successfully updated.
-     */
-    private int updateProduct(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
         /*
-            If the {@link ProductEntry#COLUMN_PRODUCT_NAME} key is present,
-            check that the name value is not null.
+            Set notification URI on the Cursor,
+            so we know what content URI the Cursor was created for.
+            If the data at this URI changes, then we know we need to update the Cursor.
          */
-        if (values.containsKey(ProductEntry.COLUMN_PRODUCT_NAME)) {
-            String name = values.getAsString(ProductEntry.COLUMN_PRODUCT_NAME);
+        cursor.setNotificationUri(getContext().getContentResolver(), uri);
+
+        /* Return the Cursor. */
+        return cursor;
+    }
+
+    private Cursor queryWithArchive(
+            Uri uri,
+            String[] projection,
+            String selection,
+            String[] selectionArgs,
+            String sortOrder,
+            CancellationSignal cancellationSignal
+    ) {
+        SQLiteDatabase archive = getArchiveDatabase();
+        return ArchiveOperations.query(
+                archive,
+                mArchiveHelper.getProductColumns(),
+                projection,
+                selection,
+                selectionArgs,
+                sortOrder,
+                uri.getQueryParameter(ProductContract.QUERY_PARAMETER_LIMIT),
+                cancellationSignal
+        );
+    }
+
+    @Override
+    public Uri insert(Uri uri, ContentValues contentValues) {
+        mDatabaseLock.readLock().lock();
+        try {
+            WorkloadTracer tracer = mTracer;
+            if (tracer == null) {
+                return insertUri(uri, contentValues);
+            }
+
+            long start = System.nanoTime();
+            Uri inserted = insertUri(uri, contentValues);
+            tracer.insert(start, System.nanoTime() - start, uri, contentValues,
+                    inserted == null ? -1 : ContentUris.parseId(inserted));
+
+            return inserted;
+        } finally {
+            mDatabaseLock.readLock().unlock();
+        }
+    }
+
+    private Uri insertUri(Uri uri, ContentValues contentValues) {
+        final int match = sUriMatcher.match(uri);
+        switch (match) {
+            case PRODUCTS:
+                return insertProduct(uri, contentValues);
+
+            case SUPPLIERS:
+                return insertSupplier(uri, contentValues);
+
+            case LOTS:
+                return insertLot(uri, contentValues);
+
+            case CATEGORIES:
+                return insertCategory(uri, contentValues);
+
+            default:
+                throw new IllegalArgumentException("Insertion is not supported for " + uri);
+        }
+    }
+
+    /**
+     * Insert a product into the database with the given content values. Return the new content URI
+     * for that specific row in the database.
+     */
+    private Uri insertProduct(Uri uri, ContentValues values) {
+        Product.validate(values, true);
+
+        /* Get writeable database. */
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+
+        /* Insert the new product with the given values, recording the write in the change log. */
+        long id;
+        database.beginTransaction();
+        try {
+            id = insertProductRow(database, values, ProductSyncOperations.nextChangeVersion(database));
+
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+
+        /* If the ID is -1, then the insertion failed. Log an error and return null. */
+        if (id == -1) {
+            Log.e(LOG_TAG, "Failed to insert row for " + uri);
+            return null;
+        }
+
+        /* Notify all listeners that the data has changed for the product content URI. */
+        notifyChange(uri);
+
+        /* Return the new URI with the ID (of the newly inserted row) appended at the end. */
+        return ContentUris.withAppendedId(uri, id);
+    }
+
+    /**
+     * Insert a supplier into the database with the given content values. Return the new content URI
+     * for that specific row in the database.
+     */
+    private Uri insertSupplier(Uri uri, ContentValues values) {
+        checkSupplier(values, true);
+
+        long id = mDbHelper.getWritableDatabase().insert(SupplierEntry.TABLE_NAME, null, values);
+        if (id == -1) {
+            Log.e(LOG_TAG, "Failed to insert row for " + uri);
+            return null;
+        }
+
+        notifyChange(uri);
+
+        return ContentUris.withAppendedId(uri, id);
+    }
+
+    /**
+     * Insert a category. Return the new content URI for that specific category.
+     */
+    private Uri insertCategory(Uri uri, ContentValues values) {
+        long id = CategoryOperations.insert(mDbHelper.getWritableDatabase(), values);
+
+        notifyChange(uri);
+
+        return ContentUris.withAppendedId(uri, id);
+    }
+
+    /**
+     * Receive a lot, adding its units to the quantity of its product. Return the new content URI
+     * for that specific lot.
+     */
+    private Uri insertLot(Uri uri, ContentValues values) {
+        long id = LotOperations.receive(mDbHelper.getWritableDatabase(), values);
+
+        notifyChange(uri);
+        notifyChange(ContentUris.withAppendedId(ProductEntry.CONTENT_URI,
+                values.getAsLong(LotEntry.COLUMN_PRODUCT_ID)));
+
+        return ContentUris.withAppendedId(uri, id);
+    }
+
+    /**
+     * Check that the values describe a valid supplier, throw an exception otherwise.
+     *
+     * @param required True if the name and email must be present, as for a new supplier.
+     */
+    private static void checkSupplier(ContentValues values, boolean required) {
+        if (required || values.containsKey(SupplierEntry.COLUMN_SUPPLIER_NAME)) {
+            String name = values.getAsString(SupplierEntry.COLUMN_SUPPLIER_NAME);
             if (name == null) {
-                throw new IllegalArgumentException("Product requires a name.");
+                throw new IllegalArgumentException("Supplier requires a name.");
             }
         }
 
-        /*
-            If the {@link ProductEntry#COLUMN_PRODUCT_QUANTITY} key is present,
-            check that the quantity value is valid.
-         */
-        if (values.containsKey(ProductEntry.COLUMN_PRODUCT_QUANTITY)) {
-            Integer quantity = values.getAsInteger(ProductEntry.COLUMN_PRODUCT_QUANTITY);
-            if (quantity == null && quantity < 0) {
-                throw new IllegalArgumentException("Product requires valid quantity.");
+        if (required || values.containsKey(SupplierEntry.COLUMN_SUPPLIER_EMAIL)) {
+            String email = values.getAsString(SupplierEntry.COLUMN_SUPPLIER_EMAIL);
+            if (email == null || email.indexOf('@') == -1) {
+                throw new IllegalArgumentException("Supplier requires a valid email.");
             }
         }
+    }
 
-         /*
-            If the {@link ProductEntry#COLUMN_PRODUCT_PRICE} key is present,
-            check that the price value is valid.
-         */
-        if (values.containsKey(ProductEntry.COLUMN_PRODUCT_PRICE)) {
-            Integer price = values.getAsInteger(ProductEntry.COLUMN_PRODUCT_PRICE);
-            if (price == null && price < 0) {
-                throw new IllegalArgumentException("Product requires valid price.");
+    /**
+     * Insert all the given products in a single transaction. Either every product is inserted
+     * or none is. Used by imports and tools, which would otherwise pay one transaction per product.
+     */
+    @Override
+    public int bulkInsert(Uri uri, ContentValues[] valuesArray) {
+        mDatabaseLock.readLock().lock();
+        try {
+            WorkloadTracer tracer = mTracer;
+            if (tracer == null) {
+                return bulkInsertProducts(uri, valuesArray);
             }
+
+            long start = System.nanoTime();
+            int inserted = bulkInsertProducts(uri, valuesArray);
+            tracer.bulkInsert(start, System.nanoTime() - start, uri, valuesArray, inserted);
+
+            return inserted;
+        } finally {
+            mDatabaseLock.readLock().unlock();
         }
+    }
 
-        /*
-            If the {@link ProductEntry#COLUMN_PRODUCT_PICTURE} key is present,
-            check that the picture value is not null.
-         */
-        if (values.containsKey(ProductEntry.COLUMN_PRODUCT_PICTURE)) {
-            byte[] picture = values.getAsByteArray(ProductEntry.COLUMN_PRODUCT_PICTURE);
-            if (picture == null) {
-                throw new IllegalArgumentException("Product requires a picture.");
+    private int bulkInsertProducts(Uri uri, ContentValues[] valuesArray) {
+        if (sUriMatcher.match(uri) != PRODUCTS) {
+            throw new IllegalArgumentException("Insertion is not supported for " + uri);
+        }
+
+        for (ContentValues values : valuesArray) {
+            Product.validate(values, true);
+        }
+
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+        database.beginTransaction();
+        try {
+            long changeVersion = ProductSyncOperations.nextChangeVersion(database);
+            for (ContentValues values : valuesArray) {
+                if (insertProductRow(database, values, changeVersion) == -1) {
+                    Log.e(LOG_TAG, "Failed to bulk insert rows for " + uri);
+                    return 0;
+                }
+            }
+
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+
+        if (valuesArray.length != 0) {
+            notifyChange(uri);
+        }
+
+        return valuesArray.length;
+    }
+
+    /**
+     * Insert a checked product row within the current transaction.
+     * A copy of the values is used, so the caller's values are left untouched.
+     *
+     * @return The id of the new row, or -1 on failure (for instance a duplicate SKU).
+     */
+    private static long insertProductRow(SQLiteDatabase database, ContentValues values, long changeVersion) {
+        CategoryOperations.checkProductCategory(database, values);
+        DeletionOperations.releaseSku(database, changeVersion, values.getAsString(ProductEntry.COLUMN_PRODUCT_SKU));
+
+        values = new ContentValues(values);
+        ProductSyncOperations.prepareInsert(values, changeVersion);
+
+        return database.insert(ProductEntry.TABLE_NAME, null, values);
+    }
+
+    @Override
+    public int update(
+            Uri uri,
+            ContentValues contentValues,
+            String selection,
+            String[] selectionArgs
+    ) {
+        mDatabaseLock.readLock().lock();
+        try {
+            WorkloadTracer tracer = mTracer;
+            if (tracer == null) {
+                return updateUri(uri, contentValues, selection, selectionArgs);
             }
+
+            long start = System.nanoTime();
+            int updated = updateUri(uri, contentValues, selection, selectionArgs);
+            tracer.update(start, System.nanoTime() - start, uri, contentValues, selection, selectionArgs, updated);
+
+            return updated;
+        } finally {
+            mDatabaseLock.readLock().unlock();
+        }
+    }
+
+    private int updateUri(Uri uri, ContentValues contentValues, String selection, String[] selectionArgs) {
+        final int match = sUriMatcher.match(uri);
+        switch (match) {
+            case PRODUCTS:
+                return updateProduct(uri, contentValues, selection, selectionArgs);
+
+            case PRODUCT_ID:
+                /*
+                    For the PRODUCT_ID code, extract out the ID from the URI,
+                    so we know which row to update. Selection will be "_id=?" and selection
+                    arguments will be a String array containing the actual ID.
+                 */
+                selection = ProductEntry._ID + "=?";
+                selectionArgs = new String[] { String.valueOf(ContentUris.parseId(uri)) };
+
+                /* Optimistic concurrency: only update the version the caller has read. */
+                String expectedVersion = uri.getQueryParameter(ProductContract.QUERY_PARAMETER_EXPECTED_VERSION);
+                if (expectedVersion != null) {
+                    selection += " AND " + ProductEntry.COLUMN_PRODUCT_VERSION + "=?";
+                    selectionArgs = new String[] { selectionArgs[0], String.valueOf(Long.parseLong(expectedVersion)) };
+                }
+
+                return updateProduct(uri, contentValues, selection, selectionArgs);
+
+            case SUPPLIERS:
+                return updateSupplier(uri, contentValues, selection, selectionArgs);
+
+            case SUPPLIER_ID:
+                selection = SupplierEntry._ID + "=?";
+                selectionArgs = new String[] { String.valueOf(ContentUris.parseId(uri)) };
+
+                return updateSupplier(uri, contentValues, selection, selectionArgs);
+
+            case CATEGORY_ID:
+                int categoriesUpdated = CategoryOperations.update(
+                        mDbHelper.getWritableDatabase(), ContentUris.parseId(uri), contentValues);
+                if (categoriesUpdated != 0) {
+                    notifyChange(CategoryEntry.CONTENT_URI);
+                }
+
+                return categoriesUpdated;
+
+            default:
+                throw new IllegalArgumentException("Update is not supported for " + uri);
+        }
+    }
+
+    /**
+     * Update products in the database with the given content values. Apply the changes to the rows
+     * specified in the selection and selection arguments (which could be 0 or 1 or more products).
+     * Return the number of rows that were successfully updated.
+     */
+    private int updateProduct(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+        Product.validate(values, false);
+
+        /* A SKU may move to another product, forget the recent lookups. */
+        if (values.containsKey(ProductEntry.COLUMN_PRODUCT_SKU)) {
+            mSkuCache.evictAll();
         }
 
         /* If there are no values to update, then don't try to update the database. */
@@ -299,38 +1041,114 @@ public class ProductProvider extends ContentProvider {
         SQLiteDatabase database = mDbHelper.getWritableDatabase();
 
         /* Perform the update on the database and get the number of rows affected. */
-        int rowsUpdated = database.update(ProductEntry.TABLE_NAME, values, selection, selectionArgs);
+        int rowsUpdated;
+        database.beginTransaction();
+        try {
+            CategoryOperations.checkProductCategory(database, values);
+
+            long changeVersion = ProductSyncOperations.nextChangeVersion(database);
+            DeletionOperations.releaseSku(database, changeVersion, values.getAsString(ProductEntry.COLUMN_PRODUCT_SKU));
+            int dirtyFields = ProductSyncOperations.dirtyFields(values);
+
+            values = new ContentValues(values);
+            values.put(ProductEntry.COLUMN_PRODUCT_CHANGE_VERSION, changeVersion);
+
+            rowsUpdated = database.update(
+                    ProductEntry.TABLE_NAME, values, DeletionOperations.live(selection), selectionArgs);
+            if (rowsUpdated != 0) {
+                ProductSyncOperations.markWritten(database, changeVersion, dirtyFields);
+            }
+            LotOperations.deplete(database);
+
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+
+        /* If 1 or more rows were updated, then notify all listeners that the data at the given URI has changed. */
+        if (rowsUpdated != 0) {
+            notifyChange(uri);
+        }
+
+        /* Return the number of rows updated. */
+        return rowsUpdated;
+    }
+
+    /**
+     * Update suppliers in the database with the given content values.
+     * Return the number of rows that were successfully updated.
+     */
+    private int updateSupplier(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+        checkSupplier(values, false);
+
+        if (values.size() == 0) {
+            return 0;
+        }
 
-        /* If 1 or more rows were updated, then notify all listeners that the data at the given URI has changed. */
+        int rowsUpdated = mDbHelper.getWritableDatabase()
+                .update(SupplierEntry.TABLE_NAME, values, selection, selectionArgs);
         if (rowsUpdated != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            notifyChange(uri);
         }
 
-        /* Return the number of rows updated. */
         return rowsUpdated;
     }
 
     @Override
     public int delete(Uri uri, String selection, String[] selectionArgs) {
+        mDatabaseLock.readLock().lock();
+        try {
+            WorkloadTracer tracer = mTracer;
+            if (tracer == null) {
+                return deleteUri(uri, selection, selectionArgs);
+            }
+
+            long start = System.nanoTime();
+            int deleted = deleteUri(uri, selection, selectionArgs);
+            tracer.delete(start, System.nanoTime() - start, uri, selection, selectionArgs, deleted);
+
+            return deleted;
+        } finally {
+            mDatabaseLock.readLock().unlock();
+        }
+    }
+
+    private int deleteUri(Uri uri, String selection, String[] selectionArgs) {
         /* Get writeable database. */
         SQLiteDatabase database = mDbHelper.getWritableDatabase();
 
-        /* Track the number of rows that were deleted. */
-        int rowsDeleted;
-
         final int match = sUriMatcher.match(uri);
         switch (match) {
+            case SUPPLIERS:
+                return deleteSuppliers(uri, selection, selectionArgs);
+
+            case SUPPLIER_ID:
+                selection = SupplierEntry._ID + "=?";
+                selectionArgs = new String[] { String.valueOf(ContentUris.parseId(uri)) };
+
+                return deleteSuppliers(uri, selection, selectionArgs);
+
+            case CATEGORY_ID:
+                int categoriesDeleted = CategoryOperations.delete(database, ContentUris.parseId(uri));
+                if (categoriesDeleted != 0) {
+                    notifyChange(CategoryEntry.CONTENT_URI);
+                    notifyChange(ProductEntry.CONTENT_URI);
+                }
+
+                return categoriesDeleted;
+
+            case STOCK_ALERTS:
+                /* The alerts handled by the notifications, nobody observes their removal. */
+                return database.delete(StockAlertEntry.TABLE_NAME, selection, selectionArgs);
+
             case PRODUCTS:
                 /* Delete all rows that match the selection and selection args. */
-                rowsDeleted = database.delete(ProductEntry.TABLE_NAME, selection, selectionArgs);
-
                 break;
 
             case PRODUCT_ID:
                 /* Delete a single row given by the ID in the URI. */
                 selection = ProductEntry._ID + "=?";
                 selectionArgs = new String[] { String.valueOf(ContentUris.parseId(uri)) };
-                rowsDeleted = database.delete(ProductEntry.TABLE_NAME, selection, selectionArgs);
 
                 break;
 
@@ -338,15 +1156,667 @@ public class ProductProvider extends ContentProvider {
                 throw new IllegalArgumentException("Deletion is not supported for " + uri);
         }
 
+        /* Track the number of rows that were deleted. */
+        int rowsDeleted;
+
+        /* The ids of the deleted products must no longer be resolved from their SKU. */
+        mSkuCache.evictAll();
+
+        /*
+            Only mark the products as deleted: the product rows and their pictures are not touched,
+            so even deleting every product is a short write. They are removed later, in small
+            transactions, by {@link ProductContract#METHOD_PURGE_DELETED}, which also records
+            their tombstones.
+         */
+        database.beginTransaction();
+        try {
+            rowsDeleted = DeletionOperations.markDeleted(
+                    database,
+                    ProductSyncOperations.nextChangeVersion(database),
+                    System.currentTimeMillis(),
+                    selection,
+                    selectionArgs
+            );
+
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+
         /* If 1 or more rows were deleted, then notify all listeners that the data at the given URI has changed. */
         if (rowsDeleted != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            notifyChange(uri);
         }
 
         /* Return the number of rows deleted. */
         return rowsDeleted;
     }
 
+    /**
+     * Delete suppliers. Their products and reorder entries are unlinked in the same transaction,
+     * their orders go to the default supplier address from then on.
+     */
+    private int deleteSuppliers(Uri uri, String selection, String[] selectionArgs) {
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+
+        String deleted = " IN (SELECT " + SupplierEntry._ID + " FROM "
+                + SupplierEntry.TABLE_NAME + (selection == null ? "" : " WHERE " + selection) + ")";
+
+        int rowsDeleted;
+        database.beginTransaction();
+        try {
+            ContentValues unlinked = new ContentValues();
+            unlinked.putNull(ProductEntry.COLUMN_PRODUCT_SUPPLIER_ID);
+            database.update(ProductEntry.TABLE_NAME, unlinked,
+                    ProductEntry.COLUMN_PRODUCT_SUPPLIER_ID + deleted, selectionArgs);
+
+            unlinked = new ContentValues();
+            unlinked.putNull(ReorderEntry.COLUMN_SUPPLIER_ID);
+            database.update(ReorderEntry.TABLE_NAME, unlinked,
+                    ReorderEntry.COLUMN_SUPPLIER_ID + deleted, selectionArgs);
+
+            rowsDeleted = database.delete(SupplierEntry.TABLE_NAME, selection, selectionArgs);
+
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+
+        if (rowsDeleted != 0) {
+            notifyChange(uri);
+        }
+
+        return rowsDeleted;
+    }
+
+    @Override
+    public Bundle call(String method, String arg, Bundle extras) {
+        checkCallingMethod(method);
+
+        /* A restore waits for the operations in progress and holds the others until it is done. */
+        Lock lock = ProductContract.METHOD_RESTORE.equals(method)
+                ? mDatabaseLock.writeLock()
+                : mDatabaseLock.readLock();
+        lock.lock();
+        try {
+            WorkloadTracer tracer = mTracer;
+            if (tracer == null || ProductContract.METHOD_SET_WORKLOAD_TRACE.equals(method)) {
+                return callMethod(method, arg, extras);
+            }
+
+            long start = System.nanoTime();
+            Bundle result = callMethod(method, arg, extras);
+            tracer.call(start, System.nanoTime() - start, method, arg, extras, result);
+
+            return result;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Bundle callMethod(String method, String arg, Bundle extras) {
+        switch (method) {
+            case ProductContract.METHOD_WARM_UP:
+                getReadableDatabase();
+                return null;
+
+            case ProductContract.METHOD_RESTORE:
+                restoreDatabase(new File(arg));
+                return null;
+
+            case ProductContract.METHOD_SELL_SKU:
+                return sellSku(arg, extras == null ? 1 : extras.getInt(ProductContract.EXTRA_QUANTITY, 1));
+
+            case ProductContract.METHOD_GET_SYNC_STATE:
+                return ProductSyncOperations.getSyncState(mDbHelper.getReadableDatabase());
+
+            case ProductContract.METHOD_COLLECT_CHANGES:
+                return ProductSyncOperations.collectChanges(mDbHelper.getWritableDatabase(), Integer.parseInt(arg));
+
+            case ProductContract.METHOD_ACKNOWLEDGE_PUSH:
+                ProductSyncOperations.acknowledgePush(
+                        mDbHelper.getWritableDatabase(),
+                        extras.getByteArray(ProductContract.EXTRA_BATCH)
+                );
+                return null;
+
+            case ProductContract.METHOD_APPLY_REMOTE:
+                /* Remote deletions remove products, which must no longer be resolved from their SKU. */
+                mSkuCache.evictAll();
+                SyncBatch batch = ProductSyncOperations.decode(extras.getByteArray(ProductContract.EXTRA_BATCH));
+                unarchive(ProductSyncOperations.getGlobalIds(batch));
+                if (ProductSyncOperations.applyRemote(mDbHelper.getWritableDatabase(), batch)) {
+                    notifyChange(ProductEntry.CONTENT_URI);
+                }
+                return null;
+
+            case ProductContract.METHOD_REFRESH_REORDERS:
+                Bundle result = new Bundle();
+                int evaluated = ReorderOperations.refresh(mDbHelper.getWritableDatabase());
+                result.putInt(ProductContract.EXTRA_COUNT, evaluated);
+                if (evaluated != 0) {
+                    notifyChange(ReorderEntry.CONTENT_URI);
+                }
+                return result;
+
+            case ProductContract.METHOD_UNDO_DELETE:
+                Bundle restored = new Bundle();
+                int count = DeletionOperations.undoLatest(mDbHelper.getWritableDatabase());
+                restored.putInt(ProductContract.EXTRA_COUNT, count);
+                if (count != 0) {
+                    mSkuCache.evictAll();
+                    notifyChange(ProductEntry.CONTENT_URI);
+                }
+                return restored;
+
+            case ProductContract.METHOD_PURGE_DELETED:
+                Bundle purged = new Bundle();
+                purged.putInt(
+                        ProductContract.EXTRA_COUNT,
+                        DeletionOperations.purge(mDbHelper.getWritableDatabase(), Integer.parseInt(arg))
+                );
+                return purged;
+
+            case ProductContract.METHOD_ARCHIVE_COLD:
+                Bundle archived = new Bundle();
+                int moved = archiveCold(Integer.parseInt(arg));
+                archived.putInt(ProductContract.EXTRA_COUNT, moved);
+                if (moved != 0) {
+                    mSkuCache.evictAll();
+                    notifyChange(ProductEntry.CONTENT_URI);
+                }
+                return archived;
+
+            case ProductContract.METHOD_MAINTENANCE:
+                return runMaintenance(arg, extras == null ? 0 : extras.getLong(ProductContract.EXTRA_BUDGET_MILLIS));
+
+            case ProductContract.METHOD_GET_QUANTITIES:
+                Bundle quantities = new Bundle();
+                quantities.putIntArray(
+                        ProductContract.EXTRA_QUANTITIES,
+                        StockBatchOperations.getQuantities(
+                                mDbHelper.getReadableDatabase(),
+                                requireExtras(method, extras).getLongArray(ProductContract.EXTRA_IDS)
+                        )
+                );
+                return quantities;
+
+            case ProductContract.METHOD_APPLY_QUANTITY_DELTAS:
+                requireExtras(method, extras);
+                return applyQuantityDeltas(
+                        extras.getLongArray(ProductContract.EXTRA_IDS),
+                        extras.getIntArray(ProductContract.EXTRA_DELTAS)
+                );
+
+            case ProductContract.METHOD_RESOLVE_SKUS:
+                return resolveSkus(requireExtras(method, extras).getStringArray(ProductContract.EXTRA_SKUS));
+
+            case ProductContract.METHOD_APPLY_STOCKTAKE:
+                requireExtras(method, extras);
+                return applyStocktake(
+                        Long.parseLong(arg),
+                        extras.getLongArray(ProductContract.EXTRA_IDS),
+                        extras.getIntArray(ProductContract.EXTRA_EXPECTED_QUANTITIES),
+                        extras.getIntArray(ProductContract.EXTRA_QUANTITIES)
+                );
+
+            case ProductContract.METHOD_RESERVE:
+                requireExtras(method, extras);
+                return reserve(
+                        Long.parseLong(arg),
+                        extras.getInt(ProductContract.EXTRA_QUANTITY, 1),
+                        extras.getLong(ProductContract.EXTRA_TTL_MILLIS)
+                );
+
+            case ProductContract.METHOD_CONFIRM_RESERVATION:
+                return confirmReservation(Long.parseLong(arg));
+
+            case ProductContract.METHOD_RELEASE_RESERVATION:
+                return releaseReservation(Long.parseLong(arg));
+
+            case ProductContract.METHOD_EXPIRE_RESERVATIONS:
+                Bundle expired = new Bundle();
+                int released = ReservationOperations.expire(
+                        mDbHelper.getWritableDatabase(), Integer.parseInt(arg), System.currentTimeMillis());
+                expired.putInt(ProductContract.EXTRA_COUNT, released);
+                if (released != 0) {
+                    notifyChange(ProductEntry.CONTENT_URI);
+                }
+                return expired;
+
+            case ProductContract.METHOD_COMPACT_VALUATIONS:
+                Bundle compacted = new Bundle();
+                compacted.putInt(
+                        ProductContract.EXTRA_COUNT,
+                        ValuationOperations.compact(mDbHelper.getWritableDatabase(), System.currentTimeMillis())
+                );
+                return compacted;
+
+            case ProductContract.METHOD_SET_WORKLOAD_TRACE:
+                setWorkloadTrace(Boolean.parseBoolean(arg));
+                return null;
+
+            default:
+                return super.call(method, arg, extras);
+        }
+    }
+
+    /**
+     * Check that the caller may call the method. The framework does not check the provider
+     * permission for {@link #call}: other apps need it for the stock methods, and may not call
+     * the others at all.
+     */
+    private void checkCallingMethod(String method) {
+        if (Binder.getCallingUid() == Process.myUid()) {
+            return;
+        }
+
+        switch (method) {
+            case ProductContract.METHOD_SELL_SKU:
+            case ProductContract.METHOD_GET_QUANTITIES:
+            case ProductContract.METHOD_APPLY_QUANTITY_DELTAS:
+            case ProductContract.METHOD_RESOLVE_SKUS:
+            case ProductContract.METHOD_RESERVE:
+            case ProductContract.METHOD_CONFIRM_RESERVATION:
+            case ProductContract.METHOD_RELEASE_RESERVATION:
+                getContext().enforceCallingPermission(ProductContract.PERMISSION_ACCESS_STOCK, method);
+                break;
+
+            default:
+                throw new SecurityException("Method " + method + " is private to the inventory app");
+        }
+    }
+
+    /**
+     * Switch the workload trace on or off, and keep the setting for the next starts.
+     */
+    private void setWorkloadTrace(boolean enabled) {
+        getContext().getSharedPreferences(WorkloadTracer.PREFS_NAME, Context.MODE_PRIVATE)
+                .edit()
+                .putBoolean(WorkloadTracer.KEY_ENABLED, enabled)
+                .apply();
+
+        if (enabled) {
+            startWorkloadTrace();
+        } else {
+            stopWorkloadTrace();
+        }
+    }
+
+    private synchronized void startWorkloadTrace() {
+        if (mTracer == null) {
+            mTracer = new WorkloadTracer(WorkloadTracer.getDirectory(getContext()));
+        }
+    }
+
+    private synchronized void stopWorkloadTrace() {
+        if (mTracer != null) {
+            mTracer.close();
+            mTracer = null;
+        }
+    }
+
+    /**
+     * Bring the archived products of the given global ids back to the hot table, before a pulled
+     * batch writes them. The archive is not created if there is none.
+     */
+    private synchronized void unarchive(String[] globalIds) {
+        if (globalIds.length == 0 || (mArchiveHelper == null
+                && !getContext().getDatabasePath(ArchiveDbHelper.DATABASE_NAME).exists())) {
+            return;
+        }
+
+        SQLiteDatabase archive = getArchiveDatabase();
+        ArchiveOperations.unarchive(archive, mArchiveHelper.getProductColumns(), globalIds);
+    }
+
+    private synchronized int archiveCold(int limit) {
+        SQLiteDatabase archive = getArchiveDatabase();
+        return ArchiveOperations.archive(
+                archive, mArchiveHelper.getProductColumns(), limit, System.currentTimeMillis());
+    }
+
+    private Bundle runMaintenance(String step, long budgetMillis) {
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+        switch (step) {
+            case ProductContract.MAINTENANCE_ANALYZE:
+                return MaintenanceOperations.analyze(database, budgetMillis);
+
+            case ProductContract.MAINTENANCE_VACUUM:
+                return MaintenanceOperations.vacuum(database, budgetMillis);
+
+            case ProductContract.MAINTENANCE_CHECKPOINT:
+                return MaintenanceOperations.checkpoint(database);
+
+            case ProductContract.MAINTENANCE_QUICK_CHECK:
+                return MaintenanceOperations.quickCheck(database);
+
+            default:
+                throw new IllegalArgumentException("Unknown maintenance step " + step);
+        }
+    }
+
+    private static Bundle requireExtras(String method, Bundle extras) {
+        if (extras == null) {
+            throw new IllegalArgumentException("Method " + method + " requires extras");
+        }
+
+        return extras;
+    }
+
+    private Bundle applyQuantityDeltas(long[] ids, int[] deltas) {
+        int[] quantities;
+
+        /* One notification for the whole batch, collapsed into the list URI for large batches. */
+        mNotifier.beginBatch();
+        try {
+            quantities = StockBatchOperations.applyQuantityDeltas(mDbHelper.getWritableDatabase(), ids, deltas);
+            for (int i = 0; i < ids.length; i++) {
+                if (quantities[i] != -1) {
+                    notifyChange(ContentUris.withAppendedId(ProductEntry.CONTENT_URI, ids[i]));
+                }
+            }
+        } finally {
+            mNotifier.endBatch();
+        }
+
+        Bundle result = new Bundle();
+        result.putIntArray(ProductContract.EXTRA_QUANTITIES, quantities);
+
+        return result;
+    }
+
+    private Bundle applyStocktake(long stocktakeId, long[] ids, int[] expected, int[] counted) {
+        int[] quantities;
+        int corrected = 0;
+
+        mNotifier.beginBatch();
+        try {
+            quantities = StocktakeOperations.apply(
+                    mDbHelper.getWritableDatabase(), stocktakeId, ids, expected, counted, System.currentTimeMillis());
+            for (int i = 0; i < ids.length; i++) {
+                if (quantities[i] != -1) {
+                    corrected++;
+                    notifyChange(ContentUris.withAppendedId(ProductEntry.CONTENT_URI, ids[i]));
+                }
+            }
+            if (corrected != 0) {
+                notifyChange(AdjustmentEntry.CONTENT_URI);
+            }
+        } finally {
+            mNotifier.endBatch();
+        }
+
+        Bundle result = new Bundle();
+        result.putIntArray(ProductContract.EXTRA_QUANTITIES, quantities);
+        result.putInt(ProductContract.EXTRA_COUNT, corrected);
+
+        return result;
+    }
+
+    private Bundle resolveSkus(String[] skus) {
+        SQLiteDatabase database = mDbHelper.getReadableDatabase();
+
+        long[] ids = new long[skus.length];
+        for (int i = 0; i < skus.length; i++) {
+            ids[i] = resolveSku(database, skus[i]);
+        }
+
+        Bundle result = new Bundle();
+        result.putLongArray(ProductContract.EXTRA_IDS, ids);
+
+        return result;
+    }
+
+    /**
+     * Replace the database file with the given prepared file and re-open it.
+     * The file must live in the databases directory, so that the rename is atomic.
+     * Throws {@link IllegalStateException} if the file could not be swapped in.
+     * Called with {@link #mDatabaseLock} held exclusively.
+     */
+    private synchronized void restoreDatabase(File prepared) {
+        File database = getContext().getDatabasePath(ProductDbHelper.DATABASE_NAME);
+
+        if (!prepared.getParentFile().equals(database.getParentFile())) {
+            throw new IllegalArgumentException("Restored database must be in " + database.getParent());
+        }
+
+        /* Closing the last connection checkpoints and removes the write-ahead log. */
+        if (mArchiveHelper != null) {
+            mArchiveHelper.close();
+            mArchiveHelper = null;
+        }
+        mDbHelper.close();
+
+        /* On failure the current database, with its write-ahead log, stays in place. */
+        boolean restored = prepared.renameTo(database);
+        if (restored) {
+            new File(database.getPath() + "-wal").delete();
+            new File(database.getPath() + "-shm").delete();
+        }
+
+        mDbHelper = new ProductDbHelper(getContext());
+        mSkuCache.evictAll();
+        if (!restored) {
+            throw new IllegalStateException("Failed to restore database from " + prepared);
+        }
+
+        /* Every product may have changed. */
+        notifyChange(ProductEntry.CONTENT_URI);
+    }
+
+    /**
+     * Notify the stock alerts URI if alerts were queued since the last announcement. Called after
+     * the products changed: the triggers queue the alerts, this only probes the latest id.
+     */
+    private void announceStockAlerts() {
+        long latest;
+        mDatabaseLock.readLock().lock();
+        try {
+            latest = DatabaseUtils.longForQuery(mDbHelper.getReadableDatabase(),
+                    "SELECT IFNULL(MAX(" + StockAlertEntry._ID + "), 0) FROM " + StockAlertEntry.TABLE_NAME, null);
+        } finally {
+            mDatabaseLock.readLock().unlock();
+        }
+        if (latest > mAnnouncedAlertId) {
+            mAnnouncedAlertId = latest;
+            getContext().getContentResolver().notifyChange(StockAlertEntry.CONTENT_URI, null);
+        }
+    }
+
+    /**
+     * Return the id of the product with the given SKU, or -1 if there is none.
+     * Recent lookups are answered from memory, others with a single unique index probe.
+     */
+    private long resolveSku(SQLiteDatabase database, String sku) {
+        Long cached = mSkuCache.get(sku);
+        if (cached != null) {
+            return cached;
+        }
+
+        Cursor cursor = database.query(
+                ProductEntry.TABLE_NAME,
+                new String[] { ProductEntry._ID },
+                DeletionOperations.live(ProductEntry.COLUMN_PRODUCT_SKU + "=?"),
+                new String[] { sku },
+                null,
+                null,
+                null
+        );
+        try {
+            if (!cursor.moveToFirst()) {
+                return -1;
+            }
+
+            long id = cursor.getLong(0);
+            mSkuCache.put(sku, id);
+
+            return id;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Sell the given number of units of the product with the given SKU.
+     * This is a primary key update of a single row, whatever the size of the catalog.
+     */
+    private Bundle sellSku(String sku, int count) {
+        if (count <= 0) {
+            throw new IllegalArgumentException("Sale requires valid quantity.");
+        }
+
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+        long id = resolveSku(database, sku);
+
+        Bundle result = new Bundle();
+        result.putLong(ProductContract.EXTRA_ID, id);
+        if (id == -1) {
+            return result;
+        }
+
+        int remaining = sellProduct(database, id, count);
+        result.putInt(ProductContract.EXTRA_QUANTITY, remaining);
+
+        return result;
+    }
+
+    /**
+     * Remove count units from the stock of the product, unless too few are available to sell: the
+     * units held by reservations are out of reach. The units are taken from the lots expiring first,
+     * within the same transaction.
+     *
+     * @return The remaining quantity, or -1 if nothing was sold.
+     */
+    private int sellProduct(SQLiteDatabase database, long id, int count) {
+        int remaining = -1;
+
+        database.beginTransaction();
+        try {
+            long changeVersion = ProductSyncOperations.nextChangeVersion(database);
+            database.execSQL("UPDATE " + ProductEntry.TABLE_NAME + " SET "
+                    + ProductEntry.COLUMN_PRODUCT_QUANTITY + " = " + ProductEntry.COLUMN_PRODUCT_QUANTITY + " - ?, "
+                    + ProductEntry.COLUMN_PRODUCT_CHANGE_VERSION + " = ?, "
+                    + ProductEntry.COLUMN_PRODUCT_VERSION + " = " + ProductEntry.COLUMN_PRODUCT_VERSION + " + 1, "
+                    + ProductEntry.COLUMN_PRODUCT_DIRTY + " = " + ProductEntry.COLUMN_PRODUCT_DIRTY + " | ? WHERE "
+                    + ProductEntry._ID + " = ? AND " + ProductEntry.COLUMN_PRODUCT_QUANTITY + " - "
+                    + ProductEntry.COLUMN_PRODUCT_RESERVED + " >= ? AND " + DeletionOperations.SELECTION_LIVE,
+                    new Object[] { count, changeVersion, SyncChange.FIELD_QUANTITY, id, count });
+
+            Cursor cursor = database.query(
+                    ProductEntry.TABLE_NAME,
+                    new String[] { ProductEntry.COLUMN_PRODUCT_QUANTITY },
+                    ProductEntry._ID + "=? AND " + ProductEntry.COLUMN_PRODUCT_CHANGE_VERSION + "=?",
+                    new String[] { String.valueOf(id), String.valueOf(changeVersion) },
+                    null,
+                    null,
+                    null
+            );
+            try {
+                if (cursor.moveToFirst()) {
+                    remaining = cursor.getInt(0);
+                }
+            } finally {
+                cursor.close();
+            }
+            LotOperations.deplete(database);
+
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+
+        if (remaining != -1) {
+            notifyChange(ContentUris.withAppendedId(ProductEntry.CONTENT_URI, id));
+            notifyChange(LotEntry.CONTENT_URI);
+        }
+
+        return remaining;
+    }
+
+    private Bundle reserve(long productId, int count, long ttlMillis) {
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+        long id = ReservationOperations.reserve(database, productId, count, ttlMillis, System.currentTimeMillis());
+
+        Bundle result = new Bundle();
+        result.putLong(ProductContract.EXTRA_RESERVATION_ID, id);
+        result.putInt(ProductContract.EXTRA_QUANTITY, ReservationOperations.getAvailable(database, productId));
+        if (id != -1) {
+            notifyChange(ContentUris.withAppendedId(ProductEntry.CONTENT_URI, productId));
+        }
+
+        return result;
+    }
+
+    private Bundle confirmReservation(long id) {
+        int remaining = ReservationOperations.confirm(mDbHelper.getWritableDatabase(), id, System.currentTimeMillis());
+
+        Bundle result = new Bundle();
+        result.putInt(ProductContract.EXTRA_QUANTITY, remaining);
+        if (remaining != -1) {
+            notifyChange(ProductEntry.CONTENT_URI);
+            notifyChange(LotEntry.CONTENT_URI);
+        }
+
+        return result;
+    }
+
+    private Bundle releaseReservation(long id) {
+        int released = ReservationOperations.release(mDbHelper.getWritableDatabase(), id);
+
+        Bundle result = new Bundle();
+        result.putInt(ProductContract.EXTRA_COUNT, released);
+        if (released != 0) {
+            notifyChange(ProductEntry.CONTENT_URI);
+        }
+
+        return result;
+    }
+
+    /**
+     * Notify the observers of the URI that its data has changed. Notifications of the same URI
+     * within a short window are delivered once, and held until the end of a batch.
+     */
+    private void notifyChange(Uri uri) {
+        mNotifier.notifyChange(uri.toString());
+
+        /* The writes of the products move the rollups of their categories, and the valuation of the day. */
+        int match = sUriMatcher.match(uri);
+        if (match == PRODUCTS || match == PRODUCT_ID) {
+            mNotifier.notifyChange(CategoryEntry.CONTENT_URI.toString());
+            mNotifier.notifyChange(ValuationEntry.CONTENT_URI.toString());
+        }
+    }
+
+    /**
+     * Apply the operations in a single transaction, with a single notification per URI at the end.
+     */
+    @Override
+    public ContentProviderResult[] applyBatch(ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        mDatabaseLock.readLock().lock();
+        try {
+            SQLiteDatabase database = mDbHelper.getWritableDatabase();
+
+            mNotifier.beginBatch();
+            try {
+                database.beginTransaction();
+                try {
+                    ContentProviderResult[] results = super.applyBatch(operations);
+                    database.setTransactionSuccessful();
+
+                    return results;
+                } finally {
+                    database.endTransaction();
+                }
+            } finally {
+                mNotifier.endBatch();
+            }
+        } finally {
+            mDatabaseLock.readLock().unlock();
+        }
+    }
+
     @Override
     public String getType(Uri uri) {
         final int match = sUriMatcher.match(uri);
@@ -357,6 +1827,45 @@ public class ProductProvider extends ContentProvider {
             case PRODUCT_ID:
                 return ProductEntry.CONTENT_ITEM_TYPE;
 
+            case PRODUCT_SKU:
+                return ProductEntry.CONTENT_ITEM_TYPE;
+
+            case PRODUCT_CHANGES:
+                return ProductEntry.CONTENT_LIST_TYPE;
+
+            case PRODUCTS_LOW_STOCK:
+                return ProductEntry.CONTENT_LIST_TYPE;
+
+            case SUPPLIERS:
+                return SupplierEntry.CONTENT_LIST_TYPE;
+
+            case SUPPLIER_ID:
+                return SupplierEntry.CONTENT_ITEM_TYPE;
+
+            case REORDERS:
+                return ReorderEntry.CONTENT_LIST_TYPE;
+
+            case STOCK_ALERTS:
+                return StockAlertEntry.CONTENT_LIST_TYPE;
+
+            case ADJUSTMENTS:
+                return AdjustmentEntry.CONTENT_LIST_TYPE;
+
+            case LOTS:
+                return LotEntry.CONTENT_LIST_TYPE;
+
+            case CATEGORIES:
+                return CategoryEntry.CONTENT_LIST_TYPE;
+
+            case CATEGORY_ID:
+                return CategoryEntry.CONTENT_ITEM_TYPE;
+
+            case CATEGORY_PRODUCTS:
+                return ProductEntry.CONTENT_LIST_TYPE;
+
+            case VALUATIONS:
+                return ValuationEntry.CONTENT_LIST_TYPE;
+
             default:
                 throw new IllegalStateException("Unknown URI " + uri + " with match " + match);
         }
@@ -0,0 +1,455 @@
+package com.example.android.inventoryapp.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.Bundle;
+import android.text.TextUtils;
+
+import com.example.android.inventoryapp.data.ProductContract.ProductEntry;
+import com.example.android.inventoryapp.data.ProductContract.SyncStateEntry;
+import com.example.android.inventoryapp.data.ProductContract.TombstoneEntry;
+import com.example.android.inventoryapp.sync.SyncBatch;
+import com.example.android.inventoryapp.sync.SyncChange;
+import com.example.android.inventoryapp.sync.SyncCodec;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Change log and sync operations of {@link ProductProvider}.
+ * Every method must be called on the provider's database, the write methods within its transaction.
+ */
+final class ProductSyncOperations {
+    /**
+     * Query of the change log: dirty products and tombstones after a change version, in order.
+     */
+    private static final String SQL_CHANGES = "SELECT "
+            + ProductEntry.COLUMN_PRODUCT_GLOBAL_ID + ", "
+            + ProductEntry.COLUMN_PRODUCT_CHANGE_VERSION + ", "
+            + ProductEntry.COLUMN_PRODUCT_DIRTY + ", "
+            + ProductEntry.COLUMN_PRODUCT_NAME + ", "
+            + ProductEntry.COLUMN_PRODUCT_PRICE + ", "
+            + ProductEntry.COLUMN_PRODUCT_QUANTITY + " - " + ProductEntry.COLUMN_PRODUCT_QUANTITY_SYNCED
+            + " AS " + ProductEntry.COLUMN_QUANTITY_DELTA + ", "
+            + "CASE WHEN " + ProductEntry.COLUMN_PRODUCT_DIRTY + " & " + SyncChange.FIELD_PICTURE
+            + " THEN " + ProductEntry.COLUMN_PRODUCT_PICTURE + " END AS " + ProductEntry.COLUMN_PRODUCT_PICTURE + ", "
+            + "0 AS " + ProductEntry.COLUMN_DELETED
+            + " FROM " + ProductEntry.TABLE_NAME
+            + " WHERE " + ProductEntry.COLUMN_PRODUCT_CHANGE_VERSION + " > ?1"
+            + " AND " + ProductEntry.COLUMN_PRODUCT_DIRTY + " != 0"
+            + " UNION ALL SELECT "
+            + TombstoneEntry.COLUMN_GLOBAL_ID + ", "
+            + TombstoneEntry.COLUMN_CHANGE_VERSION + ", 0, NULL, 0, 0, NULL, 1"
+            + " FROM " + TombstoneEntry.TABLE_NAME
+            + " WHERE " + TombstoneEntry.COLUMN_CHANGE_VERSION + " > ?1"
+            + " ORDER BY 2 LIMIT ?2";
+
+    /* Column indexes of SQL_CHANGES. */
+    private static final int CHANGE_GLOBAL_ID = 0;
+    private static final int CHANGE_VERSION = 1;
+    private static final int CHANGE_DIRTY = 2;
+    private static final int CHANGE_NAME = 3;
+    private static final int CHANGE_PRICE = 4;
+    private static final int CHANGE_QUANTITY_DELTA = 5;
+    private static final int CHANGE_PICTURE = 6;
+    private static final int CHANGE_DELETED = 7;
+
+    private ProductSyncOperations() {}
+
+    /**
+     * Take the next value of the change counter. Each write transaction calls it once,
+     * so every row written by the transaction shares a change version no other write has.
+     */
+    static long nextChangeVersion(SQLiteDatabase db) {
+        db.execSQL("UPDATE " + SyncStateEntry.TABLE_NAME + " SET " + SyncStateEntry.COLUMN_VALUE + " = "
+                + SyncStateEntry.COLUMN_VALUE + " + 1 WHERE " + SyncStateEntry.COLUMN_KEY + " = ?",
+                new Object[] { SyncStateEntry.KEY_CHANGE_COUNTER });
+
+        return getLong(db, SyncStateEntry.KEY_CHANGE_COUNTER);
+    }
+
+    /**
+     * Complete the values of a new product with its sync columns.
+     */
+    static void prepareInsert(ContentValues values, long changeVersion) {
+        if (!values.containsKey(ProductEntry.COLUMN_PRODUCT_GLOBAL_ID)) {
+            values.put(ProductEntry.COLUMN_PRODUCT_GLOBAL_ID, UUID.randomUUID().toString());
+        }
+
+        values.put(ProductEntry.COLUMN_PRODUCT_CHANGE_VERSION, changeVersion);
+        values.put(ProductEntry.COLUMN_PRODUCT_QUANTITY_SYNCED, 0);
+        values.put(ProductEntry.COLUMN_PRODUCT_DIRTY, SyncChange.FIELD_ALL);
+    }
+
+    /**
+     * Return the dirty flags of the fields written by the given update values.
+     */
+    static int dirtyFields(ContentValues values) {
+        int fields = 0;
+        if (values.containsKey(ProductEntry.COLUMN_PRODUCT_NAME)) {
+            fields |= SyncChange.FIELD_NAME;
+        }
+        if (values.containsKey(ProductEntry.COLUMN_PRODUCT_PRICE)) {
+            fields |= SyncChange.FIELD_PRICE;
+        }
+        if (values.containsKey(ProductEntry.COLUMN_PRODUCT_QUANTITY)) {
+            fields |= SyncChange.FIELD_QUANTITY;
+        }
+        if (values.containsKey(ProductEntry.COLUMN_PRODUCT_PICTURE)) {
+            fields |= SyncChange.FIELD_PICTURE;
+        }
+
+        return fields;
+    }
+
+    /**
+     * Flag the given fields as dirty on the rows written with the given change version, and
+     * increment their row version. Selecting by change version finds exactly the rows of the
+     * current transaction.
+     */
+    static void markWritten(SQLiteDatabase db, long changeVersion, int fields) {
+        db.execSQL("UPDATE " + ProductEntry.TABLE_NAME + " SET " + ProductEntry.COLUMN_PRODUCT_DIRTY + " = "
+                + ProductEntry.COLUMN_PRODUCT_DIRTY + " | ?, " + ProductEntry.COLUMN_PRODUCT_VERSION + " = "
+                + ProductEntry.COLUMN_PRODUCT_VERSION + " + 1 WHERE " + ProductEntry.COLUMN_PRODUCT_CHANGE_VERSION + " = ?",
+                new Object[] { fields, changeVersion });
+    }
+
+    /**
+     * Record a tombstone for every product matching the selection, before they are deleted.
+     */
+    static void recordTombstones(SQLiteDatabase db, long changeVersion, String selection, String[] selectionArgs) {
+        Object[] bindArgs = new Object[1 + (selectionArgs == null ? 0 : selectionArgs.length)];
+        bindArgs[0] = changeVersion;
+        if (selectionArgs != null) {
+            System.arraycopy(selectionArgs, 0, bindArgs, 1, selectionArgs.length);
+        }
+
+        db.execSQL("INSERT OR REPLACE INTO " + TombstoneEntry.TABLE_NAME + " ("
+                + TombstoneEntry.COLUMN_GLOBAL_ID + ", " + TombstoneEntry.COLUMN_CHANGE_VERSION + ") SELECT "
+                + ProductEntry.COLUMN_PRODUCT_GLOBAL_ID + ", ? FROM " + ProductEntry.TABLE_NAME
+                + (TextUtils.isEmpty(selection) ? "" : " WHERE " + selection), bindArgs);
+    }
+
+    /**
+     * Query the change log after the given change version.
+     */
+    static Cursor queryChanges(SQLiteDatabase db, long since, int limit) {
+        return db.rawQuery(SQL_CHANGES, new String[] { String.valueOf(since), String.valueOf(limit) });
+    }
+
+    /**
+     * Return the client id, server token and pending push of the sync state.
+     */
+    static Bundle getSyncState(SQLiteDatabase db) {
+        Bundle state = new Bundle();
+        state.putString(SyncStateEntry.KEY_CLIENT_ID, getString(db, SyncStateEntry.KEY_CLIENT_ID));
+        state.putLong(SyncStateEntry.KEY_SERVER_TOKEN, getLong(db, SyncStateEntry.KEY_SERVER_TOKEN));
+        state.putByteArray(SyncStateEntry.KEY_PENDING_PUSH, getBlob(db, SyncStateEntry.KEY_PENDING_PUSH));
+
+        return state;
+    }
+
+    /**
+     * Collect at most limit changes after the pushed version into a batch, record it as the pending push
+     * and return it encoded in {@link ProductContract#EXTRA_BATCH}.
+     *
+     * Rows written by one transaction share a change version, so a batch never ends in the middle of
+     * such a group: the next batch starts strictly after the token of this one.
+     */
+    static Bundle collectChanges(SQLiteDatabase db, int limit) {
+        byte[] encoded;
+
+        db.beginTransaction();
+        try {
+            encoded = getBlob(db, SyncStateEntry.KEY_PENDING_PUSH);
+            if (encoded == null) {
+                long pushedVersion = getLong(db, SyncStateEntry.KEY_PUSHED_VERSION);
+                SyncBatch batch = readChanges(db, getString(db, SyncStateEntry.KEY_CLIENT_ID), pushedVersion, limit);
+
+                encoded = SyncCodec.toByteArray(batch);
+                if (!batch.isEmpty()) {
+                    putValue(db, SyncStateEntry.KEY_PENDING_PUSH, encoded);
+                }
+            }
+
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        Bundle result = new Bundle();
+        result.putByteArray(ProductContract.EXTRA_BATCH, encoded);
+
+        return result;
+    }
+
+    private static SyncBatch readChanges(SQLiteDatabase db, String clientId, long since, int limit) {
+        List<SyncChange> changes = new ArrayList<>();
+        List<Long> versions = new ArrayList<>();
+
+        /* Read one more change than the limit, to know whether the last version group is complete. */
+        Cursor cursor = queryChanges(db, since, limit + 1);
+        try {
+            while (cursor.moveToNext()) {
+                versions.add(cursor.getLong(CHANGE_VERSION));
+                changes.add(readChange(cursor));
+            }
+        } finally {
+            cursor.close();
+        }
+
+        boolean hasMore = changes.size() > limit;
+        if (hasMore) {
+            long lastVersion = versions.get(limit);
+            int end = limit;
+            while (end > 0 && versions.get(end - 1) == lastVersion) {
+                end--;
+            }
+
+            if (end == 0) {
+                /* A single transaction wrote more rows than the limit: send that whole group. */
+                changes.clear();
+                versions.clear();
+                cursor = queryChanges(db, lastVersion - 1, Integer.MAX_VALUE);
+                try {
+                    while (cursor.moveToNext() && cursor.getLong(CHANGE_VERSION) == lastVersion) {
+                        versions.add(lastVersion);
+                        changes.add(readChange(cursor));
+                    }
+                } finally {
+                    cursor.close();
+                }
+            } else {
+                changes = new ArrayList<>(changes.subList(0, end));
+                versions = versions.subList(0, end);
+            }
+        }
+
+        long token = versions.isEmpty() ? since : versions.get(versions.size() - 1);
+
+        return new SyncBatch(clientId, token, hasMore, changes);
+    }
+
+    private static SyncChange readChange(Cursor cursor) {
+        String globalId = cursor.getString(CHANGE_GLOBAL_ID);
+        if (cursor.getInt(CHANGE_DELETED) != 0) {
+            return SyncChange.deletion(globalId);
+        }
+
+        return new SyncChange(
+                globalId,
+                cursor.getInt(CHANGE_DIRTY),
+                cursor.getString(CHANGE_NAME),
+                cursor.getLong(CHANGE_PRICE),
+                cursor.getInt(CHANGE_QUANTITY_DELTA),
+                cursor.isNull(CHANGE_PICTURE) ? null : cursor.getBlob(CHANGE_PICTURE)
+        );
+    }
+
+    /**
+     * Record that the server applied the given encoded batch: the pushed quantity deltas become part of
+     * the synced quantities, and rows not written since are clean again.
+     */
+    static void acknowledgePush(SQLiteDatabase db, byte[] encoded) {
+        SyncBatch batch = decode(encoded);
+
+        db.beginTransaction();
+        try {
+            for (SyncChange change : batch.getChanges()) {
+                if (change.isDeleted()) {
+                    db.delete(
+                            TombstoneEntry.TABLE_NAME,
+                            TombstoneEntry.COLUMN_GLOBAL_ID + "=? AND " + TombstoneEntry.COLUMN_CHANGE_VERSION + "<=?",
+                            new String[] { change.getGlobalId(), String.valueOf(batch.getToken()) }
+                    );
+                    continue;
+                }
+
+                int delta = change.has(SyncChange.FIELD_QUANTITY) ? change.getQuantity() : 0;
+                db.execSQL("UPDATE " + ProductEntry.TABLE_NAME + " SET "
+                        + ProductEntry.COLUMN_PRODUCT_QUANTITY_SYNCED + " = "
+                        + ProductEntry.COLUMN_PRODUCT_QUANTITY_SYNCED + " + ?, "
+                        + ProductEntry.COLUMN_PRODUCT_DIRTY + " = CASE WHEN "
+                        + ProductEntry.COLUMN_PRODUCT_CHANGE_VERSION + " <= ? THEN 0 ELSE "
+                        + ProductEntry.COLUMN_PRODUCT_DIRTY + " END WHERE "
+                        + ProductEntry.COLUMN_PRODUCT_GLOBAL_ID + " = ?",
+                        new Object[] { delta, batch.getToken(), change.getGlobalId() });
+            }
+
+            if (batch.getToken() > getLong(db, SyncStateEntry.KEY_PUSHED_VERSION)) {
+                putValue(db, SyncStateEntry.KEY_PUSHED_VERSION, batch.getToken());
+            }
+            db.delete(SyncStateEntry.TABLE_NAME, SyncStateEntry.COLUMN_KEY + "=?",
+                    new String[] { SyncStateEntry.KEY_PENDING_PUSH });
+
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Merge the given encoded batch pulled from the server.
+     *
+     * A pulled quantity is the server quantity, which already includes every acknowledged push.
+     * The local quantity becomes that server quantity plus the local delta not pushed yet,
+     * so sales made concurrently in several stores all count.
+     *
+     * The merged rows take a change version of their own, like a local write, so that the readers
+     * of the changes (reorder list, list snapshot, backups) see them, but they are not dirty: the
+     * server already has them. Deletions are soft deletions, purged with their lots and holds.
+     *
+     * @return true if any product changed.
+     */
+    static boolean applyRemote(SQLiteDatabase db, byte[] encoded) {
+        return applyRemote(db, decode(encoded));
+    }
+
+    /**
+     * Merge the given batch pulled from the server, see {@link #applyRemote(SQLiteDatabase, byte[])}.
+     * The archived products it changes must have been brought back to the hot table first, see
+     * {@link ArchiveOperations#unarchive}.
+     */
+    static boolean applyRemote(SQLiteDatabase db, SyncBatch batch) {
+        db.beginTransaction();
+        try {
+            long changeVersion = batch.isEmpty() ? 0 : nextChangeVersion(db);
+            ContentValues values = new ContentValues();
+            for (SyncChange change : batch.getChanges()) {
+                String[] whereArgs = new String[] { change.getGlobalId() };
+                String where = ProductEntry.COLUMN_PRODUCT_GLOBAL_ID + "=?";
+
+                if (change.isDeleted()) {
+                    DeletionOperations.markDeleted(db, changeVersion, DeletionOperations.DELETED_AT_REMOTE, where,
+                            whereArgs);
+                    continue;
+                }
+
+                boolean exists = DatabaseUtils.longForQuery(db, "SELECT COUNT(*) FROM " + ProductEntry.TABLE_NAME
+                        + " WHERE " + where, whereArgs) > 0;
+
+                values.clear();
+                values.put(ProductEntry.COLUMN_PRODUCT_CHANGE_VERSION, changeVersion);
+                if (change.has(SyncChange.FIELD_NAME)) {
+                    values.put(ProductEntry.COLUMN_PRODUCT_NAME, change.getName());
+                }
+                if (change.has(SyncChange.FIELD_PRICE)) {
+                    values.put(ProductEntry.COLUMN_PRODUCT_PRICE, change.getPrice());
+                }
+                if (change.has(SyncChange.FIELD_PICTURE)) {
+                    values.put(ProductEntry.COLUMN_PRODUCT_PICTURE, change.getPicture());
+                }
+
+                if (!exists) {
+                    /* A product created in another store. */
+                    values.put(ProductEntry.COLUMN_PRODUCT_GLOBAL_ID, change.getGlobalId());
+                    values.put(ProductEntry.COLUMN_PRODUCT_QUANTITY, change.getQuantity());
+                    values.put(ProductEntry.COLUMN_PRODUCT_QUANTITY_SYNCED, change.getQuantity());
+                    if (!values.containsKey(ProductEntry.COLUMN_PRODUCT_NAME)) {
+                        values.put(ProductEntry.COLUMN_PRODUCT_NAME, "");
+                    }
+                    if (!values.containsKey(ProductEntry.COLUMN_PRODUCT_PRICE)) {
+                        values.put(ProductEntry.COLUMN_PRODUCT_PRICE, 0);
+                    }
+                    if (!values.containsKey(ProductEntry.COLUMN_PRODUCT_PICTURE)) {
+                        values.put(ProductEntry.COLUMN_PRODUCT_PICTURE, new byte[0]);
+                    }
+                    db.insert(ProductEntry.TABLE_NAME, null, values);
+                    continue;
+                }
+
+                db.update(ProductEntry.TABLE_NAME, values, where, whereArgs);
+
+                if (change.has(SyncChange.FIELD_QUANTITY)) {
+                    db.execSQL("UPDATE " + ProductEntry.TABLE_NAME + " SET "
+                            + ProductEntry.COLUMN_PRODUCT_QUANTITY + " = ?1 + "
+                            + ProductEntry.COLUMN_PRODUCT_QUANTITY + " - " + ProductEntry.COLUMN_PRODUCT_QUANTITY_SYNCED + ", "
+                            + ProductEntry.COLUMN_PRODUCT_QUANTITY_SYNCED + " = ?1 WHERE "
+                            + ProductEntry.COLUMN_PRODUCT_GLOBAL_ID + " = ?2",
+                            new Object[] { change.getQuantity(), change.getGlobalId() });
+                }
+
+                /* An edit in progress must not overwrite the merged fields. */
+                db.execSQL("UPDATE " + ProductEntry.TABLE_NAME + " SET " + ProductEntry.COLUMN_PRODUCT_VERSION + " = "
+                        + ProductEntry.COLUMN_PRODUCT_VERSION + " + 1 WHERE " + where, whereArgs);
+            }
+
+            putValue(db, SyncStateEntry.KEY_SERVER_TOKEN, batch.getToken());
+            LotOperations.deplete(db);
+
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        return !batch.isEmpty();
+    }
+
+    /**
+     * Return the global ids of the products changed or deleted by the batch.
+     */
+    static String[] getGlobalIds(SyncBatch batch) {
+        List<SyncChange> changes = batch.getChanges();
+        String[] globalIds = new String[changes.size()];
+        for (int i = 0; i < globalIds.length; i++) {
+            globalIds[i] = changes.get(i).getGlobalId();
+        }
+
+        return globalIds;
+    }
+
+    static SyncBatch decode(byte[] encoded) {
+        try {
+            return SyncCodec.fromByteArray(encoded);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Invalid sync batch.", e);
+        }
+    }
+
+    private static Cursor queryValue(SQLiteDatabase db, String key) {
+        return db.query(
+                SyncStateEntry.TABLE_NAME,
+                new String[] { SyncStateEntry.COLUMN_VALUE },
+                SyncStateEntry.COLUMN_KEY + "=?",
+                new String[] { key },
+                null, null, null
+        );
+    }
+
+    static long getLong(SQLiteDatabase db, String key) {
+        Cursor cursor = queryValue(db, key);
+        try {
+            return cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static String getString(SQLiteDatabase db, String key) {
+        Cursor cursor = queryValue(db, key);
+        try {
+            return cursor.moveToFirst() ? cursor.getString(0) : null;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static byte[] getBlob(SQLiteDatabase db, String key) {
+        Cursor cursor = queryValue(db, key);
+        try {
+            return cursor.moveToFirst() && !cursor.isNull(0) ? cursor.getBlob(0) : null;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    static void putValue(SQLiteDatabase db, String key, Object value) {
+        db.execSQL("INSERT OR REPLACE INTO " + SyncStateEntry.TABLE_NAME + " ("
+                + SyncStateEntry.COLUMN_KEY + ", " + SyncStateEntry.COLUMN_VALUE + ") VALUES (?, ?)",
+                new Object[] { key, value });
+    }
+}
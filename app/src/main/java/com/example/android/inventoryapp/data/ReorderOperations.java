@@ -0,0 +1,91 @@
+package com.example.android.inventoryapp.data;
+
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.CancellationSignal;
+
+import com.example.android.inventoryapp.data.ProductContract.DeletedProductEntry;
+import com.example.android.inventoryapp.data.ProductContract.ProductEntry;
+import com.example.android.inventoryapp.data.ProductContract.ReorderEntry;
+import com.example.android.inventoryapp.data.ProductContract.SupplierEntry;
+import com.example.android.inventoryapp.data.ProductContract.SyncStateEntry;
+
+/**
+ * Maintenance and query of the reorder list of {@link ProductProvider}.
+ */
+final class ReorderOperations {
+    /**
+     * The reorder list joined with its products and suppliers, grouped by supplier.
+     * Walks the reorder list through its supplier index, products are fetched by primary key.
+     */
+    private static final String SQL_REORDERS = "SELECT "
+            + "r." + ReorderEntry.COLUMN_SUPPLIER_ID + " AS " + ReorderEntry.COLUMN_SUPPLIER_ID + ", "
+            + "s." + SupplierEntry.COLUMN_SUPPLIER_NAME + " AS " + ReorderEntry.COLUMN_SUPPLIER_NAME + ", "
+            + "s." + SupplierEntry.COLUMN_SUPPLIER_EMAIL + " AS " + ReorderEntry.COLUMN_SUPPLIER_EMAIL + ", "
+            + "p." + ProductEntry._ID + " AS " + ReorderEntry.COLUMN_PRODUCT_ID + ", "
+            + "p." + ProductEntry.COLUMN_PRODUCT_NAME + " AS " + ReorderEntry.COLUMN_PRODUCT_NAME + ", "
+            + "p." + ProductEntry.COLUMN_PRODUCT_QUANTITY + " AS " + ReorderEntry.COLUMN_PRODUCT_QUANTITY + ", "
+            + "p." + ProductEntry.COLUMN_PRODUCT_REORDER_LEVEL + " AS " + ReorderEntry.COLUMN_PRODUCT_REORDER_LEVEL
+            + " FROM " + ReorderEntry.TABLE_NAME + " r"
+            + " JOIN " + ProductEntry.TABLE_NAME + " p ON p." + ProductEntry._ID + " = r." + ReorderEntry.COLUMN_PRODUCT_ID
+            + " LEFT JOIN " + SupplierEntry.TABLE_NAME + " s ON s." + SupplierEntry._ID + " = r." + ReorderEntry.COLUMN_SUPPLIER_ID
+            + " WHERE r." + ReorderEntry.COLUMN_PRODUCT_ID + " NOT IN (SELECT "
+            + DeletedProductEntry.COLUMN_PRODUCT_ID + " FROM " + DeletedProductEntry.TABLE_NAME + ")"
+            + " ORDER BY r." + ReorderEntry.COLUMN_SUPPLIER_ID;
+
+    private ReorderOperations() {}
+
+    /**
+     * Query the reorder list, grouped by supplier.
+     */
+    static Cursor queryReorders(SQLiteDatabase db, CancellationSignal cancellationSignal) {
+        return db.rawQuery(SQL_REORDERS, null, cancellationSignal);
+    }
+
+    /**
+     * Bring the reorder list up to date. Only the products written since the last refresh are
+     * evaluated, found through the change version index.
+     *
+     * @return The number of products evaluated.
+     */
+    static int refresh(SQLiteDatabase db) {
+        int evaluated;
+
+        db.beginTransaction();
+        try {
+            long since = ProductSyncOperations.getLong(db, SyncStateEntry.KEY_REORDER_VERSION);
+            long until = ProductSyncOperations.getLong(db, SyncStateEntry.KEY_CHANGE_COUNTER);
+            String[] sinceArgs = new String[] { String.valueOf(since) };
+
+            evaluated = (int) DatabaseUtils.longForQuery(db, "SELECT COUNT(*) FROM " + ProductEntry.TABLE_NAME
+                    + " WHERE " + ProductEntry.COLUMN_PRODUCT_CHANGE_VERSION + " > ?", sinceArgs);
+
+            db.execSQL("INSERT OR REPLACE INTO " + ReorderEntry.TABLE_NAME + " ("
+                    + ReorderEntry.COLUMN_PRODUCT_ID + ", " + ReorderEntry.COLUMN_SUPPLIER_ID + ") SELECT "
+                    + ProductEntry._ID + ", " + ProductEntry.COLUMN_PRODUCT_SUPPLIER_ID
+                    + " FROM " + ProductEntry.TABLE_NAME
+                    + " WHERE " + ProductEntry.COLUMN_PRODUCT_CHANGE_VERSION + " > ?"
+                    + " AND " + ProductEntry.COLUMN_PRODUCT_QUANTITY + " <= " + ProductEntry.COLUMN_PRODUCT_REORDER_LEVEL,
+                    sinceArgs);
+
+            db.execSQL("DELETE FROM " + ReorderEntry.TABLE_NAME + " WHERE " + ReorderEntry.COLUMN_PRODUCT_ID
+                    + " IN (SELECT " + ProductEntry._ID + " FROM " + ProductEntry.TABLE_NAME
+                    + " WHERE " + ProductEntry.COLUMN_PRODUCT_CHANGE_VERSION + " > ?"
+                    + " AND " + ProductEntry.COLUMN_PRODUCT_QUANTITY + " > " + ProductEntry.COLUMN_PRODUCT_REORDER_LEVEL + ")",
+                    sinceArgs);
+
+            /* Deleted products leave no change version behind, drop them by primary key probe. */
+            db.execSQL("DELETE FROM " + ReorderEntry.TABLE_NAME + " WHERE " + ReorderEntry.COLUMN_PRODUCT_ID
+                    + " NOT IN (SELECT " + ProductEntry._ID + " FROM " + ProductEntry.TABLE_NAME + ")");
+
+            ProductSyncOperations.putValue(db, SyncStateEntry.KEY_REORDER_VERSION, until);
+
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        return evaluated;
+    }
+}
@@ -0,0 +1,181 @@
+package com.example.android.inventoryapp.data;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import com.example.android.inventoryapp.data.ProductContract.ProductEntry;
+import com.example.android.inventoryapp.data.ProductContract.ReservationEntry;
+import com.example.android.inventoryapp.sync.SyncChange;
+
+/**
+ * Reservations of {@link ProductProvider}, see {@link ProductContract#METHOD_RESERVE}.
+ *
+ * The reserved units of the products are maintained by the triggers of {@link ProductDbHelper} as
+ * the holds are inserted and deleted. Each operation is a few statements on primary keys and index
+ * ranges, in a transaction that locks the database for writing from its start: two clerks holding
+ * or selling the last unit are serialized, and the second one finds it gone.
+ */
+final class ReservationOperations {
+    private ReservationOperations() {}
+
+    /**
+     * Hold count units of the live product for ttlMillis milliseconds, if that many are available to
+     * sell. The expired holds of the product are released first, so that they never make it look
+     * short before the sweeper comes.
+     *
+     * @return The id of the hold, or -1 if nothing was held.
+     */
+    static long reserve(SQLiteDatabase db, long productId, int count, long ttlMillis, long now) {
+        if (count <= 0) {
+            throw new IllegalArgumentException("Reservation requires valid quantity.");
+        }
+        if (ttlMillis <= 0) {
+            throw new IllegalArgumentException("Reservation requires a positive time to live.");
+        }
+
+        long id;
+        db.beginTransaction();
+        try {
+            db.delete(ReservationEntry.TABLE_NAME, ReservationEntry.COLUMN_PRODUCT_ID + " = ? AND "
+                    + ReservationEntry.COLUMN_EXPIRES_AT + " <= ?",
+                    new String[] { String.valueOf(productId), String.valueOf(now) });
+
+            /* The check of the available units and the hold are the same statement. */
+            SQLiteStatement insert = db.compileStatement("INSERT INTO " + ReservationEntry.TABLE_NAME + " ("
+                    + ReservationEntry.COLUMN_PRODUCT_ID + ", " + ReservationEntry.COLUMN_QUANTITY + ", "
+                    + ReservationEntry.COLUMN_EXPIRES_AT + ") SELECT " + ProductEntry._ID + ", ?, ? FROM "
+                    + ProductEntry.TABLE_NAME + " WHERE " + ProductEntry._ID + " = ? AND "
+                    + ProductEntry.COLUMN_PRODUCT_QUANTITY + " - " + ProductEntry.COLUMN_PRODUCT_RESERVED
+                    + " >= ? AND " + DeletionOperations.SELECTION_LIVE);
+            try {
+                insert.bindLong(1, count);
+                insert.bindLong(2, now + ttlMillis);
+                insert.bindLong(3, productId);
+                insert.bindLong(4, count);
+                id = insert.executeInsert();
+            } finally {
+                insert.close();
+            }
+
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        return id;
+    }
+
+    /**
+     * Sell the units of the unexpired hold and delete it, in a single transaction. The units are
+     * sold like those of a sale: only if the other holds of the product are still covered.
+     *
+     * @return The remaining quantity of the product, or -1 if nothing was sold.
+     */
+    static int confirm(SQLiteDatabase db, long id, long now) {
+        int remaining = -1;
+
+        db.beginTransaction();
+        try {
+            Cursor cursor = db.query(
+                    ReservationEntry.TABLE_NAME,
+                    new String[] { ReservationEntry.COLUMN_PRODUCT_ID, ReservationEntry.COLUMN_QUANTITY },
+                    ReservationEntry._ID + " = ? AND " + ReservationEntry.COLUMN_EXPIRES_AT + " > ?",
+                    new String[] { String.valueOf(id), String.valueOf(now) },
+                    null,
+                    null,
+                    null
+            );
+            long productId;
+            int count;
+            try {
+                if (!cursor.moveToFirst()) {
+                    return -1;
+                }
+                productId = cursor.getLong(0);
+                count = cursor.getInt(1);
+            } finally {
+                cursor.close();
+            }
+
+            db.delete(ReservationEntry.TABLE_NAME, ReservationEntry._ID + " = ?", new String[] { String.valueOf(id) });
+
+            SQLiteStatement update = db.compileStatement("UPDATE " + ProductEntry.TABLE_NAME + " SET "
+                    + ProductEntry.COLUMN_PRODUCT_QUANTITY + " = " + ProductEntry.COLUMN_PRODUCT_QUANTITY + " - ?, "
+                    + ProductEntry.COLUMN_PRODUCT_CHANGE_VERSION + " = ?, "
+                    + ProductEntry.COLUMN_PRODUCT_VERSION + " = " + ProductEntry.COLUMN_PRODUCT_VERSION + " + 1, "
+                    + ProductEntry.COLUMN_PRODUCT_DIRTY + " = " + ProductEntry.COLUMN_PRODUCT_DIRTY + " | ? WHERE "
+                    + ProductEntry._ID + " = ? AND " + ProductEntry.COLUMN_PRODUCT_QUANTITY + " - "
+                    + ProductEntry.COLUMN_PRODUCT_RESERVED + " >= ? AND " + DeletionOperations.SELECTION_LIVE);
+            try {
+                update.bindLong(1, count);
+                update.bindLong(2, ProductSyncOperations.nextChangeVersion(db));
+                update.bindLong(3, SyncChange.FIELD_QUANTITY);
+                update.bindLong(4, productId);
+                update.bindLong(5, count);
+                if (update.executeUpdateDelete() == 0) {
+                    /* The stock was corrected below the holds: keep the hold, sell nothing. */
+                    return -1;
+                }
+            } finally {
+                update.close();
+            }
+
+            remaining = getQuantity(db, productId, ProductEntry.COLUMN_PRODUCT_QUANTITY);
+            LotOperations.deplete(db);
+
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        return remaining;
+    }
+
+    /**
+     * Delete the hold, giving its units back.
+     *
+     * @return The number of holds deleted, 0 or 1.
+     */
+    static int release(SQLiteDatabase db, long id) {
+        return db.delete(ReservationEntry.TABLE_NAME, ReservationEntry._ID + " = ?", new String[] { String.valueOf(id) });
+    }
+
+    /**
+     * Delete at most limit holds expired at the given time, earliest first, reading the expiry index.
+     *
+     * @return The number of holds deleted.
+     */
+    static int expire(SQLiteDatabase db, int limit, long now) {
+        return db.delete(ReservationEntry.TABLE_NAME, ReservationEntry._ID + " IN (SELECT "
+                + ReservationEntry._ID + " FROM " + ReservationEntry.TABLE_NAME + " WHERE "
+                + ReservationEntry.COLUMN_EXPIRES_AT + " <= ? ORDER BY " + ReservationEntry.COLUMN_EXPIRES_AT
+                + " LIMIT " + limit + ")", new String[] { String.valueOf(now) });
+    }
+
+    /**
+     * Return the units of the product available to sell, or -1 if the product is unknown. None are
+     * available when the stock was corrected below the holds.
+     */
+    static int getAvailable(SQLiteDatabase db, long productId) {
+        return getQuantity(db, productId, "MAX(" + ProductEntry.COLUMN_PRODUCT_QUANTITY + " - "
+                + ProductEntry.COLUMN_PRODUCT_RESERVED + ", 0)");
+    }
+
+    private static int getQuantity(SQLiteDatabase db, long productId, String expression) {
+        Cursor cursor = db.query(
+                ProductEntry.TABLE_NAME,
+                new String[] { expression },
+                ProductEntry._ID + " = ? AND " + DeletionOperations.SELECTION_LIVE,
+                new String[] { String.valueOf(productId) },
+                null,
+                null,
+                null
+        );
+        try {
+            return cursor.moveToFirst() ? cursor.getInt(0) : -1;
+        } finally {
+            cursor.close();
+        }
+    }
+}
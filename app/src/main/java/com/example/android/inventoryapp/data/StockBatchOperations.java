@@ -0,0 +1,111 @@
+package com.example.android.inventoryapp.data;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteDoneException;
+import android.database.sqlite.SQLiteStatement;
+
+import com.example.android.inventoryapp.data.ProductContract.ProductEntry;
+import com.example.android.inventoryapp.sync.SyncChange;
+
+/**
+ * Batched stock operations of {@link ProductProvider}, behind {@link ProductContract#METHOD_GET_QUANTITIES}
+ * and {@link ProductContract#METHOD_APPLY_QUANTITY_DELTAS}.
+ *
+ * Each operation compiles its statements once and runs them for every product of the batch,
+ * so that a batch costs one IPC and one transaction instead of one of each per product.
+ */
+final class StockBatchOperations {
+    private StockBatchOperations() {}
+
+    /**
+     * Return the quantities of the products, -1 for the unknown or deleted ones.
+     * The products are read in a single transaction, so the quantities are consistent with each other.
+     */
+    static int[] getQuantities(SQLiteDatabase db, long[] ids) {
+        int[] quantities = new int[ids.length];
+
+        db.beginTransactionNonExclusive();
+        try {
+            SQLiteStatement query = compileQuantityQuery(db);
+            try {
+                for (int i = 0; i < ids.length; i++) {
+                    quantities[i] = queryQuantity(query, ids[i]);
+                }
+            } finally {
+                query.close();
+            }
+
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        return quantities;
+    }
+
+    /**
+     * Add the deltas to the quantities of the products, in a single transaction. A delta that
+     * would take units held by reservations, or make a quantity negative, is not applied, the
+     * others are. Positive deltas are always applied to live products.
+     *
+     * @return The new quantities, -1 for the products not updated (unknown, deleted, or short of stock).
+     */
+    static int[] applyQuantityDeltas(SQLiteDatabase db, long[] ids, int[] deltas) {
+        if (ids.length != deltas.length) {
+            throw new IllegalArgumentException("Got " + ids.length + " ids for " + deltas.length + " deltas");
+        }
+
+        int[] quantities = new int[ids.length];
+
+        db.beginTransaction();
+        try {
+            long changeVersion = ProductSyncOperations.nextChangeVersion(db);
+
+            SQLiteStatement update = db.compileStatement("UPDATE " + ProductEntry.TABLE_NAME + " SET "
+                    + ProductEntry.COLUMN_PRODUCT_QUANTITY + " = " + ProductEntry.COLUMN_PRODUCT_QUANTITY + " + ?, "
+                    + ProductEntry.COLUMN_PRODUCT_CHANGE_VERSION + " = ?, "
+                    + ProductEntry.COLUMN_PRODUCT_VERSION + " = " + ProductEntry.COLUMN_PRODUCT_VERSION + " + 1, "
+                    + ProductEntry.COLUMN_PRODUCT_DIRTY + " = " + ProductEntry.COLUMN_PRODUCT_DIRTY + " | ? WHERE "
+                    + ProductEntry._ID + " = ? AND " + ProductEntry.COLUMN_PRODUCT_QUANTITY + " + ? >= MIN("
+                    + ProductEntry.COLUMN_PRODUCT_RESERVED + ", " + ProductEntry.COLUMN_PRODUCT_QUANTITY + ") AND "
+                    + DeletionOperations.SELECTION_LIVE);
+            SQLiteStatement query = compileQuantityQuery(db);
+            try {
+                for (int i = 0; i < ids.length; i++) {
+                    update.bindLong(1, deltas[i]);
+                    update.bindLong(2, changeVersion);
+                    update.bindLong(3, SyncChange.FIELD_QUANTITY);
+                    update.bindLong(4, ids[i]);
+                    update.bindLong(5, deltas[i]);
+
+                    quantities[i] = update.executeUpdateDelete() == 0 ? -1 : queryQuantity(query, ids[i]);
+                }
+            } finally {
+                update.close();
+                query.close();
+            }
+            LotOperations.deplete(db);
+
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        return quantities;
+    }
+
+    private static SQLiteStatement compileQuantityQuery(SQLiteDatabase db) {
+        return db.compileStatement("SELECT " + ProductEntry.COLUMN_PRODUCT_QUANTITY + " FROM "
+                + ProductEntry.TABLE_NAME + " WHERE " + ProductEntry._ID + " = ? AND "
+                + DeletionOperations.SELECTION_LIVE);
+    }
+
+    private static int queryQuantity(SQLiteStatement query, long id) {
+        query.bindLong(1, id);
+        try {
+            return (int) query.simpleQueryForLong();
+        } catch (SQLiteDoneException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,342 @@
+package com.example.android.inventoryapp.data;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.os.Bundle;
+
+import com.example.android.inventoryapp.data.ProductContract.ProductEntry;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A stocktake session: counts of the products, scanned or typed, reconciled with the database
+ * in bulk instead of product by product.
+ *
+ * Counts are kept in memory, by product id in a {@link LongIntMap} and by SKU until the SKUs are
+ * resolved, so a session of 100k counted lines takes a few megabytes. {@link #reconcile()} joins
+ * the counts with the quantities of a single cursor over the products, streamed window by window,
+ * and returns the variances. {@link #commit(Variances)} sets the counted quantities in chunks, each
+ * chunk one call and one transaction, every correction recorded as an adjustment of the stocktake.
+ *
+ * A correction only applies if the quantity is still the one the count was compared with: the
+ * products sold or restocked in between are returned, to be counted again. A commit interrupted
+ * midway is completed by reconciling again, the corrected products no longer show a variance.
+ */
+public final class Stocktake {
+    private final ContentResolver mResolver;
+    private final long mId;
+    private final int mMaxChunkBytes;
+
+    private final LongIntMap mCountsById = new LongIntMap(1024);
+    /* Counts of the SKUs not resolved yet. An array holds each count, so updates do not box. */
+    private final Map<String, int[]> mCountsBySku = new HashMap<>();
+    private int mLines;
+
+    /**
+     * Variances of the counted products, and the counts that match no product.
+     */
+    public static final class Variances {
+        private final long[] mIds;
+        private final int[] mExpected;
+        private final int[] mCounted;
+        private final int mMatchedCount;
+        private final long[] mUnknownIds;
+        private final List<String> mUnknownSkus;
+
+        Variances(long[] ids, int[] expected, int[] counted, int matchedCount, long[] unknownIds,
+                  List<String> unknownSkus) {
+            mIds = ids;
+            mExpected = expected;
+            mCounted = counted;
+            mMatchedCount = matchedCount;
+            mUnknownIds = unknownIds;
+            mUnknownSkus = unknownSkus;
+        }
+
+        /**
+         * Return the number of products whose count differs from the database.
+         */
+        public int size() {
+            return mIds.length;
+        }
+
+        public long getId(int index) {
+            return mIds[index];
+        }
+
+        /**
+         * Return the quantity in the database when the variance was computed.
+         */
+        public int getExpected(int index) {
+            return mExpected[index];
+        }
+
+        public int getCounted(int index) {
+            return mCounted[index];
+        }
+
+        /**
+         * Return the number of counted products matching the database.
+         */
+        public int getMatchedCount() {
+            return mMatchedCount;
+        }
+
+        /**
+         * Return the counted ids of no product, or of deleted products.
+         */
+        public long[] getUnknownIds() {
+            return mUnknownIds.clone();
+        }
+
+        /**
+         * Return the counted SKUs of no product.
+         */
+        public List<String> getUnknownSkus() {
+            return mUnknownSkus;
+        }
+    }
+
+    /**
+     * Start a stocktake, identified by its start time.
+     */
+    public Stocktake(ContentResolver resolver) {
+        this(resolver, System.currentTimeMillis(), BatchChunker.MAX_CHUNK_BYTES);
+    }
+
+    Stocktake(ContentResolver resolver, long id, int maxChunkBytes) {
+        mResolver = resolver;
+        mId = id;
+        mMaxChunkBytes = maxChunkBytes;
+    }
+
+    /**
+     * Return the id of the stocktake, recorded with its adjustments.
+     */
+    public long getId() {
+        return mId;
+    }
+
+    /**
+     * Return the number of counts added or set.
+     */
+    public int getLineCount() {
+        return mLines;
+    }
+
+    /**
+     * Add counted units to a product, as a scan does. Negative units take back a wrong scan.
+     */
+    public void add(long id, int units) {
+        if (mCountsById.get(id, 0) + units < 0) {
+            throw new IllegalArgumentException("Count of product " + id + " cannot be negative");
+        }
+
+        mCountsById.add(id, units);
+        mLines++;
+    }
+
+    /**
+     * Add counted units to the product of a SKU.
+     */
+    public void add(String sku, int units) {
+        int[] count = skuCount(sku);
+        if (count[0] + units < 0) {
+            throw new IllegalArgumentException("Count of SKU " + sku + " cannot be negative");
+        }
+
+        count[0] += units;
+        mLines++;
+    }
+
+    /**
+     * Set the count of a product, as typed, replacing the units counted so far.
+     */
+    public void set(long id, int quantity) {
+        if (quantity < 0) {
+            throw new IllegalArgumentException("Count of product " + id + " cannot be negative");
+        }
+
+        mCountsById.put(id, quantity);
+        mLines++;
+    }
+
+    /**
+     * Set the count of the product of a SKU.
+     */
+    public void set(String sku, int quantity) {
+        if (quantity < 0) {
+            throw new IllegalArgumentException("Count of SKU " + sku + " cannot be negative");
+        }
+
+        skuCount(sku)[0] = quantity;
+        mLines++;
+    }
+
+    private int[] skuCount(String sku) {
+        if (sku == null) {
+            throw new IllegalArgumentException("SKU cannot be null");
+        }
+
+        int[] count = mCountsBySku.get(sku);
+        if (count == null) {
+            count = new int[1];
+            mCountsBySku.put(sku, count);
+        }
+
+        return count;
+    }
+
+    /**
+     * Compare the counts with the quantities of the database. The counted SKUs are resolved first,
+     * in batches, and their counts added to those of their products, the unknown ones are kept.
+     */
+    public Variances reconcile() {
+        List<String> unknownSkus = resolveSkus();
+
+        boolean[] seen = new boolean[mCountsById.capacity()];
+        int matched = 0;
+        LongArray ids = new LongArray();
+        IntArray expected = new IntArray();
+        IntArray counted = new IntArray();
+
+        Cursor cursor = mResolver.query(ProductEntry.CONTENT_URI,
+                new String[] { ProductEntry._ID, ProductEntry.COLUMN_PRODUCT_QUANTITY }, null, null, null);
+        if (cursor == null) {
+            throw new IllegalStateException("Cannot query the products");
+        }
+        try {
+            while (cursor.moveToNext()) {
+                int slot = mCountsById.slotOf(cursor.getLong(0));
+                if (slot == -1) {
+                    continue;
+                }
+
+                seen[slot] = true;
+                int quantity = cursor.getInt(1);
+                int count = mCountsById.valueAt(slot);
+                if (count == quantity) {
+                    matched++;
+                } else {
+                    ids.add(mCountsById.keyAt(slot));
+                    expected.add(quantity);
+                    counted.add(count);
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+
+        LongArray unknownIds = new LongArray();
+        for (int slot = 0; slot < seen.length; slot++) {
+            if (mCountsById.hasKeyAt(slot) && !seen[slot]) {
+                unknownIds.add(mCountsById.keyAt(slot));
+            }
+        }
+
+        return new Variances(ids.toArray(), expected.toArray(), counted.toArray(), matched,
+                unknownIds.toArray(), unknownSkus);
+    }
+
+    /**
+     * Move the counts of the known SKUs to their products.
+     *
+     * @return The unknown SKUs, still counted by SKU.
+     */
+    private List<String> resolveSkus() {
+        List<String> unknown = new ArrayList<>();
+        if (mCountsBySku.isEmpty()) {
+            return unknown;
+        }
+
+        String[] skus = mCountsBySku.keySet().toArray(new String[mCountsBySku.size()]);
+        long[] ids = new ProductBatchClient(mResolver, mMaxChunkBytes).resolveSkus(skus);
+        for (int i = 0; i < skus.length; i++) {
+            if (ids[i] == -1) {
+                unknown.add(skus[i]);
+            } else {
+                mCountsById.add(ids[i], mCountsBySku.remove(skus[i])[0]);
+            }
+        }
+
+        return unknown;
+    }
+
+    /**
+     * Set the counted quantities of the variances, in chunks.
+     *
+     * @return The ids of the products not corrected: changed since the reconciliation, or deleted.
+     */
+    public long[] commit(Variances variances) {
+        LongArray skipped = new LongArray();
+        int size = variances.size();
+        int chunkSize = BatchChunker.chunkSize(
+                BatchChunker.LONG_BYTES + 2 * BatchChunker.INT_BYTES, mMaxChunkBytes);
+        for (int start = 0; start < size; start += chunkSize) {
+            int end = Math.min(size, start + chunkSize);
+
+            Bundle extras = new Bundle();
+            extras.putLongArray(ProductContract.EXTRA_IDS, Arrays.copyOfRange(variances.mIds, start, end));
+            extras.putIntArray(ProductContract.EXTRA_EXPECTED_QUANTITIES,
+                    Arrays.copyOfRange(variances.mExpected, start, end));
+            extras.putIntArray(ProductContract.EXTRA_QUANTITIES, Arrays.copyOfRange(variances.mCounted, start, end));
+
+            Bundle result = mResolver.call(ProductContract.BASE_CONTENT_URI,
+                    ProductContract.METHOD_APPLY_STOCKTAKE, String.valueOf(mId), extras);
+            if (result == null) {
+                throw new IllegalStateException("No result for " + ProductContract.METHOD_APPLY_STOCKTAKE);
+            }
+
+            int[] quantities = result.getIntArray(ProductContract.EXTRA_QUANTITIES);
+            for (int i = 0; i < quantities.length; i++) {
+                if (quantities[i] == -1) {
+                    skipped.add(variances.mIds[start + i]);
+                }
+            }
+        }
+
+        return skipped.toArray();
+    }
+
+    /**
+     * Growable array of longs.
+     */
+    private static final class LongArray {
+        private long[] mValues = new long[64];
+        private int mSize;
+
+        void add(long value) {
+            if (mSize == mValues.length) {
+                mValues = Arrays.copyOf(mValues, mSize * 2);
+            }
+            mValues[mSize++] = value;
+        }
+
+        long[] toArray() {
+            return Arrays.copyOf(mValues, mSize);
+        }
+    }
+
+    /**
+     * Growable array of ints.
+     */
+    private static final class IntArray {
+        private int[] mValues = new int[64];
+        private int mSize;
+
+        void add(int value) {
+            if (mSize == mValues.length) {
+                mValues = Arrays.copyOf(mValues, mSize * 2);
+            }
+            mValues[mSize++] = value;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(mValues, mSize);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.android.inventoryapp.data;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import com.example.android.inventoryapp.data.ProductContract.AdjustmentEntry;
+import com.example.android.inventoryapp.data.ProductContract.ProductEntry;
+import com.example.android.inventoryapp.sync.SyncChange;
+
+/**
+ * Stocktake corrections of {@link ProductProvider}, behind {@link ProductContract#METHOD_APPLY_STOCKTAKE}.
+ */
+final class StocktakeOperations {
+    private StocktakeOperations() {}
+
+    /**
+     * Set the quantities of the products to the counted ones, in a single transaction, recording
+     * each correction as an adjustment. A product whose quantity is no longer the expected one
+     * (sold or restocked since the variance was computed) is left untouched: the caller counts it
+     * again or recomputes its variance.
+     *
+     * @return The corrected quantities, -1 for the products not corrected (unknown, deleted, or changed).
+     */
+    static int[] apply(SQLiteDatabase db, long stocktakeId, long[] ids, int[] expected, int[] counted, long now) {
+        if (ids.length != expected.length || ids.length != counted.length) {
+            throw new IllegalArgumentException("Got " + ids.length + " ids for " + expected.length
+                    + " expected and " + counted.length + " counted quantities");
+        }
+        for (int quantity : counted) {
+            if (quantity < 0) {
+                throw new IllegalArgumentException("Product requires a valid quantity");
+            }
+        }
+
+        int[] quantities = new int[ids.length];
+
+        db.beginTransaction();
+        try {
+            long changeVersion = ProductSyncOperations.nextChangeVersion(db);
+
+            SQLiteStatement update = db.compileStatement("UPDATE " + ProductEntry.TABLE_NAME + " SET "
+                    + ProductEntry.COLUMN_PRODUCT_QUANTITY + " = ?, "
+                    + ProductEntry.COLUMN_PRODUCT_CHANGE_VERSION + " = ?, "
+                    + ProductEntry.COLUMN_PRODUCT_VERSION + " = " + ProductEntry.COLUMN_PRODUCT_VERSION + " + 1, "
+                    + ProductEntry.COLUMN_PRODUCT_DIRTY + " = " + ProductEntry.COLUMN_PRODUCT_DIRTY + " | ? WHERE "
+                    + ProductEntry._ID + " = ? AND " + ProductEntry.COLUMN_PRODUCT_QUANTITY + " = ? AND "
+                    + DeletionOperations.SELECTION_LIVE);
+            SQLiteStatement insert = db.compileStatement("INSERT INTO " + AdjustmentEntry.TABLE_NAME + " ("
+                    + AdjustmentEntry.COLUMN_PRODUCT_ID + ", " + AdjustmentEntry.COLUMN_STOCKTAKE_ID + ", "
+                    + AdjustmentEntry.COLUMN_QUANTITY_BEFORE + ", " + AdjustmentEntry.COLUMN_QUANTITY_AFTER + ", "
+                    + AdjustmentEntry.COLUMN_CREATED_AT + ") VALUES (?, ?, ?, ?, ?)");
+            try {
+                for (int i = 0; i < ids.length; i++) {
+                    update.bindLong(1, counted[i]);
+                    update.bindLong(2, changeVersion);
+                    update.bindLong(3, SyncChange.FIELD_QUANTITY);
+                    update.bindLong(4, ids[i]);
+                    update.bindLong(5, expected[i]);
+                    if (update.executeUpdateDelete() == 0) {
+                        quantities[i] = -1;
+                        continue;
+                    }
+
+                    insert.bindLong(1, ids[i]);
+                    insert.bindLong(2, stocktakeId);
+                    insert.bindLong(3, expected[i]);
+                    insert.bindLong(4, counted[i]);
+                    insert.bindLong(5, now);
+                    insert.executeInsert();
+                    quantities[i] = counted[i];
+                }
+            } finally {
+                update.close();
+                insert.close();
+            }
+            LotOperations.deplete(db);
+
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        return quantities;
+    }
+}
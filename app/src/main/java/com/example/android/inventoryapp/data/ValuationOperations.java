@@ -0,0 +1,135 @@
+package com.example.android.inventoryapp.data;
+
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.CancellationSignal;
+import android.text.TextUtils;
+
+import com.example.android.inventoryapp.data.ProductContract.ValuationEntry;
+
+/**
+ * Valuation history of {@link ProductProvider}, behind {@link ValuationEntry#CONTENT_URI}.
+ *
+ * The bucket of the current day is written by the triggers of {@link ProductDbHelper} as the
+ * products change. Only the reads and the compaction are done here. Each bucket holds its closing
+ * figures, so downsampling a period keeps its latest bucket under the start of the period, and
+ * the series reads the same at the coarser resolution.
+ */
+final class ValuationOperations {
+    private static final long DAY_MILLIS = 24 * 60 * 60 * 1000;
+
+    private ValuationOperations() {}
+
+    /**
+     * Query the buckets starting within the range, and the bucket in effect at its start if any,
+     * in time order. Both are ranges of the primary key.
+     *
+     * @param from Start of the range, inclusive, in milliseconds since the epoch.
+     * @param to   End of the range, exclusive, in milliseconds since the epoch.
+     */
+    static Cursor query(SQLiteDatabase db, String[] projection, String selection, String[] selectionArgs,
+                        long from, long to, CancellationSignal cancellationSignal) {
+        String where = ValuationEntry.COLUMN_BUCKET_START + " >= IFNULL((SELECT MAX("
+                + ValuationEntry.COLUMN_BUCKET_START + ") FROM " + ValuationEntry.TABLE_NAME + " WHERE "
+                + ValuationEntry.COLUMN_BUCKET_START + " <= ?), ?) AND " + ValuationEntry.COLUMN_BUCKET_START + " < ?";
+        String[] whereArgs = { String.valueOf(from), String.valueOf(from), String.valueOf(to) };
+        if (!TextUtils.isEmpty(selection)) {
+            where += " AND (" + selection + ")";
+            if (selectionArgs != null) {
+                String[] args = new String[whereArgs.length + selectionArgs.length];
+                System.arraycopy(whereArgs, 0, args, 0, whereArgs.length);
+                System.arraycopy(selectionArgs, 0, args, whereArgs.length, selectionArgs.length);
+                whereArgs = args;
+            }
+        }
+
+        return db.query(
+                false,
+                ValuationEntry.TABLE_NAME,
+                projection,
+                where,
+                whereArgs,
+                null,
+                null,
+                ValuationEntry.COLUMN_BUCKET_START,
+                null,
+                cancellationSignal
+        );
+    }
+
+    /**
+     * Downsample the daily buckets older than {@link ProductContract#VALUATION_DAILY_MILLIS} into
+     * weekly ones, then the weekly buckets older than {@link ProductContract#VALUATION_WEEKLY_MILLIS}
+     * into monthly ones, in a single transaction. Only whole weeks and months are downsampled.
+     *
+     * @return The number of buckets downsampled.
+     */
+    static int compact(SQLiteDatabase db, long now) {
+        int compacted;
+        db.beginTransaction();
+        try {
+            compacted = downsample(db, ValuationEntry.RESOLUTION_DAY, ValuationEntry.RESOLUTION_WEEK,
+                    now - ProductContract.VALUATION_DAILY_MILLIS);
+            compacted += downsample(db, ValuationEntry.RESOLUTION_WEEK, ValuationEntry.RESOLUTION_MONTH,
+                    now - ProductContract.VALUATION_WEEKLY_MILLIS);
+
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        return compacted;
+    }
+
+    /**
+     * Replace the buckets of the given resolution in the periods of the coarser resolution ending
+     * before the given time by one bucket per period, with the closing figures of its latest bucket.
+     * A week belongs to the month of its last day, so that a month closes with a figure of its own.
+     *
+     * @return The number of buckets replaced.
+     */
+    private static int downsample(SQLiteDatabase db, int resolution, int coarser, long before) {
+        long cutoff = DatabaseUtils.longForQuery(db, "SELECT " + periodStart(coarser, "?"),
+                new String[] { String.valueOf(before) });
+
+        /* The cutoff is written as a number: bound as text, it would compare above any sum of integers. */
+        String lastDay = resolution == ValuationEntry.RESOLUTION_WEEK
+                ? "(" + ValuationEntry.COLUMN_BUCKET_START + " + " + 6 * DAY_MILLIS + ")"
+                : ValuationEntry.COLUMN_BUCKET_START;
+        String selection = ValuationEntry.COLUMN_RESOLUTION + " = " + resolution + " AND " + lastDay + " < " + cutoff;
+
+        int count = (int) DatabaseUtils.queryNumEntries(db, ValuationEntry.TABLE_NAME, selection);
+        if (count == 0) {
+            return 0;
+        }
+
+        /*
+            With MAX, SQLite reads the other columns of a group from the row holding the maximum:
+            the latest bucket of each period. A period may start on one of the buckets it replaces.
+         */
+        db.execSQL("INSERT OR REPLACE INTO " + ValuationEntry.TABLE_NAME + " (" + ValuationEntry.COLUMN_BUCKET_START
+                + ", " + ValuationEntry.COLUMN_RESOLUTION + ", " + ValuationEntry.COLUMN_UNITS + ", "
+                + ValuationEntry.COLUMN_VALUE + ") SELECT period, " + coarser + ", " + ValuationEntry.COLUMN_UNITS
+                + ", " + ValuationEntry.COLUMN_VALUE + " FROM (SELECT "
+                + periodStart(coarser, lastDay) + " AS period, MAX("
+                + ValuationEntry.COLUMN_BUCKET_START + "), " + ValuationEntry.COLUMN_UNITS + ", "
+                + ValuationEntry.COLUMN_VALUE + " FROM " + ValuationEntry.TABLE_NAME + " WHERE " + selection
+                + " GROUP BY period)");
+        db.delete(ValuationEntry.TABLE_NAME, selection, null);
+
+        return count;
+    }
+
+    /**
+     * Return the SQL start of the week (Monday, UTC) or of the month of the given time in
+     * milliseconds, in milliseconds.
+     */
+    private static String periodStart(int resolution, String millis) {
+        String modifiers = resolution == ValuationEntry.RESOLUTION_WEEK
+                ? "'start of day', 'weekday 0', '-6 days'"
+                : "'start of month'";
+
+        return "(CAST(strftime('%s', " + millis + " / 1000, 'unixepoch', " + modifiers + ") AS INTEGER) * 1000)";
+    }
+}
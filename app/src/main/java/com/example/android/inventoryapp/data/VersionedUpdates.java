@@ -0,0 +1,86 @@
+package com.example.android.inventoryapp.data;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.util.Log;
+
+import com.example.android.inventoryapp.data.ProductContract.ProductEntry;
+
+/**
+ * Optimistic concurrency for the edits of a product: the edit is written only if the product
+ * is still at the version it was read at, see {@link ProductContract#QUERY_PARAMETER_EXPECTED_VERSION}.
+ * No lock is held while the user edits, sales made meanwhile proceed and the edit is re-applied on top.
+ */
+public final class VersionedUpdates {
+    private static final String LOG_TAG = VersionedUpdates.class.getSimpleName();
+
+    /**
+     * Number of conflicting writes after which an edit gives up.
+     */
+    private static final int MAX_ATTEMPTS = 10;
+
+    private static final String[] PROJECTION = {
+            ProductEntry.COLUMN_PRODUCT_QUANTITY,
+            ProductEntry.COLUMN_PRODUCT_VERSION
+    };
+
+    private VersionedUpdates() {}
+
+    /**
+     * Add the delta to the quantity of the product and write the other values, unless the product
+     * changed since it was read. On a conflict the product is read again and the delta re-applied
+     * to its new quantity, so that the concurrent changes are kept. Quantities do not go below 0.
+     *
+     * @param productUri Content URI of the product.
+     * @param version    Version the quantity was read at, or -1 if unknown.
+     * @param quantity   Quantity read at that version.
+     * @param delta      Quantity change made by the edit.
+     * @param values     Other values of the edit, may be empty.
+     * @return True if the edit was written, false if the product is gone or kept changing.
+     */
+    public static boolean applyQuantityDelta(
+            ContentResolver resolver, Uri productUri, long version, int quantity, int delta, ContentValues values) {
+        if (delta == 0 && values.size() == 0) {
+            return true;
+        }
+
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+            if (version >= 0) {
+                ContentValues edit = new ContentValues(values);
+                if (delta != 0) {
+                    edit.put(ProductEntry.COLUMN_PRODUCT_QUANTITY, Math.max(0, quantity + delta));
+                }
+
+                Uri uri = productUri.buildUpon()
+                        .appendQueryParameter(ProductContract.QUERY_PARAMETER_EXPECTED_VERSION, String.valueOf(version))
+                        .build();
+                if (resolver.update(uri, edit, null, null) != 0) {
+                    return true;
+                }
+
+                Log.i(LOG_TAG, "Edit of " + productUri + " conflicts with version " + version + ", re-applying");
+            }
+
+            /* Read the product again, the delta is applied to its current quantity. */
+            Cursor cursor = resolver.query(productUri, PROJECTION, null, null, null);
+            if (cursor == null) {
+                return false;
+            }
+
+            try {
+                if (!cursor.moveToFirst()) {
+                    return false;
+                }
+
+                quantity = cursor.getInt(0);
+                version = cursor.getLong(1);
+            } finally {
+                cursor.close();
+            }
+        }
+
+        return false;
+    }
+}
@@ -0,0 +1,594 @@
+package com.example.android.inventoryapp.data;
+
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binary format of the workload traces written by {@link WorkloadTracer}, and their reader.
+ *
+ * A trace file starts with a header (magic, format version, wall clock time of its start) followed
+ * by records until the end of the file. Integers are variable length, strings are written once
+ * per file and then referenced by index, so that a record of a list reload takes a few bytes.
+ * Each file has its own string table and can be read on its own.
+ *
+ * The values written by the callers are redacted: text and blobs are reduced to their length,
+ * numbers, row ids and canonical decimal strings (ids, versions) are kept. URIs, projections,
+ * selections and sort orders are code of the app and kept as they are, but for the SKUs of their
+ * paths, see {@link #template}.
+ *
+ * This class does not depend on the platform, traces can be read anywhere.
+ */
+final class WorkloadTrace {
+    /**
+     * Magic number starting every trace file ("INVT").
+     */
+    static final int MAGIC = 0x494E5654;
+
+    static final int FORMAT_VERSION = 1;
+
+    /**
+     * Operations.
+     */
+    static final int OP_QUERY = 1;
+    static final int OP_INSERT = 2;
+    static final int OP_BULK_INSERT = 3;
+    static final int OP_UPDATE = 4;
+    static final int OP_DELETE = 5;
+    static final int OP_CALL = 6;
+
+    /**
+     * Tags of the redacted values.
+     */
+    static final int TAG_NULL = 0;
+    static final int TAG_INT = 1;
+    static final int TAG_LONG = 2;
+    static final int TAG_DOUBLE = 3;
+    static final int TAG_BOOLEAN = 4;
+    static final int TAG_NUMERIC_TEXT = 5;
+    static final int TAG_TEXT = 6;
+    static final int TAG_BLOB = 7;
+    static final int TAG_INT_ARRAY = 8;
+    static final int TAG_LONG_ARRAY = 9;
+    static final int TAG_TEXT_ARRAY = 10;
+    static final int TAG_OTHER = 11;
+    /* Text kept in clear through the string table, only for the query parameters of the URIs. */
+    static final int TAG_STRING = 12;
+
+    /**
+     * Name of the current trace file. The rotated files are named workload.1.trace (the most
+     * recent), workload.2.trace, and so on.
+     */
+    static final String FILE_NAME = "workload.trace";
+
+    private WorkloadTrace() {}
+
+    /**
+     * A redacted value: its type, and its number, length or array of numbers.
+     */
+    static final class Value {
+        static final Value NULL = new Value(TAG_NULL, 0, 0, null, null);
+
+        final int mTag;
+        /* Number of the numeric values, 0 for the others. */
+        final long mNumber;
+        /* Length of the text and blob values, number of elements of the arrays. */
+        final int mLength;
+        /* Elements of the numeric arrays, lengths of the elements of the text arrays. */
+        final long[] mElements;
+        /* Text of the values kept in clear. */
+        final String mText;
+
+        Value(int tag, long number, int length, long[] elements, String text) {
+            mTag = tag;
+            mNumber = number;
+            mLength = length;
+            mElements = elements;
+            mText = text;
+        }
+    }
+
+    /**
+     * A named redacted value: a content value, an extra of a call or a query parameter.
+     */
+    static final class Entry {
+        final String mName;
+        final Value mValue;
+
+        Entry(String name, Value value) {
+            mName = name;
+            mValue = value;
+        }
+    }
+
+    /**
+     * A traced operation. The fields not used by the operation are null, or -1.
+     */
+    static final class Record {
+        int mOperation;
+        /* Start of the operation, in microseconds since the start of the file. */
+        long mStartMicros;
+        long mDurationMicros;
+        /* URI without its id and query, or the method of a call. */
+        String mTarget;
+        /* Id of the URI, or of the product of a call, -1 if none. */
+        long mRowId = -1;
+        List<Entry> mParameters = Collections.emptyList();
+        String[] mProjection;
+        String mSelection;
+        Value[] mSelectionArgs;
+        String mSortOrder;
+        /* Values of an insert or update, one list per row of a bulk insert, the extras of a call. */
+        List<List<Entry>> mValues = Collections.emptyList();
+        /* Argument of a call. */
+        Value mArgument = Value.NULL;
+        /* Rows returned or changed, id of the inserted row, -1 if unknown. */
+        long mResult = -1;
+    }
+
+    /**
+     * Return the trace files of the directory, oldest first.
+     */
+    static List<File> listFiles(File directory) {
+        File[] files = directory.listFiles();
+        List<File> traces = new ArrayList<>();
+        if (files == null) {
+            return traces;
+        }
+
+        for (File file : files) {
+            if (file.getName().endsWith(".trace")) {
+                traces.add(file);
+            }
+        }
+        Collections.sort(traces, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                return Integer.compare(rotation(b), rotation(a));
+            }
+        });
+
+        return traces;
+    }
+
+    /**
+     * Return the rotation number of a trace file, 0 for the current one.
+     */
+    static int rotation(File file) {
+        String[] parts = file.getName().split("\\.");
+        if (parts.length != 3) {
+            return 0;
+        }
+
+        try {
+            return Integer.parseInt(parts[1]);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Reads the records of a trace file.
+     */
+    static final class Reader {
+        private final DataInputStream mIn;
+        private final List<String> mStrings = new ArrayList<>();
+        private final long mStartTimeMillis;
+        private long mLastStartMicros;
+
+        Reader(InputStream in) throws IOException {
+            mIn = new DataInputStream(in);
+            if (mIn.readInt() != MAGIC) {
+                throw new IOException("Not a workload trace");
+            }
+            int version = mIn.readUnsignedByte();
+            if (version != FORMAT_VERSION) {
+                throw new IOException("Unsupported workload trace version " + version);
+            }
+            mStartTimeMillis = mIn.readLong();
+        }
+
+        /**
+         * Return the wall clock time of the start of the file, in milliseconds since the epoch.
+         */
+        long getStartTimeMillis() {
+            return mStartTimeMillis;
+        }
+
+        /**
+         * Return the next record, or null at the end of the file. A record cut by a crash ends the file.
+         */
+        Record next() throws IOException {
+            int operation;
+            try {
+                operation = mIn.readUnsignedByte();
+            } catch (EOFException e) {
+                return null;
+            }
+
+            try {
+                return readRecord(operation);
+            } catch (EOFException e) {
+                return null;
+            }
+        }
+
+        private Record readRecord(int operation) throws IOException {
+            Record record = new Record();
+            record.mOperation = operation;
+            mLastStartMicros += readSignedVarint(mIn);
+            record.mStartMicros = mLastStartMicros;
+            record.mDurationMicros = readVarint(mIn);
+            record.mTarget = readString();
+            record.mRowId = readSignedVarint(mIn);
+            record.mResult = readSignedVarint(mIn);
+
+            switch (operation) {
+                case OP_QUERY:
+                    record.mParameters = readEntries();
+                    int columns = (int) readSignedVarint(mIn);
+                    if (columns >= 0) {
+                        record.mProjection = new String[columns];
+                        for (int i = 0; i < columns; i++) {
+                            record.mProjection[i] = readString();
+                        }
+                    }
+                    record.mSelection = readString();
+                    record.mSelectionArgs = readValues();
+                    record.mSortOrder = readString();
+                    break;
+
+                case OP_INSERT:
+                case OP_BULK_INSERT:
+                case OP_UPDATE:
+                case OP_DELETE:
+                    record.mParameters = readEntries();
+                    record.mSelection = readString();
+                    record.mSelectionArgs = readValues();
+                    int rows = (int) readVarint(mIn);
+                    record.mValues = new ArrayList<>(rows);
+                    for (int i = 0; i < rows; i++) {
+                        record.mValues.add(readEntries());
+                    }
+                    break;
+
+                case OP_CALL:
+                    record.mArgument = readValue();
+                    record.mValues = Collections.singletonList(readEntries());
+                    break;
+
+                default:
+                    throw new IOException("Unknown operation " + operation);
+            }
+
+            return record;
+        }
+
+        private String readString() throws IOException {
+            int index = (int) readVarint(mIn);
+            if (index == 0) {
+                return null;
+            }
+            if (index == mStrings.size() + 1) {
+                mStrings.add(mIn.readUTF());
+            }
+
+            return mStrings.get(index - 1);
+        }
+
+        private List<Entry> readEntries() throws IOException {
+            int count = (int) readVarint(mIn);
+            List<Entry> entries = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                String name = readString();
+                entries.add(new Entry(name, readValue()));
+            }
+
+            return entries;
+        }
+
+        private Value[] readValues() throws IOException {
+            int count = (int) readSignedVarint(mIn);
+            if (count < 0) {
+                return null;
+            }
+
+            Value[] values = new Value[count];
+            for (int i = 0; i < count; i++) {
+                values[i] = readValue();
+            }
+
+            return values;
+        }
+
+        private Value readValue() throws IOException {
+            int tag = mIn.readUnsignedByte();
+            switch (tag) {
+                case TAG_NULL:
+                case TAG_OTHER:
+                    return new Value(tag, 0, 0, null, null);
+
+                case TAG_INT:
+                case TAG_LONG:
+                case TAG_BOOLEAN:
+                case TAG_NUMERIC_TEXT:
+                    return new Value(tag, readSignedVarint(mIn), 0, null, null);
+
+                case TAG_DOUBLE:
+                    return new Value(tag, mIn.readLong(), 0, null, null);
+
+                case TAG_TEXT:
+                case TAG_BLOB:
+                    return new Value(tag, 0, (int) readVarint(mIn), null, null);
+
+                case TAG_INT_ARRAY:
+                case TAG_LONG_ARRAY:
+                case TAG_TEXT_ARRAY:
+                    int length = (int) readVarint(mIn);
+                    long[] elements = new long[length];
+                    for (int i = 0; i < length; i++) {
+                        elements[i] = tag == TAG_TEXT_ARRAY ? readVarint(mIn) : readSignedVarint(mIn);
+                    }
+                    return new Value(tag, 0, length, elements, null);
+
+                case TAG_STRING:
+                    return new Value(tag, 0, 0, null, readString());
+
+                default:
+                    throw new IOException("Unknown value tag " + tag);
+            }
+        }
+    }
+
+    /**
+     * Writes the records of a trace file. The caller writes the fields of each record in the order
+     * the {@link Reader} reads them.
+     */
+    static final class Writer {
+        private final DataOutputStream mOut;
+        private final Map<String, Integer> mStrings = new HashMap<>();
+        private long mLastStartMicros;
+
+        /**
+         * Start a trace file with its header.
+         *
+         * @param startTimeMillis Wall clock time of the start of the file.
+         */
+        Writer(OutputStream out, long startTimeMillis) throws IOException {
+            mOut = new DataOutputStream(out);
+            mOut.writeInt(MAGIC);
+            mOut.writeByte(FORMAT_VERSION);
+            mOut.writeLong(startTimeMillis);
+        }
+
+        /**
+         * Start a record with the fields common to all operations.
+         *
+         * @param startMicros Start of the operation since the start of the file. Operations are
+         *                    recorded when they end, the starts are not always increasing.
+         */
+        void beginRecord(int operation, long startMicros, long durationMicros, String target, long rowId, long result)
+                throws IOException {
+            mOut.writeByte(operation);
+            writeSignedVarint(mOut, startMicros - mLastStartMicros);
+            mLastStartMicros = startMicros;
+            writeVarint(mOut, Math.max(0, durationMicros));
+            writeString(target);
+            writeSignedVarint(mOut, rowId);
+            writeSignedVarint(mOut, result);
+        }
+
+        /**
+         * Write a string in clear: its index in the string table, followed by the string itself the
+         * first time.
+         */
+        void writeString(String string) throws IOException {
+            if (string == null) {
+                writeVarint(mOut, 0);
+                return;
+            }
+
+            Integer index = mStrings.get(string);
+            if (index != null) {
+                writeVarint(mOut, index);
+                return;
+            }
+
+            index = mStrings.size() + 1;
+            mStrings.put(string, index);
+            writeVarint(mOut, index);
+            mOut.writeUTF(string);
+        }
+
+        void writeCount(int count) throws IOException {
+            writeVarint(mOut, count);
+        }
+
+        /**
+         * Write the size of an optional array, -1 for null.
+         */
+        void writeOptionalCount(Object[] array) throws IOException {
+            writeSignedVarint(mOut, array == null ? -1 : array.length);
+        }
+
+        /**
+         * Write a query parameter: numbers as such, other text in clear.
+         */
+        void writeParameter(String value) throws IOException {
+            if (value != null && !isCanonicalNumber(value)) {
+                mOut.writeByte(TAG_STRING);
+                writeString(value);
+            } else {
+                writeValue(value);
+            }
+        }
+
+        /**
+         * Write a value redacted: numbers are kept, text and blobs are reduced to their length.
+         */
+        void writeValue(Object value) throws IOException {
+            if (value == null) {
+                mOut.writeByte(TAG_NULL);
+            } else if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+                mOut.writeByte(TAG_INT);
+                writeSignedVarint(mOut, ((Number) value).longValue());
+            } else if (value instanceof Long) {
+                mOut.writeByte(TAG_LONG);
+                writeSignedVarint(mOut, (Long) value);
+            } else if (value instanceof Float || value instanceof Double) {
+                mOut.writeByte(TAG_DOUBLE);
+                mOut.writeLong(Double.doubleToLongBits(((Number) value).doubleValue()));
+            } else if (value instanceof Boolean) {
+                mOut.writeByte(TAG_BOOLEAN);
+                writeSignedVarint(mOut, (Boolean) value ? 1 : 0);
+            } else if (value instanceof String) {
+                String text = (String) value;
+                if (isCanonicalNumber(text)) {
+                    mOut.writeByte(TAG_NUMERIC_TEXT);
+                    writeSignedVarint(mOut, Long.parseLong(text));
+                } else {
+                    mOut.writeByte(TAG_TEXT);
+                    writeVarint(mOut, text.length());
+                }
+            } else if (value instanceof byte[]) {
+                mOut.writeByte(TAG_BLOB);
+                writeVarint(mOut, ((byte[]) value).length);
+            } else if (value instanceof int[]) {
+                int[] array = (int[]) value;
+                mOut.writeByte(TAG_INT_ARRAY);
+                writeVarint(mOut, array.length);
+                for (int element : array) {
+                    writeSignedVarint(mOut, element);
+                }
+            } else if (value instanceof long[]) {
+                long[] array = (long[]) value;
+                mOut.writeByte(TAG_LONG_ARRAY);
+                writeVarint(mOut, array.length);
+                for (long element : array) {
+                    writeSignedVarint(mOut, element);
+                }
+            } else if (value instanceof String[]) {
+                String[] array = (String[]) value;
+                mOut.writeByte(TAG_TEXT_ARRAY);
+                writeVarint(mOut, array.length);
+                for (String element : array) {
+                    writeVarint(mOut, element == null ? 0 : element.length());
+                }
+            } else {
+                mOut.writeByte(TAG_OTHER);
+            }
+        }
+    }
+
+    /**
+     * Write an unsigned variable length integer, 7 bits per byte.
+     */
+    static void writeVarint(DataOutput out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    /**
+     * Write a signed variable length integer, zigzag encoded so that small negative numbers stay short.
+     */
+    static void writeSignedVarint(DataOutput out, long value) throws IOException {
+        writeVarint(out, (value << 1) ^ (value >> 63));
+    }
+
+    static long readVarint(DataInput in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+
+        throw new IOException("Malformed variable length integer");
+    }
+
+    static long readSignedVarint(DataInput in) throws IOException {
+        long value = readVarint(in);
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Return the template of the path of a URI, given as its segments: a segment following
+     * {@link ProductContract#PATH_SKU} holds a SKU or barcode scanned by the user and is replaced
+     * by *, a last segment holding an id is replaced by #. Only the template reaches the string table.
+     */
+    static String template(List<String> segments) {
+        StringBuilder template = new StringBuilder();
+        for (int i = 0; i < segments.size(); i++) {
+            String segment = segments.get(i);
+            template.append('/');
+            if (i > 0 && ProductContract.PATH_SKU.equals(segments.get(i - 1))) {
+                template.append('*');
+            } else if (i == segments.size() - 1 && isCanonicalNumber(segment)) {
+                template.append('#');
+            } else {
+                template.append(segment);
+            }
+        }
+
+        return template.toString();
+    }
+
+    /**
+     * Return true if the text is a decimal integer written as Long#toString would, such as a row id.
+     */
+    static boolean isCanonicalNumber(String text) {
+        int length = text.length();
+        if (length == 0 || length > 18) {
+            return false;
+        }
+
+        int start = text.charAt(0) == '-' ? 1 : 0;
+        if (start == length || (text.charAt(start) == '0' && length > start + 1)) {
+            return false;
+        }
+        for (int i = start; i < length; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+
+        return !"-0".equals(text);
+    }
+
+    static String describe(int operation) {
+        switch (operation) {
+            case OP_QUERY:
+                return "query";
+            case OP_INSERT:
+                return "insert";
+            case OP_BULK_INSERT:
+                return "bulk_insert";
+            case OP_UPDATE:
+                return "update";
+            case OP_DELETE:
+                return "delete";
+            case OP_CALL:
+                return "call";
+            default:
+                return "op" + operation;
+        }
+    }
+}
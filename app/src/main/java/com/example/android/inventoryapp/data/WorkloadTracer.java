@@ -0,0 +1,354 @@
+package com.example.android.inventoryapp.data;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.net.Uri;
+import android.os.Bundle;
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records the operations of {@link ProductProvider} to rotating trace files, in the format of
+ * {@link WorkloadTrace}, so that a real workload can be replayed against another version of the
+ * data layer.
+ *
+ * Records are encoded in memory under a lock, a few microseconds per operation. The file writes
+ * run on a background thread, once a second or once enough bytes are pending. When the current
+ * file is full it is renamed workload.1.trace, the older files are shifted, and the oldest is
+ * deleted, so the traces never take more than {@link #MAX_FILES} times {@link #MAX_FILE_BYTES}.
+ *
+ * Tracing is off by default and is switched with {@link ProductContract#METHOD_SET_WORKLOAD_TRACE}.
+ */
+final class WorkloadTracer {
+    private static final String LOG_TAG = WorkloadTracer.class.getSimpleName();
+
+    /**
+     * Preferences keeping whether tracing is on, across restarts of the app.
+     */
+    static final String PREFS_NAME = "workload_trace";
+    static final String KEY_ENABLED = "enabled";
+
+    /**
+     * Directory of the trace files, in the files directory of the app.
+     */
+    static final String DIRECTORY_NAME = "traces";
+
+    static final int MAX_FILE_BYTES = 1024 * 1024;
+    static final int MAX_FILES = 4;
+
+    private static final int FLUSH_BYTES = 64 * 1024;
+    private static final long FLUSH_DELAY_MILLIS = 1000;
+    private static final long CLOSE_TIMEOUT_MILLIS = 5000;
+
+    private final File mDirectory;
+    private final ScheduledThreadPoolExecutor mExecutor = new ScheduledThreadPoolExecutor(1);
+
+    /* Guarded by this: the encoder of the current file, and its bytes not written yet. */
+    private final ByteArrayOutputStream mPending = new ByteArrayOutputStream();
+    private WorkloadTrace.Writer mWriter;
+    private long mFileStartNanos;
+    private long mFileBytes;
+    private boolean mFlushScheduled;
+    private boolean mClosed;
+
+    private final Runnable mFlush = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (WorkloadTracer.this) {
+                mFlushScheduled = false;
+                if (!mClosed) {
+                    flushLocked();
+                }
+            }
+        }
+    };
+
+    /**
+     * Start tracing to the given directory. A current file left by a previous run is rotated, as
+     * each file has its own string table.
+     */
+    WorkloadTracer(File directory) {
+        mDirectory = directory;
+        /* Once closed, the pending records are flushed at once, the delayed flush is dropped. */
+        mExecutor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+                    Log.w(LOG_TAG, "Cannot create " + mDirectory);
+                }
+                if (new File(mDirectory, WorkloadTrace.FILE_NAME).exists()) {
+                    rotateFiles();
+                }
+            }
+        });
+
+        synchronized (this) {
+            startFileLocked();
+        }
+    }
+
+    static File getDirectory(Context context) {
+        return new File(context.getFilesDir(), DIRECTORY_NAME);
+    }
+
+    void query(long startNanos, long durationNanos, Uri uri, String[] projection, String selection,
+               String[] selectionArgs, String sortOrder, long rows) {
+        synchronized (this) {
+            if (mClosed) {
+                return;
+            }
+
+            try {
+                beginRecordLocked(WorkloadTrace.OP_QUERY, startNanos, durationNanos, uri, rows);
+                mWriter.writeOptionalCount(projection);
+                if (projection != null) {
+                    for (String column : projection) {
+                        mWriter.writeString(column);
+                    }
+                }
+                mWriter.writeString(selection);
+                writeSelectionArgsLocked(selectionArgs);
+                mWriter.writeString(sortOrder);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+
+            endRecordLocked();
+        }
+    }
+
+    void insert(long startNanos, long durationNanos, Uri uri, ContentValues values, long id) {
+        write(WorkloadTrace.OP_INSERT, startNanos, durationNanos, uri, null, null, new ContentValues[] { values }, id);
+    }
+
+    void bulkInsert(long startNanos, long durationNanos, Uri uri, ContentValues[] values, int count) {
+        write(WorkloadTrace.OP_BULK_INSERT, startNanos, durationNanos, uri, null, null, values, count);
+    }
+
+    void update(long startNanos, long durationNanos, Uri uri, ContentValues values, String selection,
+                String[] selectionArgs, int count) {
+        write(WorkloadTrace.OP_UPDATE, startNanos, durationNanos, uri, selection, selectionArgs,
+                new ContentValues[] { values }, count);
+    }
+
+    void delete(long startNanos, long durationNanos, Uri uri, String selection, String[] selectionArgs, int count) {
+        write(WorkloadTrace.OP_DELETE, startNanos, durationNanos, uri, selection, selectionArgs,
+                new ContentValues[0], count);
+    }
+
+    /**
+     * Record a call. The product id and the count of the result, when it has them, are recorded as
+     * the row id and the result of the record.
+     */
+    void call(long startNanos, long durationNanos, String method, String arg, Bundle extras, Bundle result) {
+        long rowId = result == null ? -1 : result.getLong(ProductContract.EXTRA_ID, -1);
+        long count = result == null ? -1 : result.getInt(ProductContract.EXTRA_COUNT, -1);
+
+        synchronized (this) {
+            if (mClosed) {
+                return;
+            }
+
+            try {
+                mWriter.beginRecord(WorkloadTrace.OP_CALL, micros(startNanos - mFileStartNanos), micros(durationNanos),
+                        method, rowId, count);
+                mWriter.writeValue(arg);
+                Set<String> keys = extras == null ? null : extras.keySet();
+                mWriter.writeCount(keys == null ? 0 : keys.size());
+                if (keys != null) {
+                    for (String key : keys) {
+                        mWriter.writeString(key);
+                        mWriter.writeValue(extras.get(key));
+                    }
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+
+            endRecordLocked();
+        }
+    }
+
+    /**
+     * Write the pending records and stop tracing, waiting for the writes to complete. The files are kept.
+     */
+    void close() {
+        synchronized (this) {
+            if (mClosed) {
+                return;
+            }
+            flushLocked();
+            mClosed = true;
+        }
+
+        mExecutor.shutdown();
+        try {
+            if (!mExecutor.awaitTermination(CLOSE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                Log.w(LOG_TAG, "Workload trace still writing after " + CLOSE_TIMEOUT_MILLIS + " ms");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void write(int operation, long startNanos, long durationNanos, Uri uri, String selection,
+                       String[] selectionArgs, ContentValues[] rows, long result) {
+        synchronized (this) {
+            if (mClosed) {
+                return;
+            }
+
+            try {
+                beginRecordLocked(operation, startNanos, durationNanos, uri, result);
+                mWriter.writeString(selection);
+                writeSelectionArgsLocked(selectionArgs);
+                mWriter.writeCount(rows.length);
+                for (ContentValues values : rows) {
+                    Set<Map.Entry<String, Object>> entries = values.valueSet();
+                    mWriter.writeCount(entries.size());
+                    for (Map.Entry<String, Object> entry : entries) {
+                        mWriter.writeString(entry.getKey());
+                        mWriter.writeValue(entry.getValue());
+                    }
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+
+            endRecordLocked();
+        }
+    }
+
+    /**
+     * Write the common fields and the query parameters. The URI is recorded as a template: its id,
+     * if any, is replaced by # and recorded as the row id, its SKU, if any, is replaced by *.
+     */
+    private void beginRecordLocked(int operation, long startNanos, long durationNanos, Uri uri, long result)
+            throws IOException {
+        List<String> segments = uri.getPathSegments();
+        String template = WorkloadTrace.template(segments);
+        long rowId = template.endsWith("#") ? Long.parseLong(segments.get(segments.size() - 1)) : -1;
+        String target = uri.getScheme() + "://" + uri.getAuthority() + template;
+
+        mWriter.beginRecord(operation, micros(startNanos - mFileStartNanos), micros(durationNanos), target, rowId, result);
+
+        Set<String> names = uri.getQueryParameterNames();
+        mWriter.writeCount(names.size());
+        for (String name : names) {
+            mWriter.writeString(name);
+            mWriter.writeParameter(uri.getQueryParameter(name));
+        }
+    }
+
+    private void writeSelectionArgsLocked(String[] selectionArgs) throws IOException {
+        mWriter.writeOptionalCount(selectionArgs);
+        if (selectionArgs != null) {
+            for (String arg : selectionArgs) {
+                mWriter.writeValue(arg);
+            }
+        }
+    }
+
+    /**
+     * Account for the record just written: rotate the file once full, flush once enough is pending.
+     */
+    private void endRecordLocked() {
+        if (mFileBytes + mPending.size() >= MAX_FILE_BYTES) {
+            flushLocked();
+            mExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    rotateFiles();
+                }
+            });
+            startFileLocked();
+        } else if (mPending.size() >= FLUSH_BYTES) {
+            flushLocked();
+        } else if (!mFlushScheduled) {
+            mFlushScheduled = true;
+            mExecutor.schedule(mFlush, FLUSH_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void startFileLocked() {
+        mFileStartNanos = System.nanoTime();
+        mFileBytes = 0;
+        try {
+            mWriter = new WorkloadTrace.Writer(mPending, System.currentTimeMillis());
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Hand the pending bytes to the background thread, which appends them to the current file.
+     */
+    private void flushLocked() {
+        if (mPending.size() == 0) {
+            return;
+        }
+
+        final byte[] bytes = mPending.toByteArray();
+        mPending.reset();
+        mFileBytes += bytes.length;
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                append(bytes);
+            }
+        });
+    }
+
+    private void append(byte[] bytes) {
+        FileOutputStream out = null;
+        try {
+            out = new FileOutputStream(new File(mDirectory, WorkloadTrace.FILE_NAME), true);
+            out.write(bytes);
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Cannot write the workload trace", e);
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    Log.w(LOG_TAG, "Cannot close the workload trace", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Shift the files: workload.trace becomes workload.1.trace, and so on, the oldest is deleted.
+     * Runs on the background thread.
+     */
+    private void rotateFiles() {
+        File oldest = rotatedFile(MAX_FILES - 1);
+        if (oldest.exists() && !oldest.delete()) {
+            Log.w(LOG_TAG, "Cannot delete " + oldest);
+        }
+        for (int i = MAX_FILES - 2; i >= 0; i--) {
+            File file = rotatedFile(i);
+            if (file.exists() && !file.renameTo(rotatedFile(i + 1))) {
+                Log.w(LOG_TAG, "Cannot rotate " + file);
+            }
+        }
+    }
+
+    private File rotatedFile(int rotation) {
+        return new File(mDirectory, rotation == 0 ? WorkloadTrace.FILE_NAME : "workload." + rotation + ".trace");
+    }
+
+    private static long micros(long nanos) {
+        return nanos / 1000;
+    }
+}
@@ -0,0 +1,443 @@
+package com.example.android.inventoryapp.snapshot;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Iterator;
+import java.util.zip.CRC32;
+
+/**
+ * Compact memory-mapped snapshot of the fields of the products shown by the list: id, name,
+ * quantity and price, in id order.
+ *
+ * Layout: a header (magic, format version, data version, count, CRC of the header and the index),
+ * an index of the record offsets, then the records, each preceded by its own CRC. Opening a
+ * snapshot only checks the header and the index; a record is checked when it is read, so a
+ * snapshot is usable as soon as it is mapped, whatever its size.
+ */
+public final class ProductSnapshot implements Closeable {
+    /**
+     * Magic number starting every snapshot ("INVL").
+     */
+    private static final int MAGIC = 0x494E564C;
+
+    /**
+     * Version 2: prices in cents. Version 3: prices stored as longs rather than text. Snapshots of
+     * an older version are rebuilt.
+     */
+    private static final int FORMAT_VERSION = 3;
+
+    /**
+     * Size of the header: magic, format version, data version, count and CRC.
+     */
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 4 + 4;
+
+    /**
+     * Offset of the CRC in the header, it covers the bytes before it and the index.
+     */
+    private static final int HEADER_CRC_OFFSET = HEADER_SIZE - 4;
+
+    /**
+     * Size of a record before its name: CRC, id, quantity, price and name length.
+     */
+    private static final int RECORD_FIXED_SIZE = 4 + 8 + 4 + 8 + 2;
+
+    private static final int MAX_STRING_LENGTH = 0xFFFF;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * Fields of a product in the snapshot. Reused across reads.
+     */
+    public static final class Record {
+        public long id;
+        public String name;
+        public int quantity;
+        public long priceCents;
+
+        public Record() {}
+
+        public Record(long id, String name, int quantity, long priceCents) {
+            this.id = id;
+            this.name = name;
+            this.quantity = quantity;
+            this.priceCents = priceCents;
+        }
+    }
+
+    private final RandomAccessFile mFile;
+    private final MappedByteBuffer mBuffer;
+    private final long mDataVersion;
+    private final int mCount;
+    private final CRC32 mCrc = new CRC32();
+    private byte[] mScratch = new byte[256];
+
+    private ProductSnapshot(RandomAccessFile file, MappedByteBuffer buffer, long dataVersion, int count) {
+        mFile = file;
+        mBuffer = buffer;
+        mDataVersion = dataVersion;
+        mCount = count;
+    }
+
+    /**
+     * Map the snapshot file and check its header and index.
+     *
+     * @throws IOException if the file is missing, of another format version, or corrupt.
+     */
+    public static ProductSnapshot open(File file) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            MappedByteBuffer buffer = map(file, randomAccessFile, FileChannel.MapMode.READ_ONLY);
+            return new ProductSnapshot(randomAccessFile, buffer, buffer.getLong(8), buffer.getInt(16));
+        } catch (IOException | RuntimeException e) {
+            randomAccessFile.close();
+            throw e;
+        }
+    }
+
+    private static MappedByteBuffer map(File file, RandomAccessFile randomAccessFile, FileChannel.MapMode mode)
+            throws IOException {
+        long size = randomAccessFile.length();
+        if (size < HEADER_SIZE || size > Integer.MAX_VALUE) {
+            throw new IOException("Corrupt snapshot " + file + ": size " + size);
+        }
+
+        MappedByteBuffer buffer = randomAccessFile.getChannel().map(mode, 0, size);
+
+        if (buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a product snapshot: " + file);
+        }
+
+        int formatVersion = buffer.getInt(4);
+        if (formatVersion != FORMAT_VERSION) {
+            throw new IOException("Unsupported snapshot version " + formatVersion);
+        }
+
+        int count = buffer.getInt(16);
+        if (count < 0 || HEADER_SIZE + 4L * count > size) {
+            throw new IOException("Corrupt snapshot " + file + ": count " + count);
+        }
+
+        if (headerCrc(buffer, count) != buffer.getInt(HEADER_CRC_OFFSET)) {
+            throw new IOException("Corrupt snapshot " + file + ": header checksum");
+        }
+
+        return buffer;
+    }
+
+    /**
+     * Return the CRC of the header, before the CRC itself, and of the index.
+     */
+    private static int headerCrc(ByteBuffer buffer, int count) {
+        CRC32 crc = new CRC32();
+        byte[] bytes = new byte[HEADER_SIZE + 4 * count];
+        ByteBuffer view = buffer.duplicate();
+        view.position(0);
+        view.get(bytes);
+        crc.update(bytes, 0, HEADER_CRC_OFFSET);
+        crc.update(bytes, HEADER_SIZE, 4 * count);
+
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Change version of the database the snapshot was taken at.
+     */
+    public long getDataVersion() { return mDataVersion; }
+
+    public int getCount() { return mCount; }
+
+    /**
+     * Return true if the snapshot holds exactly the products of the given ids, in increasing order.
+     * Only the ids are compared, the records are not checked.
+     */
+    public synchronized boolean hasIds(long[] ids) {
+        if (ids.length != mCount) {
+            return false;
+        }
+
+        for (int position = 0; position < mCount; position++) {
+            int offset = mBuffer.getInt(HEADER_SIZE + 4 * position);
+            if (offset < HEADER_SIZE || offset > mBuffer.limit() - RECORD_FIXED_SIZE
+                    || mBuffer.getLong(offset + 4) != ids[position]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Read the record at the given position into the given record.
+     *
+     * @return False if the record is corrupt, the record is then left unchanged.
+     */
+    public synchronized boolean read(int position, Record record) {
+        if (position < 0 || position >= mCount) {
+            throw new IndexOutOfBoundsException("Position " + position + " of " + mCount);
+        }
+
+        int offset = mBuffer.getInt(HEADER_SIZE + 4 * position);
+        if (offset < HEADER_SIZE || offset > mBuffer.limit() - RECORD_FIXED_SIZE) {
+            return false;
+        }
+
+        int nameLength = mBuffer.getShort(offset + 24) & 0xFFFF;
+        int bodyLength = RECORD_FIXED_SIZE - 4 + nameLength;
+        if (offset + 4 + bodyLength > mBuffer.limit()) {
+            return false;
+        }
+
+        if (mScratch.length < bodyLength) {
+            mScratch = new byte[bodyLength];
+        }
+
+        ByteBuffer view = mBuffer.duplicate();
+        view.position(offset + 4);
+        view.get(mScratch, 0, bodyLength);
+
+        mCrc.reset();
+        mCrc.update(mScratch, 0, bodyLength);
+        if ((int) mCrc.getValue() != mBuffer.getInt(offset)) {
+            return false;
+        }
+
+        record.id = mBuffer.getLong(offset + 4);
+        record.quantity = mBuffer.getInt(offset + 12);
+        record.priceCents = mBuffer.getLong(offset + 16);
+        record.name = new String(mScratch, RECORD_FIXED_SIZE - 4, nameLength, UTF_8);
+
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        mFile.close();
+    }
+
+    /**
+     * Write a snapshot of the records, which must come in id order, replacing the file atomically.
+     *
+     * @return The number of records written.
+     */
+    public static int write(File file, long dataVersion, Iterator<Record> records) throws IOException {
+        File body = new File(file.getPath() + ".body");
+        File temp = new File(file.getPath() + ".tmp");
+
+        /* Records first, to learn their offsets, then the header and index in front of them. */
+        IntArray offsets = new IntArray();
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(body)));
+        CRC32 crc = new CRC32();
+        try {
+            int offset = 0;
+            ByteBuffer recordBuffer = ByteBuffer.allocate(256);
+            while (records.hasNext()) {
+                recordBuffer = encode(records.next(), recordBuffer, crc);
+                out.write(recordBuffer.array(), 0, recordBuffer.limit());
+
+                offsets.add(offset);
+                offset += recordBuffer.limit();
+            }
+        } finally {
+            out.close();
+        }
+
+        int count = offsets.size();
+        int dataStart = HEADER_SIZE + 4 * count;
+
+        ByteBuffer head = ByteBuffer.allocate(dataStart);
+        head.putInt(MAGIC);
+        head.putInt(FORMAT_VERSION);
+        head.putLong(dataVersion);
+        head.putInt(count);
+        head.putInt(0);
+        for (int i = 0; i < count; i++) {
+            head.putInt(dataStart + offsets.get(i));
+        }
+
+        crc.reset();
+        crc.update(head.array(), 0, HEADER_CRC_OFFSET);
+        crc.update(head.array(), HEADER_SIZE, 4 * count);
+        head.putInt(HEADER_CRC_OFFSET, (int) crc.getValue());
+
+        FileOutputStream tempOut = new FileOutputStream(temp);
+        try {
+            tempOut.write(head.array());
+
+            FileInputStream bodyIn = new FileInputStream(body);
+            try {
+                FileChannel channel = bodyIn.getChannel();
+                long position = 0;
+                long size = channel.size();
+                while (position < size) {
+                    position += channel.transferTo(position, size - position, tempOut.getChannel());
+                }
+            } finally {
+                bodyIn.close();
+            }
+
+            tempOut.getFD().sync();
+        } finally {
+            tempOut.close();
+            body.delete();
+        }
+
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("Cannot replace snapshot " + file);
+        }
+
+        return count;
+    }
+
+    /**
+     * Overwrite the records of the given products in the snapshot file and stamp it with the new
+     * data version. The other records are left as they are, so an update costs its changes rather
+     * than the whole catalog. Products that are not in the snapshot are skipped.
+     *
+     * A cursor mapping the file while it is patched may read a record as it is written; its
+     * checksum then fails and the cursor flags the snapshot as corrupt.
+     *
+     * @param records Changed products, in id order.
+     * @return False if a record no longer fits in the space of the previous one: the file must then
+     * be written again with {@link #write}. The records patched so far are valid, but the data
+     * version is left unchanged.
+     */
+    public static boolean patch(File file, long dataVersion, Iterator<Record> records) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            MappedByteBuffer buffer = map(file, randomAccessFile, FileChannel.MapMode.READ_WRITE);
+            int count = buffer.getInt(16);
+
+            CRC32 crc = new CRC32();
+            ByteBuffer recordBuffer = ByteBuffer.allocate(256);
+            int position = 0;
+            while (records.hasNext()) {
+                Record record = records.next();
+
+                /* The changes come in id order, so the search starts from the previous one. */
+                position = find(buffer, count, position, record.id);
+                if (position < 0) {
+                    position = -position - 1;
+                    continue;
+                }
+
+                /* Records are contiguous: the space of a record runs to the start of the next one. */
+                int offset = buffer.getInt(HEADER_SIZE + 4 * position);
+                int end = position + 1 < count ? buffer.getInt(HEADER_SIZE + 4 * (position + 1)) : buffer.limit();
+                recordBuffer = encode(record, recordBuffer, crc);
+                if (recordBuffer.limit() > end - offset) {
+                    return false;
+                }
+
+                ByteBuffer view = buffer.duplicate();
+                view.position(offset);
+                view.put(recordBuffer.array(), 0, recordBuffer.limit());
+            }
+
+            buffer.putLong(8, dataVersion);
+            buffer.putInt(HEADER_CRC_OFFSET, headerCrc(buffer, count));
+            buffer.force();
+
+            return true;
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    /**
+     * Return the position of the record of the given id, searching from the given position, or
+     * (-(insertion position) - 1) if there is none. A record with an invalid offset is not found.
+     */
+    private static int find(ByteBuffer buffer, int count, int from, long id) {
+        int low = from;
+        int high = count - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int offset = buffer.getInt(HEADER_SIZE + 4 * middle);
+            if (offset < HEADER_SIZE || offset > buffer.limit() - RECORD_FIXED_SIZE) {
+                return -middle - 1;
+            }
+
+            long middleId = buffer.getLong(offset + 4);
+            if (middleId < id) {
+                low = middle + 1;
+            } else if (middleId > id) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+
+        return -low - 1;
+    }
+
+    /**
+     * Encode the record, preceded by its CRC, into the given buffer or a larger one if it is too
+     * small. The returned buffer holds the record from 0 to its limit.
+     */
+    private static ByteBuffer encode(Record record, ByteBuffer buffer, CRC32 crc) {
+        byte[] name = truncate(record.name.getBytes(UTF_8));
+
+        int length = RECORD_FIXED_SIZE + name.length;
+        if (buffer.capacity() < length) {
+            buffer = ByteBuffer.allocate(Math.max(length, buffer.capacity() * 2));
+        }
+
+        buffer.clear();
+        buffer.putInt(0);
+        buffer.putLong(record.id);
+        buffer.putInt(record.quantity);
+        buffer.putLong(record.priceCents);
+        buffer.putShort((short) name.length);
+        buffer.put(name);
+        buffer.flip();
+
+        crc.reset();
+        crc.update(buffer.array(), 4, length - 4);
+        buffer.putInt(0, (int) crc.getValue());
+
+        return buffer;
+    }
+
+    private static byte[] truncate(byte[] bytes) {
+        if (bytes.length <= MAX_STRING_LENGTH) {
+            return bytes;
+        }
+
+        byte[] truncated = new byte[MAX_STRING_LENGTH];
+        System.arraycopy(bytes, 0, truncated, 0, MAX_STRING_LENGTH);
+        return truncated;
+    }
+
+    /**
+     * Growable array of ints, avoiding a boxed list for 100k offsets.
+     */
+    private static final class IntArray {
+        private int[] mValues = new int[1024];
+        private int mSize;
+
+        void add(int value) {
+            if (mSize == mValues.length) {
+                int[] values = new int[mSize * 2];
+                System.arraycopy(mValues, 0, values, 0, mSize);
+                mValues = values;
+            }
+
+            mValues[mSize++] = value;
+        }
+
+        int get(int index) { return mValues[index]; }
+
+        int size() { return mSize; }
+    }
+}
@@ -0,0 +1,247 @@
+package com.example.android.inventoryapp.snapshot;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.Cursor;
+import android.util.Log;
+
+import com.example.android.inventoryapp.data.ProductContract.ProductEntry;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Keeps the {@link ProductSnapshot} of the product list up to date with the database.
+ *
+ * An update only reads the products changed since the snapshot (through the change version index)
+ * and the ids of the live products. When no product was added or removed, the changed records are
+ * patched in place; otherwise the other records are copied from the previous snapshot to a new file.
+ */
+public class ProductSnapshotUpdater {
+    public static final String LOG_TAG = ProductSnapshotUpdater.class.getSimpleName();
+
+    /**
+     * Name of the snapshot file, in the files directory.
+     */
+    public static final String SNAPSHOT_FILE = "product_snapshot.bin";
+
+    /**
+     * Single worker, so that updates never run concurrently.
+     */
+    private static final ExecutorService sExecutor = Executors.newSingleThreadExecutor();
+
+    private ProductSnapshotUpdater() {}
+
+    public static File getSnapshotFile(Context context) {
+        return new File(context.getFilesDir(), SNAPSHOT_FILE);
+    }
+
+    /**
+     * Map the snapshot for the list, or return null if there is none. A corrupt snapshot is deleted.
+     */
+    public static SnapshotCursor openCursor(Context context) {
+        File file = getSnapshotFile(context);
+        if (!file.exists()) {
+            return null;
+        }
+
+        try {
+            return new SnapshotCursor(ProductSnapshot.open(file));
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Discarding product snapshot", e);
+            file.delete();
+            return null;
+        }
+    }
+
+    /**
+     * Delete the snapshot, when it no longer matches the database (after a restore, or corruption).
+     */
+    public static void invalidate(Context context) {
+        getSnapshotFile(context).delete();
+    }
+
+    /**
+     * Update the snapshot in the background.
+     */
+    public static void updateAsync(Context context) {
+        final Context appContext = context.getApplicationContext();
+        sExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    update(appContext);
+                } catch (IOException | RuntimeException e) {
+                    Log.e(LOG_TAG, "Failed to update product snapshot", e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Update the snapshot with the products changed since it was written.
+     * Must be called from a background thread.
+     */
+    static void update(Context context) throws IOException {
+        ContentResolver resolver = context.getContentResolver();
+        File file = getSnapshotFile(context);
+
+        ProductSnapshot previous = null;
+        if (file.exists()) {
+            try {
+                previous = ProductSnapshot.open(file);
+            } catch (IOException e) {
+                Log.w(LOG_TAG, "Rebuilding corrupt product snapshot", e);
+            }
+        }
+
+        try {
+            /* Read the version first: anything written later is picked up by the next update. */
+            long version = queryMaxChangeVersion(resolver);
+            long since = 0;
+            long[] liveIds = null;
+            if (previous != null) {
+                since = previous.getDataVersion();
+
+                /* Versions going backwards means another database, such as a restored one. */
+                if (version < since) {
+                    previous.close();
+                    previous = null;
+                    since = 0;
+                } else if (version == since) {
+                    /* Nothing was written since, unless products were deleted: compare the counts. */
+                    liveIds = queryLiveIds(resolver);
+                    if (liveIds.length == previous.getCount()) {
+                        return;
+                    }
+                }
+            }
+
+            Cursor changed = resolver.query(
+                    ProductEntry.CONTENT_URI,
+                    new String[] {
+                            ProductEntry._ID,
+                            ProductEntry.COLUMN_PRODUCT_NAME,
+                            ProductEntry.COLUMN_PRODUCT_QUANTITY,
+                            ProductEntry.COLUMN_PRODUCT_PRICE
+                    },
+                    ProductEntry.COLUMN_PRODUCT_CHANGE_VERSION + ">?",
+                    new String[] { String.valueOf(since) },
+                    ProductEntry._ID + " ASC"
+            );
+            if (changed == null) {
+                return;
+            }
+
+            try {
+                if (liveIds == null) {
+                    liveIds = queryLiveIds(resolver);
+                }
+
+                /* Same products as the snapshot: only their records change, patch them in place. */
+                if (previous != null && previous.hasIds(liveIds)) {
+                    previous.close();
+                    previous = null;
+                    if (ProductSnapshot.patch(file, version, new CursorRecords(changed))) {
+                        Log.i(LOG_TAG, "Product snapshot patched: " + changed.getCount() + " changed");
+                        return;
+                    }
+
+                    /* A record outgrew its space, merge into a new file instead. */
+                    changed.moveToPosition(-1);
+                    previous = ProductSnapshot.open(file);
+                }
+
+                SnapshotMerger merger = new SnapshotMerger(previous, liveIds, new CursorRecords(changed));
+                int count = ProductSnapshot.write(file, version, merger);
+                Log.i(LOG_TAG, "Product snapshot written: " + count + " products, "
+                        + changed.getCount() + " changed, " + merger.getMissingCount() + " deferred");
+            } finally {
+                changed.close();
+            }
+        } finally {
+            if (previous != null) {
+                previous.close();
+            }
+        }
+    }
+
+    private static long queryMaxChangeVersion(ContentResolver resolver) {
+        Cursor cursor = resolver.query(
+                ProductEntry.CONTENT_URI,
+                new String[] { "MAX(" + ProductEntry.COLUMN_PRODUCT_CHANGE_VERSION + ")" },
+                null,
+                null,
+                null
+        );
+        if (cursor == null) {
+            return 0;
+        }
+
+        try {
+            return cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static long[] queryLiveIds(ContentResolver resolver) {
+        Cursor cursor = resolver.query(
+                ProductEntry.CONTENT_URI,
+                new String[] { ProductEntry._ID },
+                null,
+                null,
+                ProductEntry._ID + " ASC"
+        );
+        if (cursor == null) {
+            return new long[0];
+        }
+
+        try {
+            long[] ids = new long[cursor.getCount()];
+            int i = 0;
+            while (cursor.moveToNext()) {
+                ids[i++] = cursor.getLong(0);
+            }
+
+            return ids;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * The rows of a cursor with the snapshot columns, as records.
+     */
+    private static final class CursorRecords implements Iterator<ProductSnapshot.Record> {
+        private final Cursor mCursor;
+
+        CursorRecords(Cursor cursor) {
+            mCursor = cursor;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return mCursor.getPosition() < mCursor.getCount() - 1;
+        }
+
+        @Override
+        public ProductSnapshot.Record next() {
+            if (!mCursor.moveToNext()) {
+                throw new NoSuchElementException();
+            }
+
+            return new ProductSnapshot.Record(
+                    mCursor.getLong(0), mCursor.getString(1), mCursor.getInt(2), mCursor.getLong(3));
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
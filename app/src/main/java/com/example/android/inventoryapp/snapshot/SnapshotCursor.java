@@ -0,0 +1,125 @@
+package com.example.android.inventoryapp.snapshot;
+
+import android.database.AbstractCursor;
+
+import com.example.android.inventoryapp.data.ProductContract.ProductEntry;
+
+import java.io.IOException;
+
+/**
+ * Read-only cursor over a {@link ProductSnapshot}, with the columns of the product list.
+ * Records are read from the mapped file as the rows are bound. A corrupt record shows as an
+ * empty row and flags the cursor, see {@link #isCorrupt()}.
+ */
+public class SnapshotCursor extends AbstractCursor {
+    private static final String[] COLUMNS = {
+            ProductEntry._ID,
+            ProductEntry.COLUMN_PRODUCT_NAME,
+            ProductEntry.COLUMN_PRODUCT_QUANTITY,
+            ProductEntry.COLUMN_PRODUCT_PRICE
+    };
+
+    private static final int COLUMN_ID = 0;
+    private static final int COLUMN_NAME = 1;
+    private static final int COLUMN_QUANTITY = 2;
+    private static final int COLUMN_PRICE = 3;
+
+    private final ProductSnapshot mSnapshot;
+    private final ProductSnapshot.Record mRecord = new ProductSnapshot.Record();
+    private int mRecordPosition = -1;
+    private boolean mCorrupt;
+
+    public SnapshotCursor(ProductSnapshot snapshot) {
+        mSnapshot = snapshot;
+    }
+
+    /**
+     * Return true if a corrupt record has been met, the snapshot should then be discarded.
+     */
+    public boolean isCorrupt() { return mCorrupt; }
+
+    @Override
+    public int getCount() { return mSnapshot.getCount(); }
+
+    @Override
+    public String[] getColumnNames() { return COLUMNS; }
+
+    private ProductSnapshot.Record record() {
+        int position = getPosition();
+        if (position != mRecordPosition) {
+            mRecordPosition = position;
+            if (!mSnapshot.read(position, mRecord)) {
+                mCorrupt = true;
+                mRecord.id = -1;
+                mRecord.name = "";
+                mRecord.quantity = 0;
+                mRecord.priceCents = 0;
+            }
+        }
+
+        return mRecord;
+    }
+
+    @Override
+    public String getString(int column) {
+        ProductSnapshot.Record record = record();
+        switch (column) {
+            case COLUMN_ID:
+                return String.valueOf(record.id);
+            case COLUMN_NAME:
+                return record.name;
+            case COLUMN_QUANTITY:
+                return String.valueOf(record.quantity);
+            case COLUMN_PRICE:
+                return String.valueOf(record.priceCents);
+            default:
+                throw new IllegalArgumentException("Unknown column " + column);
+        }
+    }
+
+    @Override
+    public long getLong(int column) {
+        ProductSnapshot.Record record = record();
+        switch (column) {
+            case COLUMN_ID:
+                return record.id;
+            case COLUMN_QUANTITY:
+                return record.quantity;
+            case COLUMN_PRICE:
+                return record.priceCents;
+            default:
+                return Long.parseLong(getString(column));
+        }
+    }
+
+    @Override
+    public int getInt(int column) { return (int) getLong(column); }
+
+    @Override
+    public short getShort(int column) { return (short) getLong(column); }
+
+    @Override
+    public float getFloat(int column) { return (float) getDouble(column); }
+
+    @Override
+    public double getDouble(int column) {
+        if (column != COLUMN_NAME) {
+            return getLong(column);
+        }
+
+        return Double.parseDouble(getString(column));
+    }
+
+    @Override
+    public boolean isNull(int column) { return false; }
+
+    @Override
+    public void close() {
+        super.close();
+        try {
+            mSnapshot.close();
+        } catch (IOException e) {
+            /* Read only mapping, nothing was lost. */
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.example.android.inventoryapp.snapshot;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Merges a previous snapshot with the products changed since, producing the records of the next one.
+ *
+ * The live ids decide which products are kept: a product missing from them has been deleted. Each
+ * kept product comes from the changed products if it is there, from the previous snapshot otherwise.
+ * Every input is in id order, so the merge is a single pass over each of them.
+ */
+public final class SnapshotMerger implements Iterator<ProductSnapshot.Record> {
+    private final ProductSnapshot mPrevious;
+    private final long[] mLiveIds;
+    private final Iterator<ProductSnapshot.Record> mChanged;
+
+    private int mLiveIndex;
+    private int mPreviousPosition;
+    private ProductSnapshot.Record mPreviousRecord;
+    private ProductSnapshot.Record mChangedRecord;
+    private ProductSnapshot.Record mNext;
+
+    private int mMissing;
+
+    /**
+     * Constructs a new {@link SnapshotMerger}.
+     *
+     * @param previous Previous snapshot, or null to build from the changed products only.
+     * @param liveIds  Ids of the products to keep, in increasing order.
+     * @param changed  Products changed since the previous snapshot, in id order.
+     */
+    public SnapshotMerger(ProductSnapshot previous, long[] liveIds, Iterator<ProductSnapshot.Record> changed) {
+        mPrevious = previous;
+        mLiveIds = liveIds;
+        mChanged = changed;
+        mChangedRecord = changed.hasNext() ? changed.next() : null;
+        advancePrevious();
+    }
+
+    /**
+     * Number of live products found neither in the changes nor in the previous snapshot, and skipped.
+     * It happens for products written after the changes were read, or with a corrupt previous record.
+     */
+    public int getMissingCount() { return mMissing; }
+
+    @Override
+    public boolean hasNext() {
+        while (mNext == null && mLiveIndex < mLiveIds.length) {
+            long id = mLiveIds[mLiveIndex++];
+
+            while (mChangedRecord != null && mChangedRecord.id < id) {
+                mChangedRecord = mChanged.hasNext() ? mChanged.next() : null;
+            }
+            while (mPreviousRecord != null && mPreviousRecord.id < id) {
+                advancePrevious();
+            }
+
+            if (mChangedRecord != null && mChangedRecord.id == id) {
+                mNext = mChangedRecord;
+            } else if (mPreviousRecord != null && mPreviousRecord.id == id) {
+                mNext = mPreviousRecord;
+            } else {
+                mMissing++;
+            }
+        }
+
+        return mNext != null;
+    }
+
+    @Override
+    public ProductSnapshot.Record next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        ProductSnapshot.Record next = mNext;
+        mNext = null;
+
+        return next;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Read the next valid record of the previous snapshot, a new object each time since it is
+     * handed out by {@link #next()}.
+     */
+    private void advancePrevious() {
+        mPreviousRecord = null;
+        while (mPrevious != null && mPreviousPosition < mPrevious.getCount()) {
+            ProductSnapshot.Record record = new ProductSnapshot.Record();
+            if (mPrevious.read(mPreviousPosition++, record)) {
+                mPreviousRecord = record;
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.android.inventoryapp.startup;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Time budget of the startup steps, checked against a {@link StartupReport}.
+ *
+ * A step is budgeted either by its duration ("name=millis") or by the time at which it must have
+ * ended since the origin ("name.end=millis"), the latter being the one that matters for events
+ * such as the first frame.
+ */
+public final class StartupBudget {
+    private static final String END_SUFFIX = ".end";
+
+    private final Map<String, Long> mDurations = new LinkedHashMap<>();
+    private final Map<String, Long> mEnds = new LinkedHashMap<>();
+
+    /**
+     * Limit the duration of the step.
+     */
+    public StartupBudget duration(String name, long millis) {
+        mDurations.put(name, millis);
+        return this;
+    }
+
+    /**
+     * Limit the time at which the step ends, since the origin.
+     */
+    public StartupBudget end(String name, long millis) {
+        mEnds.put(name, millis);
+        return this;
+    }
+
+    /**
+     * Read a budget from properties, see the class documentation for the keys.
+     */
+    public static StartupBudget fromProperties(Properties properties) {
+        StartupBudget budget = new StartupBudget();
+        for (String key : properties.stringPropertyNames()) {
+            long millis = Long.parseLong(properties.getProperty(key).trim());
+            if (key.endsWith(END_SUFFIX)) {
+                budget.end(key.substring(0, key.length() - END_SUFFIX.length()), millis);
+            } else {
+                budget.duration(key, millis);
+            }
+        }
+
+        return budget;
+    }
+
+    /**
+     * Check the report against the budget.
+     *
+     * @return A description of every step over budget or missing from the report, empty if none.
+     */
+    public List<String> check(StartupReport report) {
+        List<String> violations = new ArrayList<>();
+
+        for (Map.Entry<String, Long> budget : mDurations.entrySet()) {
+            StartupReport.Entry entry = report.get(budget.getKey());
+            if (entry == null) {
+                violations.add(budget.getKey() + " was not recorded");
+            } else if (entry.durationMillis > budget.getValue()) {
+                violations.add(budget.getKey() + " took " + entry.durationMillis + " ms, budget "
+                        + budget.getValue() + " ms");
+            }
+        }
+
+        for (Map.Entry<String, Long> budget : mEnds.entrySet()) {
+            StartupReport.Entry entry = report.get(budget.getKey());
+            if (entry == null) {
+                violations.add(budget.getKey() + " was not recorded");
+            } else if (entry.getEndMillis() > budget.getValue()) {
+                violations.add(budget.getKey() + " ended at " + entry.getEndMillis() + " ms, budget "
+                        + budget.getValue() + " ms");
+            }
+        }
+
+        return violations;
+    }
+}
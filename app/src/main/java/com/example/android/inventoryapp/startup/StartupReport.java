@@ -0,0 +1,109 @@
+package com.example.android.inventoryapp.startup;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Timings of the startup steps recorded by {@link StartupTracer}.
+ *
+ * The text form has one step per line: name, start and duration in milliseconds, separated by tabs.
+ * It is what the app writes on each cold start, and what {@link StartupBudget} is checked against.
+ */
+public final class StartupReport {
+    /**
+     * A recorded section, or an event with a zero duration.
+     */
+    public static final class Entry {
+        public final String name;
+        public final long startMillis;
+        public final long durationMillis;
+
+        public Entry(String name, long startMillis, long durationMillis) {
+            this.name = name;
+            this.startMillis = startMillis;
+            this.durationMillis = durationMillis;
+        }
+
+        /**
+         * Time of the end of the step since the origin.
+         */
+        public long getEndMillis() { return startMillis + durationMillis; }
+    }
+
+    private final List<Entry> mEntries;
+
+    /**
+     * Constructs a new {@link StartupReport}, entries ordered by start time.
+     */
+    public StartupReport(List<Entry> entries) {
+        List<Entry> sorted = new ArrayList<>(entries);
+        Collections.sort(sorted, new Comparator<Entry>() {
+            @Override
+            public int compare(Entry a, Entry b) {
+                return a.startMillis < b.startMillis ? -1 : (a.startMillis == b.startMillis ? 0 : 1);
+            }
+        });
+
+        mEntries = Collections.unmodifiableList(sorted);
+    }
+
+    public List<Entry> getEntries() { return mEntries; }
+
+    /**
+     * Return the entry with the given name, or null if it was not recorded.
+     */
+    public Entry get(String name) {
+        for (Entry entry : mEntries) {
+            if (entry.name.equals(name)) {
+                return entry;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Read a report written by {@link #toString()}.
+     */
+    public static StartupReport parse(Reader in) throws IOException {
+        BufferedReader reader = new BufferedReader(in);
+        List<Entry> entries = new ArrayList<>();
+
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.trim().isEmpty()) {
+                continue;
+            }
+
+            String[] fields = line.split("\t");
+            if (fields.length != 3) {
+                throw new IOException("Malformed startup report line: " + line);
+            }
+
+            try {
+                entries.add(new Entry(fields[0], Long.parseLong(fields[1]), Long.parseLong(fields[2])));
+            } catch (NumberFormatException e) {
+                throw new IOException("Malformed startup report line: " + line, e);
+            }
+        }
+
+        return new StartupReport(entries);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        for (Entry entry : mEntries) {
+            builder.append(entry.name).append('\t')
+                    .append(entry.startMillis).append('\t')
+                    .append(entry.durationMillis).append('\n');
+        }
+
+        return builder.toString();
+    }
+}
@@ -0,0 +1,152 @@
+package com.example.android.inventoryapp.startup;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Records the first occurrence of the steps of the app startup into a {@link StartupReport}.
+ *
+ * Only the first run of a section is recorded, so sections can be left around code that runs on
+ * every call (the first query, the first bound row) at the cost of a set lookup afterwards.
+ * Times are relative to the origin, the creation of the process as close as the app can tell.
+ */
+public final class StartupTracer {
+    /**
+     * Names of the startup sections and events.
+     */
+    public static final String APPLICATION_ON_CREATE = "application.onCreate";
+    public static final String PROVIDER_ON_CREATE = "provider.onCreate";
+    public static final String DATABASE_OPEN = "database.open";
+    public static final String FIRST_QUERY = "query.first";
+    public static final String FIRST_BIND_VIEW = "bindView.first";
+    public static final String FIRST_FRAME = "frame.first";
+    public static final String FIRST_CONTENT_FRAME = "frame.content";
+
+    /**
+     * Source of monotonic time, in nanoseconds.
+     */
+    public interface Clock {
+        long nanoTime();
+    }
+
+    /**
+     * Receives the recorded sections as they begin and end, on the thread running them.
+     * Used to mirror them as platform trace sections.
+     */
+    public interface Listener {
+        void onBegin(String name);
+
+        void onEnd(String name);
+    }
+
+    /**
+     * A running section, ended with {@link #end()}.
+     */
+    public final class Section {
+        private final String mName;
+        private final long mStart;
+
+        private Section(String name, long start) {
+            mName = name;
+            mStart = start;
+        }
+
+        /**
+         * End the section, recording its duration. Ending it again has no effect.
+         */
+        public void end() {
+            if (this == mNoSection) {
+                return;
+            }
+
+            long end = mClock.nanoTime();
+            Listener listener = mListener;
+            if (listener != null) {
+                listener.onEnd(mName);
+            }
+
+            synchronized (StartupTracer.this) {
+                if (mEnded.add(mName)) {
+                    mEntries.add(new StartupReport.Entry(mName, toMillis(mStart - mOrigin), toMillis(end - mStart)));
+                }
+            }
+        }
+    }
+
+    private static final StartupTracer sInstance = new StartupTracer(new Clock() {
+        @Override
+        public long nanoTime() {
+            return System.nanoTime();
+        }
+    });
+
+    private final Section mNoSection = new Section("", 0);
+
+    private final Clock mClock;
+    private final long mOrigin;
+    private final Set<String> mStarted = new HashSet<>();
+    private final Set<String> mEnded = new HashSet<>();
+    private final List<StartupReport.Entry> mEntries = new ArrayList<>();
+
+    private volatile Listener mListener;
+
+    /**
+     * Constructs a new {@link StartupTracer} whose origin is now.
+     */
+    public StartupTracer(Clock clock) {
+        mClock = clock;
+        mOrigin = clock.nanoTime();
+    }
+
+    /**
+     * The tracer of the app process, its origin is the first use of this class.
+     */
+    public static StartupTracer get() { return sInstance; }
+
+    public void setListener(Listener listener) { mListener = listener; }
+
+    /**
+     * Begin the section, unless it has already run.
+     */
+    public Section begin(String name) {
+        synchronized (this) {
+            if (!mStarted.add(name)) {
+                return mNoSection;
+            }
+        }
+
+        Listener listener = mListener;
+        if (listener != null) {
+            listener.onBegin(name);
+        }
+
+        return new Section(name, mClock.nanoTime());
+    }
+
+    /**
+     * Record an instantaneous event, unless it has already happened.
+     */
+    public void mark(String name) {
+        long now = mClock.nanoTime();
+
+        synchronized (this) {
+            if (mStarted.add(name) && mEnded.add(name)) {
+                mEntries.add(new StartupReport.Entry(name, toMillis(now - mOrigin), 0));
+            }
+        }
+    }
+
+    /**
+     * Return true if the event or section has been recorded.
+     */
+    public synchronized boolean hasRecorded(String name) { return mEnded.contains(name); }
+
+    /**
+     * Return the report of the sections and events recorded so far.
+     */
+    public synchronized StartupReport report() { return new StartupReport(mEntries); }
+
+    private static long toMillis(long nanos) { return nanos / 1000000; }
+}
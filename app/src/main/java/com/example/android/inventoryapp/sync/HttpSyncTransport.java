@@ -0,0 +1,114 @@
+package com.example.android.inventoryapp.sync;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+/**
+ * {@link SyncTransport} posting {@link SyncCodec} payloads to {@code <server>/sync}.
+ */
+public class HttpSyncTransport implements SyncTransport {
+    private static final String CONTENT_TYPE = "application/x-inventory-sync";
+
+    private static final int TIMEOUT_MILLIS = 30000;
+
+    private final String mServerUrl;
+
+    private long mBytesSent;
+    private long mBytesReceived;
+
+    /**
+     * Constructs a new {@link HttpSyncTransport}.
+     *
+     * @param serverUrl Base URL of the sync server, for instance "https://example.com/inventory".
+     */
+    public HttpSyncTransport(String serverUrl) {
+        mServerUrl = serverUrl.endsWith("/") ? serverUrl.substring(0, serverUrl.length() - 1) : serverUrl;
+    }
+
+    @Override
+    public SyncBatch exchange(SyncBatch push, long serverToken, int limit) throws IOException {
+        URL url = new URL(mServerUrl + "/sync?since=" + serverToken + "&limit=" + limit);
+        byte[] body = SyncCodec.toByteArray(push);
+
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        try {
+            connection.setRequestMethod("POST");
+            connection.setConnectTimeout(TIMEOUT_MILLIS);
+            connection.setReadTimeout(TIMEOUT_MILLIS);
+            connection.setDoOutput(true);
+            connection.setFixedLengthStreamingMode(body.length);
+            connection.setRequestProperty("Content-Type", CONTENT_TYPE);
+
+            OutputStream out = connection.getOutputStream();
+            try {
+                out.write(body);
+            } finally {
+                out.close();
+            }
+            mBytesSent += body.length;
+
+            int status = connection.getResponseCode();
+            if (status != HttpURLConnection.HTTP_OK) {
+                throw new IOException("Sync server answered " + status);
+            }
+
+            InputStream in = connection.getInputStream();
+            try {
+                CountingInputStream counting = new CountingInputStream(in);
+                SyncBatch pulled = SyncCodec.decode(counting);
+                mBytesReceived += counting.getCount();
+
+                return pulled;
+            } finally {
+                in.close();
+            }
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    /**
+     * Total size of the request bodies sent.
+     */
+    public long getBytesSent() { return mBytesSent; }
+
+    /**
+     * Total size of the response bodies received.
+     */
+    public long getBytesReceived() { return mBytesReceived; }
+
+    /**
+     * Stream counting the bytes read through it.
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+        private long mCount;
+
+        CountingInputStream(InputStream in) { super(in); }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                mCount++;
+            }
+
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                mCount += read;
+            }
+
+            return read;
+        }
+
+        long getCount() { return mCount; }
+    }
+}
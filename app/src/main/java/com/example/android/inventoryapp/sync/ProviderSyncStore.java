@@ -0,0 +1,82 @@
+package com.example.android.inventoryapp.sync;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.os.Bundle;
+
+import com.example.android.inventoryapp.data.ProductContract;
+import com.example.android.inventoryapp.data.ProductContract.SyncStateEntry;
+
+import java.io.IOException;
+
+/**
+ * {@link SyncStore} backed by {@link com.example.android.inventoryapp.data.ProductProvider}.
+ * Each operation is a single provider call running in one database transaction.
+ */
+public class ProviderSyncStore implements SyncStore {
+    private final ContentResolver mResolver;
+
+    /**
+     * Constructs a new {@link ProviderSyncStore}.
+     *
+     * @param context of the app.
+     */
+    public ProviderSyncStore(Context context) {
+        mResolver = context.getApplicationContext().getContentResolver();
+    }
+
+    @Override
+    public String getClientId() {
+        return getState().getString(SyncStateEntry.KEY_CLIENT_ID);
+    }
+
+    @Override
+    public long getServerToken() {
+        return getState().getLong(SyncStateEntry.KEY_SERVER_TOKEN);
+    }
+
+    @Override
+    public SyncBatch getPendingPush() {
+        byte[] pending = getState().getByteArray(SyncStateEntry.KEY_PENDING_PUSH);
+        return pending == null ? null : decode(pending);
+    }
+
+    @Override
+    public SyncBatch collectChanges(int limit) {
+        Bundle result = call(ProductContract.METHOD_COLLECT_CHANGES, String.valueOf(limit), null);
+        return decode(result.getByteArray(ProductContract.EXTRA_BATCH));
+    }
+
+    @Override
+    public void acknowledgePush(SyncBatch pushed) {
+        call(ProductContract.METHOD_ACKNOWLEDGE_PUSH, null, encode(pushed));
+    }
+
+    @Override
+    public void applyRemote(SyncBatch pulled) {
+        call(ProductContract.METHOD_APPLY_REMOTE, null, encode(pulled));
+    }
+
+    private Bundle getState() {
+        return call(ProductContract.METHOD_GET_SYNC_STATE, null, null);
+    }
+
+    private Bundle call(String method, String arg, Bundle extras) {
+        return mResolver.call(ProductContract.BASE_CONTENT_URI, method, arg, extras);
+    }
+
+    private static Bundle encode(SyncBatch batch) {
+        Bundle extras = new Bundle();
+        extras.putByteArray(ProductContract.EXTRA_BATCH, SyncCodec.toByteArray(batch));
+
+        return extras;
+    }
+
+    private static SyncBatch decode(byte[] encoded) {
+        try {
+            return SyncCodec.fromByteArray(encoded);
+        } catch (IOException e) {
+            throw new IllegalStateException("Invalid sync batch.", e);
+        }
+    }
+}
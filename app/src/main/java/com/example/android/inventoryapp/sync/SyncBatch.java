@@ -0,0 +1,43 @@
+package com.example.android.inventoryapp.sync;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A batch of {@link SyncChange} exchanged in a single request or response.
+ *
+ * The token identifies the position of the batch in the change log of its sender: the highest local
+ * change version of a pushed batch, or the server change token of a pulled batch.
+ */
+public final class SyncBatch {
+    private final String mClientId;
+    private final long mToken;
+    private final boolean mHasMore;
+    private final List<SyncChange> mChanges;
+
+    /**
+     * Constructs a new {@link SyncBatch}.
+     *
+     * @param clientId Identifier of the store sending the batch, empty for the server.
+     * @param token    Change token of the last change of the batch.
+     * @param hasMore  True if the sender has more changes after this batch.
+     * @param changes  Changes of the batch.
+     */
+    public SyncBatch(String clientId, long token, boolean hasMore, List<SyncChange> changes) {
+        mClientId = clientId == null ? "" : clientId;
+        mToken = token;
+        mHasMore = hasMore;
+        mChanges = Collections.unmodifiableList(new ArrayList<>(changes));
+    }
+
+    public String getClientId() { return mClientId; }
+
+    public long getToken() { return mToken; }
+
+    public boolean hasMore() { return mHasMore; }
+
+    public List<SyncChange> getChanges() { return mChanges; }
+
+    public boolean isEmpty() { return mChanges.isEmpty(); }
+}
@@ -0,0 +1,78 @@
+package com.example.android.inventoryapp.sync;
+
+/**
+ * A change of a single product exchanged with the sync server.
+ *
+ * Only the fields flagged in {@link #getFields()} are meaningful. In a pushed change the quantity is
+ * the delta applied locally since the last push, in a pulled change it is the server quantity.
+ */
+public final class SyncChange {
+    /**
+     * Field flags, also used as dirty flags of the products table.
+     */
+    public static final int FIELD_NAME = 1;
+    public static final int FIELD_PRICE = 1 << 1;
+    public static final int FIELD_QUANTITY = 1 << 2;
+    public static final int FIELD_PICTURE = 1 << 3;
+    public static final int FIELD_ALL = FIELD_NAME | FIELD_PRICE | FIELD_QUANTITY | FIELD_PICTURE;
+
+    private final String mGlobalId;
+    private final boolean mDeleted;
+    private final int mFields;
+    private final String mName;
+    private final long mPrice;
+    private final int mQuantity;
+    private final byte[] mPicture;
+
+    /**
+     * Constructs a new {@link SyncChange}.
+     *
+     * @param globalId Identifier of the product shared by every store.
+     * @param fields   Flags of the fields carried by this change.
+     * @param name     Name of the product, if {@link #FIELD_NAME} is set.
+     * @param price    Price of the product in cents, if {@link #FIELD_PRICE} is set.
+     * @param quantity Quantity delta (push) or quantity (pull), if {@link #FIELD_QUANTITY} is set.
+     * @param picture  Picture of the product, if {@link #FIELD_PICTURE} is set.
+     */
+    public SyncChange(String globalId, int fields, String name, long price, int quantity, byte[] picture) {
+        this(globalId, false, fields, name, price, quantity, picture);
+    }
+
+    private SyncChange(String globalId, boolean deleted, int fields, String name, long price, int quantity,
+                       byte[] picture) {
+        if (globalId == null) {
+            throw new IllegalArgumentException("Change requires a global id.");
+        }
+
+        mGlobalId = globalId;
+        mDeleted = deleted;
+        mFields = fields;
+        mName = name;
+        mPrice = price;
+        mQuantity = quantity;
+        mPicture = picture;
+    }
+
+    /**
+     * Create the change recording the deletion of a product.
+     */
+    public static SyncChange deletion(String globalId) {
+        return new SyncChange(globalId, true, 0, null, 0, 0, null);
+    }
+
+    public String getGlobalId() { return mGlobalId; }
+
+    public boolean isDeleted() { return mDeleted; }
+
+    public int getFields() { return mFields; }
+
+    public boolean has(int field) { return (mFields & field) != 0; }
+
+    public String getName() { return mName; }
+
+    public long getPrice() { return mPrice; }
+
+    public int getQuantity() { return mQuantity; }
+
+    public byte[] getPicture() { return mPicture; }
+}
@@ -0,0 +1,151 @@
+package com.example.android.inventoryapp.sync;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compact gzipped binary encoding of a {@link SyncBatch}.
+ * Only the fields flagged in each change are written, so a payload is proportional to the changes.
+ */
+public final class SyncCodec {
+    /**
+     * Magic number starting every payload ("INVS").
+     */
+    private static final int MAGIC = 0x494E5653;
+
+    /**
+     * Version 2: prices in cents. Payloads of version 1, with prices in currency units, are
+     * converted when they are read.
+     */
+    private static final int FORMAT_VERSION = 2;
+
+    /**
+     * Version of the payloads with prices in currency units.
+     */
+    private static final int FORMAT_VERSION_UNITS = 1;
+
+    private static final int FLAG_DELETED = 1;
+
+    private SyncCodec() {}
+
+    /**
+     * Write the batch to the stream. The stream is finished but not closed.
+     */
+    public static void encode(SyncBatch batch, OutputStream out) throws IOException {
+        GZIPOutputStream gzip = new GZIPOutputStream(out);
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(gzip));
+
+        data.writeInt(MAGIC);
+        data.writeByte(FORMAT_VERSION);
+        data.writeUTF(batch.getClientId());
+        data.writeLong(batch.getToken());
+        data.writeBoolean(batch.hasMore());
+        data.writeInt(batch.getChanges().size());
+
+        for (SyncChange change : batch.getChanges()) {
+            data.writeUTF(change.getGlobalId());
+            data.writeByte(change.isDeleted() ? FLAG_DELETED : 0);
+            if (change.isDeleted()) {
+                continue;
+            }
+
+            data.writeByte(change.getFields());
+            if (change.has(SyncChange.FIELD_NAME)) {
+                data.writeUTF(change.getName());
+            }
+            if (change.has(SyncChange.FIELD_PRICE)) {
+                data.writeLong(change.getPrice());
+            }
+            if (change.has(SyncChange.FIELD_QUANTITY)) {
+                data.writeInt(change.getQuantity());
+            }
+            if (change.has(SyncChange.FIELD_PICTURE)) {
+                data.writeInt(change.getPicture().length);
+                data.write(change.getPicture());
+            }
+        }
+
+        data.flush();
+        gzip.finish();
+    }
+
+    /**
+     * Read a batch written by {@link #encode(SyncBatch, OutputStream)}.
+     */
+    public static SyncBatch decode(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(new BufferedInputStream(new GZIPInputStream(in)));
+
+        if (data.readInt() != MAGIC) {
+            throw new IOException("Not a sync payload.");
+        }
+
+        int version = data.readUnsignedByte();
+        if (version != FORMAT_VERSION && version != FORMAT_VERSION_UNITS) {
+            throw new IOException("Unsupported sync payload version " + version);
+        }
+
+        String clientId = data.readUTF();
+        long token = data.readLong();
+        boolean hasMore = data.readBoolean();
+        int count = data.readInt();
+
+        List<SyncChange> changes = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String globalId = data.readUTF();
+            if ((data.readUnsignedByte() & FLAG_DELETED) != 0) {
+                changes.add(SyncChange.deletion(globalId));
+                continue;
+            }
+
+            int fields = data.readUnsignedByte();
+            String name = (fields & SyncChange.FIELD_NAME) != 0 ? data.readUTF() : null;
+            long price = (fields & SyncChange.FIELD_PRICE) != 0 ? data.readLong() : 0;
+            if (version == FORMAT_VERSION_UNITS) {
+                price *= 100;
+            }
+            int quantity = (fields & SyncChange.FIELD_QUANTITY) != 0 ? data.readInt() : 0;
+            byte[] picture = null;
+            if ((fields & SyncChange.FIELD_PICTURE) != 0) {
+                picture = new byte[data.readInt()];
+                data.readFully(picture);
+            }
+
+            changes.add(new SyncChange(globalId, fields, name, price, quantity, picture));
+        }
+
+        return new SyncBatch(clientId, token, hasMore, changes);
+    }
+
+    /**
+     * Encode the batch into a byte array.
+     */
+    public static byte[] toByteArray(SyncBatch batch) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            encode(batch, out);
+        } catch (IOException e) {
+            /* Writing to memory never fails. */
+            throw new IllegalStateException(e);
+        }
+
+        return out.toByteArray();
+    }
+
+    /**
+     * Decode a batch from a byte array.
+     */
+    public static SyncBatch fromByteArray(byte[] bytes) throws IOException {
+        return decode(new ByteArrayInputStream(bytes));
+    }
+}
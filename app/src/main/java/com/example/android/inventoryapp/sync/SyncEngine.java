@@ -0,0 +1,82 @@
+package com.example.android.inventoryapp.sync;
+
+import java.io.IOException;
+
+/**
+ * Pushes local changes and pulls remote changes in batches until both sides are up to date.
+ *
+ * Quantities are exchanged as deltas and merged on both sides, so concurrent sales made in
+ * two stores add up instead of the last writer overwriting the other one.
+ */
+public class SyncEngine {
+    /**
+     * Default number of changes per batch.
+     */
+    public static final int DEFAULT_BATCH_SIZE = 50;
+
+    /**
+     * Summary of a sync.
+     */
+    public static final class Result {
+        public int batches;
+        public int changesPushed;
+        public int changesPulled;
+
+        @Override
+        public String toString() {
+            return changesPushed + " changes pushed, " + changesPulled + " pulled in " + batches + " batches";
+        }
+    }
+
+    private final SyncStore mStore;
+    private final SyncTransport mTransport;
+    private final int mBatchSize;
+
+    /**
+     * Constructs a new {@link SyncEngine}.
+     *
+     * @param store     Local store to synchronize.
+     * @param transport Transport to the sync server.
+     * @param batchSize Maximum number of changes per pushed or pulled batch.
+     */
+    public SyncEngine(SyncStore store, SyncTransport transport, int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Batch size must be positive.");
+        }
+
+        mStore = store;
+        mTransport = transport;
+        mBatchSize = batchSize;
+    }
+
+    /**
+     * Run a full sync. Must be called from a background thread.
+     * An interrupted sync is safe to run again: a pushed batch stays pending until acknowledged
+     * and is pushed again unchanged, the server ignoring the tokens it has already applied.
+     */
+    public Result sync() throws IOException {
+        Result result = new Result();
+
+        boolean more;
+        do {
+            SyncBatch push = mStore.getPendingPush();
+            if (push == null) {
+                push = mStore.collectChanges(mBatchSize);
+            }
+
+            SyncBatch pull = mTransport.exchange(push, mStore.getServerToken(), mBatchSize);
+
+            /* The pushed deltas must be acknowledged before merging server quantities that include them. */
+            mStore.acknowledgePush(push);
+            mStore.applyRemote(pull);
+
+            result.batches++;
+            result.changesPushed += push.getChanges().size();
+            result.changesPulled += pull.getChanges().size();
+
+            more = push.hasMore() || pull.hasMore();
+        } while (more);
+
+        return result;
+    }
+}
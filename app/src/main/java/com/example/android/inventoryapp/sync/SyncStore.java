@@ -0,0 +1,39 @@
+package com.example.android.inventoryapp.sync;
+
+/**
+ * Local side of the synchronization: the change log of this store and the merge of remote changes.
+ */
+public interface SyncStore {
+    /**
+     * Identifier of this store, stable across runs.
+     */
+    String getClientId();
+
+    /**
+     * Server change token of the last pulled batch, 0 before the first sync.
+     */
+    long getServerToken();
+
+    /**
+     * Return the batch pushed by an earlier sync whose acknowledgement was never recorded, or null.
+     * It must be pushed again as is, so the server can recognize it by its token.
+     */
+    SyncBatch getPendingPush();
+
+    /**
+     * Collect at most limit local changes made since the last acknowledged push,
+     * and record the returned batch as pending.
+     */
+    SyncBatch collectChanges(int limit);
+
+    /**
+     * Record that the server has applied the pushed batch.
+     */
+    void acknowledgePush(SyncBatch pushed);
+
+    /**
+     * Merge the changes pulled from the server and remember the server token of the batch.
+     * Quantities are merged with the local changes not yet acknowledged by the server.
+     */
+    void applyRemote(SyncBatch pulled);
+}
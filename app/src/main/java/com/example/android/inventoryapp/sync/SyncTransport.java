@@ -0,0 +1,15 @@
+package com.example.android.inventoryapp.sync;
+
+import java.io.IOException;
+
+/**
+ * Exchange of batches with the sync server.
+ */
+public interface SyncTransport {
+    /**
+     * Push the local batch and pull at most limit server changes made after the given server token.
+     *
+     * @return The pulled batch.
+     */
+    SyncBatch exchange(SyncBatch push, long serverToken, int limit) throws IOException;
+}
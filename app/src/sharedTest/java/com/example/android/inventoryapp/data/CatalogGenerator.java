@@ -0,0 +1,142 @@
+package com.example.android.inventoryapp.data;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+
+import com.example.android.inventoryapp.data.ProductContract.ProductEntry;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Builds a synthetic catalog through the bulk insert of {@link ProductProvider}: names, SKUs,
+ * quantities, prices, reorder levels and pictures with the sizes of real ones. The catalog only
+ * depends on the seed, two runs with the same seed write the same products.
+ *
+ * Pictures are random bytes, as incompressible as the encoded pictures they stand for.
+ */
+final class CatalogGenerator {
+    /**
+     * Sizes of the pictures: log-normal around a median, clamped.
+     */
+    static final class PictureSizes {
+        /**
+         * Pictures encoded with PictureEncoding#DEFAULT: WebP, longest side at most 1024 pixels.
+         */
+        static final PictureSizes DEFAULT = new PictureSizes(80 * 1024, 0.6, 4 * 1024, 512 * 1024);
+
+        /**
+         * Tiny pictures, for the tests that only need rows.
+         */
+        static final PictureSizes TINY = new PictureSizes(64, 0, 64, 64);
+
+        final int mMedianBytes;
+        final double mSigma;
+        final int mMinBytes;
+        final int mMaxBytes;
+
+        /**
+         * @param medianBytes Median size.
+         * @param sigma       Standard deviation of the log of the size, 0 for a constant size.
+         * @param minBytes    Smallest size.
+         * @param maxBytes    Largest size.
+         */
+        PictureSizes(int medianBytes, double sigma, int minBytes, int maxBytes) {
+            if (minBytes <= 0 || minBytes > medianBytes || medianBytes > maxBytes || sigma < 0) {
+                throw new IllegalArgumentException("Invalid picture sizes");
+            }
+
+            mMedianBytes = medianBytes;
+            mSigma = sigma;
+            mMinBytes = minBytes;
+            mMaxBytes = maxBytes;
+        }
+
+        int next(Random random) {
+            double size = mMedianBytes * Math.exp(mSigma * random.nextGaussian());
+            return (int) Math.max(mMinBytes, Math.min(mMaxBytes, size));
+        }
+    }
+
+    /**
+     * Maximum size of the values of a bulk insert, so that large pictures do not pile up in memory.
+     */
+    private static final int MAX_CHUNK_BYTES = 4 * 1024 * 1024;
+
+    private static final int MAX_CHUNK_ROWS = 500;
+
+    private static final String[] ADJECTIVES = {
+            "Organic", "Classic", "Large", "Small", "Premium", "Spicy", "Sweet", "Light", "Dark", "Fresh"
+    };
+    private static final String[] NOUNS = {
+            "Coffee", "Tea", "Chocolate", "Honey", "Pasta", "Rice", "Olive oil", "Biscuits", "Jam", "Cereal",
+            "Mustard", "Vinegar", "Flour", "Sugar", "Salt", "Pepper", "Soap", "Candles", "Notebook", "Pencils"
+    };
+
+    private final long mSeed;
+    private final PictureSizes mPictureSizes;
+
+    CatalogGenerator(long seed, PictureSizes pictureSizes) {
+        mSeed = seed;
+        mPictureSizes = pictureSizes;
+    }
+
+    /**
+     * Return the SKU of the product of the given index, 0 for the first generated.
+     */
+    static String sku(int index) {
+        return String.format("%013d", 2000000000000L + index);
+    }
+
+    /**
+     * Return the product of the given index. Each product has its own random sequence, so a
+     * product does not depend on the others, nor on the chunks they were written in.
+     */
+    Product product(int index) {
+        Random random = new Random(mSeed * 31 + index);
+
+        Product product = new Product();
+        product.name = ADJECTIVES[random.nextInt(ADJECTIVES.length)] + " "
+                + NOUNS[random.nextInt(NOUNS.length)] + " " + index;
+        product.sku = sku(index);
+        /* Most products are well stocked, some are low or out of stock. */
+        product.quantity = random.nextInt(10) == 0 ? random.nextInt(5) : 5 + random.nextInt(200);
+        product.priceCents = 50 + random.nextInt(20000);
+        product.reorderLevel = random.nextInt(4) == 0 ? 0 : 1 + random.nextInt(10);
+        product.picture = new byte[mPictureSizes.next(random)];
+        random.nextBytes(product.picture);
+
+        return product;
+    }
+
+    /**
+     * Insert the products of indexes from (inclusive) to to (exclusive), in bulk inserts bounded in
+     * rows and bytes.
+     *
+     * @return The total size of the pictures written, in bytes.
+     */
+    long generate(ContentResolver resolver, int from, int to) {
+        long pictureBytes = 0;
+        List<ContentValues> chunk = new ArrayList<>();
+        int chunkBytes = 0;
+
+        for (int i = from; i < to; i++) {
+            Product product = product(i);
+            chunk.add(product.toContentValues());
+            chunkBytes += product.picture.length;
+            pictureBytes += product.picture.length;
+
+            if (chunk.size() == MAX_CHUNK_ROWS || chunkBytes >= MAX_CHUNK_BYTES || i == to - 1) {
+                int inserted = resolver.bulkInsert(ProductEntry.CONTENT_URI, chunk.toArray(new ContentValues[chunk.size()]));
+                if (inserted != chunk.size()) {
+                    throw new IllegalStateException("Inserted " + inserted + " of " + chunk.size() + " products");
+                }
+                chunk.clear();
+                chunkBytes = 0;
+            }
+        }
+
+        return pictureBytes;
+    }
+}
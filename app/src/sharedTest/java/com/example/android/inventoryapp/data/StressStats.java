@@ -0,0 +1,106 @@
+package com.example.android.inventoryapp.data;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Latencies of the operations of a stress or soak run, per operation. Each worker thread records into
+ * its own instance, so recording takes no lock, and the instances are merged once the run is over.
+ */
+final class StressStats {
+    /**
+     * Latencies of one operation, in nanoseconds.
+     */
+    static final class Operation {
+        private long[] mNanos = new long[1024];
+        private int mCount;
+        private int mFailures;
+
+        void record(long nanos, boolean succeeded) {
+            if (mCount == mNanos.length) {
+                mNanos = Arrays.copyOf(mNanos, mCount * 2);
+            }
+            mNanos[mCount++] = nanos;
+            if (!succeeded) {
+                mFailures++;
+            }
+        }
+
+        int getCount() { return mCount; }
+
+        int getFailures() { return mFailures; }
+
+        /**
+         * Return the latency under which the given fraction of the calls completed, in nanoseconds.
+         */
+        long percentile(double fraction) {
+            if (mCount == 0) {
+                return 0;
+            }
+
+            Arrays.sort(mNanos, 0, mCount);
+            int index = (int) Math.ceil(fraction * mCount) - 1;
+            return mNanos[Math.max(0, Math.min(mCount - 1, index))];
+        }
+
+        private void merge(Operation other) {
+            if (mCount + other.mCount > mNanos.length) {
+                mNanos = Arrays.copyOf(mNanos, mCount + other.mCount);
+            }
+            System.arraycopy(other.mNanos, 0, mNanos, mCount, other.mCount);
+            mCount += other.mCount;
+            mFailures += other.mFailures;
+        }
+    }
+
+    private final Map<String, Operation> mOperations = new TreeMap<>();
+
+    /**
+     * Record a call of the operation, started at the given {@link System#nanoTime()}.
+     *
+     * @param succeeded False if the call had no effect, such as a sale refused for lack of stock.
+     */
+    void record(String operation, long startNanos, boolean succeeded) {
+        get(operation).record(System.nanoTime() - startNanos, succeeded);
+    }
+
+    Operation get(String operation) {
+        Operation stats = mOperations.get(operation);
+        if (stats == null) {
+            stats = new Operation();
+            mOperations.put(operation, stats);
+        }
+
+        return stats;
+    }
+
+    void merge(StressStats other) {
+        for (Map.Entry<String, Operation> entry : other.mOperations.entrySet()) {
+            get(entry.getKey()).merge(entry.getValue());
+        }
+    }
+
+    /**
+     * Write one line per operation: calls, refused calls, throughput and latency percentiles in
+     * microseconds, as comma separated values with a header line.
+     */
+    void write(Writer out, long durationMillis) throws IOException {
+        out.write("operation,calls,refused,per_second,p50_us,p90_us,p99_us,max_us\n");
+        for (Map.Entry<String, Operation> entry : mOperations.entrySet()) {
+            Operation stats = entry.getValue();
+            out.write(String.format("%s,%d,%d,%.1f,%d,%d,%d,%d\n",
+                    entry.getKey(),
+                    stats.getCount(),
+                    stats.getFailures(),
+                    stats.getCount() * 1000.0 / Math.max(1, durationMillis),
+                    stats.percentile(0.50) / 1000,
+                    stats.percentile(0.90) / 1000,
+                    stats.percentile(0.99) / 1000,
+                    stats.percentile(1.0) / 1000));
+        }
+        out.flush();
+    }
+}
@@ -0,0 +1,56 @@
+package com.example.android.inventoryapp.data;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Samples ranks 0 to n - 1 following a Zipf distribution: rank k is drawn with a probability
+ * proportional to 1 / (k + 1)^s, so that a few products get most of the traffic, as in a shop.
+ *
+ * The cumulative distribution is computed once, a sample is a binary search in it. Samples are
+ * deterministic for a given random generator.
+ */
+final class ZipfSampler {
+    private final double[] mCumulative;
+
+    /**
+     * @param n        Number of ranks.
+     * @param exponent Skew of the distribution, 0 for uniform, around 1 for shop traffic.
+     */
+    ZipfSampler(int n, double exponent) {
+        if (n <= 0 || exponent < 0) {
+            throw new IllegalArgumentException("Invalid Zipf distribution of " + n + " ranks, exponent " + exponent);
+        }
+
+        mCumulative = new double[n];
+        double sum = 0;
+        for (int k = 0; k < n; k++) {
+            sum += 1 / Math.pow(k + 1, exponent);
+            mCumulative[k] = sum;
+        }
+        for (int k = 0; k < n; k++) {
+            mCumulative[k] /= sum;
+        }
+    }
+
+    int size() {
+        return mCumulative.length;
+    }
+
+    /**
+     * Return the probability of the rank.
+     */
+    double probability(int rank) {
+        return mCumulative[rank] - (rank == 0 ? 0 : mCumulative[rank - 1]);
+    }
+
+    /**
+     * Draw a rank.
+     */
+    int next(Random random) {
+        int index = Arrays.binarySearch(mCumulative, random.nextDouble());
+        /* Not found: the insertion point is the first rank whose cumulative probability is above. */
+        int rank = index >= 0 ? index : -index - 1;
+        return Math.min(rank, mCumulative.length - 1);
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.android.inventoryapp;
+
+import android.app.Application;
+import android.graphics.Bitmap;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests of the picture encoding policy: its preferences, the pictures it leaves alone and the
+ * sample sizes of the decoding.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 25, application = Application.class)
+public class PictureEncodingTest {
+    @Test
+    public void policyIsReadBackFromThePreferences() {
+        Application context = RuntimeEnvironment.application;
+        PictureEncoding policy = PictureEncoding.fromPreferences(context);
+        assertEquals(PictureEncoding.DEFAULT.getFormat(), policy.getFormat());
+        assertEquals(PictureEncoding.DEFAULT.getQuality(), policy.getQuality());
+        assertEquals(PictureEncoding.DEFAULT.getMaxDimension(), policy.getMaxDimension());
+
+        new PictureEncoding(Bitmap.CompressFormat.JPEG, 60, 512).saveToPreferences(context);
+        policy = PictureEncoding.fromPreferences(context);
+        assertEquals(Bitmap.CompressFormat.JPEG, policy.getFormat());
+        assertEquals(60, policy.getQuality());
+        assertEquals(512, policy.getMaxDimension());
+        assertEquals("image/jpeg", policy.getMimeType());
+    }
+
+    @Test
+    public void invalidPoliciesAreRefused() {
+        for (int[] qualityAndDimension : new int[][] { { -1, 1024 }, { 101, 1024 }, { 80, 0 } }) {
+            try {
+                new PictureEncoding(Bitmap.CompressFormat.WEBP, qualityAndDimension[0], qualityAndDimension[1]);
+                fail("Policy of quality " + qualityAndDimension[0] + " and dimension " + qualityAndDimension[1]
+                        + " accepted");
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+    }
+
+    @Test
+    public void onlyPicturesInTheFormatAndWithinTheDimensionAreSkipped() {
+        PictureEncoding policy = PictureEncoding.DEFAULT;
+        assertTrue(policy.isEncoded("image/webp", 1024, 768));
+        assertTrue(policy.isEncoded("image/webp", 10, 10));
+
+        /* Too large, another format, or not decoded at all: encoded again. */
+        assertFalse(policy.isEncoded("image/webp", 768, 1025));
+        assertFalse(policy.isEncoded("image/jpeg", 1024, 768));
+        assertFalse(policy.isEncoded(null, 1024, 768));
+    }
+
+    @Test
+    public void sampleSizeKeepsTheMaximumDimension() {
+        PictureEncoding policy = PictureEncoding.DEFAULT;
+        assertEquals(1, policy.sampleSizeFor(1024, 768));
+        assertEquals(1, policy.sampleSizeFor(2047, 100));
+        assertEquals(2, policy.sampleSizeFor(100, 2048));
+        assertEquals(4, policy.sampleSizeFor(4096, 3072));
+        assertEquals(4, policy.sampleSizeFor(8191, 10));
+    }
+}
@@ -0,0 +1,164 @@
+package com.example.android.inventoryapp;
+
+import android.app.Application;
+import android.content.ContentProvider;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+
+import com.example.android.inventoryapp.data.ProductContract.ProductEntry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of the picture prefetch: the latest tap superseding the previous ones, and the hand over
+ * of the prefetched picture.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 25, application = Application.class)
+public class PicturePrefetcherTest {
+    private static final String AUTHORITY = "com.example.android.inventoryapp.pictures";
+    private static final int HEIGHT = 100;
+
+    private Application mContext;
+
+    @Before
+    public void setUp() {
+        Robolectric.setupContentProvider(PictureProvider.class, AUTHORITY);
+        mContext = RuntimeEnvironment.application;
+        PictureProvider.sReads.clear();
+        PictureProvider.sStarted = null;
+        PictureProvider.sGate = null;
+    }
+
+    @Test
+    public void latestPrefetchSupersedesThePendingOnes() throws Exception {
+        /* The first read holds the worker, so that the second prefetch is still pending when superseded. */
+        CountDownLatch gate = new CountDownLatch(1);
+        PictureProvider.sStarted = new CountDownLatch(1);
+        PictureProvider.sGate = gate;
+        try {
+            PicturePrefetcher.prefetch(mContext, uri(1), HEIGHT);
+            assertTrue(PictureProvider.sStarted.await(5, TimeUnit.SECONDS));
+            PicturePrefetcher.prefetch(mContext, uri(2), HEIGHT);
+            PicturePrefetcher.prefetch(mContext, uri(3), HEIGHT);
+        } finally {
+            gate.countDown();
+        }
+
+        Future<?> picture = PicturePrefetcher.take(mContext, uri(3), HEIGHT);
+        assertNotNull(picture.get(5, TimeUnit.SECONDS));
+        assertFalse(picture.isCancelled());
+        assertEquals(Arrays.asList(uri(1), uri(3)), PictureProvider.sReads);
+    }
+
+    @Test
+    public void prefetchedPictureIsTakenOnce() throws Exception {
+        PicturePrefetcher.prefetch(mContext, uri(1), HEIGHT);
+        PicturePrefetcher.prefetch(mContext, uri(1), HEIGHT);
+        Future<?> picture = PicturePrefetcher.take(mContext, uri(1), HEIGHT);
+        assertNotNull(picture.get(5, TimeUnit.SECONDS));
+        assertEquals(Collections.singletonList(uri(1)), PictureProvider.sReads);
+
+        /* Taken again, the picture is read again. */
+        Future<?> again = PicturePrefetcher.take(mContext, uri(1), HEIGHT);
+        assertNotSame(picture, again);
+        assertNotNull(again.get(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList(uri(1), uri(1)), PictureProvider.sReads);
+    }
+
+    @Test
+    public void pictureNotPrefetchedIsReadOnTake() throws Exception {
+        PicturePrefetcher.prefetch(mContext, uri(1), HEIGHT);
+        Future<?> picture = PicturePrefetcher.take(mContext, uri(2), HEIGHT);
+        assertNotNull(picture.get(5, TimeUnit.SECONDS));
+        assertTrue(PictureProvider.sReads.contains(uri(2)));
+
+        /* Unknown products have no picture. */
+        assertNull(PicturePrefetcher.take(mContext, uri(0), HEIGHT).get(5, TimeUnit.SECONDS));
+    }
+
+    private static Uri uri(long id) {
+        return ContentUris.withAppendedId(Uri.parse("content://" + AUTHORITY), id);
+    }
+
+    /**
+     * Provider of a picture for every product id but 0, recording the reads. The read of product 1
+     * signals its start and waits for the gate, when there is one.
+     */
+    public static final class PictureProvider extends ContentProvider {
+        static final List<Uri> sReads = Collections.synchronizedList(new ArrayList<Uri>());
+        static volatile CountDownLatch sStarted;
+        static volatile CountDownLatch sGate;
+
+        @Override
+        public boolean onCreate() {
+            return true;
+        }
+
+        @Override
+        public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs,
+                String sortOrder) {
+            long id = ContentUris.parseId(uri);
+            CountDownLatch gate = sGate;
+            if (id == 1 && gate != null) {
+                sStarted.countDown();
+                try {
+                    gate.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            sReads.add(uri);
+
+            MatrixCursor cursor = new MatrixCursor(new String[] { ProductEntry.COLUMN_PRODUCT_PICTURE });
+            if (id != 0) {
+                cursor.addRow(new Object[] { new byte[] { 1, 2, 3 } });
+            }
+            return cursor;
+        }
+
+        @Override
+        public String getType(Uri uri) {
+            return null;
+        }
+
+        @Override
+        public Uri insert(Uri uri, ContentValues values) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int delete(Uri uri, String selection, String[] selectionArgs) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int update(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.example.android.inventoryapp.data;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of the chunking of the batches of {@link ProductBatchClient}.
+ */
+public class BatchChunkerTest {
+    @Test
+    public void fixedSizeChunksFitTheBudget() {
+        int chunkSize = BatchChunker.chunkSize(BatchChunker.LONG_BYTES, BatchChunker.MAX_CHUNK_BYTES);
+
+        assertEquals(16384, chunkSize);
+        assertEquals(1, BatchChunker.chunkSize(BatchChunker.LONG_BYTES, 4));
+    }
+
+    @Test
+    public void parcelledStringSizeIsPadded() {
+        assertEquals(4, BatchChunker.parcelledSize(null));
+        assertEquals(8, BatchChunker.parcelledSize(""));
+        assertEquals(8, BatchChunker.parcelledSize("a"));
+        assertEquals(12, BatchChunker.parcelledSize("ab"));
+        assertEquals(32, BatchChunker.parcelledSize("4006381333931"));
+    }
+
+    @Test
+    public void stringChunksCoverTheBatchWithinTheBudget() {
+        /* 100k SKUs of 40 characters are about 8 MB in a parcel, far over the Binder limit. */
+        String[] skus = new String[100000];
+        for (int i = 0; i < skus.length; i++) {
+            skus[i] = String.format("%040d", i);
+        }
+
+        int chunks = 0;
+        int start = 0;
+        while (start < skus.length) {
+            int end = BatchChunker.chunkEnd(skus, start, BatchChunker.MAX_CHUNK_BYTES);
+            assertTrue(end > start);
+
+            int bytes = 0;
+            for (int i = start; i < end; i++) {
+                bytes += BatchChunker.parcelledSize(skus[i]);
+            }
+            assertTrue(bytes <= BatchChunker.MAX_CHUNK_BYTES);
+
+            chunks++;
+            start = end;
+        }
+
+        assertEquals(skus.length * 88 / BatchChunker.MAX_CHUNK_BYTES + 1, chunks);
+    }
+
+    @Test
+    public void oversizedStringMakesItsOwnChunk() {
+        StringBuilder longSku = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            longSku.append('9');
+        }
+        String[] skus = { "1", longSku.toString(), "2" };
+
+        assertEquals(1, BatchChunker.chunkEnd(skus, 0, 100));
+        assertEquals(2, BatchChunker.chunkEnd(skus, 1, 100));
+        assertEquals(3, BatchChunker.chunkEnd(skus, 2, 100));
+    }
+}
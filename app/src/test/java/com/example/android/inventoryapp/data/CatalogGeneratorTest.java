@@ -0,0 +1,82 @@
+package com.example.android.inventoryapp.data;
+
+import android.app.Application;
+import android.content.ContentResolver;
+import android.database.Cursor;
+
+import com.example.android.inventoryapp.BuildConfig;
+import com.example.android.inventoryapp.data.ProductContract.ProductEntry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of the synthetic catalogs of {@link CatalogGenerator}.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 25, application = Application.class)
+public class CatalogGeneratorTest {
+    @Test
+    public void catalogOnlyDependsOnTheSeed() {
+        CatalogGenerator first = new CatalogGenerator(7, CatalogGenerator.PictureSizes.DEFAULT);
+        CatalogGenerator second = new CatalogGenerator(7, CatalogGenerator.PictureSizes.DEFAULT);
+        CatalogGenerator other = new CatalogGenerator(8, CatalogGenerator.PictureSizes.DEFAULT);
+
+        for (int i = 0; i < 20; i++) {
+            Product product = first.product(i);
+            Product same = second.product(i);
+            assertEquals(product.name, same.name);
+            assertEquals(product.quantity, same.quantity);
+            assertEquals(product.priceCents, same.priceCents);
+            assertTrue(Arrays.equals(product.picture, same.picture));
+            assertEquals(CatalogGenerator.sku(i), product.sku);
+            assertFalse(Arrays.equals(product.picture, other.product(i).picture));
+        }
+    }
+
+    @Test
+    public void pictureSizesFollowTheDistribution() {
+        CatalogGenerator.PictureSizes sizes = CatalogGenerator.PictureSizes.DEFAULT;
+        int[] samples = new int[10001];
+        Random random = new Random(1);
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = sizes.next(random);
+            assertTrue(samples[i] >= sizes.mMinBytes && samples[i] <= sizes.mMaxBytes);
+        }
+
+        Arrays.sort(samples);
+        assertEquals(sizes.mMedianBytes, samples[samples.length / 2], sizes.mMedianBytes * 0.05);
+    }
+
+    @Test
+    public void catalogIsWrittenThroughTheProvider() {
+        Robolectric.setupContentProvider(ProductProvider.class, ProductContract.CONTENT_AUTHORITY);
+        ContentResolver resolver = RuntimeEnvironment.application.getContentResolver();
+
+        CatalogGenerator generator = new CatalogGenerator(1, CatalogGenerator.PictureSizes.TINY);
+        assertEquals(1200 * 64, generator.generate(resolver, 0, 1200));
+
+        Cursor cursor = resolver.query(ProductEntry.CONTENT_URI,
+                new String[] { ProductEntry.COLUMN_PRODUCT_SKU, ProductEntry.COLUMN_PRODUCT_QUANTITY },
+                null, null, ProductEntry._ID);
+        try {
+            assertEquals(1200, cursor.getCount());
+            assertTrue(cursor.moveToPosition(600));
+            assertEquals(CatalogGenerator.sku(600), cursor.getString(0));
+            assertEquals(generator.product(600).quantity, cursor.getInt(1));
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package com.example.android.inventoryapp.data;
+
+import android.app.Application;
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+
+import com.example.android.inventoryapp.BuildConfig;
+import com.example.android.inventoryapp.data.ProductContract.CategoryEntry;
+import com.example.android.inventoryapp.data.ProductContract.ProductEntry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests of the categories: closure table, subtree queries and rollups kept by the product writes.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 25, application = Application.class)
+public class CategoriesTest {
+    private static final int PRODUCTS = 40;
+
+    private ContentResolver mResolver;
+    private Product[] mProducts;
+    private long mFood;
+    private long mDairy;
+    private long mCheese;
+    private long mTools;
+
+    @Before
+    public void setUp() {
+        mResolver = ProviderFixture.setUpProvider();
+
+        CatalogGenerator generator = ProviderFixture.generate(mResolver, 11, PRODUCTS);
+        mProducts = new Product[PRODUCTS];
+        for (int i = 0; i < PRODUCTS; i++) {
+            mProducts[i] = generator.product(i);
+        }
+
+        mFood = ProviderFixture.insertCategory(mResolver, "Food", null);
+        mDairy = ProviderFixture.insertCategory(mResolver, "Dairy", mFood);
+        mCheese = ProviderFixture.insertCategory(mResolver, "Cheese", mDairy);
+        mTools = ProviderFixture.insertCategory(mResolver, "Tools", null);
+
+        /* Products 1 to 10 in food, 11 to 20 in dairy, 21 to 30 in cheese, 31 to 40 in tools. */
+        long[] categories = { mFood, mDairy, mCheese, mTools };
+        for (int i = 0; i < PRODUCTS; i++) {
+            setCategory(i + 1, categories[i / 10]);
+        }
+    }
+
+    @Test
+    public void rollupsCoverTheSubtrees() {
+        assertRollups(mFood, 0, 30);
+        assertRollups(mDairy, 10, 30);
+        assertRollups(mCheese, 20, 30);
+        assertRollups(mTools, 30, 40);
+
+        Cursor cursor = mResolver.query(CategoryEntry.buildProductsUri(mDairy),
+                new String[] { ProductEntry._ID }, null, null, ProductEntry._ID);
+        try {
+            assertEquals(20, cursor.getCount());
+            cursor.moveToFirst();
+            assertEquals(11, cursor.getLong(0));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void rollupsFollowTheProductWrites() {
+        /* A restock and a price change in cheese, a product moved from cheese to tools. */
+        new ProductBatchClient(mResolver).applyQuantityDeltas(new long[] { 21 }, new int[] { 5 });
+        mProducts[20].quantity += 5;
+        ContentValues values = new ContentValues();
+        values.put(ProductEntry.COLUMN_PRODUCT_PRICE, 999);
+        mResolver.update(ContentUris.withAppendedId(ProductEntry.CONTENT_URI, 22), values, null, null);
+        mProducts[21].priceCents = 999;
+        setCategory(30, mTools);
+
+        assertRollups(mFood, 0, 29);
+        assertRollups(mCheese, 20, 29);
+        assertEquals(11, rollups(mTools)[0]);
+
+        /* A deleted product leaves the rollups, and comes back with its undo. */
+        long[] before = rollups(mFood);
+        mResolver.delete(ContentUris.withAppendedId(ProductEntry.CONTENT_URI, 1), null, null);
+        assertEquals(before[0] - 1, rollups(mFood)[0]);
+        mResolver.call(ProductContract.BASE_CONTENT_URI, ProductContract.METHOD_UNDO_DELETE, null, null);
+        assertArrayEquals(before, rollups(mFood));
+    }
+
+    @Test
+    public void subtreesMoveWithTheirRollups() {
+        long[] cheese = rollups(mCheese);
+
+        ContentValues values = new ContentValues();
+        values.put(CategoryEntry.COLUMN_CATEGORY_PARENT_ID, mTools);
+        assertEquals(1, mResolver.update(ContentUris.withAppendedId(CategoryEntry.CONTENT_URI, mCheese),
+                values, null, null));
+
+        assertRollups(mFood, 0, 20);
+        assertRollups(mDairy, 10, 20);
+        assertArrayEquals(cheese, rollups(mCheese));
+        assertEquals(20, rollups(mTools)[0]);
+
+        /* A category cannot move under its own subtree. */
+        values.put(CategoryEntry.COLUMN_CATEGORY_PARENT_ID, mCheese);
+        try {
+            mResolver.update(ContentUris.withAppendedId(CategoryEntry.CONTENT_URI, mTools), values, null, null);
+            fail("Category moved under its own subtree");
+        } catch (IllegalArgumentException e) {
+            /* Expected. */
+        }
+    }
+
+    @Test
+    public void deletedCategoriesLeaveTheirProducts() {
+        try {
+            mResolver.delete(ContentUris.withAppendedId(CategoryEntry.CONTENT_URI, mDairy), null, null);
+            fail("Category with sub-categories deleted");
+        } catch (IllegalArgumentException e) {
+            /* Expected. */
+        }
+
+        assertEquals(1, mResolver.delete(ContentUris.withAppendedId(CategoryEntry.CONTENT_URI, mCheese), null, null));
+        assertRollups(mFood, 0, 20);
+        assertRollups(mDairy, 10, 20);
+    }
+
+    private void setCategory(long productId, long categoryId) {
+        ContentValues values = new ContentValues();
+        values.put(ProductEntry.COLUMN_PRODUCT_CATEGORY_ID, categoryId);
+        mResolver.update(ContentUris.withAppendedId(ProductEntry.CONTENT_URI, productId), values, null, null);
+    }
+
+    /**
+     * Return the item count, units and value of the category.
+     */
+    private long[] rollups(long id) {
+        Cursor cursor = mResolver.query(ContentUris.withAppendedId(CategoryEntry.CONTENT_URI, id),
+                new String[] { CategoryEntry.COLUMN_CATEGORY_ITEM_COUNT, CategoryEntry.COLUMN_CATEGORY_UNITS,
+                        CategoryEntry.COLUMN_CATEGORY_VALUE }, null, null, null);
+        try {
+            cursor.moveToFirst();
+            return new long[] { cursor.getLong(0), cursor.getLong(1), cursor.getLong(2) };
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Assert that the rollups of the category are the totals of the generated products from start
+     * (inclusive) to end (exclusive).
+     */
+    private void assertRollups(long id, int start, int end) {
+        long units = 0;
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            Product product = mProducts[i];
+            units += product.quantity;
+            value += product.quantity * product.priceCents;
+        }
+
+        assertArrayEquals(new long[] { end - start, units, value }, rollups(id));
+    }
+}
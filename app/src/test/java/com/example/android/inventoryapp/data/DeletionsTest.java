@@ -0,0 +1,196 @@
+package com.example.android.inventoryapp.data;
+
+import android.app.Application;
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.net.Uri;
+import android.os.Bundle;
+
+import com.example.android.inventoryapp.BuildConfig;
+import com.example.android.inventoryapp.data.ProductContract.DeletedProductEntry;
+import com.example.android.inventoryapp.data.ProductContract.LotEntry;
+import com.example.android.inventoryapp.data.ProductContract.ProductEntry;
+import com.example.android.inventoryapp.data.ProductContract.ReservationEntry;
+import com.example.android.inventoryapp.data.ProductContract.TombstoneEntry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of the soft deletions: hidden at once, undone within their window, purged later.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 25, application = Application.class)
+public class DeletionsTest {
+    private static final int PRODUCTS = 3;
+
+    private ContentResolver mResolver;
+
+    @Before
+    public void setUp() {
+        mResolver = ProviderFixture.setUpProvider();
+
+        ProviderFixture.generate(mResolver, 17, PRODUCTS);
+    }
+
+    @Test
+    public void deletedProductsAreHiddenUntilTheirPurge() {
+        assertEquals(1, mResolver.delete(ContentUris.withAppendedId(ProductEntry.CONTENT_URI, 1), null, null));
+        assertEquals(PRODUCTS - 1, count());
+
+        /* Within the undo window the row stays, without a tombstone yet. */
+        assertEquals(0, purge(10));
+        assertEquals(PRODUCTS, rows(ProductEntry.TABLE_NAME));
+        assertEquals(0, rows(TombstoneEntry.TABLE_NAME));
+
+        endUndoWindow();
+        assertEquals(0, undo());
+        assertEquals(1, purge(10));
+        assertEquals(PRODUCTS - 1, rows(ProductEntry.TABLE_NAME));
+        assertEquals(0, rows(DeletedProductEntry.TABLE_NAME));
+        assertEquals(1, rows(TombstoneEntry.TABLE_NAME));
+    }
+
+    @Test
+    public void purgeWorksInChunks() {
+        assertEquals(PRODUCTS, mResolver.delete(ProductEntry.CONTENT_URI, null, null));
+        endUndoWindow();
+
+        assertEquals(2, purge(2));
+        assertEquals(1, purge(2));
+        assertEquals(0, purge(2));
+        assertEquals(0, rows(ProductEntry.TABLE_NAME));
+        assertEquals(PRODUCTS, rows(TombstoneEntry.TABLE_NAME));
+    }
+
+    @Test
+    public void purgeRemovesTheLotsAndHolds() {
+        new ProductBatchClient(mResolver).applyQuantityDeltas(new long[] { 1 }, new int[] { 10 });
+        ContentValues lot = new ContentValues();
+        lot.put(LotEntry.COLUMN_PRODUCT_ID, 1);
+        lot.put(LotEntry.COLUMN_LOT_CODE, "A");
+        lot.put(LotEntry.COLUMN_EXPIRES_AT, System.currentTimeMillis() + 1000);
+        lot.put(LotEntry.COLUMN_QUANTITY, 2);
+        mResolver.insert(LotEntry.CONTENT_URI, lot);
+        Bundle extras = new Bundle();
+        extras.putInt(ProductContract.EXTRA_QUANTITY, 3);
+        extras.putLong(ProductContract.EXTRA_TTL_MILLIS, 60 * 1000);
+        mResolver.call(ProductContract.BASE_CONTENT_URI, ProductContract.METHOD_RESERVE, "1", extras);
+        assertEquals(1, rows(LotEntry.TABLE_NAME));
+        assertEquals(1, rows(ReservationEntry.TABLE_NAME));
+
+        mResolver.delete(ContentUris.withAppendedId(ProductEntry.CONTENT_URI, 1), null, null);
+        endUndoWindow();
+        assertEquals(1, purge(10));
+
+        assertEquals(0, rows(LotEntry.TABLE_NAME));
+        assertEquals(0, rows(ReservationEntry.TABLE_NAME));
+    }
+
+    @Test
+    public void skuOfADeletedProductCanBeTaken() {
+        String sku = CatalogGenerator.sku(1);
+        mResolver.delete(ContentUris.withAppendedId(ProductEntry.CONTENT_URI, 2), null, null);
+
+        ContentValues values = new ContentValues();
+        values.put(ProductEntry.COLUMN_PRODUCT_NAME, "Successor");
+        values.put(ProductEntry.COLUMN_PRODUCT_SKU, sku);
+        values.put(ProductEntry.COLUMN_PRODUCT_QUANTITY, 1);
+        values.put(ProductEntry.COLUMN_PRODUCT_PRICE, 100);
+        values.put(ProductEntry.COLUMN_PRODUCT_PICTURE, new byte[1]);
+        Uri successor = mResolver.insert(ProductEntry.CONTENT_URI, values);
+        assertNotNull(successor);
+
+        /* The deleted product is purged at once, the scan finds its successor. */
+        assertEquals(0, undo());
+        assertEquals(1, rows(TombstoneEntry.TABLE_NAME));
+        Cursor cursor = mResolver.query(ProductEntry.buildSkuUri(sku), new String[] { ProductEntry._ID },
+                null, null, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            assertEquals(ContentUris.parseId(successor), cursor.getLong(0));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void undoneProductsGetANewChangeVersion() {
+        Uri product = ContentUris.withAppendedId(ProductEntry.CONTENT_URI, 2);
+        long changeVersion = changeVersion(product);
+
+        assertEquals(1, mResolver.delete(product, null, null));
+        assertEquals(PRODUCTS - 1, count());
+
+        assertEquals(1, undo());
+        assertEquals(PRODUCTS, count());
+        assertTrue(changeVersion(product) > changeVersion);
+
+        /* Only the latest deletion is undone, once. */
+        assertEquals(0, undo());
+    }
+
+    private int purge(int limit) {
+        return mResolver.call(ProductContract.BASE_CONTENT_URI, ProductContract.METHOD_PURGE_DELETED,
+                String.valueOf(limit), null).getInt(ProductContract.EXTRA_COUNT);
+    }
+
+    /**
+     * Move the deletions out of their undo window.
+     */
+    private static void endUndoWindow() {
+        ProductDbHelper helper = new ProductDbHelper(RuntimeEnvironment.application);
+        try {
+            ContentValues values = new ContentValues();
+            values.put(DeletedProductEntry.COLUMN_DELETED_AT,
+                    System.currentTimeMillis() - ProductContract.DELETE_UNDO_WINDOW_MILLIS - 1);
+            helper.getWritableDatabase().update(DeletedProductEntry.TABLE_NAME, values, null, null);
+        } finally {
+            helper.close();
+        }
+    }
+
+    private static long rows(String table) {
+        ProductDbHelper helper = new ProductDbHelper(RuntimeEnvironment.application);
+        try {
+            return DatabaseUtils.queryNumEntries(helper.getReadableDatabase(), table);
+        } finally {
+            helper.close();
+        }
+    }
+
+    private int undo() {
+        return mResolver.call(ProductContract.BASE_CONTENT_URI, ProductContract.METHOD_UNDO_DELETE, null, null)
+                .getInt(ProductContract.EXTRA_COUNT);
+    }
+
+    private int count() {
+        Cursor cursor = mResolver.query(ProductEntry.CONTENT_URI, new String[] { ProductEntry._ID }, null, null, null);
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private long changeVersion(Uri uri) {
+        Cursor cursor = mResolver.query(uri, new String[] { ProductEntry.COLUMN_PRODUCT_CHANGE_VERSION }, null, null, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            return cursor.getLong(0);
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.example.android.inventoryapp.data;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests of {@link LongIntMap}, against a {@link HashMap}.
+ */
+public class LongIntMapTest {
+    @Test
+    public void behavesAsAMap() {
+        LongIntMap map = new LongIntMap(4);
+        Map<Long, Integer> expected = new HashMap<>();
+        Random random = new Random(1);
+
+        for (int i = 0; i < 100000; i++) {
+            /* Ids of a large catalog, with repeated scans of the same products. */
+            long key = 1 + random.nextInt(30000);
+            int delta = random.nextInt(5);
+            if (random.nextInt(10) == 0) {
+                map.put(key, delta);
+                expected.put(key, delta);
+            } else {
+                map.add(key, delta);
+                Integer value = expected.get(key);
+                expected.put(key, (value == null ? 0 : value) + delta);
+            }
+        }
+
+        assertEquals(expected.size(), map.size());
+        for (Map.Entry<Long, Integer> entry : expected.entrySet()) {
+            assertEquals((int) entry.getValue(), map.get(entry.getKey(), -1));
+        }
+        assertEquals(-1, map.get(30001, -1));
+        assertEquals(-1, map.slotOf(30001));
+    }
+
+    @Test
+    public void slotsHoldEveryKeyOnce() {
+        LongIntMap map = new LongIntMap(16);
+        for (long key = 1; key <= 1000; key++) {
+            map.put(key * 1024, (int) key);
+        }
+
+        int keys = 0;
+        for (int slot = 0; slot < map.capacity(); slot++) {
+            if (map.hasKeyAt(slot)) {
+                keys++;
+                assertEquals(map.keyAt(slot) / 1024, map.valueAt(slot));
+                assertEquals(slot, map.slotOf(map.keyAt(slot)));
+            }
+        }
+        assertEquals(1000, keys);
+        assertTrue(map.capacity() <= 4 * 1000);
+    }
+
+    @Test
+    public void rejectsKeysThatAreNotIds() {
+        LongIntMap map = new LongIntMap(16);
+        try {
+            map.add(0, 1);
+            fail("Key 0 accepted");
+        } catch (IllegalArgumentException expected) {
+        }
+        try {
+            map.get(-5, 0);
+            fail("Negative key accepted");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+}
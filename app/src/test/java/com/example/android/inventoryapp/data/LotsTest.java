@@ -0,0 +1,211 @@
+package com.example.android.inventoryapp.data;
+
+import android.app.Application;
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.Bundle;
+
+import com.example.android.inventoryapp.BuildConfig;
+import com.example.android.inventoryapp.data.ProductContract.LotDepletionEntry;
+import com.example.android.inventoryapp.data.ProductContract.LotEntry;
+import com.example.android.inventoryapp.data.ProductContract.ProductEntry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests of the lots: receipts, depletion by expiry on every decrease of a quantity, and expiry queries.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 25, application = Application.class)
+public class LotsTest {
+    private static final long DAY = TimeUnit.DAYS.toMillis(1);
+    private static final long NOW = 1500000000000L;
+
+    private ContentResolver mResolver;
+    private int mQuantity;
+
+    @Before
+    public void setUp() {
+        mResolver = ProviderFixture.setUpProvider();
+
+        mQuantity = ProviderFixture.generate(mResolver, 3, 2).product(0).quantity;
+    }
+
+    @Test
+    public void salesTakeTheLotsExpiringFirst() {
+        receive(1, "C", NOW + 3 * DAY, 5);
+        receive(1, "A", NOW + DAY, 2);
+        receive(1, "B", NOW + 2 * DAY, 4);
+        assertEquals(mQuantity + 11, quantity(1));
+
+        /* Lot A is emptied, lot B gives the rest. */
+        Bundle extras = new Bundle();
+        extras.putInt(ProductContract.EXTRA_QUANTITY, 4);
+        Bundle result = mResolver.call(ProductContract.BASE_CONTENT_URI, ProductContract.METHOD_SELL_SKU,
+                CatalogGenerator.sku(0), extras);
+        assertEquals(mQuantity + 7, result.getInt(ProductContract.EXTRA_QUANTITY));
+        assertLots(1, "B", 2, "C", 5);
+
+        /* Batches of deltas deplete the lots the same way. */
+        new ProductBatchClient(mResolver).applyQuantityDeltas(new long[] { 1 }, new int[] { -3 });
+        assertLots(1, "C", 4);
+
+        /* So do the edits of the quantity. */
+        ContentValues values = new ContentValues();
+        values.put(ProductEntry.COLUMN_PRODUCT_QUANTITY, mQuantity + 3);
+        mResolver.update(ContentUris.withAppendedId(ProductEntry.CONTENT_URI, 1), values, null, null);
+        assertLots(1, "C", 3);
+
+        values.put(ProductEntry.COLUMN_PRODUCT_QUANTITY, 0);
+        mResolver.update(ContentUris.withAppendedId(ProductEntry.CONTENT_URI, 1), values, null, null);
+        assertLots(1);
+    }
+
+    @Test
+    public void largeDecreaseTakesTheLotsInOnePass() {
+        for (int i = 0; i < 2000; i++) {
+            receive(2, "L" + i, NOW + i, 1);
+        }
+        receive(2, "Last", NOW + DAY, 3);
+
+        /* Every lot but the last is emptied, and the last one gives a unit. */
+        new ProductBatchClient(mResolver).applyQuantityDeltas(new long[] { 2 }, new int[] { -2001 });
+        assertLots(2, "Last", 2);
+
+        ProductDbHelper helper = new ProductDbHelper(RuntimeEnvironment.application);
+        try {
+            SQLiteDatabase db = helper.getReadableDatabase();
+            assertEquals(0, DatabaseUtils.queryNumEntries(db, LotDepletionEntry.TABLE_NAME));
+        } finally {
+            helper.close();
+        }
+    }
+
+    @Test
+    public void restocksAreNotTrackedByLot() {
+        receive(1, "A", NOW + DAY, 2);
+        new ProductBatchClient(mResolver).applyQuantityDeltas(new long[] { 1 }, new int[] { 10 });
+        assertLots(1, "A", 2);
+
+        /* Refused sales leave the lots as they are. */
+        Bundle extras = new Bundle();
+        extras.putInt(ProductContract.EXTRA_QUANTITY, mQuantity + 13);
+        Bundle result = mResolver.call(ProductContract.BASE_CONTENT_URI, ProductContract.METHOD_SELL_SKU,
+                CatalogGenerator.sku(0), extras);
+        assertEquals(-1, result.getInt(ProductContract.EXTRA_QUANTITY));
+        assertLots(1, "A", 2);
+    }
+
+    @Test
+    public void expiringLotsAreQueriedFromTheIndex() {
+        receive(1, "A", NOW + 10 * DAY, 2);
+        receive(2, "B", NOW + DAY, 3);
+        receive(1, "C", NOW + 3 * DAY, 1);
+
+        Cursor cursor = mResolver.query(LotEntry.buildExpiringUri(NOW, 7),
+                new String[] { LotEntry.COLUMN_LOT_CODE, LotEntry.COLUMN_PRODUCT_ID }, null, null, null);
+        try {
+            assertEquals(2, cursor.getCount());
+            cursor.moveToFirst();
+            assertEquals("B", cursor.getString(0));
+            cursor.moveToNext();
+            assertEquals("C", cursor.getString(0));
+        } finally {
+            cursor.close();
+        }
+
+        /* The expiry query only reads the expiry index, never the table. */
+        ProductDbHelper helper = new ProductDbHelper(RuntimeEnvironment.application, "lots_plan.db");
+        try {
+            SQLiteDatabase db = helper.getReadableDatabase();
+            Cursor plan = db.rawQuery("EXPLAIN QUERY PLAN SELECT " + LotEntry._ID + ", "
+                    + LotEntry.COLUMN_PRODUCT_ID + ", " + LotEntry.COLUMN_LOT_CODE + ", "
+                    + LotEntry.COLUMN_EXPIRES_AT + ", " + LotEntry.COLUMN_QUANTITY + " FROM " + LotEntry.TABLE_NAME
+                    + " WHERE " + LotEntry.COLUMN_EXPIRES_AT + " < ? AND " + LotEntry.COLUMN_PRODUCT_ID
+                    + " NOT IN (SELECT product_id FROM deleted_products) ORDER BY " + LotEntry.COLUMN_EXPIRES_AT,
+                    new String[] { String.valueOf(NOW) });
+            try {
+                assertTrue(plan.moveToFirst());
+                String detail = plan.getString(plan.getColumnIndexOrThrow("detail"));
+                assertTrue(detail, detail.contains("COVERING INDEX lots_expires_at"));
+            } finally {
+                plan.close();
+            }
+        } finally {
+            helper.close();
+        }
+    }
+
+    @Test
+    public void lotsOfUnknownProductsAreRefused() {
+        try {
+            receive(99, "A", NOW, 1);
+            fail("Lot of an unknown product received");
+        } catch (IllegalArgumentException e) {
+            /* Expected. */
+        }
+        assertLots(99);
+    }
+
+    private void receive(long productId, String code, long expiresAt, int quantity) {
+        ContentValues values = new ContentValues();
+        values.put(LotEntry.COLUMN_PRODUCT_ID, productId);
+        values.put(LotEntry.COLUMN_LOT_CODE, code);
+        values.put(LotEntry.COLUMN_EXPIRES_AT, expiresAt);
+        values.put(LotEntry.COLUMN_QUANTITY, quantity);
+        mResolver.insert(LotEntry.CONTENT_URI, values);
+    }
+
+    private int quantity(long id) {
+        return new ProductBatchClient(mResolver).getQuantities(new long[] { id })[0];
+    }
+
+    /**
+     * Assert the lots of the product, in expiry order, given as codes followed by quantities,
+     * and that its lot quantity is their sum.
+     */
+    private void assertLots(long productId, Object... codesAndQuantities) {
+        Object[] lots;
+        int sum = 0;
+        Cursor cursor = mResolver.query(LotEntry.CONTENT_URI,
+                new String[] { LotEntry.COLUMN_LOT_CODE, LotEntry.COLUMN_QUANTITY },
+                LotEntry.COLUMN_PRODUCT_ID + " = ?", new String[] { String.valueOf(productId) }, null);
+        try {
+            lots = new Object[cursor.getCount() * 2];
+            for (int i = 0; cursor.moveToNext(); i += 2) {
+                lots[i] = cursor.getString(0);
+                lots[i + 1] = cursor.getInt(1);
+                sum += cursor.getInt(1);
+            }
+        } finally {
+            cursor.close();
+        }
+        assertArrayEquals(codesAndQuantities, lots);
+
+        cursor = mResolver.query(ContentUris.withAppendedId(ProductEntry.CONTENT_URI, productId),
+                new String[] { ProductEntry.COLUMN_PRODUCT_LOT_QUANTITY }, null, null, null);
+        try {
+            if (cursor.moveToFirst()) {
+                assertEquals(sum, cursor.getInt(0));
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+}
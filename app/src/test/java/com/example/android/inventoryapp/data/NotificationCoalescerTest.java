@@ -0,0 +1,197 @@
+package com.example.android.inventoryapp.data;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of {@link NotificationCoalescer}, counting the requeries of the product list for bursts of writes.
+ */
+public class NotificationCoalescerTest {
+    private static final String PRODUCTS = "content://com.example.android.inventoryapp/products";
+
+    private static final int BURST_SIZE = 1000;
+
+    /**
+     * Scheduler running the tasks when the test advances its clock.
+     */
+    private static final class FakeScheduler implements NotificationCoalescer.Scheduler {
+        private final List<long[]> mDueTimes = new ArrayList<>();
+        private final List<Runnable> mTasks = new ArrayList<>();
+        long mNow;
+
+        @Override
+        public void schedule(Runnable task, long delayMillis) {
+            mDueTimes.add(new long[] { mNow + delayMillis });
+            mTasks.add(task);
+        }
+
+        void advance(long millis) {
+            mNow += millis;
+            for (int i = 0; i < mTasks.size(); i++) {
+                if (mDueTimes.get(i)[0] <= mNow) {
+                    Runnable task = mTasks.remove(i);
+                    mDueTimes.remove(i);
+                    task.run();
+                    i = -1;
+                }
+            }
+        }
+    }
+
+    /**
+     * The product list loader: observes the list and its items, and requeries on every notification.
+     */
+    private static final class ListObserver implements NotificationCoalescer.Sink {
+        final List<String> mNotified = new ArrayList<>();
+        int mRequeries;
+
+        @Override
+        public void notifyChange(String uri) {
+            mNotified.add(uri);
+            if (uri.startsWith(PRODUCTS)) {
+                mRequeries++;
+            }
+        }
+    }
+
+    private static String item(long id) {
+        return PRODUCTS + "/" + id;
+    }
+
+    @Test
+    public void burstRequeriesOncePerWindow() {
+        /* Before: every write notifies at once. */
+        FakeScheduler scheduler = new FakeScheduler();
+        ListObserver immediate = new ListObserver();
+        NotificationCoalescer uncoalesced = new NotificationCoalescer(immediate, scheduler, 0, 16);
+        for (int i = 0; i < BURST_SIZE; i++) {
+            uncoalesced.notifyChange(item(i));
+        }
+        assertEquals(BURST_SIZE, immediate.mRequeries);
+
+        /* After: the same burst, written in 10 ms, is delivered by the first window as the list. */
+        ListObserver coalesced = new ListObserver();
+        NotificationCoalescer coalescer = new NotificationCoalescer(coalesced, scheduler, 50, 16);
+        for (int i = 0; i < BURST_SIZE; i++) {
+            coalescer.notifyChange(item(i));
+            if (i % 100 == 99) {
+                scheduler.advance(1);
+            }
+        }
+        assertEquals(0, coalesced.mRequeries);
+
+        scheduler.advance(50);
+        assertEquals(Arrays.asList(PRODUCTS), coalesced.mNotified);
+        assertEquals(1, coalesced.mRequeries);
+    }
+
+    @Test
+    public void burstOverSeveralWindowsRequeriesOncePerWindow() {
+        FakeScheduler scheduler = new FakeScheduler();
+        ListObserver observer = new ListObserver();
+        NotificationCoalescer coalescer = new NotificationCoalescer(observer, scheduler, 50, 16);
+
+        /* One write per millisecond for a second. */
+        for (int i = 0; i < BURST_SIZE; i++) {
+            coalescer.notifyChange(item(i));
+            scheduler.advance(1);
+        }
+        scheduler.advance(50);
+
+        assertEquals(BURST_SIZE / 50, observer.mRequeries);
+    }
+
+    @Test
+    public void itemsCollapseAboveTheThreshold() {
+        FakeScheduler scheduler = new FakeScheduler();
+        ListObserver observer = new ListObserver();
+        NotificationCoalescer coalescer = new NotificationCoalescer(observer, scheduler, 50, 16);
+
+        for (int i = 0; i < 16; i++) {
+            coalescer.notifyChange(item(i));
+        }
+        scheduler.advance(50);
+        assertEquals(16, observer.mNotified.size());
+        assertEquals(item(0), observer.mNotified.get(0));
+
+        observer.mNotified.clear();
+        for (int i = 0; i < 17; i++) {
+            coalescer.notifyChange(item(i));
+        }
+        scheduler.advance(50);
+        assertEquals(Arrays.asList(PRODUCTS), observer.mNotified);
+    }
+
+    @Test
+    public void batchDeliversOnceAtTheEnd() {
+        FakeScheduler scheduler = new FakeScheduler();
+        ListObserver observer = new ListObserver();
+        NotificationCoalescer coalescer = new NotificationCoalescer(observer, scheduler, 0, 16);
+
+        coalescer.beginBatch();
+        coalescer.beginBatch();
+        for (int i = 0; i < BURST_SIZE; i++) {
+            coalescer.notifyChange(PRODUCTS);
+        }
+        coalescer.endBatch();
+        assertEquals(0, observer.mRequeries);
+
+        coalescer.endBatch();
+        assertEquals(1, observer.mRequeries);
+    }
+
+    @Test
+    public void windowEndingInsideBatchWaitsForTheBatch() {
+        FakeScheduler scheduler = new FakeScheduler();
+        ListObserver observer = new ListObserver();
+        NotificationCoalescer coalescer = new NotificationCoalescer(observer, scheduler, 50, 16);
+
+        coalescer.notifyChange(item(1));
+        coalescer.beginBatch();
+        coalescer.notifyChange(item(2));
+        scheduler.advance(50);
+        assertEquals(0, observer.mRequeries);
+
+        coalescer.endBatch();
+        assertEquals(Arrays.asList(item(1), item(2)), observer.mNotified);
+
+        /* A notification after the batch opens a new window. */
+        coalescer.notifyChange(item(3));
+        scheduler.advance(50);
+        assertEquals(3, observer.mRequeries);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void endBatchWithoutScopeFails() {
+        new NotificationCoalescer(new ListObserver(), new FakeScheduler(), 50, 16).endBatch();
+    }
+
+    @Test
+    public void collapseDropsItemsOfNotifiedLists() {
+        LinkedHashSet<String> uris = new LinkedHashSet<>(Arrays.asList(
+                item(1), PRODUCTS, item(2), PRODUCTS + "/changes"));
+
+        List<String> collapsed = NotificationCoalescer.collapse(uris, 16);
+
+        Iterator<String> iterator = collapsed.iterator();
+        assertEquals(PRODUCTS, iterator.next());
+        assertEquals(PRODUCTS + "/changes", iterator.next());
+        assertTrue(!iterator.hasNext());
+    }
+
+    @Test
+    public void listOfItemUris() {
+        assertEquals(PRODUCTS, NotificationCoalescer.listOf(item(42)));
+        assertNull(NotificationCoalescer.listOf(PRODUCTS));
+        assertNull(NotificationCoalescer.listOf(PRODUCTS + "/"));
+    }
+}
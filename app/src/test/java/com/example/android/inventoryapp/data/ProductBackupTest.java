@@ -0,0 +1,212 @@
+package com.example.android.inventoryapp.data;
+
+import android.app.Application;
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.Bundle;
+
+import com.example.android.inventoryapp.BuildConfig;
+import com.example.android.inventoryapp.data.ProductContract.CategoryEntry;
+import com.example.android.inventoryapp.data.ProductContract.CategoryPathEntry;
+import com.example.android.inventoryapp.data.ProductContract.LotEntry;
+import com.example.android.inventoryapp.data.ProductContract.ProductEntry;
+import com.example.android.inventoryapp.data.ProductContract.ReservationEntry;
+import com.example.android.inventoryapp.data.ProductContract.StockAlertEntry;
+import com.example.android.inventoryapp.data.ProductContract.ValuationEntry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests of the backups: the snapshot holds the derived data of the database as it is, and only
+ * the changed pictures are stored again.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 25, application = Application.class)
+public class ProductBackupTest {
+    private static final int PRODUCTS = 12;
+
+    /**
+     * Columns of the products compared, the pictures are taken out of the snapshot.
+     */
+    private static final String PRODUCT_COLUMNS = ProductEntry._ID + ", " + ProductEntry.COLUMN_PRODUCT_QUANTITY
+            + ", " + ProductEntry.COLUMN_PRODUCT_PRICE + ", " + ProductEntry.COLUMN_PRODUCT_LOT_QUANTITY + ", "
+            + ProductEntry.COLUMN_PRODUCT_RESERVED + ", " + ProductEntry.COLUMN_PRODUCT_ZERO_STOCK_SINCE + ", "
+            + ProductEntry.COLUMN_PRODUCT_CATEGORY_ID + ", " + ProductEntry.COLUMN_PRODUCT_CHANGE_VERSION;
+
+    private ContentResolver mResolver;
+
+    @Before
+    public void setUp() {
+        mResolver = ProviderFixture.setUpProvider();
+
+        ProviderFixture.generate(mResolver, 13, PRODUCTS);
+
+        long food = ProviderFixture.insertCategory(mResolver, "Food", null);
+        long dairy = ProviderFixture.insertCategory(mResolver, "Dairy", food);
+        for (int id = 1; id <= PRODUCTS; id++) {
+            ContentValues values = new ContentValues();
+            values.put(ProductEntry.COLUMN_PRODUCT_CATEGORY_ID, id % 2 == 0 ? food : dairy);
+            values.put(ProductEntry.COLUMN_PRODUCT_REORDER_LEVEL, 5);
+            mResolver.update(ContentUris.withAppendedId(ProductEntry.CONTENT_URI, id), values, null, null);
+
+            values = new ContentValues();
+            values.put(LotEntry.COLUMN_PRODUCT_ID, id);
+            values.put(LotEntry.COLUMN_LOT_CODE, "L" + id);
+            values.put(LotEntry.COLUMN_EXPIRES_AT, System.currentTimeMillis() + id * 1000);
+            values.put(LotEntry.COLUMN_QUANTITY, 3);
+            mResolver.insert(LotEntry.CONTENT_URI, values);
+
+            Bundle extras = new Bundle();
+            extras.putInt(ProductContract.EXTRA_QUANTITY, 1);
+            extras.putLong(ProductContract.EXTRA_TTL_MILLIS, 60 * 1000);
+            mResolver.call(ProductContract.BASE_CONTENT_URI, ProductContract.METHOD_RESERVE,
+                    String.valueOf(id), extras);
+        }
+
+        /* Sales deplete the lots and queue stock alerts. */
+        new ProductBatchClient(mResolver).applyQuantityDeltas(new long[] { 1, 2, 3 }, new int[] { -2, -4, -1 });
+    }
+
+    @Test
+    public void snapshotKeepsTheDerivedData() throws IOException {
+        File directory = new File(RuntimeEnvironment.application.getCacheDir(), "backups");
+        ProductBackup.Report report = new ProductBackup(RuntimeEnvironment.application, directory).backup(true);
+
+        File copy = new File(RuntimeEnvironment.application.getCacheDir(), "snapshot.db");
+        copy(new GZIPInputStream(new FileInputStream(report.snapshot)), new FileOutputStream(copy));
+
+        ProductDbHelper helper = new ProductDbHelper(RuntimeEnvironment.application);
+        SQLiteDatabase source = helper.getReadableDatabase();
+        SQLiteDatabase snapshot = SQLiteDatabase.openDatabase(copy.getPath(), null, SQLiteDatabase.OPEN_READONLY);
+        try {
+            assertEquals(dump(source, "SELECT " + PRODUCT_COLUMNS + " FROM " + ProductEntry.TABLE_NAME),
+                    dump(snapshot, "SELECT " + PRODUCT_COLUMNS + " FROM " + ProductEntry.TABLE_NAME));
+            String[] tables = { LotEntry.TABLE_NAME, ReservationEntry.TABLE_NAME, CategoryEntry.TABLE_NAME,
+                    CategoryPathEntry.TABLE_NAME, StockAlertEntry.TABLE_NAME, ValuationEntry.TABLE_NAME,
+                    "sqlite_sequence" };
+            for (String table : tables) {
+                assertEquals(table, dump(source, "SELECT * FROM " + table), dump(snapshot, "SELECT * FROM " + table));
+            }
+
+            /* The indexes and triggers are there for the restored database. */
+            assertEquals(dump(source, "SELECT type, name FROM sqlite_master WHERE type != 'table'"),
+                    dump(snapshot, "SELECT type, name FROM sqlite_master WHERE type != 'table'"));
+        } finally {
+            snapshot.close();
+            helper.close();
+        }
+    }
+
+    @Test
+    public void secondBackupOnlyStoresTheChangedPictures() throws IOException {
+        File directory = new File(RuntimeEnvironment.application.getCacheDir(), "backups");
+        ProductBackup backup = new ProductBackup(RuntimeEnvironment.application, directory);
+        backup.backup(true);
+        byte[] second = picture(2);
+
+        ContentValues values = new ContentValues();
+        values.put(ProductEntry.COLUMN_PRODUCT_PICTURE, new byte[] { 9, 9, 9 });
+        mResolver.update(ContentUris.withAppendedId(ProductEntry.CONTENT_URI, 1), values, null, null);
+
+        ProductBackup.Report report = backup.backup(true);
+        assertEquals(1, report.picturesWritten);
+        assertEquals(PRODUCTS - 1, report.picturesReused);
+
+        /* The restored products get their own pictures back, changed or not. */
+        values.put(ProductEntry.COLUMN_PRODUCT_PICTURE, new byte[] { 7 });
+        mResolver.update(ContentUris.withAppendedId(ProductEntry.CONTENT_URI, 2), values, null, null);
+        backup.restore(report.snapshot);
+        assertArrayEquals(new byte[] { 9, 9, 9 }, picture(1));
+        assertArrayEquals(second, picture(2));
+    }
+
+    @Test
+    public void failedRestoreFailsTheCallAndKeepsTheDatabase() {
+        byte[] first = picture(1);
+        File database = RuntimeEnvironment.application.getDatabasePath(ProductDbHelper.DATABASE_NAME);
+        File missing = new File(database.getParentFile(), ProductDbHelper.DATABASE_NAME + ".missing");
+
+        try {
+            mResolver.call(ProductContract.BASE_CONTENT_URI, ProductContract.METHOD_RESTORE, missing.getPath(), null);
+            fail("Restore of a missing file succeeded");
+        } catch (IllegalStateException expected) {
+        }
+
+        /* The current database is re-opened as it was. */
+        assertArrayEquals(first, picture(1));
+        Cursor cursor = mResolver.query(ProductEntry.CONTENT_URI, new String[] { ProductEntry._ID }, null, null, null);
+        try {
+            assertEquals(PRODUCTS, cursor.getCount());
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private byte[] picture(long id) {
+        Cursor cursor = mResolver.query(ContentUris.withAppendedId(ProductEntry.CONTENT_URI, id),
+                new String[] { ProductEntry.COLUMN_PRODUCT_PICTURE }, null, null, null);
+        try {
+            cursor.moveToFirst();
+            return cursor.getBlob(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Return the rows of the query, ordered by their first two columns, as strings.
+     */
+    private static List<String> dump(SQLiteDatabase db, String sql) {
+        List<String> rows = new ArrayList<>();
+        Cursor cursor = db.rawQuery(sql + " ORDER BY 1, 2", null);
+        try {
+            while (cursor.moveToNext()) {
+                String[] row = new String[cursor.getColumnCount()];
+                for (int i = 0; i < row.length; i++) {
+                    row[i] = cursor.getString(i);
+                }
+                rows.add(Arrays.toString(row));
+            }
+        } finally {
+            cursor.close();
+        }
+
+        return rows;
+    }
+
+    private static void copy(InputStream in, OutputStream out) throws IOException {
+        try {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        } finally {
+            in.close();
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.example.android.inventoryapp.data;
+
+import android.app.Application;
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.database.Cursor;
+import android.os.Bundle;
+
+import com.example.android.inventoryapp.BuildConfig;
+import com.example.android.inventoryapp.data.ProductContract.ProductEntry;
+import com.example.android.inventoryapp.sync.SyncBatch;
+import com.example.android.inventoryapp.sync.SyncChange;
+import com.example.android.inventoryapp.sync.SyncCodec;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests of the merge of pulled batches into the provider.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 25, application = Application.class)
+public class ProductSyncTest {
+    private ContentResolver mResolver;
+
+    @Before
+    public void setUp() {
+        mResolver = ProviderFixture.setUpProvider();
+
+        ProviderFixture.generate(mResolver, 17, 3);
+    }
+
+    @Test
+    public void mergedRowsTakeAChangeVersionWithoutBeingDirty() {
+        long before = maxChangeVersion();
+
+        applyRemote(
+                new SyncChange(globalId(1), SyncChange.FIELD_PRICE, null, 990, 0, null),
+                new SyncChange("remote-product", SyncChange.FIELD_ALL, "Remote", 250, 4, new byte[] { 1 })
+        );
+
+        /* The readers of the changes since a version see both rows, the push does not. */
+        Cursor cursor = mResolver.query(ProductEntry.CONTENT_URI,
+                new String[] { ProductEntry.COLUMN_PRODUCT_GLOBAL_ID, ProductEntry.COLUMN_PRODUCT_DIRTY },
+                ProductEntry.COLUMN_PRODUCT_CHANGE_VERSION + " > ?", new String[] { String.valueOf(before) },
+                ProductEntry._ID);
+        try {
+            assertEquals(2, cursor.getCount());
+            cursor.moveToFirst();
+            assertEquals(globalId(1), cursor.getString(0));
+            assertEquals(0, cursor.getInt(1));
+            cursor.moveToNext();
+            assertEquals("remote-product", cursor.getString(0));
+            assertEquals(0, cursor.getInt(1));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void remoteDeletionsCannotBeUndone() {
+        assertEquals(1, mResolver.delete(ContentUris.withAppendedId(ProductEntry.CONTENT_URI, 1), null, null));
+        applyRemote(SyncChange.deletion(globalId(2)));
+        assertEquals(0, count(2));
+
+        /* Undo skips the deletion another store made, and brings back the local one. */
+        assertEquals(1, undo());
+        assertEquals(1, count(1));
+        assertEquals(0, count(2));
+        assertEquals(0, undo());
+
+        /* The remote deletion goes with the next purge, with its lots and holds. */
+        Bundle purged = mResolver.call(ProductContract.BASE_CONTENT_URI, ProductContract.METHOD_PURGE_DELETED,
+                String.valueOf(10), null);
+        assertEquals(1, purged.getInt(ProductContract.EXTRA_COUNT));
+    }
+
+    private int undo() {
+        return mResolver.call(ProductContract.BASE_CONTENT_URI, ProductContract.METHOD_UNDO_DELETE, null, null)
+                .getInt(ProductContract.EXTRA_COUNT);
+    }
+
+    private void applyRemote(SyncChange... changes) {
+        Bundle extras = new Bundle();
+        extras.putByteArray(ProductContract.EXTRA_BATCH,
+                SyncCodec.toByteArray(new SyncBatch("server", 1, false, Arrays.asList(changes))));
+        mResolver.call(ProductContract.BASE_CONTENT_URI, ProductContract.METHOD_APPLY_REMOTE, null, extras);
+    }
+
+    private String globalId(long id) {
+        Cursor cursor = mResolver.query(ContentUris.withAppendedId(ProductEntry.CONTENT_URI, id),
+                new String[] { ProductEntry.COLUMN_PRODUCT_GLOBAL_ID }, null, null, null);
+        try {
+            cursor.moveToFirst();
+            return cursor.getString(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private int count(long id) {
+        Cursor cursor = mResolver.query(ContentUris.withAppendedId(ProductEntry.CONTENT_URI, id),
+                new String[] { ProductEntry._ID }, null, null, null);
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private long maxChangeVersion() {
+        Cursor cursor = mResolver.query(ProductEntry.CONTENT_URI,
+                new String[] { "MAX(" + ProductEntry.COLUMN_PRODUCT_CHANGE_VERSION + ")" }, null, null, null);
+        try {
+            cursor.moveToFirst();
+            return cursor.getLong(0);
+        } finally {
+            cursor.close();
+        }
+    }
+}
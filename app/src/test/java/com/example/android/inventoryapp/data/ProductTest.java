@@ -0,0 +1,51 @@
+package com.example.android.inventoryapp.data;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests of the prices in cents of {@link Product}.
+ */
+public class ProductTest {
+    @Test
+    public void pricesAreParsedIntoCents() {
+        assertEquals(1200, Product.parsePrice("12"));
+        assertEquals(1250, Product.parsePrice("12.5"));
+        assertEquals(1250, Product.parsePrice("12,50"));
+        assertEquals(1205, Product.parsePrice("12.05"));
+        assertEquals(1200, Product.parsePrice("12."));
+        assertEquals(50, Product.parsePrice(".5"));
+        assertEquals(0, Product.parsePrice("0"));
+    }
+
+    @Test
+    public void invalidPricesAreRefused() {
+        String[] invalid = { "", ".", "-1", "1.005", "1.2.3", "1e3", " 1", "99999999999" };
+        for (String text : invalid) {
+            try {
+                Product.parsePrice(text);
+                fail("Price accepted: " + text);
+            } catch (IllegalArgumentException e) {
+                /* Expected. */
+            }
+        }
+    }
+
+    @Test
+    public void pricesAreFormattedWithTwoDecimals() {
+        assertEquals("12.50", Product.formatPrice(1250));
+        assertEquals("12.05", Product.formatPrice(1205));
+        assertEquals("0.00", Product.formatPrice(0));
+        assertEquals("0.07", Product.formatPrice(7));
+        assertEquals("-1.50", Product.formatPrice(-150));
+    }
+
+    @Test
+    public void formattedPricesParseBack() {
+        for (long cents = 0; cents < 100000; cents += 7) {
+            assertEquals(cents, Product.parsePrice(Product.formatPrice(cents)));
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.example.android.inventoryapp.data;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+
+import com.example.android.inventoryapp.data.ProductContract.CategoryEntry;
+
+import org.robolectric.Robolectric;
+import org.robolectric.RuntimeEnvironment;
+
+/**
+ * Set up of the {@link ProductProvider} tests: a fresh provider, a catalog from
+ * {@link CatalogGenerator} and the categories to file it in.
+ *
+ * Kept with the JVM tests rather than with the generator in the shared tests, since it needs
+ * Robolectric, which the device tests do not have.
+ */
+final class ProviderFixture {
+    private ProviderFixture() {}
+
+    /**
+     * Register a new provider on an empty database.
+     *
+     * @return The resolver to reach it.
+     */
+    static ContentResolver setUpProvider() {
+        Robolectric.setupContentProvider(ProductProvider.class, ProductContract.CONTENT_AUTHORITY);
+        return RuntimeEnvironment.application.getContentResolver();
+    }
+
+    /**
+     * Insert the first count products of the catalog of the given seed, with tiny pictures. The
+     * products get the ids 1 to count.
+     *
+     * @return The generator, to read the products back.
+     */
+    static CatalogGenerator generate(ContentResolver resolver, long seed, int count) {
+        CatalogGenerator generator = new CatalogGenerator(seed, CatalogGenerator.PictureSizes.TINY);
+        generator.generate(resolver, 0, count);
+        return generator;
+    }
+
+    /**
+     * Insert a category under the given parent, null for a root.
+     *
+     * @return The id of the category.
+     */
+    static long insertCategory(ContentResolver resolver, String name, Long parentId) {
+        ContentValues values = new ContentValues();
+        values.put(CategoryEntry.COLUMN_CATEGORY_NAME, name);
+        values.put(CategoryEntry.COLUMN_CATEGORY_PARENT_ID, parentId);
+
+        return ContentUris.parseId(resolver.insert(CategoryEntry.CONTENT_URI, values));
+    }
+}
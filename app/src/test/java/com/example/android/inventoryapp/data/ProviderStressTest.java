@@ -0,0 +1,532 @@
+package com.example.android.inventoryapp.data;
+
+import android.app.Application;
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+
+import com.example.android.inventoryapp.BuildConfig;
+import com.example.android.inventoryapp.R;
+import com.example.android.inventoryapp.data.ProductContract.ProductEntry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Stress run of {@link ProductProvider} on the JVM: reader and writer threads share the provider
+ * for a configured time, while its invariants are checked.
+ *
+ * - No quantity is ever read below 0.
+ * - No quantity change is lost: once the run is over, every product holds its initial quantity
+ *   plus the sales, restocks and edits the provider reported as applied.
+ * - Every write is followed by a change notification within the notification window.
+ *
+ * The calls and latency percentiles of every operation are printed, and written to the file of
+ * the stress.report property, to compare the data layer between versions. The size of the run is
+ * set by system properties, forwarded by Gradle:
+ * -Pstress.readers=8 -Pstress.writers=8 -Pstress.durationMillis=60000 -Pstress.report=stress.csv
+ *
+ * Robolectric runs SQLite in-process, serializing the statements of all connections: absolute
+ * numbers are only comparable between runs on the same machine.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 25, application = Application.class)
+public class ProviderStressTest {
+    private static final String PROPERTY_READERS = "stress.readers";
+    private static final String PROPERTY_WRITERS = "stress.writers";
+    private static final String PROPERTY_DURATION_MILLIS = "stress.durationMillis";
+    private static final String PROPERTY_REPORT = "stress.report";
+
+    private static final String SELL = "sell";
+    private static final String RESTOCK = "restock";
+    private static final String EDIT = "edit";
+    private static final String DELETE = "delete";
+    private static final String BULK_INSERT = "bulk_insert";
+    private static final String QUERY_LIST = "query_list";
+    private static final String QUERY_ITEM = "query_item";
+    private static final String GET_QUANTITIES = "get_quantities";
+
+    private static final int INITIAL_PRODUCTS = 200;
+    private static final int INITIAL_QUANTITY = 50;
+    private static final int BULK_INSERT_SIZE = 5;
+    private static final int BATCH_READ_SIZE = 20;
+
+    /**
+     * Time allowed past the notification window for a notification to be delivered.
+     */
+    private static final long NOTIFICATION_GRACE_MILLIS = 1000;
+
+    private static final long MONITOR_PERIOD_MILLIS = 50;
+
+    /**
+     * Product of the run, with the quantity changes reported as applied by the provider.
+     */
+    private static final class TrackedProduct {
+        final long mId;
+        final String mSku;
+        final int mInitialQuantity;
+        final AtomicLong mDelta = new AtomicLong();
+        final AtomicBoolean mDeleted = new AtomicBoolean();
+
+        TrackedProduct(long id, String sku, int initialQuantity) {
+            mId = id;
+            mSku = sku;
+            mInitialQuantity = initialQuantity;
+        }
+
+        Uri getUri() {
+            return ContentUris.withAppendedId(ProductEntry.CONTENT_URI, mId);
+        }
+    }
+
+    private ContentResolver mResolver;
+    private long mWindowNanos;
+
+    private final List<TrackedProduct> mProducts = new ArrayList<>();
+    private final AtomicInteger mSkuCounter = new AtomicInteger();
+    private final List<String> mViolations = Collections.synchronizedList(new ArrayList<String>());
+    private volatile boolean mRunning;
+
+    /**
+     * {@link System#nanoTime()} of the start of the latest write completed, and of the latest
+     * notification delivered.
+     */
+    private long mLastWriteStart;
+    private volatile long mLastDelivery;
+    private final AtomicInteger mDeliveries = new AtomicInteger();
+
+    @Before
+    public void setUp() {
+        mResolver = ProviderFixture.setUpProvider();
+        mWindowNanos = RuntimeEnvironment.application.getResources()
+                .getInteger(R.integer.provider_notification_window_millis) * 1000000L;
+
+        for (int i = 0; i < INITIAL_PRODUCTS; i += BULK_INSERT_SIZE) {
+            bulkInsert(new StressStats(), new Random(i));
+        }
+    }
+
+    @Test
+    public void invariantsHoldUnderConcurrentLoad() throws Exception {
+        int readers = Integer.getInteger(PROPERTY_READERS, 4);
+        int writers = Integer.getInteger(PROPERTY_WRITERS, 4);
+        long durationMillis = Long.getLong(PROPERTY_DURATION_MILLIS, 5000);
+
+        mResolver.registerContentObserver(ProductEntry.CONTENT_URI, true, new ContentObserver(null) {
+            @Override
+            public void onChange(boolean selfChange) {
+                mLastDelivery = System.nanoTime();
+                mDeliveries.incrementAndGet();
+            }
+        });
+
+        final List<StressStats> allStats = Collections.synchronizedList(new ArrayList<StressStats>());
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < readers + writers; i++) {
+            final boolean writer = i < writers;
+            final Random random = new Random(i);
+            threads.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    StressStats stats = new StressStats();
+                    allStats.add(stats);
+                    try {
+                        while (mRunning) {
+                            if (writer) {
+                                write(stats, random);
+                            } else {
+                                read(stats, random);
+                            }
+                        }
+                    } catch (Throwable t) {
+                        violation("Worker failed: " + t);
+                        mRunning = false;
+                    }
+                }
+            }, (writer ? "writer-" : "reader-") + i));
+        }
+
+        Thread monitor = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                monitorNotifications();
+            }
+        }, "notification-monitor");
+
+        mRunning = true;
+        monitor.start();
+        for (Thread thread : threads) {
+            thread.start();
+        }
+
+        Thread.sleep(durationMillis);
+        mRunning = false;
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        monitor.join();
+
+        /* The last writes are notified once their window has passed. */
+        Thread.sleep(mWindowNanos / 1000000 + NOTIFICATION_GRACE_MILLIS);
+        if (mLastDelivery < lastWriteStart()) {
+            violation("No notification after the last write");
+        }
+
+        checkQuantities();
+
+        StressStats total = new StressStats();
+        for (StressStats stats : allStats) {
+            total.merge(stats);
+        }
+        report(total, readers, writers, durationMillis);
+
+        assertTrue(mViolations.size() + " violations, first: " + (mViolations.isEmpty() ? "" : mViolations.get(0)),
+                mViolations.isEmpty());
+        assertTrue(mDeliveries.get() > 0);
+    }
+
+    private void write(StressStats stats, Random random) {
+        int choice = random.nextInt(100);
+        if (choice < 45) {
+            sell(stats, random);
+        } else if (choice < 65) {
+            restock(stats, random);
+        } else if (choice < 85) {
+            edit(stats, random);
+        } else if (choice < 95) {
+            bulkInsert(stats, random);
+        } else {
+            delete(stats, random);
+        }
+    }
+
+    private void read(StressStats stats, Random random) {
+        int choice = random.nextInt(100);
+        if (choice < 20) {
+            queryList(stats);
+        } else if (choice < 70) {
+            queryItem(stats, random);
+        } else {
+            getQuantities(stats, random);
+        }
+    }
+
+    private void sell(StressStats stats, Random random) {
+        TrackedProduct product = pick(random);
+        int count = 1 + random.nextInt(3);
+
+        Bundle extras = new Bundle();
+        extras.putInt(ProductContract.EXTRA_QUANTITY, count);
+        long start = System.nanoTime();
+        Bundle result = mResolver.call(
+                ProductContract.BASE_CONTENT_URI, ProductContract.METHOD_SELL_SKU, product.mSku, extras);
+        int remaining = result.getInt(ProductContract.EXTRA_QUANTITY, -1);
+        stats.record(SELL, start, remaining != -1);
+
+        if (remaining != -1) {
+            product.mDelta.addAndGet(-count);
+            wrote(start);
+        }
+        if (remaining < -1) {
+            violation("Sale of " + product.mId + " left " + remaining);
+        }
+    }
+
+    private void restock(StressStats stats, Random random) {
+        TrackedProduct product = pick(random);
+        int count = 1 + random.nextInt(5);
+
+        Bundle extras = new Bundle();
+        extras.putLongArray(ProductContract.EXTRA_IDS, new long[] { product.mId });
+        extras.putIntArray(ProductContract.EXTRA_DELTAS, new int[] { count });
+        long start = System.nanoTime();
+        int quantity = mResolver.call(ProductContract.BASE_CONTENT_URI,
+                ProductContract.METHOD_APPLY_QUANTITY_DELTAS, null, extras)
+                .getIntArray(ProductContract.EXTRA_QUANTITIES)[0];
+        stats.record(RESTOCK, start, quantity != -1);
+
+        if (quantity != -1) {
+            product.mDelta.addAndGet(count);
+            wrote(start);
+        }
+    }
+
+    /**
+     * Edit a product as the detail screen does: renamed, and a few units added, over the version read.
+     */
+    private void edit(StressStats stats, Random random) {
+        TrackedProduct product = pick(random);
+        int added = random.nextInt(3);
+
+        long start = System.nanoTime();
+        int quantity = -1;
+        long version = -1;
+        Cursor cursor = mResolver.query(product.getUri(),
+                new String[] { ProductEntry.COLUMN_PRODUCT_QUANTITY, ProductEntry.COLUMN_PRODUCT_VERSION },
+                null, null, null);
+        try {
+            if (cursor.moveToFirst()) {
+                quantity = cursor.getInt(0);
+                version = cursor.getLong(1);
+            }
+        } finally {
+            cursor.close();
+        }
+        if (quantity == -1) {
+            stats.record(EDIT, start, false);
+            return;
+        }
+
+        ContentValues values = new ContentValues();
+        values.put(ProductEntry.COLUMN_PRODUCT_NAME, "Edited " + random.nextInt());
+        boolean saved = VersionedUpdates.applyQuantityDelta(
+                mResolver, product.getUri(), version, quantity, added, values);
+        stats.record(EDIT, start, saved);
+
+        if (saved) {
+            product.mDelta.addAndGet(added);
+            wrote(start);
+        }
+    }
+
+    private void delete(StressStats stats, Random random) {
+        TrackedProduct product = pick(random);
+        if (!product.mDeleted.compareAndSet(false, true)) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        int deleted = mResolver.delete(product.getUri(), null, null);
+        stats.record(DELETE, start, deleted == 1);
+
+        if (deleted != 1) {
+            violation("Delete of live product " + product.mId + " deleted " + deleted + " rows");
+        } else {
+            wrote(start);
+        }
+    }
+
+    private void bulkInsert(StressStats stats, Random random) {
+        ContentValues[] valuesArray = new ContentValues[BULK_INSERT_SIZE];
+        String[] skus = new String[BULK_INSERT_SIZE];
+        int[] quantities = new int[BULK_INSERT_SIZE];
+        for (int i = 0; i < BULK_INSERT_SIZE; i++) {
+            Product product = new Product();
+            product.name = "Stress " + mSkuCounter.get();
+            product.sku = "stress-" + mSkuCounter.incrementAndGet();
+            product.quantity = random.nextInt(INITIAL_QUANTITY);
+            product.priceCents = 100;
+            product.picture = new byte[16];
+            valuesArray[i] = product.toContentValues();
+            skus[i] = product.sku;
+            quantities[i] = product.quantity;
+        }
+
+        long start = System.nanoTime();
+        int inserted = mResolver.bulkInsert(ProductEntry.CONTENT_URI, valuesArray);
+        stats.record(BULK_INSERT, start, inserted == BULK_INSERT_SIZE);
+        if (inserted != BULK_INSERT_SIZE) {
+            violation("Bulk insert of " + BULK_INSERT_SIZE + " products inserted " + inserted);
+            return;
+        }
+        wrote(start);
+
+        Bundle extras = new Bundle();
+        extras.putStringArray(ProductContract.EXTRA_SKUS, skus);
+        long[] ids = mResolver.call(ProductContract.BASE_CONTENT_URI, ProductContract.METHOD_RESOLVE_SKUS, null, extras)
+                .getLongArray(ProductContract.EXTRA_IDS);
+        synchronized (mProducts) {
+            for (int i = 0; i < BULK_INSERT_SIZE; i++) {
+                if (ids[i] == -1) {
+                    violation("Inserted SKU " + skus[i] + " not found");
+                } else {
+                    mProducts.add(new TrackedProduct(ids[i], skus[i], quantities[i]));
+                }
+            }
+        }
+    }
+
+    private void queryList(StressStats stats) {
+        long start = System.nanoTime();
+        Cursor cursor = mResolver.query(ProductEntry.CONTENT_URI,
+                new String[] { ProductEntry._ID, ProductEntry.COLUMN_PRODUCT_QUANTITY }, null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                checkQuantity(cursor.getLong(0), cursor.getInt(1));
+            }
+        } finally {
+            cursor.close();
+        }
+        stats.record(QUERY_LIST, start, true);
+    }
+
+    private void queryItem(StressStats stats, Random random) {
+        TrackedProduct product = pick(random);
+
+        long start = System.nanoTime();
+        Cursor cursor = mResolver.query(product.getUri(),
+                new String[] { ProductEntry.COLUMN_PRODUCT_QUANTITY }, null, null, null);
+        boolean found;
+        try {
+            found = cursor.moveToFirst();
+            if (found) {
+                checkQuantity(product.mId, cursor.getInt(0));
+            }
+        } finally {
+            cursor.close();
+        }
+        stats.record(QUERY_ITEM, start, found);
+    }
+
+    private void getQuantities(StressStats stats, Random random) {
+        long[] ids = new long[BATCH_READ_SIZE];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = pick(random).mId;
+        }
+
+        Bundle extras = new Bundle();
+        extras.putLongArray(ProductContract.EXTRA_IDS, ids);
+        long start = System.nanoTime();
+        int[] quantities = mResolver.call(
+                ProductContract.BASE_CONTENT_URI, ProductContract.METHOD_GET_QUANTITIES, null, extras)
+                .getIntArray(ProductContract.EXTRA_QUANTITIES);
+        stats.record(GET_QUANTITIES, start, true);
+
+        for (int i = 0; i < ids.length; i++) {
+            /* -1 for the deleted products. */
+            if (quantities[i] != -1) {
+                checkQuantity(ids[i], quantities[i]);
+            }
+        }
+    }
+
+    /**
+     * Check, every {@link #MONITOR_PERIOD_MILLIS}, that the writes completed before the notification
+     * window and its grace period have been followed by a notification.
+     */
+    private void monitorNotifications() {
+        long deadlineNanos = mWindowNanos + NOTIFICATION_GRACE_MILLIS * 1000000L;
+        List<long[]> samples = new ArrayList<>();
+
+        while (mRunning) {
+            long now = System.nanoTime();
+            samples.add(new long[] { now, lastWriteStart() });
+
+            while (!samples.isEmpty() && now - samples.get(0)[0] > deadlineNanos) {
+                long writeStart = samples.remove(0)[1];
+                if (mLastDelivery < writeStart) {
+                    violation("No notification " + (now - writeStart) / 1000000 + " ms after a write");
+                }
+            }
+
+            try {
+                Thread.sleep(MONITOR_PERIOD_MILLIS);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Compare the final quantities with the initial ones plus the changes applied.
+     */
+    private void checkQuantities() {
+        Map<Long, Integer> quantities = new HashMap<>();
+        Cursor cursor = mResolver.query(ProductEntry.CONTENT_URI,
+                new String[] { ProductEntry._ID, ProductEntry.COLUMN_PRODUCT_QUANTITY }, null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                quantities.put(cursor.getLong(0), cursor.getInt(1));
+            }
+        } finally {
+            cursor.close();
+        }
+
+        synchronized (mProducts) {
+            int live = 0;
+            for (TrackedProduct product : mProducts) {
+                Integer quantity = quantities.get(product.mId);
+                if (product.mDeleted.get()) {
+                    if (quantity != null) {
+                        violation("Deleted product " + product.mId + " still listed");
+                    }
+                    continue;
+                }
+
+                live++;
+                long expected = product.mInitialQuantity + product.mDelta.get();
+                if (quantity == null) {
+                    violation("Product " + product.mId + " lost");
+                } else if (quantity != expected) {
+                    violation("Product " + product.mId + " holds " + quantity + " units, expected " + expected);
+                }
+            }
+            assertEquals(live, quantities.size());
+        }
+    }
+
+    private void checkQuantity(long id, int quantity) {
+        if (quantity < 0) {
+            violation("Product " + id + " read with quantity " + quantity);
+        }
+    }
+
+    private TrackedProduct pick(Random random) {
+        synchronized (mProducts) {
+            return mProducts.get(random.nextInt(mProducts.size()));
+        }
+    }
+
+    private synchronized void wrote(long startNanos) {
+        mLastWriteStart = Math.max(mLastWriteStart, startNanos);
+    }
+
+    private synchronized long lastWriteStart() {
+        return mLastWriteStart;
+    }
+
+    private void violation(String message) {
+        mViolations.add(message);
+    }
+
+    private void report(StressStats stats, int readers, int writers, long durationMillis) throws IOException {
+        System.out.println("Provider stress run: " + readers + " readers, " + writers + " writers, "
+                + durationMillis + " ms, " + mDeliveries.get() + " notifications");
+        stats.write(new OutputStreamWriter(System.out), durationMillis);
+
+        String path = System.getProperty(PROPERTY_REPORT);
+        if (path != null) {
+            Writer out = new FileWriter(path);
+            try {
+                stats.write(out, durationMillis);
+            } finally {
+                out.close();
+            }
+        }
+    }
+}
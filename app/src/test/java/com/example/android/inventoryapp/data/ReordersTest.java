@@ -0,0 +1,179 @@
+package com.example.android.inventoryapp.data;
+
+import android.app.Application;
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+
+import com.example.android.inventoryapp.BuildConfig;
+import com.example.android.inventoryapp.data.ProductContract.ProductEntry;
+import com.example.android.inventoryapp.data.ProductContract.ReorderEntry;
+import com.example.android.inventoryapp.data.ProductContract.SupplierEntry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of the reorder list: its incremental refresh and its grouping by supplier.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 25, application = Application.class)
+public class ReordersTest {
+    private static final int PRODUCTS = 30;
+
+    private ContentResolver mResolver;
+    private long mAcme;
+    private long mBolt;
+
+    @Before
+    public void setUp() {
+        mResolver = ProviderFixture.setUpProvider();
+
+        ProviderFixture.generate(mResolver, 13, PRODUCTS);
+
+        mAcme = insertSupplier("Acme", "orders@acme.example");
+        mBolt = insertSupplier("Bolt", "orders@bolt.example");
+
+        /* Every fifth product without supplier, the others alternating between the two. */
+        for (long id = 1; id <= PRODUCTS; id++) {
+            ContentValues values = new ContentValues();
+            if (id % 5 == 0) {
+                values.putNull(ProductEntry.COLUMN_PRODUCT_SUPPLIER_ID);
+            } else {
+                values.put(ProductEntry.COLUMN_PRODUCT_SUPPLIER_ID, id % 2 == 0 ? mAcme : mBolt);
+            }
+            /* A few products out of stock, so that every supplier has some to reorder. */
+            if (id <= 6) {
+                values.put(ProductEntry.COLUMN_PRODUCT_QUANTITY, 0);
+            }
+            update(id, values);
+        }
+    }
+
+    @Test
+    public void listHoldsTheProductsAtTheirReorderLevelGroupedBySupplier() {
+        assertEquals(PRODUCTS, refresh());
+
+        Map<Long, Long> expected = lowProducts();
+        Map<Long, Long> reorders = new HashMap<>();
+        Cursor cursor = mResolver.query(ReorderEntry.CONTENT_URI, null, null, null, null);
+        try {
+            long previous = -1;
+            while (cursor.moveToNext()) {
+                long productId = cursor.getLong(cursor.getColumnIndexOrThrow(ReorderEntry.COLUMN_PRODUCT_ID));
+                int supplierColumn = cursor.getColumnIndexOrThrow(ReorderEntry.COLUMN_SUPPLIER_ID);
+                long supplierId = cursor.isNull(supplierColumn) ? -1 : cursor.getLong(supplierColumn);
+                String name = cursor.getString(cursor.getColumnIndexOrThrow(ReorderEntry.COLUMN_SUPPLIER_NAME));
+
+                /* The rows of a supplier are together, with the name of their supplier. */
+                assertTrue(supplierId >= previous);
+                previous = supplierId;
+                assertEquals(supplierId == mAcme ? "Acme" : supplierId == mBolt ? "Bolt" : null, name);
+                reorders.put(productId, supplierId);
+            }
+        } finally {
+            cursor.close();
+        }
+
+        assertEquals(expected, reorders);
+        assertTrue(reorders.containsValue(-1L));
+        assertTrue(reorders.containsValue(mAcme));
+        assertTrue(reorders.containsValue(mBolt));
+    }
+
+    @Test
+    public void refreshEvaluatesOnlyTheProductsWrittenSince() {
+        refresh();
+        assertEquals(0, refresh());
+
+        /* One product sold out, one restocked, one moved to another supplier. */
+        ContentValues values = new ContentValues();
+        values.put(ProductEntry.COLUMN_PRODUCT_QUANTITY, 0);
+        update(PRODUCTS, values);
+        values.put(ProductEntry.COLUMN_PRODUCT_QUANTITY, 1000);
+        update(1, values);
+        values.clear();
+        values.put(ProductEntry.COLUMN_PRODUCT_SUPPLIER_ID, mAcme);
+        update(3, values);
+
+        assertEquals(3, refresh());
+        Map<Long, Long> reorders = reorders();
+        assertEquals(lowProducts(), reorders);
+        assertEquals(Long.valueOf(-1), reorders.get((long) PRODUCTS));
+        assertEquals(Long.valueOf(mAcme), reorders.get(3L));
+        assertTrue(!reorders.containsKey(1L));
+
+        /* Deleted products leave the list at once. */
+        mResolver.delete(ContentUris.withAppendedId(ProductEntry.CONTENT_URI, 2), null, null);
+        assertTrue(!reorders().containsKey(2L));
+        assertEquals(0, refresh());
+    }
+
+    private int refresh() {
+        return mResolver.call(ProductContract.BASE_CONTENT_URI, ProductContract.METHOD_REFRESH_REORDERS, null, null)
+                .getInt(ProductContract.EXTRA_COUNT);
+    }
+
+    private long insertSupplier(String name, String email) {
+        ContentValues values = new ContentValues();
+        values.put(SupplierEntry.COLUMN_SUPPLIER_NAME, name);
+        values.put(SupplierEntry.COLUMN_SUPPLIER_EMAIL, email);
+        Uri uri = mResolver.insert(SupplierEntry.CONTENT_URI, values);
+
+        return ContentUris.parseId(uri);
+    }
+
+    private void update(long productId, ContentValues values) {
+        mResolver.update(ContentUris.withAppendedId(ProductEntry.CONTENT_URI, productId), values, null, null);
+    }
+
+    /**
+     * Return the supplier of each product of the reorder list, -1 for none.
+     */
+    private Map<Long, Long> reorders() {
+        Map<Long, Long> reorders = new HashMap<>();
+        Cursor cursor = mResolver.query(ReorderEntry.CONTENT_URI, null, null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                int supplierColumn = cursor.getColumnIndexOrThrow(ReorderEntry.COLUMN_SUPPLIER_ID);
+                reorders.put(cursor.getLong(cursor.getColumnIndexOrThrow(ReorderEntry.COLUMN_PRODUCT_ID)),
+                        cursor.isNull(supplierColumn) ? -1 : cursor.getLong(supplierColumn));
+            }
+        } finally {
+            cursor.close();
+        }
+
+        return reorders;
+    }
+
+    /**
+     * Return the supplier of each product at or below its reorder level, -1 for none, read from
+     * the products themselves.
+     */
+    private Map<Long, Long> lowProducts() {
+        Map<Long, Long> low = new HashMap<>();
+        Cursor cursor = mResolver.query(ProductEntry.CONTENT_URI, new String[] { ProductEntry._ID,
+                ProductEntry.COLUMN_PRODUCT_SUPPLIER_ID }, ProductEntry.COLUMN_PRODUCT_QUANTITY + " <= "
+                + ProductEntry.COLUMN_PRODUCT_REORDER_LEVEL, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                low.put(cursor.getLong(0), cursor.isNull(1) ? -1 : cursor.getLong(1));
+            }
+        } finally {
+            cursor.close();
+        }
+
+        return low;
+    }
+}
@@ -0,0 +1,168 @@
+package com.example.android.inventoryapp.data;
+
+import android.app.Application;
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.database.Cursor;
+import android.os.Bundle;
+
+import com.example.android.inventoryapp.BuildConfig;
+import com.example.android.inventoryapp.data.ProductContract.ProductEntry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests of the reservations: holds out of reach of the sales, confirmation, release and expiry.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 25, application = Application.class)
+public class ReservationsTest {
+    private static final long TTL_MILLIS = 60 * 1000;
+
+    private ContentResolver mResolver;
+    private int mQuantity;
+
+    @Before
+    public void setUp() {
+        mResolver = ProviderFixture.setUpProvider();
+
+        CatalogGenerator generator = ProviderFixture.generate(mResolver, 5, 2);
+
+        /* Ten units more than generated, so that the product is in stock whatever the seed. */
+        new ProductBatchClient(mResolver).applyQuantityDeltas(new long[] { 1 }, new int[] { 10 });
+        mQuantity = generator.product(0).quantity + 10;
+    }
+
+    @Test
+    public void heldUnitsAreOutOfReachOfTheSales() {
+        Bundle hold = reserve(1, mQuantity - 1, TTL_MILLIS);
+        long id = hold.getLong(ProductContract.EXTRA_RESERVATION_ID);
+        assertNotEquals(-1, id);
+        assertEquals(1, hold.getInt(ProductContract.EXTRA_QUANTITY));
+        assertEquals(mQuantity - 1, reserved(1));
+
+        /* Only the unit left can be held or sold. */
+        assertEquals(-1, reserve(1, 2, TTL_MILLIS).getLong(ProductContract.EXTRA_RESERVATION_ID));
+        assertEquals(-1, sell(2));
+        assertArrayEquals(new int[] { -1 },
+                new ProductBatchClient(mResolver).applyQuantityDeltas(new long[] { 1 }, new int[] { -2 }));
+        assertEquals(mQuantity - 1, sell(1));
+
+        /* Confirming sells the held units, once. */
+        assertEquals(0, confirm(id));
+        assertEquals(0, reserved(1));
+        assertEquals(-1, confirm(id));
+    }
+
+    @Test
+    public void salesOfNoUnitsOrOfNegativeUnitsAreRejected() {
+        for (int count : new int[] { 0, -3 }) {
+            try {
+                sell(count);
+                fail("Sale of " + count + " units accepted");
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+
+        /* The stock is as it was. */
+        assertEquals(mQuantity - 1, sell(1));
+    }
+
+    @Test
+    public void releasedAndExpiredHoldsAreAvailableAgain() throws InterruptedException {
+        long released = reserve(1, 2, TTL_MILLIS).getLong(ProductContract.EXTRA_RESERVATION_ID);
+        long expired = reserve(1, 3, 1).getLong(ProductContract.EXTRA_RESERVATION_ID);
+        assertEquals(5, reserved(1));
+
+        assertEquals(1, release(released));
+        assertEquals(0, release(released));
+        assertEquals(3, reserved(1));
+
+        Thread.sleep(5);
+        assertEquals(-1, confirm(expired));
+        Bundle swept = mResolver.call(ProductContract.BASE_CONTENT_URI,
+                ProductContract.METHOD_EXPIRE_RESERVATIONS, "10", null);
+        assertEquals(1, swept.getInt(ProductContract.EXTRA_COUNT));
+        assertEquals(0, reserved(1));
+
+        /* An expired hold the sweeper has not reached yet does not count either. */
+        reserve(1, mQuantity, 1);
+        Thread.sleep(5);
+        assertNotEquals(-1, reserve(1, mQuantity, TTL_MILLIS).getLong(ProductContract.EXTRA_RESERVATION_ID));
+        assertEquals(mQuantity, reserved(1));
+    }
+
+    @Test
+    public void concurrentHoldsNeverExceedTheStock() throws InterruptedException {
+        final AtomicInteger held = new AtomicInteger();
+        Thread[] clerks = new Thread[4];
+        for (int i = 0; i < clerks.length; i++) {
+            clerks[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < mQuantity; j++) {
+                        if (reserve(1, 1, TTL_MILLIS).getLong(ProductContract.EXTRA_RESERVATION_ID) != -1) {
+                            held.incrementAndGet();
+                        }
+                    }
+                }
+            });
+            clerks[i].start();
+        }
+        for (Thread clerk : clerks) {
+            clerk.join();
+        }
+
+        assertEquals(mQuantity, held.get());
+        assertEquals(mQuantity, reserved(1));
+    }
+
+    private Bundle reserve(long productId, int count, long ttlMillis) {
+        Bundle extras = new Bundle();
+        extras.putInt(ProductContract.EXTRA_QUANTITY, count);
+        extras.putLong(ProductContract.EXTRA_TTL_MILLIS, ttlMillis);
+
+        return mResolver.call(ProductContract.BASE_CONTENT_URI, ProductContract.METHOD_RESERVE,
+                String.valueOf(productId), extras);
+    }
+
+    private int confirm(long id) {
+        return mResolver.call(ProductContract.BASE_CONTENT_URI, ProductContract.METHOD_CONFIRM_RESERVATION,
+                String.valueOf(id), null).getInt(ProductContract.EXTRA_QUANTITY);
+    }
+
+    private int release(long id) {
+        return mResolver.call(ProductContract.BASE_CONTENT_URI, ProductContract.METHOD_RELEASE_RESERVATION,
+                String.valueOf(id), null).getInt(ProductContract.EXTRA_COUNT);
+    }
+
+    private int sell(int count) {
+        Bundle extras = new Bundle();
+        extras.putInt(ProductContract.EXTRA_QUANTITY, count);
+
+        return mResolver.call(ProductContract.BASE_CONTENT_URI, ProductContract.METHOD_SELL_SKU,
+                CatalogGenerator.sku(0), extras).getInt(ProductContract.EXTRA_QUANTITY);
+    }
+
+    private int reserved(long productId) {
+        Cursor cursor = mResolver.query(ContentUris.withAppendedId(ProductEntry.CONTENT_URI, productId),
+                new String[] { ProductEntry.COLUMN_PRODUCT_RESERVED }, null, null, null);
+        try {
+            cursor.moveToFirst();
+            return cursor.getInt(0);
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.example.android.inventoryapp.data;
+
+import android.app.Application;
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.os.Bundle;
+
+import com.example.android.inventoryapp.BuildConfig;
+import com.example.android.inventoryapp.data.ProductContract.AdjustmentEntry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.Collections;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of the stocktakes: reconciliation of the counts with the database, and their corrections.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 25, application = Application.class)
+public class StocktakeTest {
+    private static final int PRODUCTS = 50;
+
+    private ContentResolver mResolver;
+    private int[] mQuantities;
+
+    @Before
+    public void setUp() {
+        mResolver = ProviderFixture.setUpProvider();
+
+        CatalogGenerator generator = ProviderFixture.generate(mResolver, 3, PRODUCTS);
+        mQuantities = new int[PRODUCTS];
+        for (int i = 0; i < PRODUCTS; i++) {
+            mQuantities[i] = generator.product(i).quantity;
+        }
+    }
+
+    @Test
+    public void countsAreReconciledAndCorrected() {
+        /* Small chunks, so that the SKUs and the corrections take several calls. */
+        Stocktake stocktake = new Stocktake(mResolver, 42, 64);
+
+        /* Product 1 matches, 2 is typed over, 3 is scanned unit by unit, 4 by SKU, 5 has a wrong scan. */
+        stocktake.set(1, mQuantities[0]);
+        stocktake.set(2, mQuantities[1] + 2);
+        for (int i = 0; i < mQuantities[2] + 1; i++) {
+            stocktake.add(3, 1);
+        }
+        stocktake.set(CatalogGenerator.sku(3), mQuantities[3] + 5);
+        stocktake.add(5, mQuantities[4]);
+        stocktake.add(5, 3);
+        stocktake.add(5, -3);
+        stocktake.add(999, 4);
+        stocktake.add("0000000000000", 1);
+
+        Stocktake.Variances variances = stocktake.reconcile();
+        assertEquals(2, variances.getMatchedCount());
+        assertEquals(3, variances.size());
+        assertArrayEquals(new long[] { 999 }, variances.getUnknownIds());
+        assertEquals(Collections.singletonList("0000000000000"), variances.getUnknownSkus());
+        for (int i = 0; i < variances.size(); i++) {
+            long id = variances.getId(i);
+            assertEquals(mQuantities[(int) id - 1], variances.getExpected(i));
+        }
+
+        /* Product 2 is restocked after the reconciliation: its count is stale, it is not corrected. */
+        new ProductBatchClient(mResolver).applyQuantityDeltas(new long[] { 2 }, new int[] { 1 });
+
+        long[] skipped = stocktake.commit(variances);
+        assertArrayEquals(new long[] { 2 }, skipped);
+
+        int[] quantities = new ProductBatchClient(mResolver).getQuantities(new long[] { 2, 3, 4 });
+        assertEquals(mQuantities[1] + 1, quantities[0]);
+        assertEquals(mQuantities[2] + 1, quantities[1]);
+        assertEquals(mQuantities[3] + 5, quantities[2]);
+
+        Cursor cursor = mResolver.query(AdjustmentEntry.CONTENT_URI,
+                new String[] { AdjustmentEntry.COLUMN_PRODUCT_ID, AdjustmentEntry.COLUMN_QUANTITY_BEFORE,
+                        AdjustmentEntry.COLUMN_QUANTITY_AFTER },
+                AdjustmentEntry.COLUMN_STOCKTAKE_ID + " = ?", new String[] { "42" }, AdjustmentEntry._ID);
+        try {
+            assertEquals(2, cursor.getCount());
+            cursor.moveToFirst();
+            assertEquals(3, cursor.getLong(0));
+            assertEquals(mQuantities[2], cursor.getInt(1));
+            assertEquals(mQuantities[2] + 1, cursor.getInt(2));
+        } finally {
+            cursor.close();
+        }
+
+        /* Once corrected, only the stale count still differs. */
+        variances = stocktake.reconcile();
+        assertEquals(1, variances.size());
+        assertEquals(2, variances.getId(0));
+    }
+
+    @Test
+    public void largeCountIsReconciledInBulk() {
+        Stocktake stocktake = new Stocktake(mResolver);
+        int[] counted = new int[PRODUCTS];
+        Random random = new Random(5);
+        for (int line = 0; line < 100000; line++) {
+            int index = random.nextInt(PRODUCTS);
+            if (random.nextBoolean()) {
+                stocktake.add(index + 1, 1);
+            } else {
+                stocktake.add(CatalogGenerator.sku(index), 1);
+            }
+            counted[index]++;
+        }
+        assertEquals(100000, stocktake.getLineCount());
+
+        long start = System.nanoTime();
+        Stocktake.Variances variances = stocktake.reconcile();
+        assertEquals(0, stocktake.commit(variances).length);
+        long elapsedMillis = (System.nanoTime() - start) / 1000000;
+
+        /* A query per line would take minutes, the reconciliation reads one cursor and commits in chunks. */
+        assertTrue("Reconciled in " + elapsedMillis + " ms", elapsedMillis < 5000);
+
+        long[] ids = new long[PRODUCTS];
+        for (int i = 0; i < PRODUCTS; i++) {
+            ids[i] = i + 1;
+        }
+        assertArrayEquals(counted, new ProductBatchClient(mResolver).getQuantities(ids));
+    }
+
+    @Test
+    public void staleCorrectionIsNotApplied() {
+        Bundle extras = new Bundle();
+        extras.putLongArray(ProductContract.EXTRA_IDS, new long[] { 1, 1 });
+        extras.putIntArray(ProductContract.EXTRA_EXPECTED_QUANTITIES, new int[] { mQuantities[0], mQuantities[0] });
+        extras.putIntArray(ProductContract.EXTRA_QUANTITIES, new int[] { mQuantities[0] + 1, mQuantities[0] + 2 });
+
+        Bundle result = mResolver.call(ProductContract.BASE_CONTENT_URI, ProductContract.METHOD_APPLY_STOCKTAKE, "7", extras);
+
+        /* The first correction changed the quantity the second one expected. */
+        assertArrayEquals(new int[] { mQuantities[0] + 1, -1 }, result.getIntArray(ProductContract.EXTRA_QUANTITIES));
+        assertEquals(1, result.getInt(ProductContract.EXTRA_COUNT));
+    }
+}
@@ -0,0 +1,179 @@
+package com.example.android.inventoryapp.data;
+
+import android.app.Application;
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.example.android.inventoryapp.BuildConfig;
+import com.example.android.inventoryapp.data.ProductContract.ProductEntry;
+import com.example.android.inventoryapp.data.ProductContract.ValuationEntry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.Calendar;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of the valuation history: the bucket of the day kept by the writes, and the downsampling.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 25, application = Application.class)
+public class ValuationTest {
+    private static final long DAY = TimeUnit.DAYS.toMillis(1);
+
+    private ContentResolver mResolver;
+
+    @Before
+    public void setUp() {
+        mResolver = ProviderFixture.setUpProvider();
+
+        ProviderFixture.generate(mResolver, 7, 30);
+    }
+
+    @Test
+    public void bucketOfTheDayFollowsTheWrites() {
+        assertArrayEquals(recompute(), today());
+
+        new ProductBatchClient(mResolver).applyQuantityDeltas(new long[] { 1, 2 }, new int[] { 7, -1 });
+        ContentValues values = new ContentValues();
+        values.put(ProductEntry.COLUMN_PRODUCT_PRICE, 1234);
+        values.put(ProductEntry.COLUMN_PRODUCT_QUANTITY, 9);
+        mResolver.update(ContentUris.withAppendedId(ProductEntry.CONTENT_URI, 3), values, null, null);
+        assertArrayEquals(recompute(), today());
+
+        /* Deleted products leave the valuation, and come back with their undo. */
+        long[] before = today();
+        mResolver.delete(ContentUris.withAppendedId(ProductEntry.CONTENT_URI, 4), null, null);
+        assertArrayEquals(recompute(), today());
+        mResolver.call(ProductContract.BASE_CONTENT_URI, ProductContract.METHOD_UNDO_DELETE, null, null);
+        assertArrayEquals(before, today());
+    }
+
+    @Test
+    public void oldBucketsAreDownsampled() {
+        ProductDbHelper helper = new ProductDbHelper(RuntimeEnvironment.application, "valuation_compaction.db");
+        try {
+            SQLiteDatabase db = helper.getWritableDatabase();
+            db.delete(ValuationEntry.TABLE_NAME, null, null);
+
+            /* Two years of days, the units counting the days. */
+            long now = utc(2017, Calendar.JUNE, 15);
+            long first = now - 730 * DAY;
+            for (int day = 0; day < 730; day++) {
+                ContentValues values = new ContentValues();
+                values.put(ValuationEntry.COLUMN_BUCKET_START, first + day * DAY);
+                values.put(ValuationEntry.COLUMN_RESOLUTION, ValuationEntry.RESOLUTION_DAY);
+                values.put(ValuationEntry.COLUMN_UNITS, day);
+                values.put(ValuationEntry.COLUMN_VALUE, day * 100L);
+                db.insertOrThrow(ValuationEntry.TABLE_NAME, null, values);
+            }
+
+            assertTrue(ValuationOperations.compact(db, now) > 600);
+            assertEquals(0, ValuationOperations.compact(db, now));
+
+            Cursor cursor = ValuationOperations.query(db, new String[] { ValuationEntry.COLUMN_BUCKET_START,
+                    ValuationEntry.COLUMN_RESOLUTION, ValuationEntry.COLUMN_UNITS }, null, null, 0, now, null);
+            try {
+                int resolution = ValuationEntry.RESOLUTION_MONTH;
+                while (cursor.moveToNext()) {
+                    long start = cursor.getLong(0);
+                    int units = cursor.getInt(2);
+
+                    /* The resolutions get finer towards now, each bucket closing with its last day. */
+                    assertTrue(cursor.getInt(1) <= resolution);
+                    resolution = cursor.getInt(1);
+                    long end = resolution == ValuationEntry.RESOLUTION_DAY ? start + DAY
+                            : resolution == ValuationEntry.RESOLUTION_WEEK ? start + 7 * DAY
+                            : lastSundayEnd(start);
+                    assertEquals((end - first) / DAY - 1, units);
+                }
+                assertEquals(ValuationEntry.RESOLUTION_DAY, resolution);
+            } finally {
+                cursor.close();
+            }
+
+            /* Daily buckets are kept for the recent days only. */
+            cursor = ValuationOperations.query(db, new String[] { ValuationEntry.COLUMN_RESOLUTION },
+                    ValuationEntry.COLUMN_RESOLUTION + " = ?",
+                    new String[] { String.valueOf(ValuationEntry.RESOLUTION_DAY) }, 0, now, null);
+            try {
+                assertTrue(cursor.getCount() >= 35 && cursor.getCount() < 42);
+            } finally {
+                cursor.close();
+            }
+        } finally {
+            helper.close();
+        }
+    }
+
+    /**
+     * Return the units and value of the live products, summed from the products.
+     */
+    private long[] recompute() {
+        long units = 0;
+        long value = 0;
+        Cursor cursor = mResolver.query(ProductEntry.CONTENT_URI,
+                new String[] { ProductEntry.COLUMN_PRODUCT_QUANTITY, ProductEntry.COLUMN_PRODUCT_PRICE },
+                null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                units += cursor.getInt(0);
+                value += cursor.getInt(0) * cursor.getLong(1);
+            }
+        } finally {
+            cursor.close();
+        }
+
+        return new long[] { units, value };
+    }
+
+    /**
+     * Return the units and value of the latest bucket, through the provider.
+     */
+    private long[] today() {
+        long now = System.currentTimeMillis();
+        Cursor cursor = mResolver.query(ValuationEntry.buildRangeUri(now - DAY, now + DAY),
+                new String[] { ValuationEntry.COLUMN_UNITS, ValuationEntry.COLUMN_VALUE }, null, null, null);
+        try {
+            assertTrue(cursor.moveToLast());
+            return new long[] { cursor.getLong(0), cursor.getLong(1) };
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static long utc(int year, int month, int day) {
+        Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        calendar.clear();
+        calendar.set(year, month, day);
+
+        return calendar.getTimeInMillis();
+    }
+
+    /**
+     * Return the end of the last week (Monday to Sunday) ending within the month starting at the given time.
+     */
+    private static long lastSundayEnd(long monthStart) {
+        Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        calendar.setTimeInMillis(monthStart);
+        calendar.add(Calendar.MONTH, 1);
+        while (calendar.get(Calendar.DAY_OF_WEEK) != Calendar.MONDAY) {
+            calendar.add(Calendar.DAY_OF_MONTH, -1);
+        }
+
+        return calendar.getTimeInMillis();
+    }
+}
@@ -0,0 +1,554 @@
+package com.example.android.inventoryapp.data;
+
+import android.app.Application;
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+
+import com.example.android.inventoryapp.BuildConfig;
+import com.example.android.inventoryapp.data.ProductContract.ProductEntry;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Replay of workload traces recorded by {@link WorkloadTracer} against a fresh data layer on the
+ * JVM, reporting for every operation the recorded and replayed latency percentiles.
+ *
+ * The trace pulled from a device (a trace file, or the traces directory of the app) is given by a
+ * system property, forwarded by Gradle: -PworkloadTrace=traces. Without it, a workload is recorded
+ * and replayed in the test, to check the round trip.
+ *
+ * The fresh database holds a synthetic catalog as large as the highest product id of the trace
+ * (at most {@link #MAX_CATALOG_PRODUCTS}), and the recorded ids are mapped onto it. Redacted values
+ * are synthesized: text of the recorded length, unique so that SKUs do not collide, random blobs of
+ * the recorded size. Records are replayed one at a time in the order they started, the concurrency
+ * of the device is not reproduced. The device and the JVM differ: compare replays of the same trace
+ * between two versions of the data layer, not the recorded latencies with the replayed ones.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 25, application = Application.class)
+public class WorkloadReplayTest {
+    private static final String PROPERTY_TRACE = "workloadTrace";
+
+    private static final int MAX_CATALOG_PRODUCTS = 1000;
+    private static final long CATALOG_SEED = 1;
+
+    private static final String SECRET_NAME = "Secret house blend";
+    private static final String SCANNED_SKU = CatalogGenerator.sku(2);
+
+    private ContentResolver mResolver;
+
+    /**
+     * Latencies of the records, as recorded and as replayed, per operation.
+     */
+    private static final class Report {
+        final StressStats mRecorded = new StressStats();
+        final StressStats mReplayed = new StressStats();
+        final Set<String> mOperations = new TreeSet<>();
+        final Map<String, Integer> mSkipped = new TreeMap<>();
+    }
+
+    @Before
+    public void setUp() {
+        mResolver = ProviderFixture.setUpProvider();
+    }
+
+    @Test
+    public void replaysTheGivenTrace() throws IOException {
+        String path = System.getProperty(PROPERTY_TRACE);
+        Assume.assumeTrue(path != null);
+
+        File trace = new File(path);
+        List<WorkloadTrace.Record> records = read(
+                trace.isDirectory() ? WorkloadTrace.listFiles(trace) : Collections.singletonList(trace));
+        assertFalse("No record in " + trace, records.isEmpty());
+
+        print(replay(records, CatalogGenerator.PictureSizes.DEFAULT));
+    }
+
+    @Test
+    public void recordedWorkloadIsRedactedAndReplays() throws IOException {
+        Context context = RuntimeEnvironment.application;
+        new CatalogGenerator(CATALOG_SEED, CatalogGenerator.PictureSizes.TINY).generate(mResolver, 0, 20);
+
+        setWorkloadTrace(true);
+        recordWorkload();
+        setWorkloadTrace(false);
+
+        List<File> files = WorkloadTrace.listFiles(WorkloadTracer.getDirectory(context));
+        assertEquals(1, files.size());
+        String bytes = new String(readBytes(files.get(0)), "ISO-8859-1");
+        assertFalse(bytes.contains(SECRET_NAME));
+        assertFalse(bytes.contains(SCANNED_SKU));
+
+        List<WorkloadTrace.Record> records = read(files);
+        List<String> operations = new ArrayList<>();
+        for (WorkloadTrace.Record record : records) {
+            operations.add(key(record));
+        }
+        assertEquals(Arrays.asList(
+                "query /products", "query /products/#", "query /products/sku/*", "insert /products",
+                "update /products/#", "call sell_sku", "call apply_quantity_deltas", "delete /products/#"), operations);
+
+        WorkloadTrace.Record item = records.get(1);
+        assertEquals(3, item.mRowId);
+        assertEquals(1, item.mResult);
+        assertEquals(-1, records.get(2).mRowId);
+        WorkloadTrace.Record update = records.get(4);
+        assertEquals(WorkloadTrace.TAG_TEXT, update.mValues.get(0).get(0).mValue.mTag);
+        assertEquals(SECRET_NAME.length(), update.mValues.get(0).get(0).mValue.mLength);
+        assertEquals(5, records.get(5).mRowId);
+
+        Report report = replay(records, CatalogGenerator.PictureSizes.TINY);
+        print(report);
+        for (String operation : operations) {
+            assertEquals(operation, 0, report.mReplayed.get(operation).getFailures());
+        }
+        assertTrue(report.mSkipped.isEmpty());
+    }
+
+    private void setWorkloadTrace(boolean enabled) {
+        mResolver.call(ProductContract.BASE_CONTENT_URI, ProductContract.METHOD_SET_WORKLOAD_TRACE,
+                String.valueOf(enabled), null);
+    }
+
+    /**
+     * A short session: the list, the detail of a product, a scanned lookup, a new product, an edit,
+     * a scanned sale, a restock and a deletion.
+     */
+    private void recordWorkload() {
+        mResolver.query(ProductEntry.CONTENT_URI,
+                new String[] { ProductEntry._ID, ProductEntry.COLUMN_PRODUCT_NAME, ProductEntry.COLUMN_PRODUCT_QUANTITY },
+                null, null, ProductEntry.COLUMN_PRODUCT_NAME).close();
+        mResolver.query(ContentUris.withAppendedId(ProductEntry.CONTENT_URI, 3), null, null, null, null).close();
+        mResolver.query(ProductEntry.buildSkuUri(SCANNED_SKU), null, null, null, null).close();
+
+        Product product = new Product();
+        product.name = "New product";
+        product.sku = "4006381333931";
+        product.quantity = 4;
+        product.priceCents = 250;
+        product.picture = new byte[100];
+        mResolver.insert(ProductEntry.CONTENT_URI, product.toContentValues());
+
+        ContentValues values = new ContentValues();
+        values.put(ProductEntry.COLUMN_PRODUCT_NAME, SECRET_NAME);
+        mResolver.update(ContentUris.withAppendedId(ProductEntry.CONTENT_URI, 3), values, null, null);
+
+        mResolver.call(ProductContract.BASE_CONTENT_URI, ProductContract.METHOD_SELL_SKU, CatalogGenerator.sku(4), null);
+
+        Bundle extras = new Bundle();
+        extras.putLongArray(ProductContract.EXTRA_IDS, new long[] { 6 });
+        extras.putIntArray(ProductContract.EXTRA_DELTAS, new int[] { 10 });
+        mResolver.call(ProductContract.BASE_CONTENT_URI, ProductContract.METHOD_APPLY_QUANTITY_DELTAS, null, extras);
+
+        mResolver.delete(ContentUris.withAppendedId(ProductEntry.CONTENT_URI, 7), null, null);
+    }
+
+    /**
+     * Read the records of the files, in the order the operations started.
+     */
+    private static List<WorkloadTrace.Record> read(List<File> files) throws IOException {
+        final List<WorkloadTrace.Record> records = new ArrayList<>();
+        final List<Long> starts = new ArrayList<>();
+        for (File file : files) {
+            InputStream in = new FileInputStream(file);
+            try {
+                WorkloadTrace.Reader reader = new WorkloadTrace.Reader(in);
+                for (WorkloadTrace.Record record = reader.next(); record != null; record = reader.next()) {
+                    records.add(record);
+                    starts.add(reader.getStartTimeMillis() * 1000 + record.mStartMicros);
+                }
+            } finally {
+                in.close();
+            }
+        }
+
+        Integer[] order = new Integer[records.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return Long.compare(starts.get(a), starts.get(b));
+            }
+        });
+
+        List<WorkloadTrace.Record> sorted = new ArrayList<>(records.size());
+        for (Integer index : order) {
+            sorted.add(records.get(index));
+        }
+
+        return sorted;
+    }
+
+    private static byte[] readBytes(File file) throws IOException {
+        byte[] bytes = new byte[(int) file.length()];
+        InputStream in = new FileInputStream(file);
+        try {
+            int read = 0;
+            while (read < bytes.length) {
+                read += in.read(bytes, read, bytes.length - read);
+            }
+        } finally {
+            in.close();
+        }
+
+        return bytes;
+    }
+
+    /**
+     * Return the operation of the record, with its URI template relative to the authority.
+     */
+    private static String key(WorkloadTrace.Record record) {
+        if (record.mOperation == WorkloadTrace.OP_CALL) {
+            return "call " + record.mTarget;
+        }
+
+        String base = ProductContract.BASE_CONTENT_URI.toString();
+        String target = record.mTarget.startsWith(base) ? record.mTarget.substring(base.length()) : record.mTarget;
+        return WorkloadTrace.describe(record.mOperation) + " " + target;
+    }
+
+    private Report replay(List<WorkloadTrace.Record> records, CatalogGenerator.PictureSizes pictureSizes) {
+        long maxRowId = 1;
+        for (WorkloadTrace.Record record : records) {
+            maxRowId = Math.max(maxRowId, record.mRowId);
+        }
+
+        Replayer replayer = new Replayer((int) Math.min(maxRowId, MAX_CATALOG_PRODUCTS));
+        replayer.resetDatabase();
+        new CatalogGenerator(CATALOG_SEED, pictureSizes).generate(mResolver, 0, replayer.mCatalogSize);
+
+        Report report = new Report();
+        for (WorkloadTrace.Record record : records) {
+            String key = key(record);
+            if (!replayer.canReplay(record)) {
+                Integer skipped = report.mSkipped.get(key);
+                report.mSkipped.put(key, skipped == null ? 1 : skipped + 1);
+                continue;
+            }
+
+            report.mOperations.add(key);
+            report.mRecorded.get(key).record(record.mDurationMicros * 1000, true);
+            long start = System.nanoTime();
+            boolean succeeded;
+            try {
+                replayer.execute(record);
+                succeeded = true;
+            } catch (RuntimeException e) {
+                succeeded = false;
+            }
+            report.mReplayed.record(key, start, succeeded);
+        }
+
+        return report;
+    }
+
+    private static void print(Report report) {
+        System.out.println(String.format("%-40s %7s %7s %10s %10s %10s %10s",
+                "operation", "calls", "failed", "rec_p50", "rep_p50", "rec_p99", "rep_p99"));
+        for (String key : report.mOperations) {
+            StressStats.Operation recorded = report.mRecorded.get(key);
+            StressStats.Operation replayed = report.mReplayed.get(key);
+            System.out.println(String.format("%-40s %7d %7d %8dus %8dus %8dus %8dus",
+                    key, replayed.getCount(), replayed.getFailures(),
+                    recorded.percentile(0.50) / 1000, replayed.percentile(0.50) / 1000,
+                    recorded.percentile(0.99) / 1000, replayed.percentile(0.99) / 1000));
+        }
+        for (Map.Entry<String, Integer> entry : report.mSkipped.entrySet()) {
+            System.out.println(String.format("%-40s %7d skipped", entry.getKey(), entry.getValue()));
+        }
+    }
+
+    /**
+     * Re-executes records against the provider, synthesizing their redacted values.
+     */
+    private final class Replayer {
+        final int mCatalogSize;
+        private final Random mRandom = new Random(CATALOG_SEED);
+        private long mTokens;
+
+        Replayer(int catalogSize) {
+            mCatalogSize = catalogSize;
+        }
+
+        /**
+         * Replace the database with an empty one, through the restore of the provider.
+         */
+        void resetDatabase() {
+            Context context = RuntimeEnvironment.application;
+            File database = context.getDatabasePath(ProductDbHelper.DATABASE_NAME);
+            File prepared = new File(database.getParentFile(), "replay.db");
+            new ProductDbHelper(context, prepared.getName()).getWritableDatabase().close();
+
+            mResolver.call(ProductContract.BASE_CONTENT_URI, ProductContract.METHOD_RESTORE, prepared.getPath(), null);
+        }
+
+        /**
+         * Return false for the calls whose redacted arguments cannot be synthesized (database
+         * files, sync batches), or that would change the replay itself.
+         */
+        boolean canReplay(WorkloadTrace.Record record) {
+            if (record.mOperation != WorkloadTrace.OP_CALL) {
+                return true;
+            }
+
+            switch (record.mTarget) {
+                case ProductContract.METHOD_RESTORE:
+                case ProductContract.METHOD_ACKNOWLEDGE_PUSH:
+                case ProductContract.METHOD_APPLY_REMOTE:
+                case ProductContract.METHOD_SET_WORKLOAD_TRACE:
+                    return false;
+
+                default:
+                    return true;
+            }
+        }
+
+        void execute(WorkloadTrace.Record record) {
+            switch (record.mOperation) {
+                case WorkloadTrace.OP_QUERY:
+                    Cursor cursor = mResolver.query(uri(record), record.mProjection, record.mSelection,
+                            selectionArgs(record), record.mSortOrder);
+                    try {
+                        cursor.getCount();
+                    } finally {
+                        cursor.close();
+                    }
+                    break;
+
+                case WorkloadTrace.OP_INSERT:
+                    if (mResolver.insert(uri(record), values(record.mValues.get(0))) == null) {
+                        throw new IllegalStateException("Insertion failed");
+                    }
+                    break;
+
+                case WorkloadTrace.OP_BULK_INSERT:
+                    ContentValues[] rows = new ContentValues[record.mValues.size()];
+                    for (int i = 0; i < rows.length; i++) {
+                        rows[i] = values(record.mValues.get(i));
+                    }
+                    mResolver.bulkInsert(uri(record), rows);
+                    break;
+
+                case WorkloadTrace.OP_UPDATE:
+                    mResolver.update(uri(record), values(record.mValues.get(0)), record.mSelection, selectionArgs(record));
+                    break;
+
+                case WorkloadTrace.OP_DELETE:
+                    mResolver.delete(uri(record), record.mSelection, selectionArgs(record));
+                    break;
+
+                case WorkloadTrace.OP_CALL:
+                    call(record);
+                    break;
+
+                default:
+                    throw new IllegalArgumentException("Unknown operation " + record.mOperation);
+            }
+        }
+
+        private void call(WorkloadTrace.Record record) {
+            Object argument = synthesize(record.mArgument);
+            /* Scanned SKUs are those of the catalog products standing for the recorded ones. */
+            if (ProductContract.METHOD_SELL_SKU.equals(record.mTarget) && record.mRowId > 0) {
+                argument = CatalogGenerator.sku((int) mapId(record.mRowId) - 1);
+            }
+
+            Bundle extras = null;
+            List<WorkloadTrace.Entry> entries = record.mValues.get(0);
+            if (!entries.isEmpty()) {
+                extras = new Bundle();
+                for (WorkloadTrace.Entry entry : entries) {
+                    Object value = synthesize(entry.mValue);
+                    if (ProductContract.EXTRA_IDS.equals(entry.mName) && value instanceof long[]) {
+                        long[] ids = (long[]) value;
+                        for (int i = 0; i < ids.length; i++) {
+                            ids[i] = mapId(ids[i]);
+                        }
+                    }
+                    put(extras, entry.mName, value);
+                }
+            }
+
+            mResolver.call(ProductContract.BASE_CONTENT_URI, record.mTarget,
+                    argument == null ? null : String.valueOf(argument), extras);
+        }
+
+        /**
+         * Return the URI of the record, with its id mapped onto the catalog. Expected versions are
+         * dropped, the versions of the replay are not those of the device.
+         */
+        private Uri uri(WorkloadTrace.Record record) {
+            String target = record.mTarget;
+            if (target.endsWith("#")) {
+                target = target.substring(0, target.length() - 1) + mapId(record.mRowId);
+            } else if (target.endsWith("*")) {
+                target = target.substring(0, target.length() - 1) + CatalogGenerator.sku(mRandom.nextInt(mCatalogSize));
+            }
+
+            Uri.Builder builder = Uri.parse(target).buildUpon();
+            for (WorkloadTrace.Entry parameter : record.mParameters) {
+                if (!ProductContract.QUERY_PARAMETER_EXPECTED_VERSION.equals(parameter.mName)) {
+                    builder.appendQueryParameter(parameter.mName, String.valueOf(synthesize(parameter.mValue)));
+                }
+            }
+
+            return builder.build();
+        }
+
+        private long mapId(long id) {
+            return id <= 0 ? id : (id - 1) % mCatalogSize + 1;
+        }
+
+        private String[] selectionArgs(WorkloadTrace.Record record) {
+            if (record.mSelectionArgs == null) {
+                return null;
+            }
+
+            String[] args = new String[record.mSelectionArgs.length];
+            for (int i = 0; i < args.length; i++) {
+                Object value = synthesize(record.mSelectionArgs[i]);
+                args[i] = value == null ? null : String.valueOf(value);
+            }
+
+            return args;
+        }
+
+        private ContentValues values(List<WorkloadTrace.Entry> entries) {
+            ContentValues values = new ContentValues();
+            for (WorkloadTrace.Entry entry : entries) {
+                Object value = synthesize(entry.mValue);
+                if (value == null) {
+                    values.putNull(entry.mName);
+                } else if (value instanceof Integer) {
+                    values.put(entry.mName, (Integer) value);
+                } else if (value instanceof Long) {
+                    values.put(entry.mName, (Long) value);
+                } else if (value instanceof Double) {
+                    values.put(entry.mName, (Double) value);
+                } else if (value instanceof Boolean) {
+                    values.put(entry.mName, (Boolean) value);
+                } else if (value instanceof byte[]) {
+                    values.put(entry.mName, (byte[]) value);
+                } else {
+                    values.put(entry.mName, String.valueOf(value));
+                }
+            }
+
+            return values;
+        }
+
+        private void put(Bundle extras, String key, Object value) {
+            if (value instanceof Integer) {
+                extras.putInt(key, (Integer) value);
+            } else if (value instanceof Long) {
+                extras.putLong(key, (Long) value);
+            } else if (value instanceof Double) {
+                extras.putDouble(key, (Double) value);
+            } else if (value instanceof Boolean) {
+                extras.putBoolean(key, (Boolean) value);
+            } else if (value instanceof byte[]) {
+                extras.putByteArray(key, (byte[]) value);
+            } else if (value instanceof int[]) {
+                extras.putIntArray(key, (int[]) value);
+            } else if (value instanceof long[]) {
+                extras.putLongArray(key, (long[]) value);
+            } else if (value instanceof String[]) {
+                extras.putStringArray(key, (String[]) value);
+            } else if (value != null) {
+                extras.putString(key, String.valueOf(value));
+            }
+        }
+
+        /**
+         * Return a value standing for the redacted one: numbers as recorded, text and blobs of the
+         * recorded length.
+         */
+        private Object synthesize(WorkloadTrace.Value value) {
+            switch (value.mTag) {
+                case WorkloadTrace.TAG_INT:
+                    return (int) value.mNumber;
+                case WorkloadTrace.TAG_LONG:
+                    return value.mNumber;
+                case WorkloadTrace.TAG_DOUBLE:
+                    return Double.longBitsToDouble(value.mNumber);
+                case WorkloadTrace.TAG_BOOLEAN:
+                    return value.mNumber != 0;
+                case WorkloadTrace.TAG_NUMERIC_TEXT:
+                    return String.valueOf(value.mNumber);
+                case WorkloadTrace.TAG_STRING:
+                    return value.mText;
+                case WorkloadTrace.TAG_TEXT:
+                    return token(value.mLength);
+                case WorkloadTrace.TAG_BLOB:
+                    byte[] blob = new byte[value.mLength];
+                    mRandom.nextBytes(blob);
+                    return blob;
+                case WorkloadTrace.TAG_INT_ARRAY:
+                    int[] ints = new int[value.mLength];
+                    for (int i = 0; i < ints.length; i++) {
+                        ints[i] = (int) value.mElements[i];
+                    }
+                    return ints;
+                case WorkloadTrace.TAG_LONG_ARRAY:
+                    return value.mElements.clone();
+                case WorkloadTrace.TAG_TEXT_ARRAY:
+                    String[] texts = new String[value.mLength];
+                    for (int i = 0; i < texts.length; i++) {
+                        texts[i] = token((int) value.mElements[i]);
+                    }
+                    return texts;
+                default:
+                    return null;
+            }
+        }
+
+        /**
+         * Return a text of the given length, unique as long as the length allows.
+         */
+        private String token(int length) {
+            String counter = Long.toString(mTokens++, 36);
+            if (counter.length() >= length) {
+                return counter.substring(counter.length() - length);
+            }
+
+            StringBuilder token = new StringBuilder(length);
+            for (int i = counter.length(); i < length; i++) {
+                token.append('x');
+            }
+            return token.append(counter).toString();
+        }
+    }
+}
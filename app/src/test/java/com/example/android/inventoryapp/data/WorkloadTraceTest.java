@@ -0,0 +1,168 @@
+package com.example.android.inventoryapp.data;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of the trace format of {@link WorkloadTrace}: records read back as written, with their
+ * values redacted.
+ */
+public class WorkloadTraceTest {
+    private static final String PRODUCTS = "content://com.example.android.inventoryapp/products";
+
+    /**
+     * Write a query of a product and the update of its name, as the detail screen does.
+     */
+    private static byte[] writeDetailEdit(String name) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        WorkloadTrace.Writer writer = new WorkloadTrace.Writer(out, 1234);
+
+        writer.beginRecord(WorkloadTrace.OP_QUERY, 100, 850, PRODUCTS + "/#", 42, 1);
+        writer.writeCount(0);
+        writer.writeOptionalCount(new String[] { "name", "quantity" });
+        writer.writeString("name");
+        writer.writeString("quantity");
+        writer.writeString(null);
+        writer.writeOptionalCount(null);
+        writer.writeString(null);
+
+        writer.beginRecord(WorkloadTrace.OP_UPDATE, 90, 2100, PRODUCTS + "/#", 42, 1);
+        writer.writeCount(1);
+        writer.writeString("expected_version");
+        writer.writeParameter("7");
+        writer.writeString(null);
+        writer.writeOptionalCount(null);
+        writer.writeCount(1);
+        writer.writeCount(3);
+        writer.writeString("name");
+        writer.writeValue(name);
+        writer.writeString("quantity");
+        writer.writeValue(-3);
+        writer.writeString("picture");
+        writer.writeValue(new byte[5000]);
+
+        return out.toByteArray();
+    }
+
+    @Test
+    public void recordsReadBackRedacted() throws IOException {
+        byte[] trace = writeDetailEdit("Secret blend");
+        WorkloadTrace.Reader reader = new WorkloadTrace.Reader(new ByteArrayInputStream(trace));
+        assertEquals(1234, reader.getStartTimeMillis());
+
+        WorkloadTrace.Record query = reader.next();
+        assertEquals(WorkloadTrace.OP_QUERY, query.mOperation);
+        assertEquals(100, query.mStartMicros);
+        assertEquals(850, query.mDurationMicros);
+        assertEquals(PRODUCTS + "/#", query.mTarget);
+        assertEquals(42, query.mRowId);
+        assertEquals(1, query.mResult);
+        assertArrayEquals(new String[] { "name", "quantity" }, query.mProjection);
+        assertNull(query.mSelection);
+        assertNull(query.mSelectionArgs);
+
+        /* Operations are recorded as they end: the second one started earlier. */
+        WorkloadTrace.Record update = reader.next();
+        assertEquals(WorkloadTrace.OP_UPDATE, update.mOperation);
+        assertEquals(90, update.mStartMicros);
+        assertEquals("expected_version", update.mParameters.get(0).mName);
+        assertEquals(WorkloadTrace.TAG_NUMERIC_TEXT, update.mParameters.get(0).mValue.mTag);
+        assertEquals(7, update.mParameters.get(0).mValue.mNumber);
+
+        List<WorkloadTrace.Entry> values = update.mValues.get(0);
+        assertEquals("name", values.get(0).mName);
+        assertEquals(WorkloadTrace.TAG_TEXT, values.get(0).mValue.mTag);
+        assertEquals("Secret blend".length(), values.get(0).mValue.mLength);
+        assertEquals(WorkloadTrace.TAG_INT, values.get(1).mValue.mTag);
+        assertEquals(-3, values.get(1).mValue.mNumber);
+        assertEquals(WorkloadTrace.TAG_BLOB, values.get(2).mValue.mTag);
+        assertEquals(5000, values.get(2).mValue.mLength);
+
+        assertNull(reader.next());
+
+        assertFalse(new String(trace, "ISO-8859-1").contains("Secret"));
+    }
+
+    @Test
+    public void stringsAreWrittenOncePerFile() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        WorkloadTrace.Writer writer = new WorkloadTrace.Writer(out, 0);
+        for (int i = 0; i < 100; i++) {
+            writer.beginRecord(WorkloadTrace.OP_CALL, i * 1000, 300, "sell_sku", 42, -1);
+            writer.writeValue("4006381333931");
+            writer.writeCount(1);
+            writer.writeString("quantity");
+            writer.writeValue(1);
+        }
+
+        /* After the first, a sale takes about twenty bytes, its barcode included. */
+        assertTrue(out.size() < 100 * 24);
+    }
+
+    @Test
+    public void truncatedRecordEndsTheFile() throws IOException {
+        byte[] trace = writeDetailEdit("Secret blend");
+        WorkloadTrace.Reader reader = new WorkloadTrace.Reader(
+                new ByteArrayInputStream(Arrays.copyOf(trace, trace.length - 3)));
+
+        assertEquals(WorkloadTrace.OP_QUERY, reader.next().mOperation);
+        assertNull(reader.next());
+    }
+
+    @Test
+    public void onlyCanonicalNumbersAreKept() {
+        assertTrue(WorkloadTrace.isCanonicalNumber("0"));
+        assertTrue(WorkloadTrace.isCanonicalNumber("-12"));
+        assertTrue(WorkloadTrace.isCanonicalNumber("4006381333931"));
+        assertFalse(WorkloadTrace.isCanonicalNumber(""));
+        assertFalse(WorkloadTrace.isCanonicalNumber("007"));
+        assertFalse(WorkloadTrace.isCanonicalNumber("-0"));
+        assertFalse(WorkloadTrace.isCanonicalNumber("12.50"));
+        assertFalse(WorkloadTrace.isCanonicalNumber("12345678901234567890"));
+    }
+
+    @Test
+    public void skusOfThePathsAreTemplated() {
+        assertEquals("/products/#", WorkloadTrace.template(Arrays.asList("products", "42")));
+        assertEquals("/products/changes", WorkloadTrace.template(Arrays.asList("products", "changes")));
+
+        /* Scanned SKUs never reach the string table, numeric barcodes included. */
+        assertEquals("/products/sku/*", WorkloadTrace.template(Arrays.asList("products", "sku", "TEA-EARL-GREY")));
+        assertEquals("/products/sku/*", WorkloadTrace.template(Arrays.asList("products", "sku", "4006381333931")));
+    }
+
+    @Test
+    public void filesAreListedOldestFirst() throws IOException {
+        File directory = File.createTempFile("traces", "");
+        assertTrue(directory.delete() && directory.mkdir());
+        try {
+            for (String name : new String[] { "workload.trace", "workload.2.trace", "workload.1.trace", "other.txt" }) {
+                assertTrue(new File(directory, name).createNewFile());
+            }
+
+            List<String> names = new ArrayList<>();
+            for (File file : WorkloadTrace.listFiles(directory)) {
+                names.add(file.getName());
+            }
+            assertEquals(Arrays.asList("workload.2.trace", "workload.1.trace", "workload.trace"), names);
+        } finally {
+            for (File file : directory.listFiles()) {
+                file.delete();
+            }
+            directory.delete();
+        }
+    }
+}
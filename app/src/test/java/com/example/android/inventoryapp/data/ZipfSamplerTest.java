@@ -0,0 +1,57 @@
+package com.example.android.inventoryapp.data;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of the access skew of {@link ZipfSampler}.
+ */
+public class ZipfSamplerTest {
+    private static final int SAMPLES = 200000;
+
+    @Test
+    public void ranksFollowTheirProbabilities() {
+        ZipfSampler sampler = new ZipfSampler(1000, 1.0);
+        int[] counts = new int[sampler.size()];
+        Random random = new Random(1);
+        for (int i = 0; i < SAMPLES; i++) {
+            counts[sampler.next(random)]++;
+        }
+
+        /* Rank 1 is drawn half as often as rank 0, rank 9 a tenth as often. */
+        assertEquals(0.5, sampler.probability(1) / sampler.probability(0), 1e-9);
+        assertEquals(sampler.probability(0) * SAMPLES, counts[0], SAMPLES * 0.01);
+        assertEquals(sampler.probability(9) * SAMPLES, counts[9], SAMPLES * 0.005);
+
+        /* The top 1% of the ranks gets over a third of the traffic. */
+        int top = 0;
+        for (int i = 0; i < 10; i++) {
+            top += counts[i];
+        }
+        assertTrue(top > SAMPLES / 3);
+    }
+
+    @Test
+    public void exponentZeroIsUniform() {
+        ZipfSampler sampler = new ZipfSampler(4, 0);
+        for (int i = 0; i < 4; i++) {
+            assertEquals(0.25, sampler.probability(i), 1e-9);
+        }
+    }
+
+    @Test
+    public void samplesAreDeterministic() {
+        ZipfSampler sampler = new ZipfSampler(100000, 1.1);
+        Random first = new Random(42);
+        Random second = new Random(42);
+        for (int i = 0; i < 1000; i++) {
+            int rank = sampler.next(first);
+            assertEquals(rank, sampler.next(second));
+            assertTrue(rank >= 0 && rank < sampler.size());
+        }
+    }
+}
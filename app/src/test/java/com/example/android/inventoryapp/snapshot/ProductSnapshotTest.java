@@ -0,0 +1,240 @@
+package com.example.android.inventoryapp.snapshot;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests of the product list snapshot format and of its incremental update.
+ */
+public class ProductSnapshotTest {
+    private static final int PRODUCT_COUNT = 100000;
+
+    private File mFile;
+
+    @Before
+    public void setUp() throws IOException {
+        mFile = File.createTempFile("product_snapshot", ".bin");
+    }
+
+    @After
+    public void tearDown() {
+        mFile.delete();
+    }
+
+    private static Iterator<ProductSnapshot.Record> products(final int count) {
+        return new Iterator<ProductSnapshot.Record>() {
+            private int mId;
+
+            @Override
+            public boolean hasNext() { return mId < count; }
+
+            @Override
+            public ProductSnapshot.Record next() {
+                mId++;
+                return new ProductSnapshot.Record(mId, "Product " + mId, mId % 50, (mId % 100) * 100 + 50);
+            }
+
+            @Override
+            public void remove() { throw new UnsupportedOperationException(); }
+        };
+    }
+
+    private static void corrupt(File file, long position) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            randomAccessFile.seek(position);
+            int value = randomAccessFile.read();
+            randomAccessFile.seek(position);
+            randomAccessFile.write(value ^ 0xFF);
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    @Test
+    public void largeSnapshotIsSmallAndOpensFast() throws IOException {
+        assertEquals(PRODUCT_COUNT, ProductSnapshot.write(mFile, 42, products(PRODUCT_COUNT)));
+        assertTrue("Snapshot size " + mFile.length(), mFile.length() < 48L * PRODUCT_COUNT);
+
+        long start = System.nanoTime();
+        ProductSnapshot snapshot = ProductSnapshot.open(mFile);
+        ProductSnapshot.Record record = new ProductSnapshot.Record();
+        for (int position = 0; position < 20; position++) {
+            assertTrue(snapshot.read(position, record));
+        }
+        long elapsedMillis = (System.nanoTime() - start) / 1000000;
+
+        try {
+            /* Opening checks the header and the index only, the first screen reads a few records. */
+            assertTrue("Opened in " + elapsedMillis + " ms", elapsedMillis < 100);
+            assertEquals(42, snapshot.getDataVersion());
+            assertEquals(PRODUCT_COUNT, snapshot.getCount());
+
+            assertTrue(snapshot.read(PRODUCT_COUNT - 1, record));
+            assertEquals(PRODUCT_COUNT, record.id);
+            assertEquals("Product " + PRODUCT_COUNT, record.name);
+            assertEquals(PRODUCT_COUNT % 50, record.quantity);
+            assertEquals(50, record.priceCents);
+        } finally {
+            snapshot.close();
+        }
+    }
+
+    @Test
+    public void corruptRecordIsDetected() throws IOException {
+        ProductSnapshot.write(mFile, 1, products(10));
+        corrupt(mFile, mFile.length() - 3);
+
+        ProductSnapshot snapshot = ProductSnapshot.open(mFile);
+        try {
+            ProductSnapshot.Record record = new ProductSnapshot.Record();
+            assertTrue(snapshot.read(0, record));
+            assertFalse(snapshot.read(9, record));
+        } finally {
+            snapshot.close();
+        }
+    }
+
+    @Test
+    public void corruptIndexOrVersionIsRejected() throws IOException {
+        /* An offset of the index. */
+        ProductSnapshot.write(mFile, 1, products(10));
+        corrupt(mFile, 30);
+        try {
+            ProductSnapshot.open(mFile).close();
+            fail("Corrupt index accepted");
+        } catch (IOException expected) {
+        }
+
+        /* The format version. */
+        ProductSnapshot.write(mFile, 1, products(10));
+        corrupt(mFile, 7);
+        try {
+            ProductSnapshot.open(mFile).close();
+            fail("Unknown format version accepted");
+        } catch (IOException expected) {
+        }
+
+        /* A truncated file. */
+        ProductSnapshot.write(mFile, 1, products(10));
+        RandomAccessFile truncated = new RandomAccessFile(mFile, "rw");
+        try {
+            truncated.setLength(10);
+        } finally {
+            truncated.close();
+        }
+        try {
+            ProductSnapshot.open(mFile).close();
+            fail("Truncated snapshot accepted");
+        } catch (IOException expected) {
+        }
+    }
+
+    @Test
+    public void mergeAppliesChangesAndDeletions() throws IOException {
+        ProductSnapshot.write(mFile, 1, products(5));
+
+        /* Product 2 deleted, product 3 changed, product 6 inserted, product 7 written after the changes. */
+        List<ProductSnapshot.Record> changed = Arrays.asList(
+                new ProductSnapshot.Record(3, "Tea", 7, 200),
+                new ProductSnapshot.Record(6, "Coffee", 1, 300)
+        );
+        long[] liveIds = { 1, 3, 4, 5, 6, 7 };
+
+        ProductSnapshot previous = ProductSnapshot.open(mFile);
+        SnapshotMerger merger;
+        try {
+            merger = new SnapshotMerger(previous, liveIds, changed.iterator());
+            assertEquals(5, ProductSnapshot.write(mFile, 2, merger));
+        } finally {
+            previous.close();
+        }
+        assertEquals(1, merger.getMissingCount());
+
+        ProductSnapshot snapshot = ProductSnapshot.open(mFile);
+        try {
+            assertEquals(2, snapshot.getDataVersion());
+
+            List<String> names = new ArrayList<>();
+            ProductSnapshot.Record record = new ProductSnapshot.Record();
+            for (int position = 0; position < snapshot.getCount(); position++) {
+                assertTrue(snapshot.read(position, record));
+                names.add(record.id + ":" + record.name + ":" + record.quantity);
+            }
+
+            assertEquals(Arrays.asList("1:Product 1:1", "3:Tea:7", "4:Product 4:4", "5:Product 5:5", "6:Coffee:1"), names);
+        } finally {
+            snapshot.close();
+        }
+    }
+
+    @Test
+    public void patchRewritesOnlyTheChangedRecords() throws IOException {
+        ProductSnapshot.write(mFile, 1, products(PRODUCT_COUNT));
+        long length = mFile.length();
+
+        /* The last product is not in the snapshot and is skipped. */
+        List<ProductSnapshot.Record> changed = Arrays.asList(
+                new ProductSnapshot.Record(3, "Tea", 7, 200),
+                new ProductSnapshot.Record(PRODUCT_COUNT, "Product X", 8, 450),
+                new ProductSnapshot.Record(PRODUCT_COUNT + 9, "Coffee", 1, 300)
+        );
+        assertTrue(ProductSnapshot.patch(mFile, 2, changed.iterator()));
+        assertEquals(length, mFile.length());
+
+        ProductSnapshot snapshot = ProductSnapshot.open(mFile);
+        try {
+            assertEquals(2, snapshot.getDataVersion());
+            assertEquals(PRODUCT_COUNT, snapshot.getCount());
+
+            ProductSnapshot.Record record = new ProductSnapshot.Record();
+            assertTrue(snapshot.read(2, record));
+            assertEquals("3:Tea:7:200", record.id + ":" + record.name + ":" + record.quantity + ":" + record.priceCents);
+            assertTrue(snapshot.read(3, record));
+            assertEquals("Product 4", record.name);
+            assertTrue(snapshot.read(PRODUCT_COUNT - 1, record));
+            assertEquals("Product X", record.name);
+            assertEquals(450, record.priceCents);
+        } finally {
+            snapshot.close();
+        }
+
+        /* A longer name does not fit in place, the snapshot is left at its version. */
+        changed = Arrays.asList(new ProductSnapshot.Record(5, "A much longer product name", 1, 100));
+        assertFalse(ProductSnapshot.patch(mFile, 3, changed.iterator()));
+        snapshot = ProductSnapshot.open(mFile);
+        try {
+            assertEquals(2, snapshot.getDataVersion());
+        } finally {
+            snapshot.close();
+        }
+    }
+
+    @Test
+    public void hasIdsComparesTheProducts() throws IOException {
+        ProductSnapshot.write(mFile, 1, products(3));
+
+        ProductSnapshot snapshot = ProductSnapshot.open(mFile);
+        try {
+            assertTrue(snapshot.hasIds(new long[] { 1, 2, 3 }));
+            assertFalse(snapshot.hasIds(new long[] { 1, 2 }));
+            assertFalse(snapshot.hasIds(new long[] { 1, 2, 4 }));
+        } finally {
+            snapshot.close();
+        }
+    }
+}
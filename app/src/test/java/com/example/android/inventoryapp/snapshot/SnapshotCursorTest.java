@@ -0,0 +1,82 @@
+package com.example.android.inventoryapp.snapshot;
+
+import android.app.Application;
+
+import com.example.android.inventoryapp.BuildConfig;
+import com.example.android.inventoryapp.data.ProductContract.ProductEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of the product list cursor over a snapshot.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 25, application = Application.class)
+public class SnapshotCursorTest {
+    private File mFile;
+
+    @Before
+    public void setUp() throws IOException {
+        mFile = File.createTempFile("product_snapshot", ".bin");
+        ProductSnapshot.write(mFile, 1, Arrays.asList(
+                new ProductSnapshot.Record(1, "Tea", 3, 1250),
+                new ProductSnapshot.Record(2, "Coffee", 4, 799)
+        ).iterator());
+    }
+
+    @After
+    public void tearDown() {
+        mFile.delete();
+    }
+
+    @Test
+    public void pricesAreReadAsCents() throws IOException {
+        SnapshotCursor cursor = new SnapshotCursor(ProductSnapshot.open(mFile));
+        try {
+            int price = cursor.getColumnIndexOrThrow(ProductEntry.COLUMN_PRODUCT_PRICE);
+            assertTrue(cursor.moveToFirst());
+            assertEquals(1250, cursor.getLong(price));
+            assertEquals("1250", cursor.getString(price));
+            assertFalse(cursor.isCorrupt());
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void corruptRecordReadsAsAnEmptyRow() throws IOException {
+        /* The last byte of the name of the second record. */
+        RandomAccessFile randomAccessFile = new RandomAccessFile(mFile, "rw");
+        try {
+            randomAccessFile.seek(mFile.length() - 1);
+            randomAccessFile.write('x');
+        } finally {
+            randomAccessFile.close();
+        }
+
+        SnapshotCursor cursor = new SnapshotCursor(ProductSnapshot.open(mFile));
+        try {
+            assertTrue(cursor.moveToPosition(1));
+            assertEquals(0, cursor.getLong(cursor.getColumnIndexOrThrow(ProductEntry.COLUMN_PRODUCT_PRICE)));
+            assertEquals(0, cursor.getInt(cursor.getColumnIndexOrThrow(ProductEntry.COLUMN_PRODUCT_QUANTITY)));
+            assertEquals("", cursor.getString(cursor.getColumnIndexOrThrow(ProductEntry.COLUMN_PRODUCT_NAME)));
+            assertTrue(cursor.isCorrupt());
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.example.android.inventoryapp.startup;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of the startup tracing, and check of a device startup report against the budget.
+ */
+public class StartupBudgetTest {
+    /**
+     * System property with the path of a startup report pulled from a device, see startup-budget.properties.
+     */
+    private static final String PROPERTY_STARTUP_REPORT = "startupReport";
+
+    private static final class FakeClock implements StartupTracer.Clock {
+        long mNanos;
+
+        @Override
+        public long nanoTime() { return mNanos; }
+
+        void advance(long millis) { mNanos += millis * 1000000; }
+    }
+
+    private static StartupBudget loadBudget() throws IOException {
+        InputStream in = StartupBudgetTest.class.getResourceAsStream("/startup-budget.properties");
+        assertNotNull(in);
+        try {
+            Properties properties = new Properties();
+            properties.load(in);
+            return StartupBudget.fromProperties(properties);
+        } finally {
+            in.close();
+        }
+    }
+
+    @Test
+    public void onlyFirstOccurrenceIsRecorded() {
+        FakeClock clock = new FakeClock();
+        StartupTracer tracer = new StartupTracer(clock);
+
+        clock.advance(10);
+        StartupTracer.Section section = tracer.begin(StartupTracer.FIRST_QUERY);
+        clock.advance(30);
+        section.end();
+
+        /* A second query is not part of the startup. */
+        section = tracer.begin(StartupTracer.FIRST_QUERY);
+        clock.advance(500);
+        section.end();
+
+        clock.advance(5);
+        tracer.mark(StartupTracer.FIRST_FRAME);
+        tracer.mark(StartupTracer.FIRST_FRAME);
+
+        StartupReport report = tracer.report();
+        assertEquals(2, report.getEntries().size());
+        assertEquals(10, report.get(StartupTracer.FIRST_QUERY).startMillis);
+        assertEquals(30, report.get(StartupTracer.FIRST_QUERY).durationMillis);
+        assertEquals(545, report.get(StartupTracer.FIRST_FRAME).getEndMillis());
+    }
+
+    @Test
+    public void reportRoundTrips() throws IOException {
+        FakeClock clock = new FakeClock();
+        StartupTracer tracer = new StartupTracer(clock);
+        StartupTracer.Section section = tracer.begin(StartupTracer.DATABASE_OPEN);
+        clock.advance(42);
+        section.end();
+        tracer.mark(StartupTracer.FIRST_FRAME);
+
+        String text = tracer.report().toString();
+        assertEquals(text, StartupReport.parse(new StringReader(text)).toString());
+    }
+
+    @Test
+    public void regressionsAreReported() throws IOException {
+        StartupBudget budget = loadBudget();
+
+        FakeClock clock = new FakeClock();
+        StartupTracer tracer = new StartupTracer(clock);
+        for (String name : new String[] {
+                StartupTracer.PROVIDER_ON_CREATE,
+                StartupTracer.APPLICATION_ON_CREATE,
+                StartupTracer.DATABASE_OPEN,
+                StartupTracer.FIRST_QUERY,
+                StartupTracer.FIRST_BIND_VIEW }) {
+            StartupTracer.Section section = tracer.begin(name);
+            clock.advance(5);
+            section.end();
+        }
+        tracer.mark(StartupTracer.FIRST_FRAME);
+        tracer.mark(StartupTracer.FIRST_CONTENT_FRAME);
+        assertTrue(budget.check(tracer.report()).isEmpty());
+
+        /* The same startup, opening the database on the critical path of the first frame. */
+        StartupTracer slow = new StartupTracer(clock);
+        StartupTracer.Section section = slow.begin(StartupTracer.DATABASE_OPEN);
+        clock.advance(2000);
+        section.end();
+        slow.mark(StartupTracer.FIRST_FRAME);
+        slow.mark(StartupTracer.FIRST_CONTENT_FRAME);
+
+        List<String> violations = budget.check(slow.report());
+        assertTrue(violations.contains("database.open took 2000 ms, budget 200 ms"));
+        assertTrue(violations.contains("frame.first ended at 2000 ms, budget 1500 ms"));
+    }
+
+    @Test
+    public void deviceReportIsWithinBudget() throws IOException {
+        String path = System.getProperty(PROPERTY_STARTUP_REPORT);
+        Assume.assumeTrue(path != null);
+
+        Reader in = new FileReader(path);
+        StartupReport report;
+        try {
+            report = StartupReport.parse(in);
+        } finally {
+            in.close();
+        }
+
+        List<String> violations = loadBudget().check(report);
+        assertTrue("Startup over budget: " + violations, violations.isEmpty());
+    }
+}
@@ -0,0 +1,189 @@
+package com.example.android.inventoryapp.sync;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * {@link SyncStore} keeping the products in memory, with the same change log and merge rules as
+ * the provider (see ProductSyncOperations), so the engine can be tested on the JVM.
+ */
+class InMemorySyncStore implements SyncStore {
+    private static final class Row {
+        String name;
+        long price;
+        int quantity;
+        int quantitySynced;
+        int dirty;
+        long version;
+        byte[] picture;
+    }
+
+    private final String mClientId = UUID.randomUUID().toString();
+    private final Map<String, Row> mRows = new HashMap<>();
+    private final Map<String, Long> mTombstones = new HashMap<>();
+    private long mChangeCounter;
+    private long mPushedVersion;
+    private long mServerToken;
+    private SyncBatch mPendingPush;
+
+    String insert(String name, long price, int quantity, byte[] picture) {
+        Row row = new Row();
+        row.name = name;
+        row.price = price;
+        row.quantity = quantity;
+        row.picture = picture;
+        row.dirty = SyncChange.FIELD_ALL;
+        row.version = ++mChangeCounter;
+
+        String globalId = UUID.randomUUID().toString();
+        mRows.put(globalId, row);
+
+        return globalId;
+    }
+
+    void setQuantity(String globalId, int quantity) {
+        Row row = mRows.get(globalId);
+        row.quantity = quantity;
+        row.dirty |= SyncChange.FIELD_QUANTITY;
+        row.version = ++mChangeCounter;
+    }
+
+    void delete(String globalId) {
+        mRows.remove(globalId);
+        mTombstones.put(globalId, ++mChangeCounter);
+    }
+
+    int getQuantity(String globalId) {
+        return mRows.get(globalId).quantity;
+    }
+
+    boolean contains(String globalId) {
+        return mRows.containsKey(globalId);
+    }
+
+    @Override
+    public String getClientId() { return mClientId; }
+
+    @Override
+    public long getServerToken() { return mServerToken; }
+
+    @Override
+    public SyncBatch getPendingPush() { return mPendingPush; }
+
+    @Override
+    public SyncBatch collectChanges(int limit) {
+        final Map<String, Long> versions = new HashMap<>();
+        for (Map.Entry<String, Row> entry : mRows.entrySet()) {
+            if (entry.getValue().version > mPushedVersion && entry.getValue().dirty != 0) {
+                versions.put(entry.getKey(), entry.getValue().version);
+            }
+        }
+        for (Map.Entry<String, Long> entry : mTombstones.entrySet()) {
+            if (entry.getValue() > mPushedVersion) {
+                versions.put(entry.getKey(), entry.getValue());
+            }
+        }
+
+        List<String> ids = new ArrayList<>(versions.keySet());
+        Collections.sort(ids, new Comparator<String>() {
+            @Override
+            public int compare(String a, String b) {
+                return Long.compare(versions.get(a), versions.get(b));
+            }
+        });
+
+        /* Every write has its own version here, so a batch can end anywhere. */
+        boolean hasMore = ids.size() > limit;
+        if (hasMore) {
+            ids = ids.subList(0, limit);
+        }
+
+        List<SyncChange> changes = new ArrayList<>();
+        long token = mPushedVersion;
+        for (String id : ids) {
+            token = versions.get(id);
+            Row row = mRows.get(id);
+            if (row == null) {
+                changes.add(SyncChange.deletion(id));
+            } else {
+                changes.add(new SyncChange(id, row.dirty, row.name, row.price, row.quantity - row.quantitySynced,
+                        (row.dirty & SyncChange.FIELD_PICTURE) != 0 ? row.picture : null));
+            }
+        }
+
+        SyncBatch batch = new SyncBatch(mClientId, token, hasMore, changes);
+        if (!batch.isEmpty()) {
+            mPendingPush = batch;
+        }
+
+        return batch;
+    }
+
+    @Override
+    public void acknowledgePush(SyncBatch pushed) {
+        for (SyncChange change : pushed.getChanges()) {
+            if (change.isDeleted()) {
+                Long version = mTombstones.get(change.getGlobalId());
+                if (version != null && version <= pushed.getToken()) {
+                    mTombstones.remove(change.getGlobalId());
+                }
+                continue;
+            }
+
+            Row row = mRows.get(change.getGlobalId());
+            if (row == null) {
+                continue;
+            }
+
+            if (change.has(SyncChange.FIELD_QUANTITY)) {
+                row.quantitySynced += change.getQuantity();
+            }
+            if (row.version <= pushed.getToken()) {
+                row.dirty = 0;
+            }
+        }
+
+        mPushedVersion = Math.max(mPushedVersion, pushed.getToken());
+        mPendingPush = null;
+    }
+
+    @Override
+    public void applyRemote(SyncBatch pulled) {
+        long version = pulled.isEmpty() ? mChangeCounter : ++mChangeCounter;
+        for (SyncChange change : pulled.getChanges()) {
+            if (change.isDeleted()) {
+                mRows.remove(change.getGlobalId());
+                continue;
+            }
+
+            Row row = mRows.get(change.getGlobalId());
+            if (row == null) {
+                row = new Row();
+                row.quantity = change.getQuantity();
+                row.quantitySynced = change.getQuantity();
+                mRows.put(change.getGlobalId(), row);
+            } else if (change.has(SyncChange.FIELD_QUANTITY)) {
+                row.quantity = change.getQuantity() + row.quantity - row.quantitySynced;
+                row.quantitySynced = change.getQuantity();
+            }
+            row.version = version;
+
+            if (change.has(SyncChange.FIELD_NAME)) {
+                row.name = change.getName();
+            }
+            if (change.has(SyncChange.FIELD_PRICE)) {
+                row.price = change.getPrice();
+            }
+            if (change.has(SyncChange.FIELD_PICTURE)) {
+                row.picture = change.getPicture();
+            }
+        }
+
+        mServerToken = pulled.getToken();
+    }
+}
@@ -0,0 +1,196 @@
+package com.example.android.inventoryapp.sync;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * In-process stand-in of the sync server, speaking {@link SyncCodec} over HTTP on localhost.
+ * Quantity deltas are added to the server quantity, other fields are overwritten.
+ */
+class MockSyncServer {
+    private static final class Record {
+        String name;
+        long price;
+        int quantity;
+        byte[] picture;
+        boolean deleted;
+        long version;
+        long pictureVersion;
+    }
+
+    private final HttpServer mServer;
+    private final Map<String, Record> mRecords = new HashMap<>();
+    private final Map<String, Long> mLastTokens = new HashMap<>();
+    private long mChangeCounter;
+    private long mBytesReceived;
+    private long mBytesSent;
+
+    MockSyncServer() throws IOException {
+        mServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        mServer.createContext("/sync", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                handleSync(exchange);
+            }
+        });
+        mServer.start();
+    }
+
+    String getUrl() {
+        return "http://127.0.0.1:" + mServer.getAddress().getPort();
+    }
+
+    void stop() {
+        mServer.stop(0);
+    }
+
+    synchronized int getQuantity(String globalId) {
+        return mRecords.get(globalId).quantity;
+    }
+
+    synchronized boolean isDeleted(String globalId) {
+        return mRecords.get(globalId).deleted;
+    }
+
+    synchronized long getBytesReceived() { return mBytesReceived; }
+
+    synchronized long getBytesSent() { return mBytesSent; }
+
+    private synchronized void handleSync(HttpExchange exchange) throws IOException {
+        Map<String, String> query = parseQuery(exchange.getRequestURI().getQuery());
+        long since = Long.parseLong(query.get("since"));
+        int limit = Integer.parseInt(query.get("limit"));
+
+        byte[] request = readAll(exchange.getRequestBody());
+        mBytesReceived += request.length;
+        apply(SyncCodec.fromByteArray(request));
+
+        byte[] response = SyncCodec.toByteArray(changesSince(since, limit));
+        mBytesSent += response.length;
+
+        exchange.sendResponseHeaders(200, response.length);
+        OutputStream out = exchange.getResponseBody();
+        out.write(response);
+        out.close();
+    }
+
+    /**
+     * Apply a pushed batch, unless this client already pushed it.
+     */
+    void apply(SyncBatch push) {
+        Long lastToken = mLastTokens.get(push.getClientId());
+        if (push.isEmpty() || (lastToken != null && push.getToken() <= lastToken)) {
+            return;
+        }
+        mLastTokens.put(push.getClientId(), push.getToken());
+
+        for (SyncChange change : push.getChanges()) {
+            Record record = mRecords.get(change.getGlobalId());
+            if (record == null) {
+                record = new Record();
+                mRecords.put(change.getGlobalId(), record);
+            }
+
+            record.version = ++mChangeCounter;
+            if (change.isDeleted()) {
+                record.deleted = true;
+                continue;
+            }
+
+            if (change.has(SyncChange.FIELD_NAME)) {
+                record.name = change.getName();
+            }
+            if (change.has(SyncChange.FIELD_PRICE)) {
+                record.price = change.getPrice();
+            }
+            if (change.has(SyncChange.FIELD_QUANTITY)) {
+                record.quantity += change.getQuantity();
+            }
+            if (change.has(SyncChange.FIELD_PICTURE)) {
+                record.picture = change.getPicture();
+                record.pictureVersion = record.version;
+            }
+        }
+    }
+
+    private SyncBatch changesSince(final long since, int limit) {
+        List<Map.Entry<String, Record>> changed = new ArrayList<>();
+        for (Map.Entry<String, Record> entry : mRecords.entrySet()) {
+            if (entry.getValue().version > since) {
+                changed.add(entry);
+            }
+        }
+
+        Collections.sort(changed, new Comparator<Map.Entry<String, Record>>() {
+            @Override
+            public int compare(Map.Entry<String, Record> a, Map.Entry<String, Record> b) {
+                return Long.compare(a.getValue().version, b.getValue().version);
+            }
+        });
+
+        boolean hasMore = changed.size() > limit;
+        if (hasMore) {
+            changed = changed.subList(0, limit);
+        }
+
+        List<SyncChange> changes = new ArrayList<>();
+        long token = since;
+        for (Map.Entry<String, Record> entry : changed) {
+            Record record = entry.getValue();
+            token = record.version;
+
+            if (record.deleted) {
+                changes.add(SyncChange.deletion(entry.getKey()));
+                continue;
+            }
+
+            /* Only send the picture if it changed after the token of the client. */
+            boolean withPicture = record.pictureVersion > since;
+            changes.add(new SyncChange(
+                    entry.getKey(),
+                    SyncChange.FIELD_NAME | SyncChange.FIELD_PRICE | SyncChange.FIELD_QUANTITY
+                            | (withPicture ? SyncChange.FIELD_PICTURE : 0),
+                    record.name,
+                    record.price,
+                    record.quantity,
+                    withPicture ? record.picture : null
+            ));
+        }
+
+        return new SyncBatch("", token, hasMore, changes);
+    }
+
+    private static Map<String, String> parseQuery(String query) {
+        Map<String, String> parameters = new HashMap<>();
+        for (String pair : query.split("&")) {
+            int separator = pair.indexOf('=');
+            parameters.put(pair.substring(0, separator), pair.substring(separator + 1));
+        }
+
+        return parameters;
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.android.inventoryapp.sync;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of the sync payload encoding.
+ */
+public class SyncCodecTest {
+    @Test
+    public void batchRoundTrips() throws IOException {
+        SyncBatch batch = new SyncBatch("client", 42, true, Arrays.asList(
+                new SyncChange("a", SyncChange.FIELD_ALL, "Coffee", 1250, 7, new byte[] { 1, 2 }),
+                new SyncChange("b", SyncChange.FIELD_PRICE, null, 99, 0, null),
+                SyncChange.deletion("c")
+        ));
+
+        SyncBatch decoded = SyncCodec.fromByteArray(SyncCodec.toByteArray(batch));
+        assertEquals("client", decoded.getClientId());
+        assertEquals(42, decoded.getToken());
+        assertTrue(decoded.hasMore());
+        assertEquals(3, decoded.getChanges().size());
+
+        SyncChange first = decoded.getChanges().get(0);
+        assertEquals("Coffee", first.getName());
+        assertEquals(1250, first.getPrice());
+        assertEquals(7, first.getQuantity());
+        assertArrayEquals(new byte[] { 1, 2 }, first.getPicture());
+        assertEquals(99, decoded.getChanges().get(1).getPrice());
+        assertTrue(decoded.getChanges().get(2).isDeleted());
+    }
+
+    @Test
+    public void versionOnePricesAreConvertedToCents() throws IOException {
+        /* A payload of version 1, with the price in currency units. */
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        GZIPOutputStream gzip = new GZIPOutputStream(bytes);
+        DataOutputStream data = new DataOutputStream(gzip);
+        data.writeInt(0x494E5653);
+        data.writeByte(1);
+        data.writeUTF("client");
+        data.writeLong(7);
+        data.writeBoolean(false);
+        data.writeInt(1);
+        data.writeUTF("a");
+        data.writeByte(0);
+        data.writeByte(SyncChange.FIELD_NAME | SyncChange.FIELD_PRICE);
+        data.writeUTF("Tea");
+        data.writeLong(12);
+        data.flush();
+        gzip.finish();
+
+        SyncBatch batch = SyncCodec.fromByteArray(bytes.toByteArray());
+        assertEquals(7, batch.getToken());
+        SyncChange change = batch.getChanges().get(0);
+        assertEquals("Tea", change.getName());
+        assertEquals(1200, change.getPrice());
+
+        /* Written again, the batch is of the current version and keeps its cents. */
+        assertEquals(1200, SyncCodec.fromByteArray(SyncCodec.toByteArray(batch)).getChanges().get(0).getPrice());
+    }
+}
@@ -0,0 +1,130 @@
+package com.example.android.inventoryapp.sync;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * End-to-end tests of {@link SyncEngine} between stores and an in-process HTTP server.
+ */
+public class SyncEngineTest {
+    private MockSyncServer mServer;
+
+    @Before
+    public void setUp() throws IOException {
+        mServer = new MockSyncServer();
+    }
+
+    @After
+    public void tearDown() {
+        mServer.stop();
+    }
+
+    private SyncEngine.Result sync(SyncStore store) throws IOException {
+        return new SyncEngine(store, new HttpSyncTransport(mServer.getUrl()), SyncEngine.DEFAULT_BATCH_SIZE).sync();
+    }
+
+    @Test
+    public void concurrentSalesAreMerged() throws Exception {
+        InMemorySyncStore storeA = new InMemorySyncStore();
+        InMemorySyncStore storeB = new InMemorySyncStore();
+
+        String id = storeA.insert("Coffee", 5, 10, new byte[] { 1, 2, 3 });
+        sync(storeA);
+        sync(storeB);
+        assertEquals(10, storeB.getQuantity(id));
+
+        /* Both stores sell from the same stock before syncing again. */
+        storeA.setQuantity(id, 7);
+        storeB.setQuantity(id, 8);
+        sync(storeA);
+        sync(storeB);
+        sync(storeA);
+
+        assertEquals(5, mServer.getQuantity(id));
+        assertEquals(5, storeA.getQuantity(id));
+        assertEquals(5, storeB.getQuantity(id));
+    }
+
+    @Test
+    public void payloadIsProportionalToChanges() throws Exception {
+        InMemorySyncStore store = new InMemorySyncStore();
+        String first = null;
+        for (int i = 0; i < 500; i++) {
+            String id = store.insert("Product " + i, i, 100, new byte[2048]);
+            if (first == null) {
+                first = id;
+            }
+        }
+
+        SyncEngine.Result initial = sync(store);
+        assertEquals(500, initial.changesPushed);
+        assertTrue(initial.batches >= 500 / SyncEngine.DEFAULT_BATCH_SIZE);
+
+        long receivedBefore = mServer.getBytesReceived();
+        long sentBefore = mServer.getBytesSent();
+
+        store.setQuantity(first, 99);
+        SyncEngine.Result delta = sync(store);
+
+        assertEquals(1, delta.changesPushed);
+        assertEquals(1, delta.changesPulled);
+        assertTrue(mServer.getBytesReceived() - receivedBefore < 200);
+        assertTrue(mServer.getBytesSent() - sentBefore < 200);
+    }
+
+    @Test
+    public void pendingPushIsNotAppliedTwice() throws Exception {
+        InMemorySyncStore store = new InMemorySyncStore();
+        String id = store.insert("Tea", 3, 10, new byte[] { 4 });
+        sync(store);
+
+        store.setQuantity(id, 6);
+
+        /* The server applies the push, but the response never reaches the store. */
+        final HttpSyncTransport transport = new HttpSyncTransport(mServer.getUrl());
+        SyncTransport lossy = new SyncTransport() {
+            @Override
+            public SyncBatch exchange(SyncBatch push, long serverToken, int limit) throws IOException {
+                transport.exchange(push, serverToken, limit);
+                throw new IOException("Connection reset");
+            }
+        };
+        try {
+            new SyncEngine(store, lossy, SyncEngine.DEFAULT_BATCH_SIZE).sync();
+        } catch (IOException expected) {
+            /* The batch stays pending. */
+        }
+
+        store.setQuantity(id, 5);
+        sync(store);
+        sync(store);
+
+        assertEquals(5, mServer.getQuantity(id));
+        assertEquals(5, store.getQuantity(id));
+    }
+
+    @Test
+    public void deletionsArePropagated() throws Exception {
+        InMemorySyncStore storeA = new InMemorySyncStore();
+        InMemorySyncStore storeB = new InMemorySyncStore();
+
+        String id = storeA.insert("Milk", 2, 4, new byte[] { 5 });
+        sync(storeA);
+        sync(storeB);
+        assertTrue(storeB.contains(id));
+
+        storeA.delete(id);
+        sync(storeA);
+        sync(storeB);
+
+        assertTrue(mServer.isDeleted(id));
+        assertFalse(storeB.contains(id));
+    }
+}